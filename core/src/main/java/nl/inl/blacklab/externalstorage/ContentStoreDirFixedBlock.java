@@ -16,7 +16,6 @@
 package nl.inl.blacklab.externalstorage;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.io.IOException;
@@ -28,6 +27,8 @@ import java.nio.channels.FileChannel.MapMode;
 import java.util.AbstractSet;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
@@ -111,6 +112,9 @@ public class ContentStoreDirFixedBlock extends ContentStoreDirAbstract {
 	/** How many available characters will trigger a block write. */
 	private static final int WRITE_BLOCK_WHEN_CHARACTERS_AVAILABLE = (int)(BLOCK_SIZE_BYTES * MAX_COMPRESSION_FACTOR);
 
+	/** How many decoded blocks to keep in the block cache */
+	private static final int BLOCK_CACHE_SIZE = 100;
+
 	/** Table of contents entry */
 	static class TocEntry {
 
@@ -293,6 +297,37 @@ public class ContentStoreDirFixedBlock extends ContentStoreDirAbstract {
 	/** The sorted list of free blocks in the contents file */
 	private IntArrayList freeBlocks = new IntArrayList();
 
+	/** Handle for reading from the contents file (opened when first needed) */
+	private RandomAccessFile rafContentsFileRead;
+
+	/** Channel for reading from the contents file. Only used for positional reads,
+	 *  so several threads can read from it at the same time. */
+	private FileChannel fchContentsFileRead;
+
+	/**
+	 * Recently decoded blocks, by block number. Requests for overlapping parts
+	 * (e.g. concordances for hits that are close together) often need the same blocks,
+	 * so this saves us from reading and decoding them over and over.
+	 *
+	 * Access-ordered, so the least recently used block is evicted first.
+	 * Access must be synchronized on the map itself.
+	 */
+	private Map<Integer, String> blockCache = new LinkedHashMap<Integer, String>(BLOCK_CACHE_SIZE, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+			return size() > BLOCK_CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * Number of times a block was (re)written. A block that was read before a block
+	 * was written may contain the old contents, so we don't add it to the cache.
+	 * Access must be synchronized on blockCache.
+	 */
+	private long blockWriteGeneration = 0;
+
 	/**
 	 * @param dir content store dir
 	 * @param create if true, create a new content store
@@ -376,6 +411,10 @@ public class ContentStoreDirFixedBlock extends ContentStoreDirAbstract {
 			contentsFile.delete();
 		toc.clear();
 		freeBlocks.clear();
+		synchronized (blockCache) {
+			blockCache.clear();
+			blockWriteGeneration++;
+		}
 		tocModified = true;
 		nextId = 1;
 	}
@@ -544,10 +583,17 @@ public class ContentStoreDirFixedBlock extends ContentStoreDirAbstract {
 			// pad block with garbage
 			buf = ByteBuffer.wrap(blockPadding, 0, BLOCK_SIZE_BYTES - encoded.length);
 			fchContentsFile.write(buf);
-			return freeBlock;
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
+
+		// Make sure we don't use a cached version of a block that was deleted before
+		// (also not one that's being read right now; see getDecodedBlock())
+		synchronized (blockCache) {
+			blockCache.remove(freeBlock);
+			blockWriteGeneration++;
+		}
+		return freeBlock;
 	}
 
 	/**
@@ -629,6 +675,14 @@ public class ContentStoreDirFixedBlock extends ContentStoreDirAbstract {
 				rafContentsFile.close();
 				rafContentsFile = null;
 			}
+			synchronized (this) {
+				if (rafContentsFileRead != null) {
+					fchContentsFileRead.close();
+					fchContentsFileRead = null;
+					rafContentsFileRead.close();
+					rafContentsFileRead = null;
+				}
+			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -668,10 +722,15 @@ public class ContentStoreDirFixedBlock extends ContentStoreDirAbstract {
 	 * @return the parts
 	 */
 	@Override
-	public synchronized String[] retrieveParts(int contentId, int[] start, int[] end) {
+	public String[] retrieveParts(int contentId, int[] start, int[] end) {
 		try {
 			// Find the correct TOC entry
-			TocEntry e = toc.get(contentId);
+			// (we only need to lock while accessing the TOC; reading and decoding
+			//  blocks can be done by several threads at the same time)
+			TocEntry e;
+			synchronized (this) {
+				e = toc.get(contentId);
+			}
 			if (e == null || e.deleted)
 				return null;
 
@@ -680,75 +739,79 @@ public class ContentStoreDirFixedBlock extends ContentStoreDirAbstract {
 			if (n != end.length)
 				throw new IllegalArgumentException("start and end must be of equal length");
 
-			// Create array for results
-			String[] result = new String[n];
+			// 1 - determine what blocks to read for each part
+			int[] partStart = new int[n];
+			int[] partEnd = new int[n];
+			int[] firstBlock = new int[n];
+			int[] lastBlock = new int[n];
+			IntArrayList blocksToRead = new IntArrayList();
+			for (int i = 0; i < n; i++) {
+				int a = start[i];
+				int b = end[i];
+
+				if (a == -1)
+					a = 0;
+				if (b == -1)
+					b = e.entryLengthCharacters;
+
+				// Check values
+				if (a < 0 || b < 0) {
+					throw new IllegalArgumentException("Illegal values, start = " + a + ", end = " + b);
+				}
+				if (a > e.entryLengthCharacters || b > e.entryLengthCharacters) {
+					throw new IllegalArgumentException("Value(s) out of range, start = " + a
+							+ ", end = " + b + ", content length = " + e.entryLengthCharacters);
+				}
+				if (b <= a) {
+					throw new IllegalArgumentException(
+							"Tried to read empty or negative length snippet (from " + a
+									+ " to " + b + ")");
+				}
 
-			// Open the file
-			try (FileInputStream fileInputStream = new FileInputStream(contentsFile)) {
-				try (FileChannel fileChannel = fileInputStream.getChannel()) {
-					// Retrieve the strings requested
-					for (int i = 0; i < n; i++) {
-						int a = start[i];
-						int b = end[i];
-
-						if (a == -1)
-							a = 0;
-						if (b == -1)
-							b = e.entryLengthCharacters;
-
-						// Check values
-						if (a < 0 || b < 0) {
-							throw new IllegalArgumentException("Illegal values, start = " + a + ", end = " + b);
-						}
-						if (a > e.entryLengthCharacters || b > e.entryLengthCharacters) {
-							throw new IllegalArgumentException("Value(s) out of range, start = " + a
-									+ ", end = " + b + ", content length = " + e.entryLengthCharacters);
-						}
-						if (b <= a) {
-							throw new IllegalArgumentException(
-									"Tried to read empty or negative length snippet (from " + a
-											+ " to " + b + ")");
-						}
-
-						// 1 - determine what blocks to read
-						int firstBlock = -1, lastBlock = -1;
-						int bl = 0;
-						int charOffset = -1;
-						for (int offs: e.blockCharOffsets) {
-							if (offs <= a) {
-								firstBlock = bl; // last block that starts before a
-								charOffset = offs;
-							}
-							if (offs > b && lastBlock == -1) {
-								lastBlock = bl - 1;  // first block that ends after b
-								break;
-							}
-							bl++;
-						}
-						if (lastBlock == -1)
-							lastBlock = bl - 1; // last available block
-
-						// 2 - read and decode blocks
-						StringBuilder decoded = new StringBuilder();
-						for (int j = firstBlock; j <= lastBlock; j++) {
-							long blockNum = e.getBlockNumber(j);
-							long readStartOffset = blockNum * BLOCK_SIZE_BYTES;
-							int bytesToRead = BLOCK_SIZE_BYTES;
-							ByteBuffer buffer = ByteBuffer.allocate(bytesToRead);
-							int bytesRead = fileChannel.read(buffer, readStartOffset);
-							if (bytesRead < bytesToRead) {
-								// Apparently, something went wrong.
-								throw new RuntimeException("Not enough bytes read, " + bytesRead
-										+ " < " + bytesToRead);
-							}
-							String decodedBlock = decodeBlock(buffer.array(), 0, bytesRead);
-							decoded.append(decodedBlock);
-						}
-
-						// 3 - take just what we need
-						int firstChar = a - charOffset;
-						result[i] = decoded.substring(firstChar, firstChar + b - a);
+				firstBlock[i] = -1;
+				lastBlock[i] = -1;
+				int bl = 0;
+				for (int offs: e.blockCharOffsets) {
+					if (offs <= a)
+						firstBlock[i] = bl; // last block that starts before a
+					if (offs > b && lastBlock[i] == -1) {
+						lastBlock[i] = bl - 1;  // first block that ends after b
+						break;
 					}
+					bl++;
+				}
+				if (lastBlock[i] == -1)
+					lastBlock[i] = bl - 1; // last available block
+				for (int j = firstBlock[i]; j <= lastBlock[i]; j++) {
+					blocksToRead.add(e.getBlockNumber(j));
+				}
+				partStart[i] = a;
+				partEnd[i] = b;
+			}
+
+			// 2 - read and decode each block we need once, in file order
+			//     (parts often overlap, e.g. concordances for hits that are close together)
+			blocksToRead.sortThis();
+			MutableIntObjectMap<String> decodedBlocks = IntObjectMaps.mutable.empty();
+			for (int k = 0; k < blocksToRead.size(); k++) {
+				int blockNum = blocksToRead.get(k);
+				if (!decodedBlocks.containsKey(blockNum))
+					decodedBlocks.put(blockNum, getDecodedBlock(blockNum));
+			}
+
+			// 3 - take just what we need
+			String[] result = new String[n];
+			for (int i = 0; i < n; i++) {
+				int firstChar = partStart[i] - e.blockCharOffsets[firstBlock[i]];
+				int length = partEnd[i] - partStart[i];
+				if (firstBlock[i] == lastBlock[i]) {
+					result[i] = decodedBlocks.get(e.getBlockNumber(firstBlock[i])).substring(firstChar, firstChar + length);
+				} else {
+					StringBuilder decoded = new StringBuilder();
+					for (int j = firstBlock[i]; j <= lastBlock[i]; j++) {
+						decoded.append(decodedBlocks.get(e.getBlockNumber(j)));
+					}
+					result[i] = decoded.substring(firstChar, firstChar + length);
 				}
 			}
 			return result;
@@ -757,6 +820,65 @@ public class ContentStoreDirFixedBlock extends ContentStoreDirAbstract {
 		}
 	}
 
+	/**
+	 * Get the decoded contents of a block, from the block cache if possible.
+	 *
+	 * @param blockNum the block number
+	 * @return the decoded block
+	 * @throws IOException on error
+	 */
+	private String getDecodedBlock(int blockNum) throws IOException {
+		long generation;
+		synchronized (blockCache) {
+			String decodedBlock = blockCache.get(blockNum);
+			if (decodedBlock != null)
+				return decodedBlock;
+			generation = blockWriteGeneration;
+		}
+		String decodedBlock = readBlock(blockNum);
+		synchronized (blockCache) {
+			// Only cache the block if no block was written while we read it
+			// (it might have been deleted and reused for another document)
+			if (generation == blockWriteGeneration)
+				blockCache.put(blockNum, decodedBlock);
+		}
+		return decodedBlock;
+	}
+
+	/**
+	 * Read a block from the contents file and decode it (bypassing the cache).
+	 *
+	 * @param blockNum the block to read
+	 * @return the decoded block
+	 * @throws IOException on error
+	 */
+	String readBlock(int blockNum) throws IOException {
+		long readStartOffset = (long)blockNum * BLOCK_SIZE_BYTES;
+		int bytesToRead = BLOCK_SIZE_BYTES;
+		ByteBuffer buffer = ByteBuffer.allocate(bytesToRead);
+		int bytesRead = getContentsFileReadChannel().read(buffer, readStartOffset);
+		if (bytesRead < bytesToRead) {
+			// Apparently, something went wrong.
+			throw new RuntimeException("Not enough bytes read, " + bytesRead
+					+ " < " + bytesToRead);
+		}
+		return decodeBlock(buffer.array(), 0, bytesRead);
+	}
+
+	/**
+	 * Get the channel for reading from the contents file, opening it if necessary.
+	 *
+	 * @return the channel
+	 * @throws FileNotFoundException if the contents file doesn't exist
+	 */
+	private synchronized FileChannel getContentsFileReadChannel() throws FileNotFoundException {
+		if (fchContentsFileRead == null) {
+			rafContentsFileRead = new RandomAccessFile(contentsFile, "r");
+			fchContentsFileRead = rafContentsFileRead.getChannel();
+		}
+		return fchContentsFileRead;
+	}
+
 	@Override
 	public synchronized void delete(int id) {
 		TocEntry e = toc.get(id);
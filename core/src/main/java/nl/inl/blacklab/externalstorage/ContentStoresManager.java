@@ -4,6 +4,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
 
 import nl.inl.blacklab.search.ContentAccessor;
 
@@ -20,6 +21,9 @@ public class ContentStoresManager {
 	 */
 	private Map<String, ContentAccessor> contentAccessors = new HashMap<>();
 
+	/** Index reader, for translating from Lucene doc id to content id */
+	private IndexReader reader;
+
 	public void close() {
 		// Close the content accessor(s)
 		// (the ContentStore, and possibly other content accessors
@@ -31,7 +35,22 @@ public class ContentStoresManager {
 	}
 
 	public void put(String field, ContentStore store) {
-		contentAccessors.put(field, new ContentAccessor(field, store));
+		ContentAccessor ca = new ContentAccessor(field, store);
+		if (reader != null)
+			ca.setIdTranslateInfo(reader);
+		contentAccessors.put(field, ca);
+	}
+
+	/**
+	 * Set the index reader to use for translating Lucene doc ids to content ids.
+	 *
+	 * @param reader the index reader
+	 */
+	public void setIdTranslateInfo(IndexReader reader) {
+		this.reader = reader;
+		for (ContentAccessor ca: contentAccessors.values()) {
+			ca.setIdTranslateInfo(reader);
+		}
 	}
 
 	public ContentStore get(String fieldName) {
@@ -65,5 +84,12 @@ public class ContentStoresManager {
 		return contentAccessor.getSubstringsFromDocument(contentId, start, end);
 	}
 
+	public String[] getSubstringsFromLuceneDoc(String fieldName, int docId, int[] start, int[] end) {
+		ContentAccessor contentAccessor = contentAccessors.get(fieldName);
+		if (contentAccessor == null)
+			return null;
+		return contentAccessor.getSubstringsFromLuceneDoc(docId, start, end);
+	}
+
 
 }
@@ -0,0 +1,350 @@
+package nl.inl.blacklab.forwardindex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import nl.inl.util.ExUtil;
+
+/**
+ * Stores the start and end character offsets of each word position in a document,
+ * so word positions can be translated to character positions (for highlighting
+ * and concordances) without reading the document's term vector.
+ *
+ * The store lives in the forward index directory of a complex field's main property,
+ * and documents are identified by their forward index id for that property.
+ * Positions without a word get -1 as their offsets.
+ *
+ * Documents are always appended to the offsets file. If a forward index id is
+ * reused after a document was deleted, the new offsets replace the old ones, but
+ * the space they took up is not reclaimed.
+ */
+public class CharOffsetStore {
+
+	/** Name of the file containing the offsets */
+	private static final String OFFSETS_FILE_NAME = "charoffsets.dat";
+
+	/** Name of the file containing the table of contents */
+	private static final String DOCS_FILE_NAME = "charoffsets-docs.dat";
+
+	/** Size of an int in bytes. */
+	private static final int SIZEOF_INT = Integer.SIZE / Byte.SIZE;
+
+	/** The number of ints to buffer before appending them to the offsets file. */
+	static final int WRITE_BUFFER_SIZE = 1000000; // 1M integers = 4M bytes
+
+	/** Size of the chunks the offsets file is mapped in (in search mode).
+	 *  Must be a multiple of 8, so a start/end pair is never split between chunks.
+	 *  Can be set to be smaller for testing. */
+	static int chunkSizeBytes = 1 << 30;
+
+	/** Are we in index mode (i.e. writing to the store) or not? */
+	private boolean indexMode;
+
+	/** The table of contents file */
+	private File docsFile;
+
+	/** The offsets file (start and end offset for each position of each document) */
+	private File offsetsFile;
+
+	/** Position (in ints) in the offsets file of each document, or -1 if we don't have it */
+	private long[] docOffset = new long[0];
+
+	/** Number of word positions in each document */
+	private int[] docLength = new int[0];
+
+	/** Number of entries in the table of contents */
+	private int numberOfEntries = 0;
+
+	/** The position (in ints) in the offsets file after the last offset written. */
+	private long fileEndPosition = 0;
+
+	/** Has the table of contents been modified? */
+	private boolean modified = false;
+
+	/** Handle for the offsets file */
+	private RandomAccessFile offsetsFp;
+
+	/** File channel for the offsets file */
+	private FileChannel offsetsFileChannel;
+
+	/** Mapping into the offsets file (search mode only) */
+	private ByteBuffer[] chunks;
+
+	/** Offsets to be appended to the offsets file, not written yet */
+	private ByteBuffer appendBuffer;
+
+	/** Position in the offsets file (in ints) where the contents of appendBuffer go */
+	private long appendBufferOffset;
+
+	/**
+	 * Open the character offset store in a forward index directory, if it exists.
+	 *
+	 * @param dir the forward index directory
+	 * @param indexMode true iff we're in index mode (writing to the store);
+	 *   otherwise it will be read-only.
+	 * @param create if true, create a new store (deleting any existing one)
+	 * @return the store, or null if there is none and we're not in index mode
+	 *   (indexes created with older versions don't have one)
+	 */
+	public static CharOffsetStore open(File dir, boolean indexMode, boolean create) {
+		if (!indexMode && !new File(dir, DOCS_FILE_NAME).exists())
+			return null;
+		return new CharOffsetStore(dir, indexMode, create);
+	}
+
+	CharOffsetStore(File dir, boolean indexMode, boolean create) {
+		this.indexMode = indexMode;
+		docsFile = new File(dir, DOCS_FILE_NAME);
+		offsetsFile = new File(dir, OFFSETS_FILE_NAME);
+		if (create) {
+			if (docsFile.exists())
+				docsFile.delete();
+			if (offsetsFile.exists())
+				offsetsFile.delete();
+			modified = true;
+		}
+		try {
+			if (docsFile.exists())
+				readDocs();
+			else
+				modified = true;
+			offsetsFp = new RandomAccessFile(offsetsFile, indexMode ? "rw" : "r");
+			offsetsFileChannel = offsetsFp.getChannel();
+			if (!indexMode)
+				mapOffsetsFile();
+		} catch (IOException e) {
+			throw ExUtil.wrapRuntimeException(e);
+		}
+	}
+
+	/**
+	 * Memory-map the offsets file in fixed-size chunks.
+	 *
+	 * @throws IOException on error
+	 */
+	private void mapOffsetsFile() throws IOException {
+		long fileEndBytes = fileEndPosition * SIZEOF_INT;
+		int n = (int) ((fileEndBytes + chunkSizeBytes - 1) / chunkSizeBytes);
+		chunks = new ByteBuffer[n];
+		for (int i = 0; i < n; i++) {
+			long startBytes = (long) i * chunkSizeBytes;
+			long sizeBytes = Math.min(chunkSizeBytes, fileEndBytes - startBytes);
+			chunks[i] = offsetsFileChannel.map(FileChannel.MapMode.READ_ONLY, startBytes, sizeBytes);
+		}
+	}
+
+	/**
+	 * Read the table of contents from the file.
+	 *
+	 * @throws IOException on error
+	 */
+	private void readDocs() throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(docsFile)))) {
+			numberOfEntries = in.readInt();
+			docOffset = new long[numberOfEntries];
+			docLength = new int[numberOfEntries];
+			for (int i = 0; i < numberOfEntries; i++) {
+				docOffset[i] = in.readLong();
+				docLength[i] = in.readInt();
+				long end = docOffset[i] + docLength[i] * 2L;
+				if (docOffset[i] >= 0 && end > fileEndPosition)
+					fileEndPosition = end;
+			}
+		}
+	}
+
+	/**
+	 * Write the table of contents to the file.
+	 *
+	 * @throws IOException on error
+	 */
+	private void writeDocs() throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(docsFile)))) {
+			out.writeInt(numberOfEntries);
+			for (int i = 0; i < numberOfEntries; i++) {
+				out.writeLong(docOffset[i]);
+				out.writeInt(docLength[i]);
+			}
+		}
+		modified = false;
+	}
+
+	/**
+	 * Close the store.
+	 * Writes the table of contents to disk if modified.
+	 */
+	public synchronized void close() {
+		try {
+			if (indexMode) {
+				flushAppendBuffer();
+				if (modified)
+					writeDocs();
+			}
+			chunks = null;
+			if (offsetsFileChannel != null)
+				offsetsFileChannel.close();
+			if (offsetsFp != null)
+				offsetsFp.close();
+		} catch (IOException e) {
+			throw ExUtil.wrapRuntimeException(e);
+		}
+	}
+
+	/**
+	 * Store the character offsets for a document.
+	 *
+	 * @param fiid forward index id of the document
+	 * @param offsets start and end character offset for each word position
+	 *   (i.e. start of position 0, end of position 0, start of position 1, ...)
+	 */
+	public synchronized void addDocument(int fiid, int[] offsets) {
+		if (!indexMode)
+			throw new RuntimeException("Cannot add document, not in index mode");
+		if (offsets.length % 2 != 0)
+			throw new IllegalArgumentException("Need a start and end offset for each position");
+		if (fiid >= numberOfEntries) {
+			if (fiid >= docOffset.length) {
+				int newSize = Math.max(fiid + 1, docOffset.length * 2);
+				docOffset = Arrays.copyOf(docOffset, newSize);
+				docLength = Arrays.copyOf(docLength, newSize);
+			}
+			Arrays.fill(docOffset, numberOfEntries, fiid, -1);
+			numberOfEntries = fiid + 1;
+		}
+		try {
+			appendOffsets(fileEndPosition, offsets);
+		} catch (IOException e) {
+			throw ExUtil.wrapRuntimeException(e);
+		}
+		docOffset[fiid] = fileEndPosition;
+		docLength[fiid] = offsets.length / 2;
+		fileEndPosition += offsets.length;
+		modified = true;
+	}
+
+	/**
+	 * Add offsets to the end of the offsets file, via the append buffer.
+	 *
+	 * @param offset position in the offsets file (in ints) to write to
+	 * @param offsets the offsets to write
+	 * @throws IOException on error
+	 */
+	private void appendOffsets(long offset, int[] offsets) throws IOException {
+		if (appendBuffer == null)
+			appendBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE * SIZEOF_INT);
+		if (appendBuffer.remaining() < offsets.length * SIZEOF_INT) {
+			flushAppendBuffer();
+			if (appendBuffer.remaining() < offsets.length * SIZEOF_INT) {
+				// Too large for the buffer; write directly
+				ByteBuffer buffer = ByteBuffer.allocate(offsets.length * SIZEOF_INT);
+				buffer.asIntBuffer().put(offsets);
+				long position = offset * SIZEOF_INT;
+				while (buffer.hasRemaining()) {
+					position += offsetsFileChannel.write(buffer, position);
+				}
+				return;
+			}
+		}
+		if (appendBuffer.position() == 0)
+			appendBufferOffset = offset;
+		appendBuffer.asIntBuffer().put(offsets);
+		appendBuffer.position(appendBuffer.position() + offsets.length * SIZEOF_INT);
+	}
+
+	/**
+	 * Write the contents of the append buffer to the offsets file.
+	 *
+	 * @throws IOException on error
+	 */
+	private void flushAppendBuffer() throws IOException {
+		if (appendBuffer == null || appendBuffer.position() == 0)
+			return;
+		appendBuffer.flip();
+		long position = appendBufferOffset * SIZEOF_INT;
+		while (appendBuffer.hasRemaining()) {
+			position += offsetsFileChannel.write(appendBuffer, position);
+		}
+		appendBuffer.clear();
+	}
+
+	/**
+	 * Get the number of word positions we have offsets for in a document.
+	 *
+	 * @param fiid forward index id of the document
+	 * @return the number of positions, or -1 if we don't have offsets for this document
+	 */
+	public int getDocLength(int fiid) {
+		if (fiid < 0 || fiid >= numberOfEntries || docOffset[fiid] < 0)
+			return -1;
+		return docLength[fiid];
+	}
+
+	/**
+	 * Get the character offset of the start of a word.
+	 *
+	 * @param fiid forward index id of the document
+	 * @param position word position
+	 * @return the offset of the first character of the word, or -1 if unknown
+	 */
+	public int getStartChar(int fiid, int position) {
+		return getOffset(fiid, position, 0);
+	}
+
+	/**
+	 * Get the character offset of the end of a word.
+	 *
+	 * @param fiid forward index id of the document
+	 * @param position word position
+	 * @return the offset after the last character of the word, or -1 if unknown
+	 */
+	public int getEndChar(int fiid, int position) {
+		return getOffset(fiid, position, 1);
+	}
+
+	private int getOffset(int fiid, int position, int startOrEnd) {
+		if (chunks == null)
+			return readOffset(fiid, position, startOrEnd);
+
+		// Search mode: read from the mapping (absolute reads, so we don't need to synchronize)
+		if (position < 0 || position >= getDocLength(fiid))
+			return -1;
+		long bytePos = (docOffset[fiid] + position * 2L + startOrEnd) * SIZEOF_INT;
+		return chunks[(int) (bytePos / chunkSizeBytes)].getInt((int) (bytePos % chunkSizeBytes));
+	}
+
+	/**
+	 * Read an offset from the offsets file directly (index mode).
+	 *
+	 * @param fiid forward index id of the document
+	 * @param position word position
+	 * @param startOrEnd 0 for the start offset, 1 for the end offset
+	 * @return the offset, or -1 if unknown
+	 */
+	private synchronized int readOffset(int fiid, int position, int startOrEnd) {
+		if (position < 0 || position >= getDocLength(fiid))
+			return -1;
+		try {
+			flushAppendBuffer();
+			long bytePos = (docOffset[fiid] + position * 2L + startOrEnd) * SIZEOF_INT;
+			ByteBuffer buffer = ByteBuffer.allocate(SIZEOF_INT);
+			while (buffer.hasRemaining()) {
+				if (offsetsFileChannel.read(buffer, bytePos + buffer.position()) < 0)
+					throw new RuntimeException("Unexpected end of offsets file");
+			}
+			return buffer.getInt(0);
+		} catch (IOException e) {
+			throw ExUtil.wrapRuntimeException(e);
+		}
+	}
+
+}
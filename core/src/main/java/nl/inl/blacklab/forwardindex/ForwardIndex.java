@@ -8,6 +8,8 @@ import java.util.Set;
 
 import org.apache.lucene.index.IndexReader;
 
+import nl.inl.util.IntComparator;
+import nl.inl.util.ParallelMergeSort;
 import nl.inl.util.VersionFile;
 
 /**
@@ -46,6 +48,19 @@ public abstract class ForwardIndex {
 	 */
 	public abstract void close();
 
+	/**
+	 * Open a new view of the forward index that includes the documents added
+	 * (or deleted) since this one was opened.
+	 *
+	 * Only works in search mode. Only what was added is read; this object is
+	 * not changed, so it can still be used (e.g. by searches running on the
+	 * previous view of the index). Call setIdTranslateInfo() on the new view
+	 * with the new index reader before using it.
+	 *
+	 * @return the new view of the forward index
+	 */
+	public abstract ForwardIndex reopen();
+
 	/**
 	 * Store the given content and assign an id to it.
 	 *
@@ -102,7 +117,7 @@ public abstract class ForwardIndex {
 	 * @deprecated use retrievePartsInt and getTerms().get(id)
 	 */
 	@Deprecated
-	public synchronized List<String[]> retrieveParts(int fiid, int[] start, int[] end) {
+	public List<String[]> retrieveParts(int fiid, int[] start, int[] end) {
 
 		// First, retrieve the token ids
 		List<int[]> resultInt = retrievePartsInt(fiid, start, end);
@@ -138,7 +153,7 @@ public abstract class ForwardIndex {
 	 * @deprecated
 	 */
 	@Deprecated
-	public synchronized List<int[]> retrievePartsSortOrder(int fiid, int[] start, int[] end, boolean sensitive) {
+	public List<int[]> retrievePartsSortOrder(int fiid, int[] start, int[] end, boolean sensitive) {
 		// First, retrieve the token ids
 		List<int[]> resultInt = retrievePartsInt(fiid, start, end);
 
@@ -176,6 +191,82 @@ public abstract class ForwardIndex {
 	 */
 	public abstract List<int[]> retrievePartsInt(int fiid, int[] start, int[] end);
 
+	/**
+	 * Retrieve parts from several documents at once, in the form of token ids.
+	 *
+	 * Parts are read in the order in which they occur in the forward index file
+	 * (instead of the order specified), so we access the file as sequentially as
+	 * possible. Parts from the same document are retrieved with a single call to
+	 * retrievePartsInt().
+	 *
+	 * @param fiid
+	 *            forward index document id for each part
+	 * @param start
+	 *            the starting points of the parts to retrieve (in words)
+	 *            (-1 for start of document)
+	 * @param end
+	 *            the end points (i.e. first token beyond) of the parts to retrieve (in words)
+	 *            (-1 for end of document)
+	 * @return the parts, in the order specified (null for parts from deleted documents)
+	 */
+	public int[][] retrievePartsIntBulk(final int[] fiid, final int[] start, int[] end) {
+		int n = fiid.length;
+		if (n != start.length || n != end.length)
+			throw new IllegalArgumentException("fiid, start and end must be of equal length");
+
+		// Determine the order in which to read the parts
+		final long[] documentOffset = new long[n];
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			documentOffset[i] = getDocumentOffset(fiid[i]);
+			order[i] = i;
+		}
+		ParallelMergeSort.sort(order, new IntComparator() {
+			@Override
+			public int compare(int a, int b) {
+				if (documentOffset[a] != documentOffset[b])
+					return documentOffset[a] < documentOffset[b] ? -1 : 1;
+				if (fiid[a] != fiid[b])
+					return fiid[a] - fiid[b];
+				return Math.max(start[a], 0) - Math.max(start[b], 0);
+			}
+		});
+
+		// Read the parts, one document at a time
+		int[][] result = new int[n][];
+		int firstInDoc = 0;
+		for (int i = 1; i <= n; i++) {
+			if (i == n || fiid[order[i]] != fiid[order[firstInDoc]]) {
+				int partsInDoc = i - firstInDoc;
+				int[] docStart = new int[partsInDoc];
+				int[] docEnd = new int[partsInDoc];
+				for (int j = 0; j < partsInDoc; j++) {
+					docStart[j] = start[order[firstInDoc + j]];
+					docEnd[j] = end[order[firstInDoc + j]];
+				}
+				List<int[]> parts = retrievePartsInt(fiid[order[firstInDoc]], docStart, docEnd);
+				if (parts != null) {
+					for (int j = 0; j < partsInDoc; j++) {
+						result[order[firstInDoc + j]] = parts.get(j);
+					}
+				}
+				firstInDoc = i;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the position of a document in the forward index file, used to
+	 * determine the order in which to read documents in retrievePartsIntBulk().
+	 *
+	 * @param fiid forward index document id
+	 * @return the document's position (or any number with the same ordering)
+	 */
+	protected long getDocumentOffset(int fiid) {
+		return fiid;
+	}
+
 	/**
 	 * Get the Terms object in order to translate ids to token strings
 	 * @return the Terms object
@@ -228,6 +319,25 @@ public abstract class ForwardIndex {
 	 * @return the forward index object
 	 */
 	public static ForwardIndex open(File dir, boolean indexMode, Collator collator, boolean create) {
+		return open(dir, indexMode, collator, create, false);
+	}
+
+	/**
+	 * Open a forward index.
+	 *
+	 * Automatically figures out the forward index version and
+	 * instantiates the right class.
+	 *
+	 * @param dir forward index directory
+	 * @param indexMode true iff we're in index mode (writing to
+	 *   the forward index); otherwise it will be read-only.
+	 * @param collator collator to use for sorting
+	 * @param create if true, create a new forward index
+	 * @param memoryMappedTerms if true, memory-map the terms file instead of
+	 *   loading the terms onto the heap (search mode only; ignored in index mode)
+	 * @return the forward index object
+	 */
+	public static ForwardIndex open(File dir, boolean indexMode, Collator collator, boolean create, boolean memoryMappedTerms) {
 
 		if (!dir.exists()) {
 			if (!create)
@@ -265,7 +375,7 @@ public abstract class ForwardIndex {
 		case "4":
 			break;
 		}
-		fi = new ForwardIndexImplV3(dir, indexMode, collator, create, largeTermsFileSupport);
+		fi = new ForwardIndexImplV3(dir, indexMode, collator, create, largeTermsFileSupport, memoryMappedTerms);
 		return fi;
 	}
 
@@ -30,21 +30,16 @@ import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.LeafReader;
-import org.apache.lucene.index.NumericDocValues;
-import org.apache.lucene.index.SlowCompositeReaderWrapper;
-import org.apache.lucene.uninverting.UninvertingReader;
 
 import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.blacklab.search.lucene.DocIntFieldGetter;
 import nl.inl.util.ExUtil;
 
 /**
@@ -55,9 +50,6 @@ class ForwardIndexImplV3 extends ForwardIndex {
 
 	protected static final Logger logger = Logger.getLogger(ForwardIndexImplV3.class);
 
-	/** The number of cached fiids we check to see if this field is set anywhere. */
-	static final int NUMBER_OF_CACHE_ENTRIES_TO_CHECK = 1000;
-
 	/**
 	 * If true, we want to disable actual I/O and assign random term id's instead.
 	 * (used to test the impact of I/O on sorting/grouping)
@@ -90,15 +82,14 @@ class ForwardIndexImplV3 extends ForwardIndex {
 	/** Size of an int in bytes. This will always be 4, according to the standard. */
 	private static final int SIZEOF_INT = Integer.SIZE / Byte.SIZE;
 
-	/** The number of integer positions to reserve when mapping the file for writing. */
-	final static int WRITE_MAP_RESERVE = 250000; // 250K integers = 1M bytes
+	/** The number of integer positions to buffer before appending them to the tokens file. */
+	final static int WRITE_BUFFER_SIZE = 1000000; // 1M integers = 4M bytes
 
-	/** The memory mapped write buffer */
-	private IntBuffer writeBuffer;
+	/** Tokens to be appended to the tokens file, not written yet */
+	private ByteBuffer appendBuffer;
 
-	/** Buffer offset (position in file of start of writeBuffer) in integer positions
-	 * (so we don't count bytes, we count ints) */
-	private long writeBufOffset;
+	/** Position in the tokens file (in ints) where the contents of appendBuffer go */
+	private long appendBufferOffset;
 
 	/** The table of contents (where documents start in the tokens file and how long they are) */
 	ArrayList<TocEntry> toc;
@@ -137,68 +128,36 @@ class ForwardIndexImplV3 extends ForwardIndex {
 	 *  the actual file may be larger because we reserve space at the end. */
 	private long tokenFileEndPosition = 0;
 
-	/** Index reader, for getting documents (for translating from Lucene doc id to fiid) */
-	private IndexReader reader;
-
-	/** fiid field name in the Lucene index (for translating from Lucene doc id to fiid) */
-	private String fiidFieldName;
-
-	/** Cached fiid field */
-	private NumericDocValues cachedFiids;
+	/** Gets the fiid for a Lucene document (for translating from Lucene doc id to fiid) */
+	private DocIntFieldGetter fiids;
 
 	/** Are we in index mode (i.e. writing to forward index) or not? */
 	private boolean indexMode;
 
-	private UninvertingReader uninv;
-
 	/** If true, we use the new, block-based terms file, that can grow larger than 2 GB. */
 	private boolean useBlockBasedTermsFile = true;
 
+	/** Length of the terms file when we read it (to check if terms were added) */
+	private long termsFileLength;
+
+	/** Last modification time of the terms file when we read it */
+	private long termsFileLastModified;
+
 	@Override
 	public void setIdTranslateInfo(IndexReader reader, String lucenePropFieldName) {
-		this.reader = reader;
-		this.fiidFieldName = ComplexFieldUtil.forwardIndexIdField(lucenePropFieldName);
-		try {
-			LeafReader srw = SlowCompositeReaderWrapper.wrap(reader);
-			Map<String, UninvertingReader.Type> fields = new HashMap<>();
-			fields.put(fiidFieldName, UninvertingReader.Type.INTEGER);
-			uninv = new UninvertingReader(srw, fields);
-			cachedFiids = uninv.getNumericDocValues(fiidFieldName);
-
-			// Check if the cache was retrieved OK
-			boolean allZeroes = true;
-			int numToCheck = Math.min(NUMBER_OF_CACHE_ENTRIES_TO_CHECK, srw.maxDoc());
-			for (int i = 0; i < numToCheck; i++) {
-				// (NOTE: we don't check if document wasn't deleted, but that shouldn't matter here)
-				if (cachedFiids.get(i) != 0) {
-					allZeroes = false;
-					break;
-				}
-			}
-			if (allZeroes) {
-				// Tokens lengths weren't saved in the index, skip cache
-				cachedFiids = null;
-			}
-
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+		fiids = new DocIntFieldGetter(reader, ComplexFieldUtil.forwardIndexIdField(lucenePropFieldName));
 	}
 
 	@Override
 	public int luceneDocIdToFiid(int docId) {
-		if (cachedFiids != null)
-			return (int)cachedFiids.get(docId);
-
-		// Not cached; find fiid by reading stored value from Document now
-		try {
-			return Integer.parseInt(reader.document(docId).get(fiidFieldName));
-		} catch (Exception e) {
-			throw new RuntimeException(e);
-		}
+		return fiids.get(docId);
 	}
 
 	ForwardIndexImplV3(File dir, boolean indexMode, Collator collator, boolean create, boolean largeTermsFileSupport) {
+		this(dir, indexMode, collator, create, largeTermsFileSupport, false);
+	}
+
+	ForwardIndexImplV3(File dir, boolean indexMode, Collator collator, boolean create, boolean largeTermsFileSupport, boolean memoryMappedTerms) {
 		if (!dir.exists()) {
 			if (!create)
 				throw new IllegalArgumentException("ForwardIndex doesn't exist: " + dir);
@@ -225,7 +184,10 @@ class ForwardIndexImplV3 extends ForwardIndex {
 			boolean existing = false;
 			if (tocFile.exists()) {
 				readToc();
-				terms = new TermsImplV3(indexMode, collator, termsFile, useBlockBasedTermsFile);
+				if (!indexMode && memoryMappedTerms && termsFile.exists())
+					terms = new TermsImplMapped(collator, termsFile, useBlockBasedTermsFile);
+				else
+					terms = new TermsImplV3(indexMode, collator, termsFile, useBlockBasedTermsFile);
 				existing = true;
 				tocModified = false;
 			} else {
@@ -235,6 +197,8 @@ class ForwardIndexImplV3 extends ForwardIndex {
 				tocModified = true;
 				terms.setBlockBasedFile(useBlockBasedTermsFile);
 			}
+			termsFileLength = termsFile.length();
+			termsFileLastModified = termsFile.lastModified();
 			openTokensFile();
 
 			// Tricks to speed up reading
@@ -260,6 +224,51 @@ class ForwardIndexImplV3 extends ForwardIndex {
 		}
 	}
 
+	/**
+	 * Open a new view of a forward index in search mode, after documents
+	 * were added to (or deleted from) it.
+	 *
+	 * The table of contents is read again and the tokens file is mapped again,
+	 * but we only decode the terms that were added since the previous view
+	 * was opened (or reuse the previous view's terms if there are none).
+	 *
+	 * @param previous the previous view of the forward index
+	 */
+	private ForwardIndexImplV3(ForwardIndexImplV3 previous) {
+		indexMode = false;
+		termsFile = previous.termsFile;
+		tocFile = previous.tocFile;
+		tokensFile = previous.tokensFile;
+		useBlockBasedTermsFile = previous.useBlockBasedTermsFile;
+		toc = new ArrayList<>();
+		deletedTocEntries = new ArrayList<>();
+		try {
+			readToc();
+			termsFileLength = termsFile.length();
+			termsFileLastModified = termsFile.lastModified();
+			if (termsFileLength == previous.termsFileLength && termsFileLastModified == previous.termsFileLastModified) {
+				// No terms were added; terms are read-only in search mode, so we can share them
+				terms = previous.terms;
+			} else if (previous.terms instanceof TermsImplMapped) {
+				terms = ((TermsImplMapped) previous.terms).reopen(termsFile);
+			} else {
+				terms = ((TermsImplV3) previous.terms).reopen(termsFile);
+			}
+			openTokensFile();
+			if (useMemoryMapping)
+				memoryMapTokensFile(false);
+		} catch (IOException e) {
+			throw ExUtil.wrapRuntimeException(e);
+		}
+	}
+
+	@Override
+	public ForwardIndex reopen() {
+		if (indexMode)
+			throw new RuntimeException("Cannot reopen, in index mode");
+		return new ForwardIndexImplV3(this);
+	}
+
 	private void openTokensFile() throws FileNotFoundException {
 		tokensFp = new RandomAccessFile(tokensFile, indexMode ? "rw" : "r");
 		tokensFileChannel = tokensFp.getChannel();
@@ -335,6 +344,8 @@ class ForwardIndexImplV3 extends ForwardIndex {
 			if (tokensFp == null)
 				openTokensFile();
 			tokensFp.setLength(0);
+			if (appendBuffer != null)
+				appendBuffer.clear();
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -439,6 +450,7 @@ class ForwardIndexImplV3 extends ForwardIndex {
 	@Override
 	public void close() {
 		try {
+			flushAppendBuffer();
 			if (tocModified) {
 				writeToc();
 				terms.write(termsFile);
@@ -490,7 +502,24 @@ class ForwardIndexImplV3 extends ForwardIndex {
 	public synchronized int addDocument(List<String> content, List<Integer> posIncr) {
 		if (!indexMode)
 			throw new RuntimeException("Cannot add document, not in index mode");
+		try {
+			return writeDocument(getTokenIds(content, posIncr));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
 
+	/**
+	 * Look up the term ids for the tokens in a document.
+	 *
+	 * Note that if more than one token occurs at any position, we only store the first in the
+	 * forward index. Skipped positions get the empty string.
+	 *
+	 * @param content the tokens
+	 * @param posIncr the associated position increments, or null if position increment is always 1.
+	 * @return the term id for each position
+	 */
+	private int[] getTokenIds(List<String> content, List<Integer> posIncr) {
 		// Calculate the total number of tokens we need to store, based on the number
 		// of positions (we store 1 token per position, regardless of whether we have
 		// none, one or multiple values for that position)
@@ -506,23 +535,60 @@ class ForwardIndexImplV3 extends ForwardIndex {
 			}
 		}
 
+		int[] tokenIds = new int[numberOfTokens];
+		int tokenIdsIndex = 0;
+		Iterator<String> contentIt = content.iterator();
+		Iterator<Integer> posIncrIt = posIncr == null ? null : posIncr.iterator();
+		int emptyStringTokenId = posIncrIt != null ? terms.indexOf("") : -1;
+		while (contentIt.hasNext()) {
+			String token = contentIt.next();
+			int pi = posIncrIt == null ? 1 : posIncrIt.next();
+			if (pi == 0)
+				continue; // we only store the first token at any position
+			if (pi > 1) {
+				// Skipped a few tokens; add empty tokens for these positions
+				for (int i = 0; i < pi - 1; i++) {
+					tokenIds[tokenIdsIndex] = emptyStringTokenId;
+					tokenIdsIndex++;
+				}
+			}
+
+			tokenIds[tokenIdsIndex] = terms.indexOf(token);
+			tokenIdsIndex++;
+		}
+		if (tokenIdsIndex != numberOfTokens)
+			throw new RuntimeException("tokenIdsIndex != numberOfTokens (" + tokenIdsIndex + " != " + numberOfTokens + ")");
+		return tokenIds;
+	}
+
+	/**
+	 * Store a document's token ids and update the ToC.
+	 *
+	 * Reuses a gap left by deleted documents if possible. Otherwise, the document is
+	 * added to the append buffer, which is written to the end of the tokens file
+	 * when it is full.
+	 *
+	 * @param tokenIds the term id for each position
+	 * @return the id assigned to the document
+	 * @throws IOException on error
+	 */
+	private int writeDocument(int[] tokenIds) throws IOException {
+		int numberOfTokens = tokenIds.length;
+
 		// Decide where we're going to store this document,
 		// and update ToC
 		TocEntry gap = findBestFittingGap(numberOfTokens);
 		long newDocumentOffset;
-		int mapReserve;
 		tocModified = true;
 		boolean addNewEntry = true;
 		int newDocumentFiid = -1;
 		if (gap == null) {
 			// No fitting gap; just write it at the end
 			newDocumentOffset = tokenFileEndPosition;
-			mapReserve = WRITE_MAP_RESERVE; // if writing at end, reserve more space
 		}
 		else {
 			// Found a fitting gap; write it there
 			newDocumentOffset = gap.offset;
-			mapReserve = 0; // don't reserve extra write space, not needed
 			if (gap.length == numberOfTokens) {
 				// Exact fit; delete from free list and re-use entry
 				deletedTocEntries.remove(gap);
@@ -555,61 +621,116 @@ class ForwardIndexImplV3 extends ForwardIndex {
 			}
 		}
 
-		try {
-			// Can we use the current write buffer for this write?
-			long writeBufEnd = writeBuffer == null ? 0 : writeBufOffset + writeBuffer.limit();
-			if (writeBuffer == null || writeBufOffset > newDocumentOffset || writeBufEnd < newDocumentOffset + numberOfTokens) {
-				// No, remap it
-				writeBufOffset = newDocumentOffset;
-				MappedByteBuffer byteBuffer = tokensFileChannel.map(FileChannel.MapMode.READ_WRITE,
-						writeBufOffset * SIZEOF_INT, (numberOfTokens + mapReserve)
-								* SIZEOF_INT);
-				writeBuffer = byteBuffer.asIntBuffer();
-			}
+		if (gap == null) {
+			// Append to the end of the tokens file, via the append buffer
+			appendTokens(newDocumentOffset, tokenIds);
+			tokenFileEndPosition = newDocumentOffset + numberOfTokens;
+		} else {
+			// Write into the gap directly
+			writeTokens(newDocumentOffset, tokenIds);
+		}
 
-			// Set the correct start position
-			writeBuffer.position((int)(newDocumentOffset - writeBufOffset));
-
-			// Did we increase the length of the tokens file?
-			long end = newDocumentOffset + numberOfTokens;
-			if (end > tokenFileEndPosition)
-				tokenFileEndPosition = end;
-
-			// Write the token ids
-			// (first fill the buffer, then write the buffer in 1 call)
-			int [] tokenIds = new int[numberOfTokens];
-			int tokenIdsIndex = 0;
-			Iterator<String> contentIt = content.iterator();
-			Iterator<Integer> posIncrIt = posIncr == null ? null : posIncr.iterator();
-			int emptyStringTokenId = posIncrIt != null ? terms.indexOf("") : -1;
-			while (contentIt.hasNext()) {
-				String token = contentIt.next();
-				int pi = posIncrIt == null ? 1 : posIncrIt.next();
-				if (pi == 0)
-					continue; // we only store the first token at any position
-				if (pi > 1) {
-					// Skipped a few tokens; add empty tokens for these positions
-					for (int i = 0; i < pi - 1; i++) {
-						tokenIds[tokenIdsIndex] = emptyStringTokenId;
-						tokenIdsIndex++;
-					}
-				}
+		return newDocumentFiid;
+	}
 
-				tokenIds[tokenIdsIndex] = terms.indexOf(token);
-				tokenIdsIndex++;
+	/**
+	 * Add tokens to the end of the tokens file, via the append buffer.
+	 *
+	 * @param offset position in the tokens file (in ints) to write to
+	 * @param tokenIds the token ids to write
+	 * @throws IOException on error
+	 */
+	private void appendTokens(long offset, int[] tokenIds) throws IOException {
+		if (appendBuffer == null)
+			appendBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE * SIZEOF_INT);
+		if (appendBuffer.position() > 0 && appendBufferOffset + appendBuffer.position() / SIZEOF_INT != offset) {
+			// Not contiguous with what's in the buffer (end of file moved after a deletion)
+			flushAppendBuffer();
+		}
+		if (appendBuffer.remaining() < tokenIds.length * SIZEOF_INT) {
+			flushAppendBuffer();
+			if (appendBuffer.remaining() < tokenIds.length * SIZEOF_INT) {
+				// Too large for the buffer; write directly
+				writeTokens(offset, tokenIds);
+				return;
 			}
-			if (tokenIdsIndex != numberOfTokens)
-				throw new RuntimeException("tokenIdsIndex != numberOfTokens (" + tokenIdsIndex + " != " + numberOfTokens + ")");
-			writeBuffer.put(tokenIds);
+		}
+		if (appendBuffer.position() == 0)
+			appendBufferOffset = offset;
+		appendBuffer.asIntBuffer().put(tokenIds);
+		appendBuffer.position(appendBuffer.position() + tokenIds.length * SIZEOF_INT);
+	}
 
-			return newDocumentFiid;
-		} catch (IOException e1) {
-			throw new RuntimeException(e1);
+	/**
+	 * Write the contents of the append buffer to the tokens file.
+	 *
+	 * Must be called before reading from the tokens file or changing the ToC in a way that
+	 * affects documents that may still be in the buffer.
+	 *
+	 * @throws IOException on error
+	 */
+	private synchronized void flushAppendBuffer() throws IOException {
+		if (appendBuffer == null || appendBuffer.position() == 0)
+			return;
+		appendBuffer.flip();
+		long position = appendBufferOffset * SIZEOF_INT;
+		while (appendBuffer.hasRemaining()) {
+			position += tokensFileChannel.write(appendBuffer, position);
+		}
+		appendBuffer.clear();
+	}
+
+	/**
+	 * Write tokens to the tokens file directly.
+	 *
+	 * @param offset position in the tokens file (in ints) to write to
+	 * @param tokenIds the token ids to write
+	 * @throws IOException on error
+	 */
+	private void writeTokens(long offset, int[] tokenIds) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(tokenIds.length * SIZEOF_INT);
+		buffer.asIntBuffer().put(tokenIds);
+		long position = offset * SIZEOF_INT;
+		while (buffer.hasRemaining()) {
+			position += tokensFileChannel.write(buffer, position);
+		}
+	}
+
+	@Override
+	public List<int[]> retrievePartsInt(int fiid, int[] start, int[] end) {
+		if (indexMode) {
+			// Documents may be added or deleted while we read
+			synchronized (this) {
+				try {
+					flushAppendBuffer();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				return readParts(fiid, start, end);
+			}
 		}
+		// Search mode: nothing changes and each read uses its own view
+		// of the mapped file, so we don't need to synchronize.
+		return readParts(fiid, start, end);
 	}
 
 	@Override
-	public synchronized List<int[]> retrievePartsInt(int fiid, int[] start, int[] end) {
+	protected long getDocumentOffset(int fiid) {
+		TocEntry e = toc.get(fiid);
+		return e == null ? -1 : e.offset;
+	}
+
+	/**
+	 * Read parts of a document from the tokens file.
+	 *
+	 * Threadsafe as long as the forward index isn't modified at the same time.
+	 *
+	 * @param fiid forward index document id
+	 * @param start the starting points of the parts to retrieve (-1 for start of document)
+	 * @param end the end points of the parts to retrieve (-1 for end of document)
+	 * @return the parts, or null if the document was deleted
+	 */
+	private List<int[]> readParts(int fiid, int[] start, int[] end) {
 		try {
 			TocEntry e = toc.get(fiid);
 			if (e == null || e.deleted)
@@ -667,8 +788,11 @@ class ForwardIndexImplV3 extends ForwardIndex {
 						}
 					}
 
-					whichChunk.position((int) (e.offset * SIZEOF_INT - chunkOffsetBytes));
-					ib = whichChunk.asIntBuffer();
+					// Use our own view of the chunk, so we don't change the position of
+					// the shared buffer (allows concurrent reads without locking)
+					ByteBuffer chunk = whichChunk.duplicate();
+					chunk.position((int) (e.offset * SIZEOF_INT - chunkOffsetBytes));
+					ib = chunk.asIntBuffer();
 				}
 
 				int snippetLength = end[i] - start[i];
@@ -729,9 +853,15 @@ class ForwardIndexImplV3 extends ForwardIndex {
 	}
 
 	@Override
-	public void deleteDocument(int fiid) {
+	public synchronized void deleteDocument(int fiid) {
 		if (!indexMode)
 			throw new RuntimeException("Cannot delete document, not in index mode");
+		try {
+			// (the document's tokens may still be in the append buffer)
+			flushAppendBuffer();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
 		TocEntry tocEntry = toc.get(fiid);
 		tocEntry.deleted = true;
 		deletedTocEntries.add(tocEntry); // NOTE: mergeAdjacentDeletedEntries takes care of re-sorting
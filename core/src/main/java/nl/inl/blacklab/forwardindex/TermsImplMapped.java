@@ -0,0 +1,228 @@
+package nl.inl.blacklab.forwardindex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only terms implementation that memory-maps the terms file
+ * (as written by TermsImplV3) instead of loading it onto the heap.
+ *
+ * Term strings are only decoded when asked for, and sort positions are
+ * read directly from the mapped file. indexOf() does a binary search over
+ * the terms in sort order, using the term ids per sort position stored in the
+ * terms file. Terms files written by older versions don't contain those; in that
+ * case, they are determined from the sort positions once (an int per term).
+ *
+ * Only works in search mode. Threadsafe.
+ */
+class TermsImplMapped extends Terms {
+
+	/** Number of bytes per int */
+	private static final int BYTES_PER_INT = Integer.SIZE / Byte.SIZE;
+
+	/** Collator used to sort the terms case-sensitively (used for indexOf) */
+	private Collator collator;
+
+	/** Number of terms */
+	private int n;
+
+	/** First term id in each block of term strings */
+	private int[] blockFirstTerm;
+
+	/** Term string offsets for each block (one more than the number of terms in the block) */
+	private IntBuffer[] blockOffsets;
+
+	/** Term string data for each block */
+	private ByteBuffer[] blockData;
+
+	/** The sorting position for each term id */
+	private IntBuffer sortPositionPerId;
+
+	/** The case-insensitive sorting position for each term id */
+	private IntBuffer sortPositionPerIdInsensitive;
+
+	/** The term id for each sorting position */
+	private IntBuffer idPerSortPosition;
+
+	/** Use the block-based terms file format? */
+	private boolean useBlockBasedTermsFile = true;
+
+	TermsImplMapped(Collator collator, File termsFile, boolean useBlockBasedTermsFile) {
+		if (collator == null)
+			collator = Collator.getInstance();
+		this.collator = (Collator)collator.clone();
+		this.collator.setStrength(Collator.TERTIARY);
+		setBlockBasedFile(useBlockBasedTermsFile);
+		map(termsFile);
+	}
+
+	/**
+	 * Map the terms file again after terms were added to it.
+	 *
+	 * This object isn't changed, so it can still be used by searches on the
+	 * previous view of the index. (Note that the terms file is rewritten in
+	 * place when terms are added, so the previous view shouldn't be used to
+	 * look up terms while documents are being added)
+	 *
+	 * @param termsFile the terms file
+	 * @return the new Terms object
+	 */
+	TermsImplMapped reopen(File termsFile) {
+		return new TermsImplMapped(collator, termsFile, useBlockBasedTermsFile);
+	}
+
+	private void map(File termsFile) {
+		try (RandomAccessFile raf = new RandomAccessFile(termsFile, "r")) {
+			try (FileChannel fc = raf.getChannel()) {
+				n = raf.readInt();
+				long position = BYTES_PER_INT;
+				List<Integer> firstTerms = new ArrayList<>();
+				List<IntBuffer> offsets = new ArrayList<>();
+				List<ByteBuffer> data = new ArrayList<>();
+				if (useBlockBasedTermsFile) {
+					// Blocks of: number of terms, term string offsets, data size, data
+					int currentTerm = 0;
+					while (currentTerm < n) {
+						raf.seek(position);
+						int numTermsThisBlock = raf.readInt();
+						position += BYTES_PER_INT;
+						firstTerms.add(currentTerm);
+						offsets.add(mapInts(fc, position, numTermsThisBlock + 1)); // includes data size
+						raf.seek(position + (long)numTermsThisBlock * BYTES_PER_INT);
+						int dataSize = raf.readInt();
+						position += (long)(numTermsThisBlock + 1) * BYTES_PER_INT;
+						data.add(fc.map(MapMode.READ_ONLY, position, dataSize));
+						position += dataSize;
+						currentTerm += numTermsThisBlock;
+					}
+				} else {
+					// Single block: term string offsets (n + 1), data size, data
+					firstTerms.add(0);
+					offsets.add(mapInts(fc, position, n + 1));
+					position += (long)(n + 1) * BYTES_PER_INT;
+					raf.seek(position);
+					int dataSize = raf.readInt();
+					position += BYTES_PER_INT;
+					data.add(fc.map(MapMode.READ_ONLY, position, dataSize));
+					position += dataSize;
+				}
+				blockFirstTerm = new int[firstTerms.size()];
+				for (int i = 0; i < blockFirstTerm.length; i++) {
+					blockFirstTerm[i] = firstTerms.get(i);
+				}
+				blockOffsets = offsets.toArray(new IntBuffer[0]);
+				blockData = data.toArray(new ByteBuffer[0]);
+
+				// Sort order arrays
+				long arraySize = (long)n * BYTES_PER_INT;
+				idPerSortPosition = mapInts(fc, position, n);
+				sortPositionPerId = mapInts(fc, position + arraySize, n);
+				sortPositionPerIdInsensitive = mapInts(fc, position + 3 * arraySize, n);
+				if (n >= 2 && idPerSortPosition.get(0) == idPerSortPosition.get(1)) {
+					// Older terms file without the ids per sort position; determine them ourselves
+					int[] ids = new int[n];
+					for (int id = 0; id < n; id++) {
+						ids[sortPositionPerId.get(id)] = id;
+					}
+					idPerSortPosition = IntBuffer.wrap(ids);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static IntBuffer mapInts(FileChannel fc, long position, int numberOfInts) throws IOException {
+		return fc.map(MapMode.READ_ONLY, position, (long)numberOfInts * BYTES_PER_INT).asIntBuffer();
+	}
+
+	@Override
+	public int indexOf(String term) {
+		// Binary search over the terms in sort order
+		int low = 0, high = n - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int id = idPerSortPosition.get(mid);
+			int cmp = collator.compare(get(id), term);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return id;
+		}
+		return NO_TERM;
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("Cannot clear, memory-mapped terms are read-only");
+	}
+
+	@Override
+	public void write(File termsFile) {
+		throw new UnsupportedOperationException("Cannot write, memory-mapped terms are read-only");
+	}
+
+	@Override
+	public String get(Integer id) {
+		assert id >= 0 && id < n : "Term index out of range (" + id + ", numterms = " + n + ")";
+		int block = Arrays.binarySearch(blockFirstTerm, id);
+		if (block < 0)
+			block = -block - 2; // block containing the term
+		IntBuffer offsets = blockOffsets[block];
+		int i = id - blockFirstTerm[block];
+		int offset = offsets.get(i);
+		int length = offsets.get(i + 1) - offset;
+
+		// Absolute gets only, so we don't change the buffer's position (threadsafe)
+		ByteBuffer data = blockData[block];
+		byte[] bytes = new byte[length];
+		for (int j = 0; j < length; j++) {
+			bytes[j] = data.get(offset + j);
+		}
+		return new String(bytes, DEFAULT_CHARSET);
+	}
+
+	@Override
+	public int numberOfTerms() {
+		return n;
+	}
+
+	@Override
+	public int idToSortPosition(int id, boolean sensitive) {
+		return sensitive ? sortPositionPerId.get(id) : sortPositionPerIdInsensitive.get(id);
+	}
+
+	@Override
+	public void toSortOrder(int[] tokenId, int[] sortOrder, boolean sensitive) {
+		IntBuffer sortPositions = sensitive ? sortPositionPerId : sortPositionPerIdInsensitive;
+		for (int i = 0; i < tokenId.length; i++) {
+			if (tokenId[i] == NO_TERM)
+				sortOrder[i] = NO_TERM;
+			else
+				sortOrder[i] = sortPositions.get(tokenId[i]);
+		}
+	}
+
+	@Override
+	public int compareSortPosition(int tokenId1, int tokenId2, boolean sensitive) {
+		IntBuffer sortPositions = sensitive ? sortPositionPerId : sortPositionPerIdInsensitive;
+		return sortPositions.get(tokenId1) - sortPositions.get(tokenId2);
+	}
+
+	@Override
+	protected void setBlockBasedFile(boolean useBlockBasedTermsFile) {
+		this.useBlockBasedTermsFile = useBlockBasedTermsFile;
+	}
+
+}
@@ -21,14 +21,17 @@ import java.nio.IntBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.CollationKey;
 import java.text.Collator;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.List;
 
 import org.apache.log4j.Logger;
-import org.eclipse.collections.impl.factory.Maps;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
 
 /**
  * Keeps a first-come-first-serve list of unique terms.
@@ -62,10 +65,26 @@ class TermsImplV3 extends Terms {
 	int[] sortPositionPerIdInsensitive;
 
 	/**
-	 * Mapping from term to its unique index number. We use a SortedMap because we wish to
-	 * store the sorted index numbers later (to speed up sorting). Only valid in indexMode.
+	 * Mapping from term to its unique index number.
+	 *
+	 * In index mode, this is a cache of terms we've seen exactly like this before;
+	 * a term that's new here may still be equal to an existing term according to
+	 * the collator (see termIdPerCollationKey).
 	 */
-	Map<String, Integer> termIndex;
+	ObjectIntHashMap<String> termIndex;
+
+	/**
+	 * Index mode only: mapping from collation key to term id. Terms that are equal
+	 * according to the collator get the same term id. We use a hash map while indexing
+	 * and only sort the terms once, when writing the terms file.
+	 */
+	private ObjectIntHashMap<CollationKey> termIdPerCollationKey;
+
+	/** Index mode only: the terms, by index number */
+	private List<String> termsPerId;
+
+	/** Index mode only: the collation keys, by index number (used to sort the terms) */
+	private List<CollationKey> collationKeysPerId;
 
 	/** If true, we're indexing data and adding terms. If false, we're searching and just retrieving terms. */
 	private boolean indexMode;
@@ -95,18 +114,51 @@ class TermsImplV3 extends Terms {
 		this.collatorInsensitive = (Collator)collator.clone();
 		collatorInsensitive.setStrength(Collator.PRIMARY);
 
+		this.termIndex = new ObjectIntHashMap<>();
 		if (indexMode) {
-			// Index mode: create a SortedMap based on the specified Collator.
-			// (used later to get the terms in sort order)
-			this.termIndex = new TreeMap<>(this.collator);
-		} else {
-			// We already have the sort order, so TreeMap is not necessary here.
-			this.termIndex = Maps.mutable.empty();
+			termIdPerCollationKey = new ObjectIntHashMap<>();
+			termsPerId = new ArrayList<>();
+			collationKeysPerId = new ArrayList<>();
 		}
 		termIndexBuilt = true;
 		setBlockBasedFile(useBlockBasedTermsFile);
 		if (termsFile != null && termsFile.exists())
-			read(termsFile);
+			read(termsFile, new String[0]);
+	}
+
+	/**
+	 * Search mode only: read a terms file that terms were added to since
+	 * another Terms object read it.
+	 *
+	 * Terms are only ever added to the end of the terms file, so the terms we
+	 * already know keep their ids and don't need to be decoded again.
+	 *
+	 * @param previous the Terms object that read an earlier version of the file
+	 * @param termsFile the terms file
+	 */
+	private TermsImplV3(TermsImplV3 previous, File termsFile) {
+		indexMode = false;
+		collator = (Collator)previous.collator.clone();
+		collatorInsensitive = (Collator)previous.collatorInsensitive.clone();
+		termIndex = new ObjectIntHashMap<>();
+		termIndexBuilt = true;
+		setBlockBasedFile(previous.useBlockBasedTermsFile);
+		read(termsFile, previous.terms == null ? new String[0] : previous.terms);
+	}
+
+	/**
+	 * Search mode only: read the terms file again after terms were added to it.
+	 *
+	 * This object isn't changed, so it can still be used by searches on the
+	 * previous view of the index.
+	 *
+	 * @param termsFile the terms file
+	 * @return the new Terms object
+	 */
+	TermsImplV3 reopen(File termsFile) {
+		if (indexMode)
+			throw new RuntimeException("Cannot reopen, in index mode");
+		return new TermsImplV3(this, termsFile);
 	}
 
 	@Override
@@ -120,21 +172,42 @@ class TermsImplV3 extends Terms {
 			buildTermIndex();
 		}
 
-		Integer index = termIndex.get(term);
-		if (index != null)
+		int index = termIndex.getIfAbsent(term, NO_TERM);
+		if (index != NO_TERM || !indexMode)
 			return index;
-		if (!indexMode)
-			return NO_TERM; // term not found
-		index = termIndex.size();
+
+		// Index mode, and we haven't seen this exact term before.
+		// See if it's equal to an existing term according to the collator.
+		CollationKey key = collator.getCollationKey(term);
+		index = termIdPerCollationKey.getIfAbsent(key, NO_TERM);
+		if (index == NO_TERM)
+			index = addTerm(term, key);
 		termIndex.put(term, index);
 		return index;
 	}
 
+	/**
+	 * Index mode only: add a new term.
+	 *
+	 * @param term the term
+	 * @param key the term's collation key
+	 * @return the new term id
+	 */
+	private int addTerm(String term, CollationKey key) {
+		int index = termsPerId.size();
+		termsPerId.add(term);
+		collationKeysPerId.add(key);
+		termIdPerCollationKey.put(key, index);
+		return index;
+	}
+
 	@Override
 	public synchronized void buildTermIndex() {
 		if (termIndexBuilt)
 			return;
 		for (int i = 0; i < terms.length; i++) {
+			if (indexMode)
+				addTerm(terms[i], collator.getCollationKey(terms[i]));
 			termIndex.put(terms[i], i);
 		}
 		termIndexBuilt = true;
@@ -145,16 +218,28 @@ class TermsImplV3 extends Terms {
 		if (!indexMode)
 			throw new RuntimeException("Cannot clear, not in index mode");
 		termIndex.clear();
+		termIdPerCollationKey.clear();
+		termsPerId.clear();
+		collationKeysPerId.clear();
 		termIndexBuilt = true;
 	}
 
-	private void read(File termsFile) {
+	/**
+	 * Read the terms file.
+	 *
+	 * @param termsFile the terms file
+	 * @param knownTerms terms we already know (the first terms in the file, by id);
+	 *   these are reused instead of decoded again. Ignored if the file contains fewer terms.
+	 */
+	private void read(File termsFile, String[] knownTerms) {
 		termIndex.clear();
 		try {
 			try (RandomAccessFile raf = new RandomAccessFile(termsFile, "r")) {
 				try (FileChannel fc = raf.getChannel()) {
 					MappedByteBuffer buf = fc.map(MapMode.READ_ONLY, 0, termsFile.length());
 					int n = buf.getInt();
+					if (knownTerms.length > n)
+						knownTerms = new String[0]; // not an earlier version of this file
 					IntBuffer ib = buf.asIntBuffer();
 					int[] termStringOffsets = new int[n + 1];
 					terms = new String[n];
@@ -167,18 +252,25 @@ class TermsImplV3 extends Terms {
 						int currentTerm = 0;
 						while (currentTerm < n) {
 							int numTermsThisBlock = ib.get();
+							int blockEnd = currentTerm + numTermsThisBlock;
 							ib.get(termStringOffsets, currentTerm, numTermsThisBlock); // term string offsets
 
-							// Read term strings data
-							int dataBlockSize = termStringOffsets[currentTerm + numTermsThisBlock] = ib.get();
+							// Reuse the terms we already know from this block
+							int firstNewTerm = Math.max(currentTerm, Math.min(knownTerms.length, blockEnd));
+							System.arraycopy(knownTerms, currentTerm, terms, currentTerm, firstNewTerm - currentTerm);
+
+							// Read term strings data (only for the terms we don't know yet)
+							int dataBlockSize = termStringOffsets[blockEnd] = ib.get();
 							buf.position(buf.position() + BYTES_PER_INT * (numTermsThisBlock + 2));
-							byte[] termStringsThisBlock = new byte[dataBlockSize];
+							int newDataStart = termStringOffsets[firstNewTerm];
+							buf.position(buf.position() + newDataStart);
+							byte[] termStringsThisBlock = new byte[dataBlockSize - newDataStart];
 							buf.get(termStringsThisBlock);
 
 							// Now instantiate String objects from the offsets and byte data
-							for ( ; currentTerm < n; currentTerm++) {
-								int offset = termStringOffsets[currentTerm];
-								int length = termStringOffsets[currentTerm + 1] - offset;
+							for (currentTerm = firstNewTerm; currentTerm < blockEnd; currentTerm++) {
+								int offset = termStringOffsets[currentTerm] - newDataStart;
+								int length = termStringOffsets[currentTerm + 1] - termStringOffsets[currentTerm];
 								String str = new String(termStringsThisBlock, offset, length, DEFAULT_CHARSET);
 
 								// We need to find term for id while searching
@@ -197,16 +289,21 @@ class TermsImplV3 extends Terms {
 
 						// termStringByteSize fits in an int, and terms
 						// fits in a single byte array. Use the old code.
+						// (we skip the data of the terms we already know)
+						int firstNewTerm = knownTerms.length;
+						int newDataStart = termStringOffsets[firstNewTerm];
 						buf.position(buf.position() + BYTES_PER_INT + BYTES_PER_INT * termStringOffsets.length);
-						byte[] termStrings = new byte[termStringsByteSize];
+						buf.position(buf.position() + newDataStart);
+						byte[] termStrings = new byte[termStringsByteSize - newDataStart];
 						buf.get(termStrings);
 						ib = buf.asIntBuffer();
 
 						// Now instantiate String objects from the offsets and byte data
 						terms = new String[n];
-						for (int id = 0; id < n; id++) {
-							int offset = termStringOffsets[id];
-							int length = termStringOffsets[id + 1] - offset;
+						System.arraycopy(knownTerms, 0, terms, 0, firstNewTerm);
+						for (int id = firstNewTerm; id < n; id++) {
+							int offset = termStringOffsets[id] - newDataStart;
+							int length = termStringOffsets[id + 1] - termStringOffsets[id];
 							String str = new String(termStrings, offset, length, DEFAULT_CHARSET);
 
 							// We need to find term for id while searching
@@ -224,9 +321,9 @@ class TermsImplV3 extends Terms {
 						// Read the sort order arrays
 						sortPositionPerId = new int[n];
 						sortPositionPerIdInsensitive = new int[n];
-						ib.position(ib.position() + n); // Advance past unused sortPos -> id array (left in there for file compatibility)
+						ib.position(ib.position() + n); // Advance past sortPos -> id array (only used by TermsImplMapped)
 						ib.get(sortPositionPerId);
-						ib.position(ib.position() + n); // Advance past unused sortPos -> id array (left in there for file compatibility)
+						ib.position(ib.position() + n); // Advance past unused sortPos -> id array
 						ib.get(sortPositionPerIdInsensitive);
 					}
 				}
@@ -242,17 +339,19 @@ class TermsImplV3 extends Terms {
 			throw new RuntimeException("Term.write(): not in index mode!");
 
 		try {
-			// Open the terms file
-			try (RandomAccessFile raf = new RandomAccessFile(termsFile, "rw")) {
+			// Write to a new file and move it over the terms file when done, so
+			// views that still have the old file mapped (see TermsImplMapped)
+			// keep seeing the old terms instead of a file that's being rewritten.
+			File tmpFile = new File(termsFile.getPath() + ".tmp");
+			try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw")) {
 				try (FileChannel fc = raf.getChannel()) {
-					int n = termIndex.size();
+					int n = termsPerId.size();
 
 					// Fill the terms[] array
-					terms = new String[n];
+					terms = termsPerId.toArray(new String[n]);
 					long termStringsByteSize = 0;
-					for (Map.Entry<String, Integer> entry: termIndex.entrySet()) {
-						terms[entry.getValue()] = entry.getKey();
-						termStringsByteSize += entry.getKey().getBytes(DEFAULT_CHARSET).length;
+					for (String term: terms) {
+						termStringsByteSize += term.getBytes(DEFAULT_CHARSET).length;
 					}
 
 					// Calculate the file length and map the file
@@ -322,19 +421,31 @@ class TermsImplV3 extends Terms {
 
 					}
 
-					// Write the case-sensitive sort order
-					// Because termIndex is a SortedMap, values are returned in key-sorted order.
-					// In other words, the index numbers are in order of sorted terms, so the id
-					// for 'aardvark' comes before the id for 'ape', etc.
+					// Sort the terms and write the case-sensitive sort order
+					// (all terms are different according to the collator, so each gets
+					// its own sort position)
+					Integer[] sorted = new Integer[n];
+					for (int i = 0; i < n; i++) {
+						sorted[i] = i;
+					}
+					final CollationKey[] keys = collationKeysPerId.toArray(new CollationKey[n]);
+					Arrays.sort(sorted, new Comparator<Integer>() {
+						@Override
+						public int compare(Integer a, Integer b) {
+							return keys[a].compareTo(keys[b]);
+						}
+					});
 					int i = 0;
 					sortPositionPerId = new int[n];
+					int[] idPerSortPosition = new int[n];
 					Integer[] insensitive = new Integer[n];
-					for (int id: termIndex.values()) {
+					for (int id: sorted) {
 						sortPositionPerId[id] = i;
+						idPerSortPosition[i] = id;
 						insensitive[i] = id; // fill this so we can re-sort later, faster b/c already partially sorted
 						i++;
 					}
-					ib.put(new int[n]); // NOT USED ANYMORE, JUST FOR FILE COMPATIBILITY
+					ib.put(idPerSortPosition); // not used by this class, but by TermsImplMapped.indexOf()
 					ib.put(sortPositionPerId);
 
 					// Now, sort case-insensitively and write those arrays as well
@@ -356,10 +467,15 @@ class TermsImplV3 extends Terms {
 						}
 						sortPositionPerIdInsensitive[insensitive[i]] = sortPos;
 					}
-					ib.put(new int[n]); // NOT USED ANYMORE, JUST FOR FILE COMPATIBILITY
+					int[] idPerSortPositionInsensitive = new int[n];
+					for (i = 0; i < n; i++) {
+						idPerSortPositionInsensitive[i] = insensitive[i];
+					}
+					ib.put(idPerSortPositionInsensitive); // not used (yet), written for completeness
 					ib.put(sortPositionPerIdInsensitive);
 				}
 			}
+			Files.move(tmpFile.toPath(), termsFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
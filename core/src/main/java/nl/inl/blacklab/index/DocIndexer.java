@@ -79,4 +79,16 @@ public interface DocIndexer {
 	 * @return the fieldtype
 	 */
 	public FieldType getMetadataFieldTypeFromIndexerProperties(String fieldName);
+
+	/**
+	 * Get the number of documents this indexer has added to the index so far.
+	 * @return the number of documents
+	 */
+	public int numberOfDocsDone();
+
+	/**
+	 * Get the number of tokens this indexer has processed so far.
+	 * @return the number of tokens
+	 */
+	public long numberOfTokensDone();
 }
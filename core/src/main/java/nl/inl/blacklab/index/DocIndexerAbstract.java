@@ -59,6 +59,12 @@ public abstract class DocIndexerAbstract implements DocIndexer {
 
 	protected int nDocumentsSkipped = 0;
 
+	/** Number of documents we've added to the index */
+	protected int numberOfDocsDone = 0;
+
+	/** Number of tokens we've processed */
+	protected long numberOfTokensDone = 0;
+
 	/** Do we want to omit norms? (Default: yes) */
 	public boolean omitNorms = true;
 
@@ -130,18 +136,30 @@ public abstract class DocIndexerAbstract implements DocIndexer {
 
 	public void appendContent(String str) {
 		appendContentInternal(str);
-		if (content.length() >= WRITE_CONTENT_CHUNK_SIZE) {
+		if (content.length() >= WRITE_CONTENT_CHUNK_SIZE && !storeContentInOneGo()) {
 			storePartCapturedContent();
 		}
 	}
 
 	public void appendContent(char[] buffer, int start, int length) {
 		appendContentInternal(new String(buffer, start, length));
-		if (content.length() >= WRITE_CONTENT_CHUNK_SIZE) {
+		if (content.length() >= WRITE_CONTENT_CHUNK_SIZE && !storeContentInOneGo()) {
 			storePartCapturedContent();
 		}
 	}
 
+	/**
+	 * Should we store the document content in the content store in one go?
+	 *
+	 * This is the case if several threads are indexing, because parts stored
+	 * by different documents would get mixed up.
+	 *
+	 * @return true if content should not be stored in parts
+	 */
+	private boolean storeContentInOneGo() {
+		return indexer != null && indexer.isMultithreaded();
+	}
+
 	public void processContent(char[] buffer, int start, int length) {
 		if (captureContent)
 			appendContent(buffer, start, length);
@@ -204,9 +222,20 @@ public abstract class DocIndexerAbstract implements DocIndexer {
 	}
 
 	public void reportTokensProcessed(int n) {
+		numberOfTokensDone += n;
 		indexer.getListener().tokensDone(n);
 	}
 
+	@Override
+	public int numberOfDocsDone() {
+		return numberOfDocsDone;
+	}
+
+	@Override
+	public long numberOfTokensDone() {
+		return numberOfTokensDone;
+	}
+
 	/**
 	 * Parameters passed to this indexer
 	 */
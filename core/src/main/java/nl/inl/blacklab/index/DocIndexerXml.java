@@ -93,7 +93,7 @@ public abstract class DocIndexerXml extends DocIndexerAbstract {
 	 * What namespace prefix mappings have we encountered but not output in a start tag
 	 * yet? (used to make sure the stored XML contains all the required mappings)
 	 */
-	final protected static Map<String,String> outputPrefixMapping = new HashMap<>();
+	final protected Map<String,String> outputPrefixMapping = new HashMap<>();
 
 	/**
 	 * Encountered a prefix to namespace mapping; now in effect.
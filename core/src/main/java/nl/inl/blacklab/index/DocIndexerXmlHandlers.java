@@ -38,6 +38,7 @@ import nl.inl.blacklab.index.complex.ComplexField;
 import nl.inl.blacklab.index.complex.ComplexFieldProperty;
 import nl.inl.blacklab.index.complex.ComplexFieldProperty.SensitivitySetting;
 import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.blacklab.search.MetadataFieldValues;
 import nl.inl.blacklab.search.Searcher;
 import nl.inl.blacklab.search.indexstructure.FieldType;
 import nl.inl.blacklab.search.indexstructure.IndexStructure;
@@ -50,6 +51,8 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.util.BytesRef;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
@@ -79,7 +82,7 @@ public abstract class DocIndexerXmlHandlers extends DocIndexerAbstract {
 	 * start tag yet? (used to make sure the stored XML contains all the
 	 * required mappings)
 	 */
-	final protected static Map<String, String> outputPrefixMapping = new HashMap<>();
+	final protected Map<String, String> outputPrefixMapping = new HashMap<>();
 
 	/**
 	 * Handle Document element. Starts a new Lucene document and adds the
@@ -144,10 +147,12 @@ public abstract class DocIndexerXmlHandlers extends DocIndexerAbstract {
 			// retrieve the content id, and store that in Lucene.
 			// (Note that we do this after adding the dummy token, so the character
 			//  positions for the dummy token still make (some) sense)
+			// We also add it as DocValues, so we can look it up quickly per segment
+			// when retrieving content.
 			int contentId = storeCapturedContent();
-			currentLuceneDoc.add(new IntField(ComplexFieldUtil
-					.contentIdField(contentsField.getName()), contentId,
-					Store.YES));
+			String contentIdFieldName = ComplexFieldUtil.contentIdField(contentsField.getName());
+			currentLuceneDoc.add(new IntField(contentIdFieldName, contentId, Store.YES));
+			currentLuceneDoc.add(new NumericDocValuesField(contentIdFieldName, contentId));
 
 			// Store the different properties of the complex contents field that
 			// were gathered in
@@ -161,13 +166,19 @@ public abstract class DocIndexerXmlHandlers extends DocIndexerAbstract {
 					continue;
 
 				// Add property (case-sensitive tokens) to forward index and add
-				// id to Lucene doc
+				// id to Lucene doc (also as DocValues, for quick lookup per segment)
 				String propName = prop.getName();
 				String fieldName = ComplexFieldUtil.propertyField(
 						contentsField.getName(), propName);
 				int fiid = indexer.addToForwardIndex(fieldName, prop);
-				currentLuceneDoc.add(new IntField(ComplexFieldUtil
-						.forwardIndexIdField(fieldName), fiid, Store.YES));
+				String fiidFieldName = ComplexFieldUtil.forwardIndexIdField(fieldName);
+				currentLuceneDoc.add(new IntField(fiidFieldName, fiid, Store.YES));
+				currentLuceneDoc.add(new NumericDocValuesField(fiidFieldName, fiid));
+
+				// Store the character offsets along with the main property,
+				// for quick highlighting and concordances
+				if (prop == contentsField.getMainProperty())
+					indexer.addToCharOffsetStore(fieldName, fiid, contentsField);
 			}
 
 			// If there's an external metadata fetcher, call it now so it can
@@ -183,37 +194,41 @@ public abstract class DocIndexerXmlHandlers extends DocIndexerAbstract {
 			// See what metadatafields are missing or empty and add unknown value
 			// if desired.
 			IndexStructure struct = indexer.getSearcher().getIndexStructure();
-			for (String fieldName: struct.getMetadataFields()) {
-				MetadataFieldDesc fd = struct.getMetadataFieldDesc(fieldName);
-				boolean missing = false, empty = false;
-				String currentValue = currentLuceneDoc.get(fieldName);
-				if (currentValue == null)
-					missing = true;
-				else if (currentValue.length() == 0)
-					empty = true;
-				UnknownCondition cond = fd.getUnknownCondition();
-				boolean useUnknownValue = false;
-				switch(cond) {
-				case EMPTY:
-					useUnknownValue = empty;
-					break;
-				case MISSING:
-					useUnknownValue = missing;
-					break;
-				case MISSING_OR_EMPTY:
-					useUnknownValue = missing | empty;
-					break;
-				case NEVER:
-					useUnknownValue = false;
-					break;
+			synchronized (struct) { // (other indexing threads may be registering fields)
+				for (String fieldName: struct.getMetadataFields()) {
+					MetadataFieldDesc fd = struct.getMetadataFieldDesc(fieldName);
+					boolean missing = false, empty = false;
+					String currentValue = currentLuceneDoc.get(fieldName);
+					if (currentValue == null)
+						missing = true;
+					else if (currentValue.length() == 0)
+						empty = true;
+					UnknownCondition cond = fd.getUnknownCondition();
+					boolean useUnknownValue = false;
+					switch(cond) {
+					case EMPTY:
+						useUnknownValue = empty;
+						break;
+					case MISSING:
+						useUnknownValue = missing;
+						break;
+					case MISSING_OR_EMPTY:
+						useUnknownValue = missing | empty;
+						break;
+					case NEVER:
+						useUnknownValue = false;
+						break;
+					}
+					if (useUnknownValue)
+						addMetadataField(fieldName, fd.getUnknownValue());
 				}
-				if (useUnknownValue)
-					addMetadataField(fieldName, fd.getUnknownValue());
+				addMetadataDocValues(struct);
 			}
 
 			try {
 				// Add Lucene doc to indexer
 				indexer.add(currentLuceneDoc);
+				numberOfDocsDone++;
 			} catch (Exception e) {
 				throw ExUtil.wrapRuntimeException(e);
 			}
@@ -532,11 +547,14 @@ public abstract class DocIndexerXmlHandlers extends DocIndexerAbstract {
 		propStartTag = addProperty(ComplexFieldUtil.START_TAG_PROP_NAME, true); // start tag positions
 		propStartTag.setForwardIndex(false);
 		IndexStructure indexStructure = indexer.getSearcher().getIndexStructure();
-		indexStructure.registerComplexField(contentsField.getName(), propMain.getName());
+		Set<String> noForwardIndexProps;
+		synchronized (indexStructure) { // (other indexing threads may be registering fields)
+			indexStructure.registerComplexField(contentsField.getName(), propMain.getName());
 
-		// If the indexmetadata file specified a list of properties that shouldn't get a forward index,
-		// make the new complex field aware of this.
-		Set<String> noForwardIndexProps = indexStructure.getComplexFieldDesc(Searcher.DEFAULT_CONTENTS_FIELD_NAME).getNoForwardIndexProps();
+			// If the indexmetadata file specified a list of properties that shouldn't get a forward index,
+			// make the new complex field aware of this.
+			noForwardIndexProps = indexStructure.getComplexFieldDesc(Searcher.DEFAULT_CONTENTS_FIELD_NAME).getNoForwardIndexProps();
+		}
 		contentsField.setNoForwardIndexProps(noForwardIndexProps);
 	}
 
@@ -827,11 +845,14 @@ public abstract class DocIndexerXmlHandlers extends DocIndexerAbstract {
 	public void addMetadataField(String name, String value) {
 
 		IndexStructure struct = indexer.getSearcher().getIndexStructure();
-		struct.registerMetadataField(name);
+		FieldType type;
+		synchronized (struct) { // (other indexing threads may be registering fields)
+			struct.registerMetadataField(name);
 
-		MetadataFieldDesc desc = struct.getMetadataFieldDesc(name);
-		FieldType type = desc.getType();
-		desc.addValue(value);
+			MetadataFieldDesc desc = struct.getMetadataFieldDesc(name);
+			type = desc.getType();
+			desc.addValue(value);
+		}
 
 		FieldType shouldBeType = getMetadataFieldTypeFromIndexerProperties(name);
 		if (type == FieldType.TEXT
@@ -862,6 +883,27 @@ public abstract class DocIndexerXmlHandlers extends DocIndexerAbstract {
 		}
 	}
 
+	/**
+	 * Add DocValues for the metadata fields in the current document.
+	 *
+	 * These allow fast access to metadata for sorting, grouping and faceting,
+	 * without having to read the stored document. We store the first value of each
+	 * field, the same value Document.get() returns.
+	 *
+	 * @param struct our index structure
+	 */
+	private void addMetadataDocValues(IndexStructure struct) {
+		for (String fieldName: struct.getMetadataFields()) {
+			String value = currentLuceneDoc.get(fieldName);
+			if (value == null)
+				continue;
+			BytesRef bytes = new BytesRef(value);
+			if (bytes.length > MetadataFieldValues.MAX_DOC_VALUES_LENGTH)
+				continue; // too long; will be read from the stored field
+			currentLuceneDoc.add(new SortedDocValuesField(fieldName, bytes));
+		}
+	}
+
 	// protected Index getMetadataIndexSetting(String name) {
 	// boolean analyzed = getParameter(name + "_analyzed", true);
 	// return analyzed ? indexAnalyzed : indexNotAnalyzed;
@@ -18,14 +18,19 @@ package nl.inl.blacklab.index;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
+import org.eclipse.collections.api.list.primitive.ImmutableIntList;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
@@ -37,6 +42,11 @@ import nl.inl.util.StringUtil;
 /**
  * SAX parser with the ability to attach "SAX-path hooks" to process specific elements/attributes in
  * the XML.
+ *
+ * The paths of all hooks are combined into a single automaton (built lazily as
+ * element names are encountered), with a state for each element on the current
+ * path. That way, we don't have to check each hook for each SAX event; we just
+ * follow a transition when an element starts, and pop a state when it ends.
  */
 public class HookableSaxHandler extends DefaultHandler {
 
@@ -286,7 +296,7 @@ public class HookableSaxHandler extends DefaultHandler {
 	}
 
 	/**
-	 * Evaluates the condition and calls the handler if if matches
+	 * A path condition and the handler to call when it matches
 	 */
 	private static class SaxParserHook {
 		/** The path to check for */
@@ -313,65 +323,277 @@ public class HookableSaxHandler extends DefaultHandler {
 			this.callHandlerForDescendants = callHandlerForDescendants;
 		}
 
-		/** Should we call the handler for our current place in the document?
-		 * @return true iff we should
-		 */
-		private boolean shouldCallHandler() {
-			if (callHandlerForDescendants)
-				return expression.ancestorOrSelfMatched();
-			return expression.currentElementMatches();
+		@Override
+		public String toString() {
+			return expression.toString();
 		}
+	}
 
-		/**
-		 * Open tag: pass on to expression checked, and call handler if the
-		 * element matches or any of the attributes match.
-		 * @param uri namespace uri
-		 * @param localName element local name
-		 * @param qName element qualified name
-		 * @param attributes element attributes
-		 */
-		public void startElement(String uri, String localName, String qName, Attributes attributes) {
-			expression.startElement(localName);
-			if (shouldCallHandler()) {
-				handler.setInsideElement(true);
-				handler.startElement(uri, localName, qName, attributes);
+	/** The list of hooks into our parser */
+	private List<SaxParserHook> hooks = new ArrayList<>();
+
+	/**
+	 * A state in the path automaton.
+	 *
+	 * Corresponds to a set of positions in the hook paths: for each hook, how many
+	 * parts of its path the current element and its ancestors matched (there may be
+	 * several, for relative paths).
+	 */
+	private class PathState {
+
+		/** Positions in the hook paths (see positionId()), sorted */
+		private int[] positions;
+
+		/** Is this the state before the document element? */
+		private boolean documentStart;
+
+		/** Hooks (not applying to descendants) whose path matched the current element, sorted */
+		private int[] matchedHooks;
+
+		/** Hooks applying to descendants whose path matched the current element, sorted */
+		private int[] matchedDescendantHooks;
+
+		/** States for the child elements we've seen so far.
+		 *  (SAX parsers usually intern element names, so lookups are cheap) */
+		private Map<String, PathState> transitions = new HashMap<>();
+
+		/** Hooks to call for this state, given the active descendant hooks (see hooksToCall()) */
+		private int[] hooksToCall;
+
+		/** Value of activeDescendantHooksVersion that hooksToCall was determined for */
+		private int hooksToCallVersion = -1;
+
+		PathState(int[] positions, boolean documentStart) {
+			this.positions = positions;
+			this.documentStart = documentStart;
+			IntArrayList matched = new IntArrayList();
+			IntArrayList matchedDescendants = new IntArrayList();
+			for (int position: positions) {
+				int hookIndex = positionHook[position];
+				if (position == positionOffset[hookIndex + 1] - 1) {
+					// Last part of the path: the current element matches
+					if (hooks.get(hookIndex).callHandlerForDescendants)
+						matchedDescendants.add(hookIndex);
+					else
+						matched.add(hookIndex);
+				}
 			}
+			matchedHooks = matched.toArray();
+			matchedDescendantHooks = matchedDescendants.toArray();
 		}
 
 		/**
-		 * Close tag: call handler if the element matched, and pass the tag
-		 * on to the expression checker.
-		 * @param uri namespace uri
-		 * @param localName element local name
-		 * @param qName element qualified name
+		 * Get the state for a child element.
+		 *
+		 * @param elementName the child element name
+		 * @return the state
 		 */
-		public void endElement(String uri, String localName, String qName) {
-			if (shouldCallHandler()) {
-				handler.endElement(uri, localName, qName);
-				handler.setInsideElement(false);
+		PathState child(String elementName) {
+			PathState next = transitions.get(elementName);
+			if (next == null) {
+				next = getState(nextPositions(this, elementName));
+				transitions.put(elementName, next);
 			}
-			expression.endElement();
+			return next;
 		}
 
-		/**
-		 * Character content: call handler if the expression is currently matched.
-		 * @param ch character buffer
-		 * @param start start of content in buffer
-		 * @param length length of content in buffer
-		 */
-		public void characters(char[] ch, int start, int length) {
-			if (shouldCallHandler())
-				handler.characters(ch, start, length);
+	}
+
+	/** For each hook: the id of the first position in its path (one extra value at the end) */
+	private int[] positionOffset;
+
+	/** For each position: the hook it belongs to */
+	private int[] positionHook;
+
+	/** For each position: the element name to match next (or null if the path is complete) */
+	private String[] positionNextElement;
+
+	/** The states we've created, by their positions */
+	private Map<ImmutableIntList, PathState> states;
+
+	/** The state before the document element */
+	private PathState documentStartState;
+
+	/** States for the current element and its ancestors (index 0: before the document element) */
+	private PathState[] stateStack = new PathState[16];
+
+	/** Names of the current element and its ancestors (so we can rebuild the state stack) */
+	private String[] elementStack = new String[16];
+
+	/** Current depth in the document */
+	private int depth = 0;
+
+	/** For each hook: how many of the current element and its ancestors matched its path */
+	private int[] matchedAncestorOrSelf;
+
+	/** Hooks applying to descendants that have a matched ancestor (or self), sorted */
+	private IntArrayList activeDescendantHooks = new IntArrayList();
+
+	/** Incremented whenever activeDescendantHooks changes */
+	private int activeDescendantHooksVersion = 0;
+
+	/**
+	 * Build the path automaton (the states themselves are created as needed).
+	 */
+	private void buildAutomaton() {
+		int n = hooks.size();
+		positionOffset = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			positionOffset[i + 1] = positionOffset[i] + hooks.get(i).expression.elementNames.size();
+		}
+		positionHook = new int[positionOffset[n]];
+		positionNextElement = new String[positionOffset[n]];
+		for (int i = 0; i < n; i++) {
+			List<String> elementNames = hooks.get(i).expression.elementNames;
+			for (int j = 0; j < elementNames.size(); j++) {
+				// Position j means: j + 1 parts of the path matched
+				positionHook[positionOffset[i] + j] = i;
+				positionNextElement[positionOffset[i] + j] = j + 1 < elementNames.size() ? elementNames.get(j + 1) : null;
+			}
+		}
+		states = new HashMap<>();
+		documentStartState = new PathState(new int[0], true);
+		matchedAncestorOrSelf = new int[n];
+		activeDescendantHooks.clear();
+		activeDescendantHooksVersion++;
+
+		// Rebuild the state stack, in case we're in the middle of a document
+		stateStack[0] = documentStartState;
+		int currentDepth = depth;
+		depth = 0;
+		for (int i = 0; i < currentDepth; i++) {
+			pushState(elementStack[i]);
 		}
+	}
 
-		@Override
-		public String toString() {
-			return expression.toString();
+	/**
+	 * Get the positions in the hook paths after matching a child element.
+	 *
+	 * @param parent state for the parent element
+	 * @param elementName name of the child element
+	 * @return the new positions, sorted
+	 */
+	private int[] nextPositions(PathState parent, String elementName) {
+		IntArrayList result = new IntArrayList();
+		for (int i = 0; i < hooks.size(); i++) {
+			SaxPathExpressionChecker expr = hooks.get(i).expression;
+
+			// Can we start matching this path here?
+			if (expr.isRelativePath || parent.documentStart) {
+				if (elementMatches(expr.elementNames.get(0), elementName))
+					result.add(positionOffset[i]);
+			}
+
+			// Can we continue matching this path?
+			for (int position: parent.positions) {
+				if (positionHook[position] == i && positionNextElement[position] != null
+						&& elementMatches(positionNextElement[position], elementName))
+					result.add(position + 1);
+			}
 		}
+		result.sortThis();
+		return result.distinct().toArray();
 	}
 
-	/** The list of hooks into our parser */
-	private List<SaxParserHook> hooks = new ArrayList<>();
+	private static boolean elementMatches(String pathPart, String elementName) {
+		return pathPart.equals(elementName) || pathPart.equals("*");
+	}
+
+	/**
+	 * Get the (unique) state for a set of positions.
+	 *
+	 * @param positions the positions, sorted
+	 * @return the state
+	 */
+	private PathState getState(int[] positions) {
+		ImmutableIntList key = IntArrayList.newListWith(positions).toImmutable();
+		PathState state = states.get(key);
+		if (state == null) {
+			state = new PathState(positions, false);
+			states.put(key, state);
+		}
+		return state;
+	}
+
+	/**
+	 * An element was started: go to the state for this element.
+	 *
+	 * @param elementName name of the element
+	 */
+	private void pushState(String elementName) {
+		PathState state = stateStack[depth].child(elementName);
+		depth++;
+		if (depth == stateStack.length) {
+			stateStack = Arrays.copyOf(stateStack, depth * 2);
+			elementStack = Arrays.copyOf(elementStack, depth * 2);
+		}
+		stateStack[depth] = state;
+		elementStack[depth - 1] = elementName;
+		for (int hookIndex: state.matchedDescendantHooks) {
+			if (matchedAncestorOrSelf[hookIndex]++ == 0) {
+				addSorted(activeDescendantHooks, hookIndex);
+				activeDescendantHooksVersion++;
+			}
+		}
+	}
+
+	/**
+	 * An element was ended: go back to the state for its parent.
+	 */
+	private void popState() {
+		for (int hookIndex: stateStack[depth].matchedDescendantHooks) {
+			if (--matchedAncestorOrSelf[hookIndex] == 0) {
+				activeDescendantHooks.remove(hookIndex);
+				activeDescendantHooksVersion++;
+			}
+		}
+		stateStack[depth] = null;
+		elementStack[depth - 1] = null;
+		depth--;
+	}
+
+	private static void addSorted(IntArrayList list, int value) {
+		int i = list.size();
+		while (i > 0 && list.get(i - 1) > value)
+			i--;
+		list.addAtIndex(i, value);
+	}
+
+	/**
+	 * Get the hooks whose handler we should call for the current element.
+	 *
+	 * @return the hook indices, in the order the hooks were added
+	 */
+	private int[] hooksToCall() {
+		PathState state = stateStack[depth];
+		if (activeDescendantHooks.isEmpty())
+			return state.matchedHooks;
+		if (state.hooksToCallVersion != activeDescendantHooksVersion) {
+			// (the active descendant hooks rarely change, so we remember the result)
+			state.hooksToCall = mergeHooks(state.matchedHooks, activeDescendantHooks);
+			state.hooksToCallVersion = activeDescendantHooksVersion;
+		}
+		return state.hooksToCall;
+	}
+
+	/**
+	 * Merge two sorted lists of hook indices.
+	 *
+	 * @param matched first list
+	 * @param activeDescendantHooks second list
+	 * @return the merged list
+	 */
+	private static int[] mergeHooks(int[] matched, IntArrayList activeDescendantHooks) {
+		int[] result = new int[matched.length + activeDescendantHooks.size()];
+		int i = 0, j = 0, k = 0;
+		while (i < matched.length || j < activeDescendantHooks.size()) {
+			if (j == activeDescendantHooks.size() || i < matched.length && matched[i] < activeDescendantHooks.get(j))
+				result[k++] = matched[i++];
+			else
+				result[k++] = activeDescendantHooks.get(j++);
+		}
+		return result;
+	}
 
 	/** To keep track of the position within the document */
 	protected Locator locator;
@@ -393,6 +615,7 @@ public class HookableSaxHandler extends DefaultHandler {
 	private void addHook(SaxPathExpressionChecker condition, ElementHandler handler,
 			boolean callHandlerForAllDescendants) {
 		hooks.add(new SaxParserHook(condition, handler, callHandlerForAllDescendants));
+		positionOffset = null; // automaton must be rebuilt
 	}
 
 	/**
@@ -441,8 +664,10 @@ public class HookableSaxHandler extends DefaultHandler {
 	 */
 	@Override
 	public void characters(char[] ch, int start, int length) {
-		for (SaxParserHook hook: hooks) {
-			hook.characters(ch, start, length);
+		if (positionOffset == null)
+			buildAutomaton();
+		for (int hookIndex: hooksToCall()) {
+			hooks.get(hookIndex).handler.characters(ch, start, length);
 		}
 	}
 
@@ -451,9 +676,14 @@ public class HookableSaxHandler extends DefaultHandler {
 	 */
 	@Override
 	public void endElement(String uri, String localName, String qName) {
-		for (SaxParserHook hook: hooks) {
-			hook.endElement(uri, localName, qName);
+		if (positionOffset == null)
+			buildAutomaton();
+		for (int hookIndex: hooksToCall()) {
+			ElementHandler handler = hooks.get(hookIndex).handler;
+			handler.endElement(uri, localName, qName);
+			handler.setInsideElement(false);
 		}
+		popState();
 	}
 
 	/**
@@ -461,8 +691,13 @@ public class HookableSaxHandler extends DefaultHandler {
 	 */
 	@Override
 	public void startElement(String uri, String localName, String qName, Attributes attributes) {
-		for (SaxParserHook hook: hooks) {
-			hook.startElement(uri, localName, qName, attributes);
+		if (positionOffset == null)
+			buildAutomaton();
+		pushState(localName);
+		for (int hookIndex: hooksToCall()) {
+			ElementHandler handler = hooks.get(hookIndex).handler;
+			handler.setInsideElement(true);
+			handler.startElement(uri, localName, qName, attributes);
 		}
 	}
 
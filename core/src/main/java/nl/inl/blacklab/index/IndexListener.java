@@ -144,6 +144,21 @@ public class IndexListener {
 		return docsDone;
 	}
 
+	/**
+	 * Get the average indexing speed so far.
+	 *
+	 * When indexing on several threads, this is the combined
+	 * speed of all threads.
+	 *
+	 * @return the number of tokens processed per second
+	 */
+	public synchronized double getTokensPerSecond() {
+		long elapsed = (indexTime > 0 ? indexTime : System.currentTimeMillis() - indexStartTime);
+		if (elapsed <= 0)
+			return 0;
+		return tokensProcessed * 1000.0 / elapsed;
+	}
+
 	/**
 	 * The indexing process started
 	 */
@@ -200,7 +215,7 @@ public class IndexListener {
 		//
 	}
 
-	public void tokensDone(int n) {
+	public synchronized void tokensDone(int n) {
 		tokensProcessed += n;
 	}
 
@@ -216,12 +231,12 @@ public class IndexListener {
 	 * @param subunit optional subunit (i.e. which file inside zip, or null for regular files)
 	 * @return true if indexing should continue
 	 */
-	public boolean errorOccurred(String error, String unitType, File unit, File subunit) {
+	public synchronized boolean errorOccurred(String error, String unitType, File unit, File subunit) {
 		errors++;
 		return true;
 	}
 
-	public int getErrors() {
+	public synchronized int getErrors() {
 		return errors;
 	}
 
@@ -35,6 +35,14 @@ public class IndexListenerReportConsole extends IndexListener {
 
 	double curTokensSpeed = -1;
 
+	Indexer indexer;
+
+	@Override
+	public void indexerCreated(Indexer indexer) {
+		super.indexerCreated(indexer);
+		this.indexer = indexer;
+	}
+
 	@Override
 	public synchronized void charsDone(long charsDone) {
 		super.charsDone(charsDone);
@@ -46,7 +54,7 @@ public class IndexListenerReportConsole extends IndexListener {
 		reportProgress(false);
 	}
 
-	private void reportProgress(boolean force) {
+	private synchronized void reportProgress(boolean force) {
 		double elapsed = getElapsed();
 		if (elapsed == 0)
 			elapsed = 0.1;
@@ -98,6 +106,9 @@ public class IndexListenerReportConsole extends IndexListener {
 		super.indexEnd();
 		reportProgress(true);
 		System.out.println("Done. Elapsed time: " + TimeUtil.describeInterval(System.currentTimeMillis() - getIndexStartTime()));
+		int numberOfThreads = indexer == null ? 1 : indexer.getNumberOfThreads();
+		System.out.printf("Overall speed %.1fk tokens/s (%d indexing thread%s)\n",
+				getTokensPerSecond() / 1000, numberOfThreads, numberOfThreads == 1 ? "" : "s");
 	}
 
 	/**
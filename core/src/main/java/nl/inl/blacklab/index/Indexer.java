@@ -22,19 +22,28 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Constructor;
 import java.nio.charset.Charset;
 import java.text.Collator;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldType;
@@ -44,7 +53,9 @@ import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Term;
 
 import nl.inl.blacklab.externalstorage.ContentStore;
+import nl.inl.blacklab.forwardindex.CharOffsetStore;
 import nl.inl.blacklab.forwardindex.ForwardIndex;
+import nl.inl.blacklab.index.complex.ComplexField;
 import nl.inl.blacklab.index.complex.ComplexFieldProperty;
 import nl.inl.blacklab.search.Searcher;
 import nl.inl.util.FileUtil;
@@ -68,7 +79,19 @@ public class Indexer {
 	int maxNumberOfDocsToIndex = -1;
 
 	/** Should we terminate indexing? (e.g. because of an error) */
-	boolean terminateIndexing = false;
+	volatile boolean terminateIndexing = false;
+
+	/** Number of threads to index files with (1 means index on the calling thread) */
+	int numberOfThreads = 1;
+
+	/** Threads indexing files (if numberOfThreads > 1) */
+	private ExecutorService indexingThreads;
+
+	/** Limits the number of files read into memory but not yet indexed */
+	private Semaphore filesInProgress;
+
+	/** Files submitted to the indexing threads that may not have finished yet */
+	private List<Future<?>> pendingFiles = new ArrayList<>();
 
 	/**
 	 * Where to report indexing progress.
@@ -279,6 +302,44 @@ public class Indexer {
 		metadataFieldTypeUntokenized.freeze();
 	}
 
+	/**
+	 * Set the number of threads to index files with.
+	 *
+	 * Each thread parses and indexes a file at a time, while the calling thread reads
+	 * the input files. Adding to the forward indices, content stores and Lucene index
+	 * is thread-safe, so documents from several files are processed in parallel.
+	 *
+	 * Must be called before indexing starts.
+	 *
+	 * @param numberOfThreads number of threads (1 to index on the calling thread)
+	 */
+	public void setNumberOfThreads(int numberOfThreads) {
+		if (indexingThreads != null)
+			throw new IllegalStateException("Cannot change number of threads after indexing has started");
+		this.numberOfThreads = Math.max(1, numberOfThreads);
+	}
+
+	/**
+	 * Get the number of threads to index files with.
+	 *
+	 * @return number of threads
+	 */
+	public int getNumberOfThreads() {
+		return numberOfThreads;
+	}
+
+	/**
+	 * Are we indexing several files at the same time?
+	 *
+	 * If so, DocIndexers must store each document's content in the content store
+	 * in one go, instead of in parts.
+	 *
+	 * @return true if we're using several indexing threads
+	 */
+	boolean isMultithreaded() {
+		return numberOfThreads > 1;
+	}
+
 	/**
 	 * Set the listener object that receives messages about indexing progress.
 	 * @param listener the listener object to report to
@@ -296,7 +357,7 @@ public class Indexer {
 	 *
 	 * @return the listener
 	 */
-	public IndexListener getListener() {
+	public synchronized IndexListener getListener() {
 		if (listener == null) {
 			listener = new IndexListenerReportConsole();
 		}
@@ -356,6 +417,16 @@ public class Indexer {
 	 */
 	public void close() throws CorruptIndexException, IOException {
 
+		// Wait for files still being indexed on other threads
+		try {
+			waitForPendingFiles();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException(e);
+		} finally {
+			if (indexingThreads != null)
+				indexingThreads.shutdown();
+		}
+
 		// Signal to the listener that we're done indexing and closing the index (which might take a
 		// while)
 		getListener().indexEnd();
@@ -463,6 +534,21 @@ public class Indexer {
 		return addToForwardIndex(fieldName, prop.getValues(), prop.getPositionIncrements());
 	}
 
+	/**
+	 * Add the character offsets of a complex field to the character offset store,
+	 * so word positions can quickly be translated to character positions later.
+	 *
+	 * @param fieldName main property field the forward index id belongs to
+	 * @param fiid forward index id of the document
+	 * @param field the complex field to get the character offsets from
+	 */
+	public void addToCharOffsetStore(String fieldName, int fiid, ComplexField field) {
+		CharOffsetStore store = searcher.getCharOffsetStore(fieldName);
+		int[] offsets = field.getCharOffsetsPerPosition();
+		if (store != null && offsets != null)
+			store.addDocument(fiid, offsets);
+	}
+
 	/**
 	 * Index a document from a Reader, using the specified type of DocIndexer
 	 *
@@ -475,23 +561,91 @@ public class Indexer {
 	 */
 	private void indexReader(String documentName, Reader reader) throws Exception {
 		getListener().fileStarted(documentName);
-		int docsDoneBefore = searcher.getWriter().numDocs();
-		long tokensDoneBefore = getListener().getTokensProcessed();
 
 		DocIndexer docIndexer = createDocIndexer(documentName, reader);
 
 		docIndexer.index();
 		getListener().fileDone(documentName);
-		int docsDoneAfter = searcher.getWriter().numDocs();
-		if (docsDoneAfter == docsDoneBefore) {
+		// (use this file's counts; other threads may be indexing files at the same time)
+		if (docIndexer.numberOfDocsDone() == 0) {
 			System.err.println("*** Warning, couldn't index " + documentName + "; wrong format?");
 		}
-		long tokensDoneAfter = getListener().getTokensProcessed();
-		if (tokensDoneAfter == tokensDoneBefore) {
+		if (docIndexer.numberOfTokensDone() == 0) {
 			System.err.println("*** Warning, no words indexed in " + documentName + "; wrong format?");
 		}
 	}
 
+	/**
+	 * Index a document from a Reader on one of the indexing threads.
+	 *
+	 * The input is read into memory first, so the caller can go on to
+	 * the next file (or archive entry) right away. Blocks if too many files
+	 * are waiting to be indexed.
+	 *
+	 * @param documentName
+	 *            some (preferably unique) name for this document (for example, the file
+	 *            name or path)
+	 * @param reader
+	 *            where to index from
+	 * @throws Exception
+	 */
+	private void indexReaderOnThread(final String documentName, Reader reader) throws Exception {
+		if (indexingThreads == null) {
+			indexingThreads = Executors.newFixedThreadPool(numberOfThreads, new ThreadFactory() {
+				private int threadNumber = 1;
+
+				@Override
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "IndexThread-" + threadNumber++);
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			filesInProgress = new Semaphore(numberOfThreads * 2);
+		}
+		filesInProgress.acquire();
+		final String content;
+		try {
+			content = IOUtils.toString(reader);
+		} catch (IOException | RuntimeException e) {
+			filesInProgress.release();
+			throw e;
+		}
+		Future<?> future = indexingThreads.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					indexReader(documentName, new StringReader(content));
+				} catch (Exception e) {
+					log("*** Error indexing " + documentName, e);
+					terminateIndexing = !getListener().errorOccurred(e.getMessage(), "file", new File(documentName), null);
+				} finally {
+					filesInProgress.release();
+				}
+			}
+		});
+		synchronized (this) {
+			pendingFiles.add(future);
+		}
+	}
+
+	/**
+	 * Wait until all files submitted to the indexing threads have been indexed.
+	 *
+	 * @throws InterruptedException if we were interrupted while waiting
+	 * @throws ExecutionException if an indexing thread threw an unexpected exception
+	 */
+	private void waitForPendingFiles() throws InterruptedException, ExecutionException {
+		List<Future<?>> waitFor;
+		synchronized (this) {
+			waitFor = pendingFiles;
+			pendingFiles = new ArrayList<>();
+		}
+		for (Future<?> future: waitFor) {
+			future.get();
+		}
+	}
+
 	/**
 	 * Index a document from a Reader.
 	 *
@@ -548,6 +702,7 @@ public class Indexer {
 	 */
 	public void index(File file) throws Exception {
 		indexInternal(file, "*.xml", defaultRecurseSubdirs);
+		waitForPendingFiles();
 	}
 
 	/**
@@ -588,6 +743,7 @@ public class Indexer {
 	public void index(File fileToIndex, String glob)
 			throws UnsupportedEncodingException, FileNotFoundException, IOException, Exception {
 		indexInternal(fileToIndex, glob, defaultRecurseSubdirs);
+		waitForPendingFiles();
 	}
 
 	/**
@@ -607,6 +763,7 @@ public class Indexer {
 	public void index(File fileToIndex, String glob, boolean recurseSubdirs)
 			throws UnsupportedEncodingException, FileNotFoundException, IOException, Exception {
 		indexInternal(fileToIndex, glob, recurseSubdirs);
+		waitForPendingFiles();
 	}
 
 	/**
@@ -681,7 +838,10 @@ public class Indexer {
 			} else {
 				Reader reader = new BufferedReader(new UnicodeReader(is, DEFAULT_INPUT_ENCODING));
 				try {
-					indexReader(name, reader);
+					if (isMultithreaded())
+						indexReaderOnThread(name, reader);
+					else
+						indexReader(name, reader);
 				} finally {
 					// NOTE: don't close the reader as the caller will close the stream when
 					// appropriate! When processing archive files, the stream may need to remain
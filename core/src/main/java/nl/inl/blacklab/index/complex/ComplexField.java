@@ -15,6 +15,7 @@
  *******************************************************************************/
 package nl.inl.blacklab.index.complex;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -25,6 +26,7 @@ import java.util.Set;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 
 import nl.inl.blacklab.index.complex.ComplexFieldProperty.SensitivitySetting;
@@ -163,12 +165,46 @@ public class ComplexField {
 		}
 
 		// Add number of tokens in complex field as a stored field,
-		// because we need to be able to find this property quickly
-		// for SpanQueryNot.
+		// and as DocValues, because we need to be able to find this
+		// property quickly for SpanQueryNot, SpanQueryNGrams, etc.
 		// (Also note that this is the actual number of words + 1,
 		//  because we always store a dummy "closing token" at the end
 		//  that doesn't contain a word but may contain trailing punctuation)
-		doc.add(new IntField(ComplexFieldUtil.lengthTokensField(fieldName), numberOfTokens(), Field.Store.YES));
+		String lengthTokensFieldName = ComplexFieldUtil.lengthTokensField(fieldName);
+		doc.add(new IntField(lengthTokensFieldName, numberOfTokens(), Field.Store.YES));
+		doc.add(new NumericDocValuesField(lengthTokensFieldName, numberOfTokens()));
+	}
+
+	/**
+	 * Get the character offsets of the main property's values per token position.
+	 *
+	 * Like the forward index, this only considers the first value at each position.
+	 * Positions without a value get -1 as their offsets.
+	 *
+	 * @return start and end offset for each position (start of position 0, end of
+	 *   position 0, start of position 1, ...), or null if we don't have offsets for all values
+	 */
+	public int[] getCharOffsetsPerPosition() {
+		IntArrayList increments = mainProperty.increments;
+		int n = increments.size();
+		if (start.size() != n || end.size() != n)
+			return null;
+		int numberOfPositions = 0;
+		for (int i = 0; i < n; i++) {
+			numberOfPositions += increments.get(i);
+		}
+		int[] offsets = new int[numberOfPositions * 2];
+		Arrays.fill(offsets, -1);
+		int position = -1;
+		for (int i = 0; i < n; i++) {
+			int inc = increments.get(i);
+			if (inc == 0)
+				continue; // we only store the first value at any position
+			position += inc;
+			offsets[position * 2] = start.get(i);
+			offsets[position * 2 + 1] = end.get(i);
+		}
+		return offsets;
 	}
 
 	public void clear() {
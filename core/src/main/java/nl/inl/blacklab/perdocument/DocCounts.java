@@ -24,8 +24,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+
 import nl.inl.blacklab.search.Searcher;
 import nl.inl.blacklab.search.grouping.HitPropValue;
+import nl.inl.util.MemoryUtil;
 
 /**
  * Counts the number of documents that have a certain property.
@@ -53,33 +56,27 @@ public class DocCounts implements Iterable<DocCount> {
 	private DocResults docResults;
 
 	/**
-	 * Constructor. Fills the groups from the given document results.
+	 * Constructor. Stores the counts determined for the given document results.
 	 *
 	 * @param docResults
-	 *            the results to group.
+	 *            the results that were counted.
 	 * @param countBy
-	 *            the criterium to group on.
+	 *            the criterium that was counted.
+	 * @param valueCounts
+	 *            number of documents for each value of the criterium.
 	 */
-	DocCounts(DocResults docResults, DocProperty countBy) {
+	DocCounts(DocResults docResults, DocProperty countBy, ObjectIntHashMap<HitPropValue> valueCounts) {
 		this.docResults = docResults;
 		searcher = docResults.getSearcher();
 		this.countBy = countBy;
-		//Thread currentThread = Thread.currentThread();
-		for (DocResult r : docResults) {
-
-			HitPropValue groupId = countBy.get(r);
-			DocCount count = counts.get(groupId);
-			if (count == null) {
-				count = new DocCount(searcher, groupId);
-				counts.put(groupId, count);
-			}
-			count.increment();
-			if (count.size() > largestGroupSize)
-				largestGroupSize = count.size();
-			totalResults++;
-		}
-		for (DocCount c: counts.values()) {
-			orderedGroups.add(c);
+		for (HitPropValue groupId: valueCounts.keysView()) {
+			int size = valueCounts.get(groupId);
+			DocCount count = new DocCount(searcher, groupId, size);
+			counts.put(groupId, count);
+			orderedGroups.add(count);
+			if (size > largestGroupSize)
+				largestGroupSize = size;
+			totalResults += size;
 		}
 	}
 
@@ -126,4 +123,15 @@ public class DocCounts implements Iterable<DocCount> {
 		return docResults;
 	}
 
+	/**
+	 * Estimate how much memory the counts take.
+	 *
+	 * @return estimated memory size in bytes
+	 */
+	public long estimateSizeBytes() {
+		// Per count: map entry, list reference, DocCount and its Integer
+		long perCount = MemoryUtil.BYTES_PER_MAP_ENTRY + MemoryUtil.BYTES_PER_REFERENCE + MemoryUtil.align(MemoryUtil.BYTES_PER_OBJECT_HEADER + 2 * MemoryUtil.BYTES_PER_REFERENCE) + MemoryUtil.align(MemoryUtil.BYTES_PER_OBJECT_HEADER + 4);
+		return orderedGroups.size() * perCount;
+	}
+
 }
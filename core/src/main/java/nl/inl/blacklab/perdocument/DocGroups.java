@@ -26,6 +26,7 @@ import java.util.Map;
 
 import nl.inl.blacklab.search.Searcher;
 import nl.inl.blacklab.search.grouping.HitPropValue;
+import nl.inl.util.MemoryUtil;
 
 /**
  * Applies grouping to the results in a DocResults object.
@@ -145,4 +146,18 @@ public class DocGroups implements Iterable<DocGroup> {
 		return docResults;
 	}
 
+	/**
+	 * Estimate how much memory the groups take.
+	 *
+	 * The grouped DocResult objects belong to the original results, so
+	 * only our references to them are counted.
+	 *
+	 * @return estimated memory size in bytes
+	 */
+	public long estimateSizeBytes() {
+		// Per group: map entry, list reference, DocGroup and its DocResults object
+		long perGroup = MemoryUtil.BYTES_PER_MAP_ENTRY + MemoryUtil.BYTES_PER_REFERENCE + 2 * MemoryUtil.align(MemoryUtil.BYTES_PER_OBJECT_HEADER + 8 * MemoryUtil.BYTES_PER_REFERENCE);
+		return orderedGroups.size() * perGroup + (long)totalResults * MemoryUtil.BYTES_PER_REFERENCE;
+	}
+
 }
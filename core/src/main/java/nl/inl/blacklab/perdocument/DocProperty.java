@@ -53,6 +53,32 @@ public abstract class DocProperty {
 		return get(a).compareTo(get(b));
 	}
 
+	/**
+	 * If this property is determined by the value of a single metadata field,
+	 * return the field name.
+	 *
+	 * Allows the values to be counted per DocValues ordinal, instead of calling
+	 * get() for each document (see DocResults.countBy(List)).
+	 *
+	 * @return the metadata field name, or null if this property is not determined
+	 *   by a single metadata field
+	 */
+	String getMetadataFieldName() {
+		return null;
+	}
+
+	/**
+	 * Determine the property value from the metadata field value.
+	 *
+	 * Only called if getMetadataFieldName() returns a field name.
+	 *
+	 * @param value the metadata field value (may be null)
+	 * @return the property value
+	 */
+	HitPropValue fromMetadataValue(String value) {
+		throw new UnsupportedOperationException();
+	}
+
 	public boolean defaultSortDescending() {
 		return false;
 	}
@@ -15,6 +15,7 @@
  *******************************************************************************/
 package nl.inl.blacklab.perdocument;
 
+import nl.inl.blacklab.search.MetadataFieldValues;
 import nl.inl.blacklab.search.grouping.HitPropValueDecade;
 import nl.inl.blacklab.search.grouping.HitPropertyDocumentDecade;
 import nl.inl.blacklab.search.grouping.PropValSerializeUtil;
@@ -27,21 +28,31 @@ public class DocPropertyDecade extends DocProperty {
 
 	private String fieldName;
 
+	/** Reads the field values (DocValues if available) */
+	private MetadataFieldValues values;
+
 	public DocPropertyDecade(String fieldName) {
 		this.fieldName = fieldName;
 	}
 
 	@Override
 	public HitPropValueDecade get(DocResult result) {
-		String strYear = result.getDocument().get(fieldName);
-		int year;
-		try {
-			year = Integer.parseInt(strYear);
-			year -= year % 10;
-		} catch (NumberFormatException e) {
-			year = HitPropertyDocumentDecade.UNKNOWN_VALUE;
-		}
-		return new HitPropValueDecade(year);
+		return fromMetadataValue(getValue(result));
+	}
+
+	@Override
+	String getMetadataFieldName() {
+		return fieldName;
+	}
+
+	@Override
+	HitPropValueDecade fromMetadataValue(String value) {
+		return new HitPropValueDecade(HitPropertyDocumentDecade.decade(value));
+	}
+
+	private String getValue(DocResult result) {
+		values = DocPropertyStoredField.valuesFor(values, result, fieldName);
+		return values.get(result.getDocId());
 	}
 
 	/**
@@ -52,30 +63,18 @@ public class DocPropertyDecade extends DocProperty {
 	 */
 	@Override
 	public int compare(DocResult a, DocResult b) {
-		String strYearA = a.getDocument().get(fieldName);
+		String strYearA = getValue(a);
 		if (strYearA == null)
 			strYearA = "";
-		String strYearB = b.getDocument().get(fieldName);
+		String strYearB = getValue(b);
 		if (strYearB == null)
 			strYearB = "";
 		if (strYearA.length() == 0) // sort missing year at the end
 			return strYearB.length() == 0 ? 0 : (reverse ? -1 : 1);
 		if (strYearB.length() == 0) // sort missing year at the end
 			return reverse ? 1 : -1;
-		int year1;
-		try {
-			year1 = Integer.parseInt(strYearB);
-			year1 -= year1 % 10;
-		} catch (NumberFormatException e) {
-			year1 = HitPropertyDocumentDecade.UNKNOWN_VALUE;
-		}
-		int year2;
-		try {
-			year2 = Integer.parseInt(strYearB);
-			year2 -= year2 % 10;
-		} catch (NumberFormatException e) {
-			year2 = HitPropertyDocumentDecade.UNKNOWN_VALUE;
-		}
+		int year1 = HitPropertyDocumentDecade.decade(strYearA);
+		int year2 = HitPropertyDocumentDecade.decade(strYearB);
 
 		return reverse ? year2 - year1 : year1 - year2;
 	}
@@ -15,6 +15,9 @@
  *******************************************************************************/
 package nl.inl.blacklab.perdocument;
 
+import org.apache.lucene.index.IndexReader;
+
+import nl.inl.blacklab.search.MetadataFieldValues;
 import nl.inl.blacklab.search.grouping.HitPropValueString;
 import nl.inl.blacklab.search.grouping.PropValSerializeUtil;
 
@@ -26,6 +29,9 @@ public class DocPropertyStoredField extends DocProperty {
 	private String fieldName;
 	private String friendlyName;
 
+	/** Reads the field values (DocValues if available) */
+	private MetadataFieldValues values;
+
 	public DocPropertyStoredField(String fieldName) {
 		this(fieldName, fieldName);
 	}
@@ -35,9 +41,39 @@ public class DocPropertyStoredField extends DocProperty {
 		this.friendlyName = friendlyName;
 	}
 
+	/**
+	 * Get a value reader for a document's index, reusing the existing one if possible.
+	 *
+	 * @param values the existing value reader, or null if none
+	 * @param result the document we want to read a value for
+	 * @param fieldName the metadata field
+	 * @return the value reader to use
+	 */
+	static MetadataFieldValues valuesFor(MetadataFieldValues values, DocResult result, String fieldName) {
+		IndexReader reader = result.getSearcher().getIndexReader();
+		if (values == null || values.getIndexReader() != reader)
+			values = new MetadataFieldValues(reader, fieldName);
+		return values;
+	}
+
+	private String getValue(DocResult result) {
+		values = valuesFor(values, result, fieldName);
+		return values.get(result.getDocId());
+	}
+
 	@Override
 	public HitPropValueString get(DocResult result) {
-		return new HitPropValueString(result.getDocument().get(fieldName));
+		return fromMetadataValue(getValue(result));
+	}
+
+	@Override
+	String getMetadataFieldName() {
+		return fieldName;
+	}
+
+	@Override
+	HitPropValueString fromMetadataValue(String value) {
+		return new HitPropValueString(value == null ? "" : value);
 	}
 
 	/**
@@ -48,10 +84,10 @@ public class DocPropertyStoredField extends DocProperty {
 	 */
 	@Override
 	public int compare(DocResult a, DocResult b) {
-		String sa = a.getDocument().get(fieldName);
+		String sa = getValue(a);
 		if (sa == null)
 			sa = "";
-		String sb = b.getDocument().get(fieldName);
+		String sb = getValue(b);
 		if (sb == null)
 			sb = "";
 		if (sa.length() == 0) // sort empty string at the end
@@ -22,6 +22,7 @@ import org.apache.lucene.document.Document;
 import nl.inl.blacklab.search.Hit;
 import nl.inl.blacklab.search.Hits;
 import nl.inl.blacklab.search.Searcher;
+import nl.inl.util.MemoryUtil;
 
 /**
  * A document result, containing a Lucene document from the index and a collection of Hit objects.
@@ -129,6 +130,14 @@ public class DocResult {
 		return hits.getSearcher().document(docId);
 	}
 
+	/**
+	 * Get the searcher for this document.
+	 * @return the searcher
+	 */
+	public Searcher getSearcher() {
+		return hits.getSearcher();
+	}
+
 	/**
 	 * Get all the hits in the document
 	 * @return all hits in the document
@@ -166,6 +175,16 @@ public class DocResult {
 		return docId;
 	}
 
+	/**
+	 * Estimate how much memory this result takes, including its hits.
+	 *
+	 * @return estimated memory size in bytes
+	 */
+	long estimateSizeBytes() {
+		long bytes = MemoryUtil.align(MemoryUtil.BYTES_PER_OBJECT_HEADER + MemoryUtil.BYTES_PER_REFERENCE + 2 * 4);
+		return bytes + hits.estimateSizeBytes();
+	}
+
 	public float getScore() {
 		return score;
 	}
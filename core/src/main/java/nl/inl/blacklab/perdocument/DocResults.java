@@ -17,6 +17,7 @@ package nl.inl.blacklab.perdocument;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -30,12 +31,15 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.SimpleCollector;
 import org.apache.lucene.search.spans.SpanQuery;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
 
 import nl.inl.blacklab.search.Hit;
 import nl.inl.blacklab.search.Hits;
 import nl.inl.blacklab.search.Prioritizable;
 import nl.inl.blacklab.search.Searcher;
+import nl.inl.blacklab.search.grouping.HitPropValue;
 import nl.inl.blacklab.search.grouping.HitPropValueInt;
+import nl.inl.util.MemoryUtil;
 import nl.inl.util.ReverseComparator;
 import nl.inl.util.ThreadPriority.Level;
 
@@ -546,7 +550,35 @@ public class DocResults implements Iterable<DocResult>, Prioritizable {
 	 * @return the counts
 	 */
 	public DocCounts countBy(DocProperty countBy) {
-		return new DocCounts(this, countBy);
+		return countBy(Arrays.asList(countBy)).get(0);
+	}
+
+	/**
+	 * Count the number of results that have the same value for each of the
+	 * specified properties.
+	 *
+	 * Counts all properties in a single pass over the results, which is much
+	 * faster than calling countBy(DocProperty) for each property (e.g. for the
+	 * facets of a faceted search). Properties based on metadata fields are counted
+	 * using DocValues if available, and index segments are counted in parallel if
+	 * the searcher has a pool to use.
+	 *
+	 * @param countBy properties to count
+	 * @return the counts for each property (in the same order as the properties)
+	 */
+	public List<DocCounts> countBy(List<DocProperty> countBy) {
+		try {
+			ensureAllResultsRead();
+		} catch (InterruptedException e) {
+			// Thread was interrupted; just process the results we have.
+			// Let caller detect and deal with interruption.
+		}
+		List<ObjectIntHashMap<HitPropValue>> valueCounts = new FacetCounter(searcher, countBy).count(results);
+		List<DocCounts> docCounts = new ArrayList<>();
+		for (int i = 0; i < countBy.size(); i++) {
+			docCounts.add(new DocCounts(this, countBy.get(i), valueCounts.get(i)));
+		}
+		return docCounts;
 	}
 
 	/**
@@ -594,4 +626,20 @@ public class DocResults implements Iterable<DocResult>, Prioritizable {
 	public int countSoFarDocsRetrieved() {
 		return sourceHits == null ? results.size() : sourceHits.countSoFarDocsRetrieved();
 	}
+
+	/**
+	 * Estimate how much memory these results take.
+	 *
+	 * Includes the hits per document, but not the Hits object the results
+	 * were created from (that belongs to whoever created it).
+	 *
+	 * @return estimated memory size in bytes
+	 */
+	public synchronized long estimateSizeBytes() {
+		long bytes = 0;
+		for (int i = 0; i < results.size(); i++) {
+			bytes += MemoryUtil.BYTES_PER_REFERENCE + results.get(i).estimateSizeBytes();
+		}
+		return bytes;
+	}
 }
@@ -17,6 +17,8 @@ package nl.inl.blacklab.perdocument;
 
 import java.util.ArrayList;
 
+import nl.inl.util.MemoryUtil;
+
 /**
  * A list of DocResult objects (document-level query results). The list may be sorted by calling
  * DocResults.sort().
@@ -97,4 +99,10 @@ public class DocResultsWindow extends DocResults {
 		return source;
 	}
 
+	@Override
+	public long estimateSizeBytes() {
+		// Our results belong to the source, we only refer to them
+		return (long)results.size() * MemoryUtil.BYTES_PER_REFERENCE;
+	}
+
 }
@@ -0,0 +1,197 @@
+package nl.inl.blacklab.perdocument;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedDocValues;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+
+import nl.inl.blacklab.search.MetadataFieldValues;
+import nl.inl.blacklab.search.Searcher;
+import nl.inl.blacklab.search.grouping.HitPropValue;
+
+/**
+ * Counts the values of several document properties (facets) in a single pass
+ * over a list of documents.
+ *
+ * Documents are divided by index segment. For properties determined by a metadata
+ * field with DocValues, we count per segment ordinal and only determine the value
+ * once for each ordinal; other properties are counted by calling DocProperty.get()
+ * for each document. If the searcher has a pool to use, segments are counted in
+ * parallel.
+ */
+class FacetCounter {
+
+	/** Count ordinals in an array if there are at most this many distinct values per document */
+	private static final int MAX_VALUES_PER_DOC_FOR_ARRAY = 4;
+
+	private Searcher searcher;
+
+	private List<DocProperty> facets;
+
+	/** Value readers for facets determined by a metadata field (null for other facets) */
+	private MetadataFieldValues[] fieldValues;
+
+	FacetCounter(Searcher searcher, List<DocProperty> facets) {
+		this.searcher = searcher;
+		this.facets = facets;
+		IndexReader reader = searcher.getIndexReader();
+		fieldValues = new MetadataFieldValues[facets.size()];
+		for (int i = 0; i < fieldValues.length; i++) {
+			String fieldName = facets.get(i).getMetadataFieldName();
+			if (fieldName != null)
+				fieldValues[i] = new MetadataFieldValues(reader, fieldName);
+		}
+	}
+
+	/**
+	 * Count the facet values for a list of documents.
+	 *
+	 * @param docs the documents
+	 * @return the counts for each facet (in the same order as the facets)
+	 */
+	List<ObjectIntHashMap<HitPropValue>> count(List<DocResult> docs) {
+		// Divide the documents by segment
+		final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+		List<List<DocResult>> docsPerSegment = new ArrayList<>();
+		for (int i = 0; i < leaves.size(); i++) {
+			docsPerSegment.add(new ArrayList<DocResult>());
+		}
+		for (DocResult doc: docs) {
+			docsPerSegment.get(ReaderUtil.subIndex(doc.getDocId(), leaves)).add(doc);
+		}
+
+		// Count each segment (in parallel if we can)
+		List<ObjectIntHashMap<HitPropValue>> total = newCounts();
+		ForkJoinPool pool = searcher.getHitRetrievalPool();
+		List<ForkJoinTask<List<ObjectIntHashMap<HitPropValue>>>> tasks = new ArrayList<>();
+		for (int i = 0; i < leaves.size(); i++) {
+			final LeafReaderContext leaf = leaves.get(i);
+			final List<DocResult> segmentDocs = docsPerSegment.get(i);
+			if (segmentDocs.isEmpty())
+				continue;
+			if (docs.size() == segmentDocs.size()) {
+				// All documents are in this segment; count on this thread
+				merge(total, countSegment(leaf, segmentDocs));
+			} else {
+				tasks.add(pool.submit(new Callable<List<ObjectIntHashMap<HitPropValue>>>() {
+					@Override
+					public List<ObjectIntHashMap<HitPropValue>> call() {
+						return countSegment(leaf, segmentDocs);
+					}
+				}));
+			}
+		}
+		try {
+			for (ForkJoinTask<List<ObjectIntHashMap<HitPropValue>>> task: tasks) {
+				merge(total, task.get());
+			}
+		} catch (InterruptedException e) {
+			// Thread was interrupted; don't complete the operation but return
+			// the counts we have. Let caller detect and deal with interruption.
+			Thread.currentThread().interrupt();
+			for (ForkJoinTask<List<ObjectIntHashMap<HitPropValue>>> task: tasks) {
+				task.cancel(true);
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			throw new RuntimeException(cause);
+		}
+		return total;
+	}
+
+	private List<ObjectIntHashMap<HitPropValue>> newCounts() {
+		List<ObjectIntHashMap<HitPropValue>> counts = new ArrayList<>();
+		for (int i = 0; i < facets.size(); i++) {
+			counts.add(new ObjectIntHashMap<HitPropValue>());
+		}
+		return counts;
+	}
+
+	private static void merge(List<ObjectIntHashMap<HitPropValue>> total, List<ObjectIntHashMap<HitPropValue>> counts) {
+		for (int i = 0; i < total.size(); i++) {
+			ObjectIntHashMap<HitPropValue> facetTotal = total.get(i);
+			for (HitPropValue value: counts.get(i).keysView()) {
+				facetTotal.addToValue(value, counts.get(i).get(value));
+			}
+		}
+	}
+
+	/**
+	 * Count the facet values for the documents in one segment.
+	 *
+	 * @param leaf the segment
+	 * @param docs the documents in this segment
+	 * @return the counts for each facet
+	 */
+	private List<ObjectIntHashMap<HitPropValue>> countSegment(LeafReaderContext leaf, List<DocResult> docs) {
+		List<ObjectIntHashMap<HitPropValue>> counts = newCounts();
+		for (int i = 0; i < facets.size(); i++) {
+			DocProperty facet = facets.get(i);
+			ObjectIntHashMap<HitPropValue> facetCounts = counts.get(i);
+			SortedDocValues docValues = fieldValues[i] == null ? null : fieldValues[i].getSegmentDocValues(leaf.reader());
+			if (docValues == null) {
+				// Determine the value for each document
+				for (DocResult doc: docs) {
+					facetCounts.addToValue(facet.get(doc), 1);
+				}
+			} else {
+				countOrdinals(facet, fieldValues[i], docValues, leaf.docBase, docs, facetCounts);
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Count a facet per DocValues ordinal, then determine the value for each ordinal.
+	 *
+	 * @param facet the facet to count
+	 * @param values value reader for the facet's metadata field (for documents without an ordinal)
+	 * @param docValues the segment's DocValues for the field
+	 * @param docBase docBase of the segment
+	 * @param docs the documents in this segment
+	 * @param facetCounts where to add the counts
+	 */
+	private static void countOrdinals(DocProperty facet, MetadataFieldValues values, SortedDocValues docValues,
+			int docBase, List<DocResult> docs, ObjectIntHashMap<HitPropValue> facetCounts) {
+		int valueCount = docValues.getValueCount();
+		if (valueCount <= docs.size() * MAX_VALUES_PER_DOC_FOR_ARRAY) {
+			int[] ordCounts = new int[valueCount];
+			for (DocResult doc: docs) {
+				int ord = docValues.getOrd(doc.getDocId() - docBase);
+				if (ord >= 0)
+					ordCounts[ord]++;
+				else
+					facetCounts.addToValue(facet.fromMetadataValue(values.get(doc.getDocId())), 1);
+			}
+			for (int ord = 0; ord < valueCount; ord++) {
+				if (ordCounts[ord] > 0)
+					facetCounts.addToValue(facet.fromMetadataValue(docValues.lookupOrd(ord).utf8ToString()), ordCounts[ord]);
+			}
+		} else {
+			// Many distinct values compared to the number of documents; don't allocate an array for all of them
+			IntIntHashMap ordCounts = new IntIntHashMap();
+			for (DocResult doc: docs) {
+				int ord = docValues.getOrd(doc.getDocId() - docBase);
+				if (ord >= 0)
+					ordCounts.addToValue(ord, 1);
+				else
+					facetCounts.addToValue(facet.fromMetadataValue(values.get(doc.getDocId())), 1);
+			}
+			for (int ord: ordCounts.keySet().toArray()) {
+				facetCounts.addToValue(facet.fromMetadataValue(docValues.lookupOrd(ord).utf8ToString()), ordCounts.get(ord));
+			}
+		}
+	}
+
+}
@@ -16,9 +16,11 @@
 package nl.inl.blacklab.search;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
 
 import nl.inl.blacklab.externalstorage.ContentStore;
 import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.blacklab.search.lucene.DocIntFieldGetter;
 
 /**
  * Defines a way to access the original indexed content.
@@ -30,6 +32,9 @@ public class ContentAccessor {
 
 	private String contentIdField = null;
 
+	/** Gets the content id for a Lucene document (for translating from Lucene doc id to content id) */
+	private DocIntFieldGetter contentIds;
+
 	public ContentAccessor(String fieldName, ContentStore contentStore) {
 		contentIdField = ComplexFieldUtil.contentIdField(ComplexFieldUtil.getBaseName(fieldName));
 		this.contentStore = contentStore;
@@ -67,6 +72,37 @@ public class ContentAccessor {
 		return getSubstringsFromDocument(contentId, start, end);
 	}
 
+	/**
+	 * Get substrings from a document.
+	 *
+	 * Note: if start and end are both -1 for a certain substring, the whole document is returned.
+	 *
+	 * @param docId
+	 *            the Lucene document id
+	 * @param start
+	 *            start positions of the substrings.
+	 *            -1 means start of document.
+	 * @param end
+	 *            end positions of the substrings.
+	 *            -1 means end of document.
+	 * @return the requested substrings from this document
+	 */
+	public String[] getSubstringsFromLuceneDoc(int docId, int[] start, int[] end) {
+		int contentId = contentIds.get(docId);
+		if (contentId < 0)
+			throw new RuntimeException("Lucene document has no content id: " + docId);
+		return getSubstringsFromDocument(contentId, start, end);
+	}
+
+	/**
+	 * Set the index reader to use for translating Lucene doc ids to content ids.
+	 *
+	 * @param reader the index reader
+	 */
+	public void setIdTranslateInfo(IndexReader reader) {
+		contentIds = new DocIntFieldGetter(reader, contentIdField);
+	}
+
 	private int getContentId(Document d) {
 		String contentIdStr = d.get(contentIdField);
 		if (contentIdStr == null)
@@ -0,0 +1,55 @@
+package nl.inl.blacklab.search;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Caches the hit contexts retrieved for a HitsStore, per forward index property
+ * and context size.
+ *
+ * Shared by Hits objects that share the same HitsStore (i.e. a sorted copy
+ * shares the cache with the Hits object it was copied from), so sorting, grouping
+ * and making KWICs on the same hits only read each context from the forward index
+ * once.
+ */
+class HitContextCache {
+
+	/** Cached contexts, by forward index property and context size */
+	private Map<String, HitContexts> contexts = new HashMap<>();
+
+	private static String key(String fieldPropName, int contextSize) {
+		return fieldPropName + ":" + contextSize;
+	}
+
+	/**
+	 * Get cached contexts.
+	 *
+	 * @param fieldPropName forward index property, i.e. contents%word
+	 * @param contextSize number of words around each hit
+	 * @return the contexts, or null if not cached
+	 */
+	synchronized HitContexts get(String fieldPropName, int contextSize) {
+		return contexts.get(key(fieldPropName, contextSize));
+	}
+
+	/**
+	 * Add contexts to the cache.
+	 *
+	 * @param hitContexts the contexts to add
+	 */
+	synchronized void put(HitContexts hitContexts) {
+		contexts.put(key(hitContexts.getFieldPropName(), hitContexts.getContextSize()), hitContexts);
+	}
+
+	/**
+	 * @return estimated memory size of the cached contexts in bytes
+	 */
+	synchronized long estimateSizeBytes() {
+		long bytes = 0;
+		for (HitContexts c: contexts.values()) {
+			bytes += c.estimateSizeBytes();
+		}
+		return bytes;
+	}
+
+}
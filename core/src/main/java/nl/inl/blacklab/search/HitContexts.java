@@ -0,0 +1,170 @@
+package nl.inl.blacklab.search;
+
+import nl.inl.blacklab.forwardindex.ForwardIndex;
+import nl.inl.util.MemoryUtil;
+
+/**
+ * The contexts of a list of hits, retrieved from the forward index of one property
+ * with a specific context size.
+ *
+ * All contexts are stored in a single int array, so we don't need an array object
+ * per hit. The context of each hit starts with the same bookkeeping integers as
+ * Hits.getHitContext() (hit start, right start, context length), followed by the
+ * token ids. Hits are indexed the same way as in the HitsStore the contexts were
+ * retrieved for.
+ *
+ * Immutable, so can be shared between threads and between Hits objects that share
+ * their hits (see HitContextCache).
+ */
+public class HitContexts {
+
+	/** Forward index property the contexts were retrieved from, i.e. contents%word */
+	private final String fieldPropName;
+
+	/** Number of words around each hit */
+	private final int contextSize;
+
+	/** Bookkeeping integers and token ids of all contexts */
+	private final int[] data;
+
+	/** Start of each hit's context in data (one more than the number of hits) */
+	private final int[] offsets;
+
+	private HitContexts(String fieldPropName, int contextSize, int[] data, int[] offsets) {
+		this.fieldPropName = fieldPropName;
+		this.contextSize = contextSize;
+		this.data = data;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * Retrieve the contexts of hits from a forward index.
+	 *
+	 * The contexts for all hits are retrieved with a single call to the forward
+	 * index, so it can read them in file order.
+	 *
+	 * @param hits the hits to get contexts for
+	 * @param forwardIndex forward index to get the contexts from
+	 * @param fieldPropName property of the forward index, i.e. contents%word
+	 * @param contextSize number of words around each hit
+	 * @return the contexts
+	 */
+	static HitContexts retrieve(HitsStore hits, ForwardIndex forwardIndex, String fieldPropName, int contextSize) {
+		int n = hits.size();
+		int[] fiids = new int[n];
+		int[] startsOfSnippets = new int[n];
+		int[] endsOfSnippets = new int[n];
+		for (int i = 0; i < n; i++) {
+			if (i > 0 && hits.doc(i) == hits.doc(i - 1))
+				fiids[i] = fiids[i - 1];
+			else
+				fiids[i] = forwardIndex.luceneDocIdToFiid(hits.doc(i));
+			int hitStart = hits.start(i);
+			startsOfSnippets[i] = contextSize >= hitStart ? 0 : hitStart - contextSize;
+			endsOfSnippets[i] = hits.end(i) + contextSize;
+		}
+		int[][] words = forwardIndex.retrievePartsIntBulk(fiids, startsOfSnippets, endsOfSnippets);
+
+		// Concatenate the contexts, each preceded by its bookkeeping integers
+		int[] offsets = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			int length = words[i] == null ? 0 : words[i].length; // (null if document was deleted)
+			offsets[i + 1] = offsets[i] + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS + length;
+		}
+		int[] data = new int[offsets[n]];
+		for (int i = 0; i < n; i++) {
+			int offset = offsets[i];
+			if (words[i] != null) {
+				int firstWordIndex = startsOfSnippets[i];
+				data[offset + Hits.CONTEXTS_HIT_START_INDEX] = hits.start(i) - firstWordIndex;
+				data[offset + Hits.CONTEXTS_RIGHT_START_INDEX] = hits.end(i) - firstWordIndex;
+				data[offset + Hits.CONTEXTS_LENGTH_INDEX] = words[i].length;
+				System.arraycopy(words[i], 0, data, offset + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS, words[i].length);
+			}
+		}
+		return new HitContexts(fieldPropName, contextSize, data, offsets);
+	}
+
+	/**
+	 * @return the forward index property the contexts were retrieved from
+	 */
+	public String getFieldPropName() {
+		return fieldPropName;
+	}
+
+	/**
+	 * @return the number of words around each hit
+	 */
+	public int getContextSize() {
+		return contextSize;
+	}
+
+	/**
+	 * @return the number of hits we have contexts for
+	 */
+	public int size() {
+		return offsets.length - 1;
+	}
+
+	/**
+	 * Get the start of a hit in its context (i.e. the length of the left context).
+	 *
+	 * @param hit hit index
+	 * @return the hit start
+	 */
+	public int hitStart(int hit) {
+		return data[offsets[hit] + Hits.CONTEXTS_HIT_START_INDEX];
+	}
+
+	/**
+	 * Get the start of the right context of a hit.
+	 *
+	 * @param hit hit index
+	 * @return the right context start
+	 */
+	public int rightStart(int hit) {
+		return data[offsets[hit] + Hits.CONTEXTS_RIGHT_START_INDEX];
+	}
+
+	/**
+	 * Get the length of a hit's context (left context, hit text and right context).
+	 *
+	 * @param hit hit index
+	 * @return the context length
+	 */
+	public int length(int hit) {
+		return data[offsets[hit] + Hits.CONTEXTS_LENGTH_INDEX];
+	}
+
+	/**
+	 * Get a token from a hit's context.
+	 *
+	 * @param hit hit index
+	 * @param position position in the context (0 to length(hit))
+	 * @return the token id
+	 */
+	public int token(int hit, int position) {
+		return data[offsets[hit] + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS + position];
+	}
+
+	/**
+	 * Copy (part of) the token ids of a hit's context.
+	 *
+	 * @param hit hit index
+	 * @param position first position in the context to copy
+	 * @param dest array to copy to
+	 * @param destPos position in dest to copy to
+	 * @param length number of tokens to copy
+	 */
+	public void copyTokens(int hit, int position, int[] dest, int destPos, int length) {
+		System.arraycopy(data, offsets[hit] + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS + position, dest, destPos, length);
+	}
+
+	/**
+	 * @return estimated memory size in bytes
+	 */
+	public long estimateSizeBytes() {
+		return MemoryUtil.sizeBytes(data) + MemoryUtil.sizeBytes(offsets);
+	}
+
+}
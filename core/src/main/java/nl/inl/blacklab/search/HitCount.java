@@ -0,0 +1,280 @@
+package nl.inl.blacklab.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.BooleanQuery.TooManyClauses;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.Spans;
+
+import nl.inl.blacklab.search.lucene.BLSpans;
+import nl.inl.blacklab.search.lucene.BLSpansWrapper;
+import nl.inl.util.ThreadPriority;
+import nl.inl.util.ThreadPriority.Level;
+
+/**
+ * Counts the hits and documents matching a query, without retrieving them.
+ *
+ * Only advances the spans, so no hits or captured groups are stored. If the
+ * index has several segments, these are counted in parallel, using the Searcher's
+ * hit retrieval pool. The counts so far may be monitored from another thread
+ * while counting.
+ *
+ * If counting stops because maxHitsToCount was reached, the hit count is exactly
+ * maxHitsToCount, and the document count only includes documents that have at
+ * least one of those hits.
+ */
+public class HitCount implements Prioritizable {
+
+	/** How many hits to count between updating the totals and checking for interruption/pausing */
+	private static final int CHECK_INTERVAL = 1000;
+
+	/** Our searcher */
+	private Searcher searcher;
+
+	/** The (rewritten) query to count hits for */
+	private SpanQuery spanQuery;
+
+	/** Term contexts for the terms in the query */
+	private Map<Term, TermContext> termContexts;
+
+	/** Stop counting after this many hits (-1 for no limit) */
+	private int maxHitsToCount;
+
+	/** Used to pause/abort counting */
+	private ThreadPriority etiquette = new ThreadPriority();
+
+	/** Number of hits counted so far */
+	private AtomicInteger hitsCounted = new AtomicInteger();
+
+	/** Number of documents counted so far */
+	private AtomicInteger docsCounted = new AtomicInteger();
+
+	/** Did we stop counting because we reached maxHitsToCount (or were interrupted)? */
+	private volatile boolean maxHitsCounted = false;
+
+	/** Are we done counting? */
+	private volatile boolean done = false;
+
+	/** Set if the segment counting tasks should stop (e.g. because counting was interrupted) */
+	private volatile boolean cancelled = false;
+
+	/**
+	 * Construct a HitCount.
+	 *
+	 * Call count() to start counting.
+	 *
+	 * @param searcher the searcher object
+	 * @param sourceQuery the query to count hits for
+	 * @param maxHitsToCount stop counting after this many hits (-1 for no limit)
+	 * @throws TooManyClauses if the query is overly broad (expands to too many terms)
+	 */
+	HitCount(Searcher searcher, SpanQuery sourceQuery, int maxHitsToCount) throws TooManyClauses {
+		this.searcher = searcher;
+		this.maxHitsToCount = maxHitsToCount;
+		try {
+			IndexReader reader = searcher.getIndexReader();
+			spanQuery = (SpanQuery) sourceQuery.rewrite(reader);
+			termContexts = HitsImpl.buildTermContexts(reader, spanQuery, etiquette);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Count the hits and documents.
+	 *
+	 * Blocks until done. If the thread is interrupted, counting stops and
+	 * maxHitsCounted() will return true.
+	 *
+	 * @throws InterruptedException if the thread was interrupted during this operation
+	 */
+	public void count() throws InterruptedException {
+		if (done)
+			return;
+		List<ForkJoinTask<Void>> tasks = new ArrayList<>();
+		try {
+			List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+			if (leaves.size() <= 1) {
+				for (LeafReaderContext context: leaves) {
+					countSegment(context);
+				}
+				return;
+			}
+
+			// Count each segment in parallel
+			for (final LeafReaderContext context: leaves) {
+				tasks.add(searcher.getHitRetrievalPool().submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						countSegment(context);
+						return null;
+					}
+				}));
+			}
+			try {
+				for (ForkJoinTask<Void> task: tasks) {
+					task.get();
+				}
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof InterruptedException)
+					throw (InterruptedException)cause;
+				if (cause instanceof IOException)
+					throw (IOException)cause;
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException)cause;
+				throw new RuntimeException(cause);
+			}
+		} catch (InterruptedException e) {
+			// Stop the tasks that are still counting
+			cancelled = true;
+			for (ForkJoinTask<Void> task: tasks) {
+				task.cancel(true);
+			}
+			maxHitsCounted = true; // we've stopped counting
+			throw e;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			done = true;
+		}
+	}
+
+	/**
+	 * Count the hits and documents in a single segment.
+	 *
+	 * @param context the segment
+	 * @throws InterruptedException if the thread was interrupted
+	 * @throws IOException on error
+	 */
+	private void countSegment(LeafReaderContext context) throws InterruptedException, IOException {
+		if (cancelled)
+			return;
+		BLSpans spans = BLSpansWrapper.optWrapSortUniq(spanQuery.getSpans(context, context.reader().getLiveDocs(), termContexts));
+		if (spans == null)
+			return;
+		// For each document we started counting in this batch: the number of hits in the batch before it
+		int[] firstHitOfDoc = new int[CHECK_INTERVAL];
+		int hits = 0, docs = 0;
+		int batchSize = batchSize();
+		while (spans.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+			boolean newDoc = true;
+			while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
+				if (newDoc) {
+					firstHitOfDoc[docs] = hits;
+					docs++;
+					newDoc = false;
+				}
+				hits++;
+				if (hits == batchSize) {
+					if (!addCounts(hits, docs, firstHitOfDoc) || cancelled)
+						return;
+					hits = docs = 0;
+					etiquette.behave();
+					batchSize = batchSize();
+				}
+			}
+		}
+		addCounts(hits, docs, firstHitOfDoc);
+	}
+
+	/**
+	 * Determine how many hits to count before adding them to the totals.
+	 *
+	 * This is CHECK_INTERVAL, or less if we're close to maxHitsToCount.
+	 *
+	 * @return number of hits to count
+	 */
+	private int batchSize() {
+		if (maxHitsToCount < 0)
+			return CHECK_INTERVAL;
+		return Math.max(1, Math.min(CHECK_INTERVAL, maxHitsToCount - hitsCounted.get()));
+	}
+
+	/**
+	 * Add counts from a segment to the totals.
+	 *
+	 * If this takes us past maxHitsToCount, the hits beyond it are not counted,
+	 * and neither are documents that only have hits beyond it.
+	 *
+	 * @param hits number of hits to add
+	 * @param docs number of documents to add
+	 * @param firstHitOfDoc for each document, the number of hits before it
+	 * @return true if we should keep counting, false if we should stop
+	 */
+	private boolean addCounts(int hits, int docs, int[] firstHitOfDoc) {
+		int before = hitsCounted.getAndAdd(hits);
+		if (maxHitsToCount < 0) {
+			docsCounted.addAndGet(docs);
+			return true;
+		}
+		int hitsWithinLimit = Math.max(0, Math.min(hits, maxHitsToCount - before));
+		int docsWithinLimit = 0;
+		while (docsWithinLimit < docs && firstHitOfDoc[docsWithinLimit] < hitsWithinLimit)
+			docsWithinLimit++;
+		docsCounted.addAndGet(docsWithinLimit);
+		if (before + hits >= maxHitsToCount)
+			maxHitsCounted = true;
+		return !maxHitsCounted;
+	}
+
+	/**
+	 * Return the number of hits counted so far.
+	 *
+	 * @return the hit count
+	 */
+	public int countSoFarHitsCounted() {
+		int n = hitsCounted.get();
+		return maxHitsToCount >= 0 && n > maxHitsToCount ? maxHitsToCount : n;
+	}
+
+	/**
+	 * Return the number of documents counted so far.
+	 *
+	 * @return the document count
+	 */
+	public int countSoFarDocsCounted() {
+		return docsCounted.get();
+	}
+
+	/**
+	 * Did we stop counting before all hits were seen?
+	 *
+	 * @return true if we reached maxHitsToCount or counting was interrupted
+	 */
+	public boolean maxHitsCounted() {
+		return maxHitsCounted;
+	}
+
+	/**
+	 * Are we done counting?
+	 *
+	 * @return true iff count() has finished
+	 */
+	public boolean doneCounting() {
+		return done;
+	}
+
+	@Override
+	public void setPriorityLevel(Level level) {
+		etiquette.setPriorityLevel(level);
+	}
+
+	@Override
+	public Level getPriorityLevel() {
+		return etiquette.getPriorityLevel();
+	}
+
+}
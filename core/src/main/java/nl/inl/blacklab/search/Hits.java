@@ -99,7 +99,7 @@ public abstract class Hits extends AbstractList<Hit> implements Cloneable, Prior
 	/**
 	 * Make a wrapper Hits object for a list of Hit objects.
 	 *
-	 * Does not copy the list, but reuses it.
+	 * The hits are copied into a HitsStore.
 	 *
 	 * @param searcher
 	 *            the searcher object
@@ -110,6 +110,20 @@ public abstract class Hits extends AbstractList<Hit> implements Cloneable, Prior
 		return new HitsImpl(searcher, docHits);
 	}
 
+	/**
+	 * Make a wrapper Hits object for a HitsStore.
+	 *
+	 * Does not copy the store, but reuses it.
+	 *
+	 * @param searcher
+	 *            the searcher object
+	 * @param hits the hits to wrap
+	 * @return hits found
+	 */
+	public static Hits fromStore(Searcher searcher, HitsStore hits) {
+		return new HitsImpl(searcher, hits);
+	}
+
 	/**
 	 * Construct a Hits object from a SpanQuery.
 	 *
@@ -651,6 +665,35 @@ public abstract class Hits extends AbstractList<Hit> implements Cloneable, Prior
 	 */
 	public abstract Hit getByOriginalOrder(int i);
 
+	/**
+	 * Append the specified hit number (based on the order they were
+	 * originally found) to a HitsStore.
+	 *
+	 * Subclasses may override this to avoid instantiating a Hit object.
+	 *
+	 * @param i
+	 *            index of the desired hit
+	 * @param target
+	 *            where to add the hit
+	 */
+	public void copyHit(int i, HitsStore target) {
+		target.add(getByOriginalOrder(i));
+	}
+
+	/**
+	 * Return the document id of the specified hit number, based on the
+	 * order they were originally found (not the sorted order).
+	 *
+	 * Subclasses may override this to avoid instantiating a Hit object.
+	 *
+	 * @param i
+	 *            index of the desired hit
+	 * @return the document id
+	 */
+	public int docByOriginalOrder(int i) {
+		return getByOriginalOrder(i).doc;
+	}
+
 	/**
 	 * Return the specified hit.
 	 *
@@ -943,6 +986,25 @@ public abstract class Hits extends AbstractList<Hit> implements Cloneable, Prior
 	 */
 	public abstract int[] getHitContext(int hitNumber);
 
+	/**
+	 * Get the contexts of all hits for a forward index property.
+	 *
+	 * Uses the current context size (see settings().contextSize()). Contexts are
+	 * retrieved from the forward index when first needed and cached, so sorting,
+	 * grouping and making KWICs on the same hits don't read the forward index again.
+	 *
+	 * @param fieldPropName forward index property, i.e. contents%word
+	 * @return the contexts, indexed by hit number in original order
+	 */
+	public abstract HitContexts getHitContexts(String fieldPropName);
+
+	/**
+	 * Estimate how much memory this Hits object holds.
+	 *
+	 * @return estimated memory size in bytes
+	 */
+	public abstract long estimateSizeBytes();
+
 	/**
 	 * Indicate how to use the forward indices to build concordances.
 	 *
@@ -23,11 +23,16 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.index.IndexReader;
@@ -50,8 +55,12 @@ import nl.inl.blacklab.forwardindex.Terms;
 import nl.inl.blacklab.highlight.XmlHighlighter;
 import nl.inl.blacklab.index.complex.ComplexFieldUtil;
 import nl.inl.blacklab.search.grouping.HitProperty;
+import nl.inl.blacklab.search.grouping.HitSortKeys;
 import nl.inl.blacklab.search.lucene.BLSpans;
 import nl.inl.blacklab.search.lucene.BLSpansWrapper;
+import nl.inl.util.ExUtil;
+import nl.inl.util.MemoryUtil;
+import nl.inl.util.ParallelMergeSort;
 import nl.inl.util.StringUtil;
 import nl.inl.util.ThreadPriority;
 
@@ -64,29 +73,21 @@ public class HitsImpl extends Hits {
 	protected static final Logger logger = Logger.getLogger(HitsImpl.class);
 
 	/**
-	 * The hits.
+	 * The hits (and their captured groups, if we have any).
 	 */
-	protected List<Hit> hits;
+	protected HitsStore hits;
 
 	/**
-	 * The captured groups, if we have any.
+	 * Did we create our hits store, or do we share it with the Hits object we were copied from?
+	 * (only used to determine our memory footprint)
 	 */
-	protected Map<Hit, Span[]> capturedGroups;
+	private boolean ownsHitsStore = true;
 
 	/**
-	 * The hit contexts.
-	 *
-	 * There may be multiple contexts for each hit (see contextFieldsPropName).
-	 * Each int array starts with three bookkeeping integers, followed by the contexts information.
-	 * The bookkeeping integers are:
-	 * * 0 = hit start, index of the hit word (and length of the left context), counted from the start the context
-	 * * 1 = right start, start of the right context, counted from the start the context
-	 * * 2 = context length, length of 1 context. As stated above, there may be multiple contexts.
-	 *
-	 * The first context therefore starts at index 3.
-	 *
+	 * Contexts we've retrieved for our hits, per forward index property and context size.
+	 * Shared with Hits objects that share our hits store.
 	 */
-	private int[][] contexts;
+	private HitContextCache contextCache = new HitContextCache();
 
 	/**
 	 * The current context size (number of words around hits we now have).
@@ -96,7 +97,7 @@ public class HitsImpl extends Hits {
 	/**
 	 * The sort order, if we've sorted, or null if not
 	 */
-	Integer[] sortOrder;
+	int[] sortOrder;
 
 	/**
 	 * The KWIC data, if it has been retrieved.
@@ -189,6 +190,13 @@ public class HitsImpl extends Hits {
 	 */
 	protected int previousHitDoc = -1;
 
+	/**
+	 * Time it took to retrieve the hits from each segment (ms), indexed by
+	 * segment ord, if we used parallel retrieval. Segments that were (partly)
+	 * read sequentially are not timed and have a value of -1.
+	 */
+	private long[] segmentRetrievalTimes;
+
 	@Override
 	public Hits copy() {
 		return new HitsImpl(this);
@@ -210,6 +218,7 @@ public class HitsImpl extends Hits {
 			// (should be detected by the client)
 		}
 		hits = copyFrom.hits;
+		ownsHitsStore = false;
 		kwics = copyFrom.kwics;
 		sourceSpansFullyRead = true;
 		hitsCounted = copyFrom.countSoFarHitsCounted();
@@ -219,33 +228,45 @@ public class HitsImpl extends Hits {
 
 		copySettingsFrom(copyFrom);
 
-		currentContextSize = -1; // context is not copied
+		currentContextSize = -1; // context is not copied...
+		contextCache = copyFrom.contextCache; // ...but we use the same cache
 		etiquette = new ThreadPriority();
 	}
 
 	/**
 	 * Make a wrapper Hits object for a list of Hit objects.
 	 *
-	 * Does not copy the list, but reuses it.
+	 * The hits are copied into a HitsStore.
 	 *
 	 * @param searcher
 	 *            the searcher object
-	 * @param concordanceFieldName
-	 *            field to use by default when finding concordances
 	 * @param hits the list of hits to wrap
 	 */
 	HitsImpl(Searcher searcher, List<Hit> hits) {
+		this(searcher, hits == null ? new HitsStore() : new HitsStore(hits));
+	}
+
+	/**
+	 * Make a wrapper Hits object for a HitsStore.
+	 *
+	 * Does not copy the store, but reuses it.
+	 *
+	 * @param searcher
+	 *            the searcher object
+	 * @param hits the hits to wrap
+	 */
+	HitsImpl(Searcher searcher, HitsStore hits) {
 		super(searcher);
-		this.hits = hits == null ? new ArrayList<Hit>() : hits;
-		hitsCounted = this.hits.size();
+		this.hits = hits;
+		hitsCounted = hits.size();
 		currentContextSize = -1;
 		int prevDoc = -1;
 		docsRetrieved = docsCounted = 0;
-		for (Hit h: this.hits) {
-			if (h.doc != prevDoc) {
+		for (int i = 0; i < hits.size(); i++) {
+			if (hits.doc(i) != prevDoc) {
 				docsRetrieved++;
 				docsCounted++;
-				prevDoc = h.doc;
+				prevDoc = hits.doc(i);
 			}
 		}
 		etiquette = new ThreadPriority();
@@ -281,26 +302,12 @@ public class HitsImpl extends Hits {
 	 * @throws TooManyClauses if the query is overly broad (expands to too many terms)
 	 */
 	HitsImpl(Searcher searcher, SpanQuery sourceQuery) throws TooManyClauses {
-		this(searcher, (List<Hit>)null);
+		this(searcher, new HitsStore());
 		try {
 			IndexReader reader = searcher.getIndexReader();
 			spanQuery = (SpanQuery) sourceQuery.rewrite(reader);
-			termContexts = new HashMap<>();
-			Set<Term> terms = new HashSet<>();
-			extractTermsFromSpanQuery(terms);
 			etiquette = new ThreadPriority();
-			for (Term term: terms) {
-				try {
-					etiquette.behave();
-				} catch (InterruptedException e) {
-					// Taking too long, break it off.
-					// Not a very graceful way to do it... but at least it won't
-					// be stuck forever.
-					Thread.currentThread().interrupt(); // client can check this
-					throw new RuntimeException("Query matches too many terms; aborted.");
-				}
-				termContexts.put(term, TermContext.build(reader.getContext(), term));
-			}
+			termContexts = buildTermContexts(reader, spanQuery, etiquette);
 
 			currentSourceSpans = null;
 			atomicReaderContexts = reader == null ? null : reader.leaves();
@@ -344,7 +351,7 @@ public class HitsImpl extends Hits {
 	 *            where to retrieve the Hit objects from
 	 */
 	HitsImpl(Searcher searcher, Spans source) {
-		this(searcher, (List<Hit>)null);
+		this(searcher, new HitsStore());
 
 		currentSourceSpans = BLSpansWrapper.optWrapSortUniq(source);
 		try {
@@ -374,7 +381,35 @@ public class HitsImpl extends Hits {
 		settings.setConcordanceField(concordanceFieldPropName);
 	}
 
-	private void extractTermsFromSpanQuery(Set<Term> terms) {
+	/**
+	 * Build the term contexts for the terms in a (rewritten) SpanQuery.
+	 *
+	 * @param reader the index reader
+	 * @param spanQuery the rewritten query
+	 * @param etiquette used to check for interruption/pausing of the thread
+	 * @return the term contexts
+	 * @throws IOException on error
+	 */
+	static Map<Term, TermContext> buildTermContexts(IndexReader reader, SpanQuery spanQuery, ThreadPriority etiquette) throws IOException {
+		Map<Term, TermContext> termContexts = new HashMap<>();
+		Set<Term> terms = new HashSet<>();
+		extractTermsFromSpanQuery(spanQuery, terms);
+		for (Term term: terms) {
+			try {
+				etiquette.behave();
+			} catch (InterruptedException e) {
+				// Taking too long, break it off.
+				// Not a very graceful way to do it... but at least it won't
+				// be stuck forever.
+				Thread.currentThread().interrupt(); // client can check this
+				throw new RuntimeException("Query matches too many terms; aborted.");
+			}
+			termContexts.put(term, TermContext.build(reader.getContext(), term));
+		}
+		return termContexts;
+	}
+
+	private static void extractTermsFromSpanQuery(SpanQuery spanQuery, Set<Term> terms) {
 		try {
 			// FIXME: temporary extractTerms hack
 			Method methodExtractTerms = SpanQuery.class.getDeclaredMethod("extractTerms", Set.class);
@@ -432,8 +467,15 @@ public class HitsImpl extends Hits {
 		synchronized (this) {
 			boolean readAllHits = number < 0;
 			try {
+				if (readAllHits && settings.parallelRetrieval() && spanQuery != null && atomicReaderContexts != null
+						&& atomicReaderContexts.size() - atomicReaderContextIndex > 2) {
+					// Read the remaining segments in parallel and merge the results
+					readRemainingHitsInParallel();
+					return;
+				}
 				int maxHitsToCount = settings.maxHitsToCount();
 				int maxHitsToRetrieve = settings.maxHitsToRetrieve();
+				Span[] groups = null; // (reused for each hit; the store copies the group positions)
 				while (readAllHits || hits.size() < number) {
 
 					// Don't hog the CPU, don't take too long
@@ -488,8 +530,8 @@ public class HitsImpl extends Hits {
 								//    and there won't be that many segments, so it's probably ok)
 								hitQueryContext.setSpans(currentSourceSpans);
 								currentSourceSpans.setHitQueryContext(hitQueryContext); // let captured groups register themselves
-								if (capturedGroups == null && hitQueryContext.numberOfCapturedGroups() > 0) {
-									capturedGroups = new HashMap<>();
+								if (hitQueryContext.numberOfCapturedGroups() > hits.numberOfCapturedGroups()) {
+									hits.setNumberOfCapturedGroups(hitQueryContext.numberOfCapturedGroups());
 								}
 
 								int doc = currentSourceSpans.nextDoc();
@@ -528,14 +570,14 @@ public class HitsImpl extends Hits {
 					}
 					maxHitsRetrieved = maxHitsToRetrieve >= 0 && hits.size() >= maxHitsToRetrieve;
 					if (!maxHitsRetrieved) {
-						Hit hit = currentSourceSpans.getHit();
-						Hit offsetHit = new Hit(hit.doc + currentDocBase, hit.start, hit.end);
-						if (capturedGroups != null) {
-							Span[] groups = new Span[hitQueryContext.numberOfCapturedGroups()];
+						if (hits.hasCapturedGroups()) {
+							if (groups == null || groups.length != hits.numberOfCapturedGroups())
+								groups = new Span[hits.numberOfCapturedGroups()];
+							else
+								Arrays.fill(groups, null);
 							hitQueryContext.getCapturedGroups(groups);
-							capturedGroups.put(offsetHit, groups);
 						}
-						hits.add(offsetHit);
+						hits.add(hitDoc, currentSourceSpans.startPosition(), currentSourceSpans.endPosition(), groups);
 					}
 				}
 			} catch (InterruptedException e) {
@@ -547,6 +589,133 @@ public class HitsImpl extends Hits {
 		}
 	}
 
+	/**
+	 * Read all remaining hits by querying the remaining segments in parallel.
+	 *
+	 * The hits from each segment are buffered, then merged in docBase order, so
+	 * the resulting hits and counts are exactly the same as with sequential retrieval.
+	 * If we were in the middle of a segment, that segment is finished on this thread.
+	 *
+	 * NOTE: not synchronized because only ever called from synchronized methods!
+	 *
+	 * @throws InterruptedException if the thread was interrupted during this operation
+	 * @throws IOException on error
+	 */
+	private void readRemainingHitsInParallel() throws InterruptedException, IOException {
+		final int maxHitsToCount = settings.maxHitsToCount();
+		final int maxHitsToRetrieve = settings.maxHitsToRetrieve();
+		if (segmentRetrievalTimes == null) {
+			segmentRetrievalTimes = new long[atomicReaderContexts.size()];
+			Arrays.fill(segmentRetrievalTimes, -1);
+		}
+
+		// Start retrieving hits from the segments we haven't started on yet
+		ForkJoinPool pool = searcher.getHitRetrievalPool();
+		List<SegmentHits> results = new ArrayList<>();
+		List<ForkJoinTask<SegmentHits>> tasks = new ArrayList<>();
+		SegmentHits current = null;
+		if (currentSourceSpans != null) {
+			current = new SegmentHits(atomicReaderContextIndex, currentDocBase);
+			results.add(current);
+		}
+		for (int i = atomicReaderContextIndex + 1; i < atomicReaderContexts.size(); i++) {
+			final LeafReaderContext context = atomicReaderContexts.get(i);
+			final SegmentHits segmentHits = new SegmentHits(context.ord, context.docBase);
+			results.add(segmentHits);
+			tasks.add(pool.submit(new Callable<SegmentHits>() {
+				@Override
+				public SegmentHits call() throws Exception {
+					Bits liveDocs = context.reader().getLiveDocs();
+					BLSpans spans = BLSpansWrapper.optWrapSortUniq(spanQuery.getSpans(context, liveDocs, termContexts));
+					segmentHits.collect(spans, null, false, maxHitsToRetrieve, maxHitsToCount, etiquette);
+					return segmentHits;
+				}
+			}));
+		}
+
+		try {
+			// Meanwhile, finish the segment we were reading (if any) on this thread
+			if (current != null)
+				current.collect(currentSourceSpans, hitQueryContext, true, maxHitsToRetrieve, maxHitsToCount, etiquette);
+			for (ForkJoinTask<SegmentHits> task: tasks) {
+				task.get();
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof InterruptedException)
+				throw (InterruptedException)cause;
+			if (cause instanceof IOException)
+				throw (IOException)cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			throw new RuntimeException(cause);
+		} finally {
+			// If we're stopping early, make sure the other segments stop too
+			for (SegmentHits segmentHits: results) {
+				segmentHits.cancel();
+			}
+		}
+		currentSourceSpans = null;
+		atomicReaderContextIndex = atomicReaderContexts.size();
+
+		// Merge the per-segment results in docBase order
+		mergeLoop:
+		for (SegmentHits segmentHits: results) {
+			if (segmentHits != current) {
+				segmentRetrievalTimes[segmentHits.ord] = segmentHits.retrievalTimeMs;
+				logger.debug("Segment " + segmentHits.ord + " (docBase " + segmentHits.docBase + "): " + segmentHits.hitsCounted +
+						" hits counted, " + segmentHits.hits.size() + " retrieved in " + segmentHits.retrievalTimeMs + " ms");
+			}
+			if (segmentHits.hits.numberOfCapturedGroups() > hits.numberOfCapturedGroups()) {
+				if (hitQueryContext.numberOfCapturedGroups() == 0) {
+					for (String name: segmentHits.capturedGroupNames) {
+						hitQueryContext.registerCapturedGroup(name);
+					}
+				}
+				hits.setNumberOfCapturedGroups(segmentHits.hits.numberOfCapturedGroups());
+			}
+			int docStartIndex = 0;
+			for (int i = 0; i < segmentHits.hitsCounted; i++) {
+				// Stop if we're at the maximum number of hits we want to count
+				if (maxHitsToCount >= 0 && hitsCounted >= maxHitsToCount)
+					break mergeLoop;
+
+				// Count the hit and add it (unless we've reached the maximum number of hits we
+				// want)
+				hitsCounted++;
+				if (docStartIndex < segmentHits.docStarts.size() && segmentHits.docStarts.get(docStartIndex) == i) {
+					int hitDoc = segmentHits.docIds.get(docStartIndex);
+					docStartIndex++;
+					if (hitDoc != previousHitDoc) {
+						docsCounted++;
+						if (!maxHitsRetrieved)
+							docsRetrieved++;
+						previousHitDoc = hitDoc;
+					}
+				}
+				maxHitsRetrieved = maxHitsToRetrieve >= 0 && hits.size() >= maxHitsToRetrieve;
+				if (!maxHitsRetrieved)
+					hits.add(segmentHits.hits, i);
+			}
+		}
+		if (maxHitsToCount >= 0 && hitsCounted >= maxHitsToCount)
+			maxHitsCounted = true;
+		else
+			sourceSpansFullyRead = true;
+	}
+
+	/**
+	 * Get the time it took to retrieve the hits from each index segment.
+	 *
+	 * Only available if hits were retrieved in parallel (see HitsSettings.setParallelRetrieval()).
+	 *
+	 * @return retrieval time in ms per segment (indexed by segment ord; -1 if the segment
+	 *   was read sequentially), or null if hits weren't retrieved in parallel
+	 */
+	public long[] getSegmentRetrievalTimes() {
+		return segmentRetrievalTimes;
+	}
+
 	/**
 	 * Sort the list of hits.
 	 *
@@ -574,21 +743,31 @@ public class HitsImpl extends Hits {
 			return;
 		}
 
-		// Make sure we have a sort order array of sufficient size
-		if (sortOrder == null || sortOrder.length < hits.size()) {
-			sortOrder = new Integer[hits.size()];
-		}
-		// Fill the array with the original hit order (0, 1, 2, ...)
-		int n = hits.size();
-		for (int i = 0; i < n; i++)
-			sortOrder[i] = i;
-
 		// If we need context, make sure we have it.
 		List<String> requiredContext = sortProp.needsContext();
-		findContext(requiredContext);
+		if (requiredContext != null)
+			findContext(requiredContext);
+
+		// Fill an array with the original hit order (0, 1, 2, ...)
+		int n = hits.size();
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
 
 		// Perform the actual sort.
-		Arrays.sort(sortOrder, sortProp);
+		HitSortKeys sortKeys = sortProp.getSortKeys();
+		if (sortKeys != null) {
+			// Compare precomputed int keys; sort in parallel if there's many hits
+			ParallelMergeSort.sort(order, 0, n, sortKeys, searcher.getHitRetrievalPool());
+		} else {
+			// Property can only compare boxed hit indices
+			Integer[] boxedOrder = new Integer[n];
+			for (int i = 0; i < n; i++)
+				boxedOrder[i] = i;
+			Arrays.sort(boxedOrder, sortProp);
+			for (int i = 0; i < n; i++)
+				order[i] = boxedOrder[i];
+		}
 
 		if (reverseSort) {
 			// Instead of creating a new Comparator that reverses the order of the
@@ -596,9 +775,13 @@ public class HitsImpl extends Hits {
 			// O(n log n) comparisons), just reverse the hits now (which runs
 			// in linear time).
 			for (int i = 0; i < n / 2; i++) {
-				sortOrder[i] = sortOrder[n - i - 1];
+				int o = n - i - 1;
+				int t = order[i];
+				order[i] = order[o];
+				order[o] = t;
 			}
 		}
+		sortOrder = order;
 	}
 
 	/**
@@ -860,6 +1043,35 @@ public class HitsImpl extends Hits {
 		return hits.get(i);
 	}
 
+	@Override
+	public void copyHit(int i, HitsStore target) {
+		try {
+			ensureHitsRead(i + 1);
+		} catch (InterruptedException e) {
+			// Thread was interrupted. Required hit hasn't been gathered;
+			// we will just not add it.
+			Thread.currentThread().interrupt();
+		}
+		if (i < hits.size())
+			target.add(hits, i);
+	}
+
+	@Override
+	public int docByOriginalOrder(int i) {
+		try {
+			// (returns right away if the hits have already been read,
+			//  e.g. because size() was called)
+			ensureHitsRead(i + 1);
+		} catch (InterruptedException e) {
+			// Thread was interrupted. Required hit hasn't been gathered;
+			// we will throw an exception below.
+			Thread.currentThread().interrupt();
+		}
+		if (i >= hits.size())
+			throw new IndexOutOfBoundsException("Hit " + i + " not available (" + hits.size() + " hits read)");
+		return hits.doc(i);
+	}
+
 	/**
 	 * Return the specified hit.
 	 *
@@ -1094,32 +1306,19 @@ public class HitsImpl extends Hits {
 	 */
 	private Map<Hit, Kwic> retrieveKwics(int contextSize, String fieldName) {
 
-		// Group hits per document
-		MutableIntObjectMap<List<Hit>> hitsPerDocument = IntObjectMaps.mutable.empty();
-		for (Hit key: this) {
-			List<Hit> hitsInDoc = hitsPerDocument.get(key.doc);
-			if (hitsInDoc == null) {
-				hitsInDoc = new ArrayList<>();
-				hitsPerDocument.put(key.doc, hitsInDoc);
-			}
-			hitsInDoc.add(key);
-		}
-
 		if (settings().concordanceType() == ConcordanceType.FORWARD_INDEX) {
 			// Yes, make 'em from the forward index (faster)
-			ForwardIndex forwardIndex = null;
+			String wordFieldProp = null;
 			String concWordFI = settings().concWordProp();
-			if (concWordFI != null)
-				forwardIndex = searcher.getForwardIndex(ComplexFieldUtil.propertyField(fieldName,
-						concWordFI));
+			if (concWordFI != null && searcher.getForwardIndex(ComplexFieldUtil.propertyField(fieldName, concWordFI)) != null)
+				wordFieldProp = ComplexFieldUtil.propertyField(fieldName, concWordFI);
 
-			ForwardIndex punctForwardIndex = null;
+			String punctFieldProp = null;
 			String concPunctFI = settings().concPunctProp();
-			if (concPunctFI != null)
-				punctForwardIndex = searcher.getForwardIndex(ComplexFieldUtil.propertyField(
-						fieldName, concPunctFI));
+			if (concPunctFI != null && searcher.getForwardIndex(ComplexFieldUtil.propertyField(fieldName, concPunctFI)) != null)
+				punctFieldProp = ComplexFieldUtil.propertyField(fieldName, concPunctFI);
 
-			Map<String, ForwardIndex> attrForwardIndices = new HashMap<>();
+			Map<String, String> attrFieldProps = new LinkedHashMap<>();
 			Collection<String> concAttrFI = settings().concAttrProps();
 			if (concAttrFI == null) {
 				// All other FIs are attributes
@@ -1129,29 +1328,39 @@ public class HitsImpl extends Hits {
 					if (propName.equals(concWordFI)
 							|| propName.equals(concPunctFI))
 						continue;
-					attrForwardIndices.put(propName, searcher.getForwardIndex(p));
+					attrFieldProps.put(propName, p);
 				}
 			} else {
 				// Specific list of attribute FIs
 				for (String p: concAttrFI) {
-					attrForwardIndices.put(p,
-							searcher.getForwardIndex(ComplexFieldUtil.propertyField(fieldName, p)));
+					attrFieldProps.put(p, ComplexFieldUtil.propertyField(fieldName, p));
 				}
 			}
 
-			Map<Hit, Kwic> conc1 = new HashMap<>();
-			for (List<Hit> l: hitsPerDocument.values()) {
-				HitsImpl hitsInThisDoc = new HitsImpl(searcher, searcher.getMainContentsFieldName(), l);
-				hitsInThisDoc.copySettingsFrom(this);
-				hitsInThisDoc.makeKwicsSingleDocForwardIndex(forwardIndex, punctForwardIndex,
-						attrForwardIndices, contextSize, conc1);
-			}
-			return conc1;
+			return makeKwicsFromForwardIndex(wordFieldProp, punctFieldProp, attrFieldProps, contextSize);
 		}
 
 		throw new UnsupportedOperationException("Concordance type is set to CONTENT_STORE, but you can only make KWICs from the forward index. NOTE: if your index has no 'punct' property, concordance type will default to CONTENT_STORE instead of FORWARD_INDEX.");
 	}
 
+	/**
+	 * Make a HitsStore (without captured groups) for each document we have hits in.
+	 *
+	 * @return the hits per document
+	 */
+	private MutableIntObjectMap<HitsStore> groupHitsPerDocument() {
+		MutableIntObjectMap<HitsStore> hitsPerDocument = IntObjectMaps.mutable.empty();
+		for (int i = 0; i < hits.size(); i++) {
+			HitsStore hitsInDoc = hitsPerDocument.get(hits.doc(i));
+			if (hitsInDoc == null) {
+				hitsInDoc = new HitsStore();
+				hitsPerDocument.put(hits.doc(i), hitsInDoc);
+			}
+			hitsInDoc.add(hits.doc(i), hits.start(i), hits.end(i));
+		}
+		return hitsPerDocument;
+	}
+
 	/**
 	 * Retrieve context words for the hits.
 	 *
@@ -1173,67 +1382,24 @@ public class HitsImpl extends Hits {
 			return;
 		}
 
-		List<ForwardIndex> fis = new ArrayList<>();
-		for (String fieldPropName: fieldProps) {
-			fis.add(searcher.getForwardIndex(fieldPropName));
-		}
-
-		// Get the context
-		// Group hits per document
-		List<Hit> hitsInSameDoc = new ArrayList<>();
-		int currentDoc = -1;
-		int index = 0;
-		if (contexts == null || contexts.length < hits.size()) {
-			contexts = new int[hits.size()][];
-		}
-		for (Hit hit: hits) {
-			if (hit.doc != currentDoc) {
-				if (currentDoc >= 0) {
-					try {
-						etiquette.behave();
-					} catch (InterruptedException e) {
-						// Thread was interrupted. Just go ahead with the hits we did
-						// get, so at least we can return with valid context.
-						Thread.currentThread().interrupt();
-					}
-
-					findPartOfContext(hitsInSameDoc, index - hitsInSameDoc.size(), fis);
-
-					// Reset hits list for next doc
-					hitsInSameDoc.clear();
+		// Get the contexts we don't have yet
+		for (int i = 0; i < fieldProps.size(); i++) {
+			if (i > 0) {
+				try {
+					etiquette.behave();
+				} catch (InterruptedException e) {
+					// Thread was interrupted. Just go ahead with the hits we did
+					// get, so at least we can return with valid context.
+					Thread.currentThread().interrupt();
 				}
-				currentDoc = hit.doc; // start a new document
 			}
-			hitsInSameDoc.add(hit);
-			index++;
+			getHitContexts(fieldProps.get(i), settings().contextSize());
 		}
-		if (!hitsInSameDoc.isEmpty())
-			findPartOfContext(hitsInSameDoc, index - hitsInSameDoc.size(), fis);
 
 		currentContextSize = settings().contextSize();
 		contextFieldsPropName = new ArrayList<>(fieldProps);
 	}
 
-	/**
-	 * Helper method for findContext(). Finds the hits in a single document and adds
-	 * context to our contexts array.
-	 *
-	 * @param hitsInSameDoc the hits in one document
-	 * @param firstHitIndex index of the first hit
-	 * @param fis forward indices needed for contexts
-	 */
-	private void findPartOfContext(List<Hit> hitsInSameDoc, int firstHitIndex, List<ForwardIndex> fis) {
-		// Find context for the hits in the current document
-		HitsImpl hitsObj = new HitsImpl(searcher, searcher.getMainContentsFieldName(), hitsInSameDoc);
-		hitsObj.copySettingsFrom(this);
-		hitsObj.getContextWords(settings().contextSize(), fis);
-
-		// Copy the contexts from the temporary Hits object to this one
-		for (int i = 0; i < hitsInSameDoc.size(); i++) {
-			contexts[firstHitIndex + i] = hitsObj.getHitContext(i);
-		}
-	}
-
 	/**
 	 * Clear any cached concordances so new ones will be created on next call to getConcordance().
 	 * @deprecated client should not need this, should only be used internally
@@ -1261,20 +1427,18 @@ public class HitsImpl extends Hits {
 		if (ctx == null)
 			ctx = searcher.getDefaultExecutionContext(settings().concordanceField());
 		ctx = ctx.withProperty(propName);
-		findContext(Arrays.asList(ctx.luceneField(false)));
+		String fieldPropName = ctx.luceneField(false);
+		HitContexts contexts = getHitContexts(fieldPropName, settings().contextSize());
 		MutableIntIntMap coll = IntIntMaps.mutable.empty();
 		for (int j = 0; j < hits.size(); j++) {
-			int[] context = contexts[j];
-
 			// Count words
-			int contextHitStart = context[CONTEXTS_HIT_START_INDEX];
-			int contextRightStart = context[CONTEXTS_RIGHT_START_INDEX];
-			int contextLength = context[CONTEXTS_LENGTH_INDEX];
-			int indexInContent = CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS;
-			for (int i = 0; i < contextLength; i++, indexInContent++) {
+			int contextHitStart = contexts.hitStart(j);
+			int contextRightStart = contexts.rightStart(j);
+			int contextLength = contexts.length(j);
+			for (int i = 0; i < contextLength; i++) {
 				if (i >= contextHitStart && i < contextRightStart)
 					continue; // don't count words in hit itself, just around [option..?]
-				int w = context[indexInContent];
+				int w = contexts.token(j, i);
 				int n;
 				if (!coll.contains(w))
 					n = 1;
@@ -1289,7 +1453,7 @@ public class HitsImpl extends Hits {
 		boolean diacSensitive = searcher.isDefaultSearchDiacriticsSensitive();
 		TermFrequencyList collocations = new TermFrequencyList(coll.size());
 		// TODO: get collocations for multiple contexts?
-		Terms terms = searcher.getTerms(contextFieldsPropName.get(0));
+		Terms terms = searcher.getTerms(fieldPropName);
 		Map<String, Integer> wordFreq = new HashMap<>();
 		for (IntIntPair e: coll.keyValuesView()) {
 			int key = e.getOne();
@@ -1320,7 +1484,7 @@ public class HitsImpl extends Hits {
 
 	@Override
 	public boolean hasCapturedGroups() {
-		return capturedGroups != null;
+		return hits.hasCapturedGroups();
 	}
 
 	/**
@@ -1334,9 +1498,10 @@ public class HitsImpl extends Hits {
 	 */
 	@Override
 	public Span[] getCapturedGroups(Hit hit) {
-		if (capturedGroups == null)
+		if (!hits.hasCapturedGroups())
 			return null;
-		return capturedGroups.get(hit);
+		int index = hits.indexOf(hit);
+		return index < 0 ? null : hits.getCapturedGroups(index);
 	}
 
 	/**
@@ -1350,11 +1515,11 @@ public class HitsImpl extends Hits {
 	 */
 	@Override
 	public Map<String, Span> getCapturedGroupMap(Hit hit) {
-		if (capturedGroups == null)
+		Span[] groups = getCapturedGroups(hit);
+		if (groups == null)
 			return null;
 		Map<String, Span> result = new TreeMap<>(); // TreeMap to maintain group ordering
 		List<String> names = getCapturedGroupNames();
-		Span[] groups = capturedGroups.get(hit);
 		for (int i = 0; i < names.size(); i++) {
 			result.put(names.get(i), groups[i]);
 		}
@@ -1382,79 +1547,75 @@ public class HitsImpl extends Hits {
 	}
 
 	/**
-	 * Retrieves the KWIC information (KeyWord In Context: left, hit and right context) for
-	 * a number of hits in the same document from the ContentStore.
+	 * Make the KWICs (KeyWord In Context: left, hit and right context) for our hits
+	 * from the forward indices.
 	 *
-	 * @param forwardIndex
-	 *    Forward index for the words
-	 * @param punctForwardIndex
-	 *    Forward index for the punctuation
-	 * @param attrForwardIndices
-	 *    Forward indices for the attributes, or null if none
+	 * Uses (and fills) our context cache, so contexts that were already retrieved for
+	 * sorting or grouping are not read from the forward index again.
+	 *
+	 * @param wordFieldProp
+	 *    Forward index property for the words, or null if none
+	 * @param punctFieldProp
+	 *    Forward index property for the punctuation, or null if none
+	 * @param attrFieldProps
+	 *    Forward index properties for the attributes, by attribute name
 	 * @param wordsAroundHit
 	 *            number of words left and right of hit to fetch
-	 * @param theKwics
-	 *            where to add the KWICs
+	 * @return the KWICs
 	 */
-	synchronized void makeKwicsSingleDocForwardIndex(ForwardIndex forwardIndex,
-			ForwardIndex punctForwardIndex, Map<String, ForwardIndex> attrForwardIndices,
-			int wordsAroundHit, Map<Hit, Kwic> theKwics) {
+	private synchronized Map<Hit, Kwic> makeKwicsFromForwardIndex(String wordFieldProp,
+			String punctFieldProp, Map<String, String> attrFieldProps, int wordsAroundHit) {
+		Map<Hit, Kwic> theKwics = new HashMap<>();
 		if (hits.isEmpty())
-			return;
-
-		// Save existing context so we can restore it afterwards
-		int[][] oldContexts = null;
-		if (!hits.isEmpty() && contexts != null)
-			oldContexts = saveContexts();
-
-		// TODO: more efficient to get all contexts with one getContextWords() call!
+			return theKwics;
 
 		// Get punctuation context
-		int[][] punctContext = null;
-		if (punctForwardIndex != null) {
-			getContextWords(wordsAroundHit, Arrays.asList(punctForwardIndex));
-			punctContext = saveContexts();
+		HitContexts punctContext = null;
+		Terms punctTerms = null;
+		if (punctFieldProp != null) {
+			punctContext = getHitContexts(punctFieldProp, wordsAroundHit);
+			punctTerms = searcher.getTerms(punctFieldProp);
 		}
-		Terms punctTerms = punctForwardIndex == null ? null : punctForwardIndex.getTerms();
 
 		// Get attributes context
-		String[] attrName = null;
-		Terms[] attrTerms = null;
-		int[][][] attrContext = null;
-		if (attrForwardIndices != null) {
-			int n = attrForwardIndices.size();
-			attrName = new String[n];
-			ForwardIndex[] attrFI = new ForwardIndex[n];
-			attrTerms = new Terms[n];
-			attrContext = new int[n][][];
-			int i = 0;
-			for (Map.Entry<String, ForwardIndex> e: attrForwardIndices.entrySet()) {
-				attrName[i] = e.getKey();
-				attrFI[i] = e.getValue();
-				attrTerms[i] = attrFI[i].getTerms();
-				getContextWords(wordsAroundHit, Arrays.asList(attrFI[i]));
-				attrContext[i] = saveContexts();
-				i++;
-			}
+		int n = attrFieldProps.size();
+		String[] attrName = new String[n];
+		Terms[] attrTerms = new Terms[n];
+		HitContexts[] attrContext = new HitContexts[n];
+		int i = 0;
+		for (Map.Entry<String, String> e: attrFieldProps.entrySet()) {
+			attrName[i] = e.getKey();
+			attrTerms[i] = searcher.getTerms(e.getValue());
+			attrContext[i] = getHitContexts(e.getValue(), wordsAroundHit);
+			i++;
 		}
 
 		// Get word context
-		if (forwardIndex != null)
-			getContextWords(wordsAroundHit, Arrays.asList(forwardIndex));
-		Terms terms = forwardIndex == null ? null : forwardIndex.getTerms();
+		HitContexts wordContext = null;
+		Terms terms = null;
+		if (wordFieldProp != null) {
+			wordContext = getHitContexts(wordFieldProp, wordsAroundHit);
+			terms = searcher.getTerms(wordFieldProp);
+		}
+
+		// We need at least one context to know the hit and context boundaries
+		HitContexts contexts = wordContext != null ? wordContext : punctContext;
+		if (contexts == null && n > 0)
+			contexts = attrContext[0];
+		if (contexts == null)
+			throw new RuntimeException("Cannot get context without a forward index");
 
 		// Make the concordances from the context
-		String concPunctFI = settings().concPunctProp();
-		String concWordFI = settings().concWordProp();
-		for (int i = 0; i < hits.size(); i++) {
-			Hit h = hits.get(i);
+		List<String> properties = new ArrayList<>();
+		properties.add(settings().concPunctProp());
+		for (int k = 0; k < n; k++) {
+			properties.add(attrName[k]);
+		}
+		properties.add(settings().concWordProp());
+		for (i = 0; i < hits.size(); i++) {
 			List<String> tokens = new ArrayList<>();
-			int[] context = contexts[i];
-			int contextLength = context[CONTEXTS_LENGTH_INDEX];
-			int contextRightStart = context[CONTEXTS_RIGHT_START_INDEX];
-			int contextHitStart = context[CONTEXTS_HIT_START_INDEX];
-			int indexInContext = CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS;
-			for (int j = 0; j < contextLength; j++, indexInContext++) {
+			int contextLength = contexts.length(i);
+			for (int j = 0; j < contextLength; j++) {
 
 				// Add punctuation before word
 				// (Applications may choose to ignore punctuation before the first word)
@@ -1463,135 +1624,59 @@ public class HitsImpl extends Hits {
 					// between every word.
 					tokens.add(" ");
 				} else
-					tokens.add(punctTerms.get(punctContext[i][indexInContext]));
+					tokens.add(punctTerms.get(punctContext.token(i, j)));
 
 				// Add extra attributes (e.g. lemma, pos)
-				if (attrContext != null) {
-					for (int k = 0; k < attrContext.length; k++) {
-						tokens.add(attrTerms[k].get(attrContext[k][i][indexInContext]));
-					}
+				for (int k = 0; k < n; k++) {
+					tokens.add(attrTerms[k].get(attrContext[k].token(i, j)));
 				}
 
 				// Add word
 				if (terms != null)
-					tokens.add(terms.get(context[indexInContext]));
+					tokens.add(terms.get(wordContext.token(i, j)));
 				else
 					tokens.add(""); // weird, but make sure the numbers add up at the end
 
 			}
-			List<String> properties = new ArrayList<>();
-			properties.add(concPunctFI);
-			for (int k = 0; k < attrContext.length; k++) {
-				properties.add(attrName[k]);
-			}
-			properties.add(concWordFI);
-			Kwic kwic = new Kwic(properties, tokens, contextHitStart, contextRightStart);
-			theKwics.put(h, kwic);
-		}
-
-		if (oldContexts != null) {
-			restoreContexts(oldContexts);
+			Kwic kwic = new Kwic(properties, tokens, contexts.hitStart(i), contexts.rightStart(i));
+			theKwics.put(hits.get(i), kwic);
 		}
+		return theKwics;
 	}
 
 	/**
-	 * Get context words from the forward index.
+	 * Get the contexts of our hits for a forward index property and context size.
 	 *
-	 * NOTE: not synchronized because only ever called from synchronized methods!
+	 * Contexts are retrieved from the forward index for all hits at once, and cached
+	 * (see HitContextCache).
 	 *
-	 * @param wordsAroundHit how many words of context we want
-	 * @param contextSources
-	 *            forward indices to get context from
+	 * @param fieldPropName forward index property, i.e. contents%word
+	 * @param contextSize number of words around each hit
+	 * @return the contexts
 	 */
-	private void getContextWords(int wordsAroundHit, List<ForwardIndex> contextSources) {
-
-		int n = hits.size();
-		if (n == 0)
-			return;
-		int[] startsOfSnippets = new int[n];
-		int[] endsOfSnippets = new int[n];
-		int i = 0;
-		for (Hit h: hits) {
-			startsOfSnippets[i] = wordsAroundHit >= h.start ? 0 : h.start - wordsAroundHit;
-			endsOfSnippets[i] = h.end + wordsAroundHit;
-			i++;
+	synchronized HitContexts getHitContexts(String fieldPropName, int contextSize) {
+		try {
+			ensureAllHitsRead();
+		} catch (InterruptedException e) {
+			// Thread was interrupted. Just go ahead with the hits we did
+			// get, so at least we can return with valid context.
+			Thread.currentThread().interrupt();
 		}
-
-		int fiNumber = 0;
-		int doc = hits.get(0).doc;
-		for (ForwardIndex forwardIndex: contextSources) {
-			// Get all the words from the forward index
-			List<int[]> words;
-			if (forwardIndex != null) {
-				// We have a forward index for this field. Use it.
-				int fiid = forwardIndex.luceneDocIdToFiid(doc);
-				words = forwardIndex.retrievePartsInt(fiid, startsOfSnippets, endsOfSnippets);
-			} else {
+		HitContexts contexts = contextCache.get(fieldPropName, contextSize);
+		if (contexts == null || contexts.size() != hits.size()) {
+			// Not cached yet (or hits were added since); retrieve them now
+			ForwardIndex forwardIndex = searcher.getForwardIndex(fieldPropName);
+			if (forwardIndex == null)
 				throw new RuntimeException("Cannot get context without a forward index");
-			}
-
-			// Build the actual concordances
-			Iterator<int[]> wordsIt = words.iterator();
-			int hitNum = 0;
-			if (contexts == null || contexts.length < hits.size()) {
-				contexts = new int[hits.size()][];
-			}
-			for (Hit hit: hits) {
-				int[] theseWords = wordsIt.next();
-
-				// Put the concordance in the Hit object
-				int firstWordIndex = startsOfSnippets[hitNum];
-
-				if (fiNumber == 0) {
-					// Allocate context array and set hit and right start and context length
-					contexts[hitNum] = new int[CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS + theseWords.length * contextSources.size()];
-					contexts[hitNum][CONTEXTS_HIT_START_INDEX] = hit.start - firstWordIndex;
-					contexts[hitNum][CONTEXTS_RIGHT_START_INDEX] = hit.end - firstWordIndex;
-					contexts[hitNum][CONTEXTS_LENGTH_INDEX] = theseWords.length;
-				}
-				// Copy the context we just retrieved into the context array
-				int start = fiNumber * theseWords.length + CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS;
-				System.arraycopy(theseWords, 0, contexts[hitNum], start, theseWords.length);
-				hitNum++;
-			}
-
-			fiNumber++;
+			contexts = HitContexts.retrieve(hits, forwardIndex, fieldPropName, contextSize);
+			contextCache.put(contexts);
 		}
+		return contexts;
 	}
 
-	/**
-	 * Get the context information from the list of hits, so we can
-	 * look up a different context but still have access to this one as well.
-	 *
-	 * NOTE: not synchronized because only ever called from synchronized methods!
-	 *
-	 * @return the context
-	 */
-	private int[][] saveContexts() {
-		int[][] saved = new int[contexts.length][];
-		for (int i = 0; i < contexts.length; i++) {
-			saved[i] = Arrays.copyOf(contexts[i], contexts[i].length);
-		}
-		return saved;
-	}
-
-	/**
-	 * Put context information into the list of hits.
-	 *
-	 * NOTE: not synchronized because only ever called from synchronized methods!
-	 *
-	 * @param saved the context to restore
-	 */
-	private void restoreContexts(int[][] saved) {
-		if (contexts == null || contexts.length != saved.length) {
-			contexts = new int[saved.length][];
-		}
-		for (int i = 0; i < saved.length; i++) {
-			if (contexts[i] == null || contexts[i].length != saved[i].length) {
-				contexts[i] = new int[saved[i].length];
-			}
-			System.arraycopy(saved[i], 0, contexts, 0, saved[i].length);
-		}
+	@Override
+	public HitContexts getHitContexts(String fieldPropName) {
+		return getHitContexts(fieldPropName, settings().contextSize());
 	}
 
 	/**
@@ -1611,7 +1696,7 @@ public class HitsImpl extends Hits {
 			XmlHighlighter hl) {
 		if (hits.isEmpty())
 			return;
-		int doc = hits.get(0).doc;
+		int doc = hits.doc(0);
 		int arrayLength = hits.size() * 2;
 		int[] startsOfWords = new int[arrayLength];
 		int[] endsOfWords = new int[arrayLength];
@@ -1619,9 +1704,9 @@ public class HitsImpl extends Hits {
 		// Determine the first and last word of the concordance, as well as the
 		// first and last word of the actual hit inside the concordance.
 		int startEndArrayIndex = 0;
-		for (Hit hit: hits) {
-			int hitStart = hit.start;
-			int hitEnd = hit.end - 1;
+		for (int i = 0; i < hits.size(); i++) {
+			int hitStart = hits.start(i);
+			int hitEnd = hits.end(i) - 1;
 
 			int start = hitStart - wordsAroundHit;
 			if (start < 0)
@@ -1667,56 +1752,137 @@ public class HitsImpl extends Hits {
 			Thread.currentThread().interrupt();
 			return Hits.emptyList(searcher);
 		}
-		List<Hit> hitsInDoc = new ArrayList<>();
-		for (Hit hit: hits) {
-			if (hit.doc == docid)
-				hitsInDoc.add(hit);
+		HitsStore hitsInDoc = new HitsStore(hits.numberOfCapturedGroups(), 16);
+		for (int i = 0; i < hits.size(); i++) {
+			if (hits.doc(i) == docid)
+				hitsInDoc.add(hits, i);
 		}
-		Hits result = Hits.fromList(searcher, hitsInDoc);
+		Hits result = new HitsImpl(searcher, hitsInDoc);
 		result.copySettingsFrom(this);
 		return result;
 	}
 
 	/**
 	 * Return the context(s) for the specified hit number
+	 *
+	 * The array is composed from the cached contexts on each call; use
+	 * getHitContexts() to access the contexts without copying them.
+	 *
 	 * @param hitNumber which hit we want the context(s) for
 	 * @return the context(s)
 	 */
 	@Override
 	public int[] getHitContext(int hitNumber) {
-		return contexts[hitNumber];
+		List<String> fieldProps = contextFieldsPropName;
+		int contextSize = currentContextSize >= 0 ? currentContextSize : settings().contextSize();
+		HitContexts first = getHitContexts(fieldProps.get(0), contextSize);
+		int length = first.length(hitNumber);
+		int[] context = new int[CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS + length * fieldProps.size()];
+		context[CONTEXTS_HIT_START_INDEX] = first.hitStart(hitNumber);
+		context[CONTEXTS_RIGHT_START_INDEX] = first.rightStart(hitNumber);
+		context[CONTEXTS_LENGTH_INDEX] = length;
+		for (int i = 0; i < fieldProps.size(); i++) {
+			HitContexts contexts = i == 0 ? first : getHitContexts(fieldProps.get(i), contextSize);
+			contexts.copyTokens(hitNumber, 0, context, CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS + i * length, length);
+		}
+		return context;
 	}
 
 	/**
 	 * Generate concordances from content store (slower).
 	 *
+	 * If the hits occur in several documents, the concordances for each document are
+	 * made in parallel (using Searcher.getHitRetrievalPool()).
+	 *
 	 * @param hits the hits for which to retrieve concordances
 	 * @param contextSize how many words around the hit to retrieve
 	 * @param fieldName field to use for building concordances
 	 * @return the concordances
 	 */
-	private Map<Hit, Concordance> retrieveConcordancesFromContentStore(int contextSize, String fieldName) {
-		XmlHighlighter hl = new XmlHighlighter(); // used to make fragments well-formed
-		hl.setUnbalancedTagsStrategy(searcher.getDefaultUnbalancedTagsStrategy());
+	private Map<Hit, Concordance> retrieveConcordancesFromContentStore(final int contextSize, final String fieldName) {
 		// Group hits per document
-		MutableIntObjectMap<List<Hit>> hitsPerDocument = IntObjectMaps.mutable.empty();
-		for (Hit key: hits) {
-			List<Hit> hitsInDoc = hitsPerDocument.get(key.doc);
-			if (hitsInDoc == null) {
-				hitsInDoc = new ArrayList<>();
-				hitsPerDocument.put(key.doc, hitsInDoc);
+		MutableIntObjectMap<HitsStore> hitsPerDocument = groupHitsPerDocument();
+		Map<Hit, Concordance> conc = new HashMap<>();
+		if (hitsPerDocument.size() <= 1) {
+			for (HitsStore l: hitsPerDocument.values()) {
+				HitsImpl hitsInThisDoc = new HitsImpl(searcher, l);
+				hitsInThisDoc.copySettingsFrom(this);
+				hitsInThisDoc.makeConcordancesSingleDocContentStore(fieldName, contextSize, conc, createHighlighter());
 			}
-			hitsInDoc.add(key);
+			return conc;
 		}
-		Map<Hit, Concordance> conc = new HashMap<>();
-		for (List<Hit> l: hitsPerDocument.values()) {
-			HitsImpl hitsInThisDoc = new HitsImpl(searcher, l);
+
+		// Make the concordances for each document in parallel
+		ForkJoinPool pool = searcher.getHitRetrievalPool();
+		List<ForkJoinTask<Map<Hit, Concordance>>> tasks = new ArrayList<>();
+		for (HitsStore l: hitsPerDocument.values()) {
+			final HitsImpl hitsInThisDoc = new HitsImpl(searcher, l);
 			hitsInThisDoc.copySettingsFrom(this);
-			hitsInThisDoc.makeConcordancesSingleDocContentStore(fieldName, contextSize, conc, hl);
+			tasks.add(pool.submit(new Callable<Map<Hit, Concordance>>() {
+				@Override
+				public Map<Hit, Concordance> call() {
+					Map<Hit, Concordance> concInThisDoc = new HashMap<>();
+					hitsInThisDoc.makeConcordancesSingleDocContentStore(fieldName, contextSize, concInThisDoc, createHighlighter());
+					return concInThisDoc;
+				}
+			}));
+		}
+		try {
+			for (ForkJoinTask<Map<Hit, Concordance>> task: tasks) {
+				conc.putAll(task.get());
+			}
+		} catch (InterruptedException e) {
+			for (ForkJoinTask<Map<Hit, Concordance>> task: tasks) {
+				task.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw ExUtil.wrapRuntimeException(e.getCause());
 		}
 		return conc;
 	}
 
+	/**
+	 * Create a highlighter to make concordance fragments well-formed.
+	 *
+	 * (highlighters keep state, so each thread needs its own)
+	 *
+	 * @return the highlighter
+	 */
+	private XmlHighlighter createHighlighter() {
+		XmlHighlighter hl = new XmlHighlighter(); // used to make fragments well-formed
+		hl.setUnbalancedTagsStrategy(searcher.getDefaultUnbalancedTagsStrategy());
+		return hl;
+	}
+
+	/**
+	 * Return the index of the hit at the specified position in sorted order.
+	 *
+	 * @param i position in sorted order (if we've sorted)
+	 * @return index in our hits store
+	 */
+	int indexInStore(int i) {
+		return sortOrder == null ? i : sortOrder[i];
+	}
+
+	/**
+	 * Returns the memory footprint of the hits, sort order and contexts.
+	 *
+	 * If we share our hits with another Hits object (e.g. because we
+	 * were copied from it), they and the contexts are not included.
+	 *
+	 * @return the footprint in bytes
+	 */
+	@Override
+	public long estimateSizeBytes() {
+		long bytes = ownsHitsStore ? hits.estimateSizeBytes() : 0;
+		bytes += MemoryUtil.sizeBytes(sortOrder);
+		if (ownsHitsStore)
+			bytes += contextCache.estimateSizeBytes(); // (cache is shared with copies)
+		return bytes;
+	}
+
 	@Override
 	public void setMaxHitsCounted(boolean maxHitsCounted) {
 		this.maxHitsCounted = maxHitsCounted;
@@ -1,6 +1,5 @@
 package nl.inl.blacklab.search;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
@@ -26,55 +25,95 @@ public abstract class HitsSample extends HitsImpl {
 	protected Random random;
 
 	protected HitsSample(Searcher searcher, float ratio, long seed) {
-		super(searcher, new ArrayList<Hit>());
+		super(searcher, new HitsStore());
 		this.ratioOfHitsToSelect = ratio;
 		this.seed = seed == RANDOM_SEED ? getRandomSeed() : seed;
-		this.random = new Random(seed);
+		this.random = new Random(this.seed);
 	}
 
 	protected HitsSample(Searcher searcher, int number, long seed) {
-		super(searcher, new ArrayList<Hit>());
+		super(searcher, new HitsStore());
 		this.numberOfHitsToSelect = number;
 		exactNumberGiven = true;
 		this.seed = seed == RANDOM_SEED ? getRandomSeed() : seed;
-		this.random = new Random(seed);
+		this.random = new Random(this.seed);
 	}
 
 	protected HitsSample(Searcher searcher, List<Hit> hits, float ratio, long seed) {
+		this(searcher, new HitsStore(hits), ratio, seed);
+	}
+
+	protected HitsSample(Searcher searcher, HitsStore hits, float ratio, long seed) {
 		super(searcher, hits);
 		this.ratioOfHitsToSelect = ratio;
 		this.seed = seed == RANDOM_SEED ? getRandomSeed() : seed;
-		this.random = new Random(seed);
+		this.random = new Random(this.seed);
 	}
 
 	/**
 	 * Take a sample of hits by wrapping an existing Hits object.
 	 *
+	 * If the hits come from a query, we sample the query's hits (see HitsSampleSpans).
+	 * If they haven't all been retrieved yet, we sample directly from the query, so
+	 * we don't have to retrieve and store all of them. Either way, the result is the same.
+	 *
 	 * @param hits hits object to wrap
 	 * @param ratio ratio of hits to select, from 0 (none) to 1 (all)
 	 * @param seed seed for the random generator, or HitsSample.RANDOM_SEED to use a randomly chosen seed
 	 * @return the sample
 	 */
 	public static HitsSample fromHits(Hits hits, float ratio, long seed) {
-		// We can later provide an optimized version that uses a HitsSampleCopy or somesuch
-		// (this class could save memory by only storing the hits we're interested in)
+		if (isFromQuery(hits)) {
+			HitsImpl hitsImpl = (HitsImpl) hits;
+			if (allHitsRetrieved(hitsImpl))
+				return new HitsSampleSpans(hitsImpl, ratio, seed);
+			return new HitsSampleSpans(hits.getSearcher(), hitsImpl.spanQuery, ratio, seed, hits.settings());
+		}
 		return new HitsSampleImpl(hits, ratio, seed);
 	}
 
 	/**
 	 * Take a sample of hits by wrapping an existing Hits object.
 	 *
+	 * If the hits come from a query, we sample the query's hits (see HitsSampleSpans).
+	 * If they haven't all been retrieved yet, we sample directly from the query, so
+	 * we don't have to retrieve and store all of them. Either way, the result is the same.
+	 *
 	 * @param hits hits object to wrap
 	 * @param number number of hits to select
 	 * @param seed seed for the random generator, or HitsSample.RANDOM_SEED to use a randomly chosen seed
 	 * @return the sample
 	 */
 	public static HitsSample fromHits(Hits hits, int number, long seed) {
-		// We can later provide an optimized version that uses a HitsSampleCopy or somesuch
-		// (this class could save memory by only storing the hits we're interested in)
+		if (isFromQuery(hits)) {
+			HitsImpl hitsImpl = (HitsImpl) hits;
+			if (allHitsRetrieved(hitsImpl))
+				return new HitsSampleSpans(hitsImpl, number, seed);
+			return new HitsSampleSpans(hits.getSearcher(), hitsImpl.spanQuery, number, seed, hits.settings());
+		}
 		return new HitsSampleImpl(hits, number, seed);
 	}
 
+	/**
+	 * Check if these hits are (in the original order) the hits of a query.
+	 *
+	 * @param hits hits to sample
+	 * @return true if we can sample from the query
+	 */
+	private static boolean isFromQuery(Hits hits) {
+		return hits instanceof HitsImpl && ((HitsImpl) hits).spanQuery != null;
+	}
+
+	/**
+	 * Check if all hits of the query have been retrieved already.
+	 *
+	 * @param hits hits to sample
+	 * @return true if all hits have been retrieved
+	 */
+	private static boolean allHitsRetrieved(HitsImpl hits) {
+		return hits.sourceSpansFullyRead && !hits.maxHitsRetrieved();
+	}
+
 	/**
 	 * Take a sample of hits by executing a SpanQuery and sampling the results.
 	 *
@@ -85,9 +124,7 @@ public abstract class HitsSample extends HitsImpl {
 	 * @return the sample
 	 */
 	public static HitsSample fromSpanQuery(Searcher searcher, SpanQuery query, float ratio, long seed) {
-		// We can later provide an optimized version that uses a HitsSampleSpans or somesuch
-		// (this class could save memory by only storing the hits we're interested in)
-		return new HitsSampleImpl(Hits.fromSpanQuery(searcher, query), ratio, seed);
+		return new HitsSampleSpans(searcher, query, ratio, seed, null);
 	}
 
 	/**
@@ -100,9 +137,7 @@ public abstract class HitsSample extends HitsImpl {
 	 * @return the sample
 	 */
 	public static HitsSample fromSpanQuery(Searcher searcher, SpanQuery query, int number, long seed) {
-		// We can later provide an optimized version that uses a HitsSampleSpans or somesuch
-		// (this class could save memory by only storing the hits we're interested in)
-		return new HitsSampleImpl(Hits.fromSpanQuery(searcher, query), number, seed);
+		return new HitsSampleSpans(searcher, query, number, seed, null);
 	}
 
 	public float ratio() {
@@ -57,7 +57,7 @@ public class HitsSampleImpl extends HitsSample {
 				docsCounted++;
 				previousHitDoc = hit.doc;
 			}
-			this.hits.add(hit);
+			this.hits.add(hit.doc, hit.start, hit.end);
 			hitsCounted++;
 		}
 	}
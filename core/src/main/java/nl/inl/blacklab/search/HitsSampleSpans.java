@@ -0,0 +1,362 @@
+package nl.inl.blacklab.search;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.BooleanQuery.TooManyClauses;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.Spans;
+
+import nl.inl.blacklab.search.lucene.BLSpans;
+import nl.inl.blacklab.search.lucene.BLSpansWrapper;
+import nl.inl.util.ExUtil;
+import nl.inl.util.IntComparator;
+import nl.inl.util.ParallelMergeSort;
+
+/**
+ * Implements HitsSample by sampling the hits of a SpanQuery.
+ *
+ * Unlike HitsSampleImpl, this never stores all the hits: only the sample is kept
+ * in memory. Hits are chosen using reservoir sampling: we compute how many hits to
+ * skip until the next one is selected, so we only need to draw a random number for
+ * the hits we select. To select a ratio of the hits, we count the hits first and
+ * select that number of hits (rounded, but at least one if the ratio isn't 0),
+ * like HitsSampleImpl does.
+ *
+ * If all hits of the query have already been retrieved, we sample from those
+ * instead of executing the query again. They are visited in the same order as the
+ * spans, so the sample is the same: the same query, sample parameters and seed
+ * always result in the same sample (as long as the index doesn't change).
+ */
+public class HitsSampleSpans extends HitsSample {
+
+	/** How many hits to iterate over between etiquette checks */
+	private static final int BEHAVE_INTERVAL = 1000;
+
+	/** Documents of the hits in the reservoir */
+	private int[] reservoirDoc;
+
+	/** Starts of the hits in the reservoir */
+	private int[] reservoirStart;
+
+	/** Ends of the hits in the reservoir */
+	private int[] reservoirEnd;
+
+	/** Captured groups of the hits in the reservoir (if any) */
+	private Span[][] reservoirGroups;
+
+	/** Index of the hits in the reservoir (i.e. their order in the spans) */
+	private int[] reservoirIndex;
+
+	/** Number of hits currently in the reservoir */
+	private int reservoirSize;
+
+	/** Reservoir sampling: current value of the W variable (see "Algorithm L") */
+	private double reservoirW;
+
+	/** Index of the next hit to select (or Long.MAX_VALUE if we won't select any more hits) */
+	private long nextSelectedIndex;
+
+	/**
+	 * Select a ratio of the hits of a query.
+	 *
+	 * @param searcher searcher object
+	 * @param query query to sample
+	 * @param ratio ratio of hits to select, from 0 (none) to 1 (all)
+	 * @param seed seed for the random generator, or HitsSample.RANDOM_SEED to use a randomly chosen seed
+	 * @param settings settings to use (e.g. maximum number of hits to count), or null for the searcher's defaults
+	 * @throws TooManyClauses if the query is overly broad (expands to too many terms)
+	 */
+	HitsSampleSpans(Searcher searcher, SpanQuery query, float ratio, long seed, HitsSettings settings) throws TooManyClauses {
+		super(searcher, ratio, seed);
+		checkRatio(ratio);
+		if (settings != null)
+			this.settings = new HitsSettings(settings, false);
+		startSampling(numberToSelect(countHits(query), ratio));
+		sample(query);
+		addReservoirHits();
+	}
+
+	/**
+	 * Select a fixed number of the hits of a query.
+	 *
+	 * @param searcher searcher object
+	 * @param query query to sample
+	 * @param number number of hits to select (if there are fewer hits, all are selected)
+	 * @param seed seed for the random generator, or HitsSample.RANDOM_SEED to use a randomly chosen seed
+	 * @param settings settings to use (e.g. maximum number of hits to count), or null for the searcher's defaults
+	 * @throws TooManyClauses if the query is overly broad (expands to too many terms)
+	 */
+	HitsSampleSpans(Searcher searcher, SpanQuery query, int number, long seed, HitsSettings settings) throws TooManyClauses {
+		super(searcher, number, seed);
+		checkNumber(number);
+		if (settings != null)
+			this.settings = new HitsSettings(settings, false);
+		startSampling(number);
+		sample(query);
+		addReservoirHits();
+		ratioOfHitsToSelect = hitsCounted == 0 ? 0 : (float)hits.size() / hitsCounted;
+	}
+
+	/**
+	 * Select a ratio of the hits of a query that have all been retrieved already.
+	 *
+	 * @param retrieved the query's hits, in the order they were retrieved
+	 * @param ratio ratio of hits to select, from 0 (none) to 1 (all)
+	 * @param seed seed for the random generator, or HitsSample.RANDOM_SEED to use a randomly chosen seed
+	 */
+	HitsSampleSpans(HitsImpl retrieved, float ratio, long seed) {
+		super(retrieved.getSearcher(), ratio, seed);
+		checkRatio(ratio);
+		startSampling(numberToSelect(retrieved.hits.size(), ratio));
+		sample(retrieved);
+		addReservoirHits();
+	}
+
+	/**
+	 * Select a fixed number of the hits of a query that have all been retrieved already.
+	 *
+	 * @param retrieved the query's hits, in the order they were retrieved
+	 * @param number number of hits to select (if there are fewer hits, all are selected)
+	 * @param seed seed for the random generator, or HitsSample.RANDOM_SEED to use a randomly chosen seed
+	 */
+	HitsSampleSpans(HitsImpl retrieved, int number, long seed) {
+		super(retrieved.getSearcher(), number, seed);
+		checkNumber(number);
+		startSampling(number);
+		sample(retrieved);
+		addReservoirHits();
+		ratioOfHitsToSelect = hitsCounted == 0 ? 0 : (float)hits.size() / hitsCounted;
+	}
+
+	private HitsSampleSpans(HitsSampleSpans copyFrom) {
+		super(copyFrom.searcher, copyFrom.hits, copyFrom.ratioOfHitsToSelect, copyFrom.seed);
+	}
+
+	@Override
+	public Hits copy() {
+		return new HitsSampleSpans(this);
+	}
+
+	/**
+	 * Get a random number in the range (0, 1].
+	 *
+	 * (we take logarithms of these, so we don't want 0)
+	 *
+	 * @return the random number
+	 */
+	private double nextUniform() {
+		return 1 - random.nextDouble();
+	}
+
+	private static void checkRatio(float ratio) {
+		if (ratio < 0 || ratio > 1)
+			throw new IllegalArgumentException("ratio must be in the range 0-1");
+	}
+
+	private static void checkNumber(int number) {
+		if (number < 0)
+			throw new IllegalArgumentException("number must be non-negative");
+	}
+
+	/**
+	 * Determine how many hits to select for a ratio.
+	 *
+	 * @param totalNumberOfHits total number of hits
+	 * @param ratio ratio of hits to select
+	 * @return number of hits to select (at least one if there are hits, unless ratio is 0)
+	 */
+	private static int numberToSelect(int totalNumberOfHits, float ratio) {
+		int number = Math.round(totalNumberOfHits * ratio);
+		if (number == 0 && totalNumberOfHits > 0 && ratio > 0)
+			number = 1;
+		return number;
+	}
+
+	/**
+	 * Count the hits of the query (up to maxHitsToCount).
+	 *
+	 * @param query the query
+	 * @return number of hits
+	 */
+	private int countHits(SpanQuery query) {
+		HitCount hitCount = searcher.countHits(query, settings.maxHitsToCount());
+		try {
+			hitCount.count();
+		} catch (InterruptedException e) {
+			// Sample from the hits we've counted (sampling will stop as well)
+			Thread.currentThread().interrupt();
+		}
+		return hitCount.countSoFarHitsCounted();
+	}
+
+	/**
+	 * Prepare the reservoir for selecting hits.
+	 *
+	 * @param number number of hits to select
+	 */
+	private void startSampling(int number) {
+		numberOfHitsToSelect = number;
+		reservoirDoc = new int[number];
+		reservoirStart = new int[number];
+		reservoirEnd = new int[number];
+		reservoirGroups = new Span[number][];
+		reservoirIndex = new int[number];
+		reservoirW = Math.exp(Math.log(nextUniform()) / number);
+		nextSelectedIndex = number == 0 ? Long.MAX_VALUE : 0;
+	}
+
+	/**
+	 * Go through all hits of the query and select the sample.
+	 *
+	 * @param query the query to sample from
+	 */
+	private void sample(SpanQuery query) {
+		int maxHitsToCount = settings.maxHitsToCount();
+		Span[] groups = null; // (reused for each hit we look at)
+		try {
+			IndexReader reader = searcher.getIndexReader();
+			SpanQuery spanQuery = (SpanQuery) query.rewrite(reader);
+			Map<Term, TermContext> termContexts = HitsImpl.buildTermContexts(reader, spanQuery, etiquette);
+			for (LeafReaderContext context: reader.leaves()) {
+				BLSpans spans = BLSpansWrapper.optWrapSortUniq(spanQuery.getSpans(context, context.reader().getLiveDocs(), termContexts));
+				if (spans == null)
+					continue;
+				hitQueryContext.setSpans(spans);
+				spans.setHitQueryContext(hitQueryContext); // let captured groups register themselves
+				if (hitQueryContext.numberOfCapturedGroups() > hits.numberOfCapturedGroups())
+					hits.setNumberOfCapturedGroups(hitQueryContext.numberOfCapturedGroups());
+				while (spans.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+					int hitDoc = spans.docID() + context.docBase;
+					while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
+						// Stop if we're at the maximum number of hits we want to count
+						if (maxHitsToCount >= 0 && hitsCounted >= maxHitsToCount) {
+							setMaxHitsCounted(true);
+							return;
+						}
+						if (hitsCounted % BEHAVE_INTERVAL == 0)
+							etiquette.behave();
+						if (hitDoc != previousHitDoc) {
+							docsCounted++;
+							previousHitDoc = hitDoc;
+						}
+						if (hitsCounted == nextSelectedIndex) {
+							// Select this hit
+							if (hits.hasCapturedGroups()) {
+								if (groups == null || groups.length != hits.numberOfCapturedGroups())
+									groups = new Span[hits.numberOfCapturedGroups()];
+								else
+									Arrays.fill(groups, null);
+								hitQueryContext.getCapturedGroups(groups);
+							}
+							addToReservoir(hitDoc, spans.startPosition(), spans.endPosition(), groups);
+						}
+						hitsCounted++;
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// Stop sampling (client can detect this)
+			setMaxHitsCounted(true);
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			throw ExUtil.wrapRuntimeException(e);
+		}
+	}
+
+	/**
+	 * Go through the retrieved hits of a query and select the sample.
+	 *
+	 * @param retrieved the hits to sample from
+	 */
+	private void sample(HitsImpl retrieved) {
+		HitsStore from = retrieved.hits;
+		if (from.hasCapturedGroups()) {
+			for (String name: retrieved.getCapturedGroupNames()) {
+				hitQueryContext.registerCapturedGroup(name);
+			}
+			hits.setNumberOfCapturedGroups(from.numberOfCapturedGroups());
+		}
+		setMaxHitsCounted(retrieved.maxHitsCounted());
+		int n = from.size();
+		for (int i = 0; i < n; i++) {
+			int hitDoc = from.doc(i);
+			if (hitDoc != previousHitDoc) {
+				docsCounted++;
+				previousHitDoc = hitDoc;
+			}
+			if (hitsCounted == nextSelectedIndex)
+				addToReservoir(hitDoc, from.start(i), from.end(i), from.getCapturedGroups(i));
+			hitsCounted++;
+		}
+	}
+
+	/**
+	 * Put the current hit in the reservoir and determine the next hit to select.
+	 *
+	 * Uses "Algorithm L" (Li, 1994): the reservoir is filled with the first hits,
+	 * after that we skip a random number of hits and replace a random hit
+	 * in the reservoir.
+	 *
+	 * @param hitDoc document id
+	 * @param start start of the hit
+	 * @param end end of the hit
+	 * @param groups captured groups, or null if none
+	 */
+	private void addToReservoir(int hitDoc, int start, int end, Span[] groups) {
+		int number = reservoirIndex.length;
+		int slot;
+		if (reservoirSize < number) {
+			slot = reservoirSize;
+			reservoirSize++;
+		} else {
+			slot = random.nextInt(number);
+		}
+		reservoirDoc[slot] = hitDoc;
+		reservoirStart[slot] = start;
+		reservoirEnd[slot] = end;
+		reservoirGroups[slot] = groups == null ? null : groups.clone();
+		reservoirIndex[slot] = hitsCounted;
+		if (reservoirSize < number) {
+			nextSelectedIndex = hitsCounted + 1;
+		} else {
+			if (hitsCounted + 1 > number) // (not the last hit of the initial fill)
+				reservoirW *= Math.exp(Math.log(nextUniform()) / number);
+			double skip = Math.floor(Math.log(nextUniform()) / Math.log(1 - reservoirW));
+			nextSelectedIndex = hitsCounted + 1 + (skip >= Long.MAX_VALUE / 2 ? Long.MAX_VALUE / 2 : (long) skip);
+		}
+	}
+
+	/**
+	 * Add the hits in the reservoir to our hits, in their original order.
+	 */
+	private void addReservoirHits() {
+		int[] order = new int[reservoirSize];
+		for (int i = 0; i < reservoirSize; i++) {
+			order[i] = i;
+		}
+		ParallelMergeSort.sort(order, new IntComparator() {
+			@Override
+			public int compare(int a, int b) {
+				return Integer.compare(reservoirIndex[a], reservoirIndex[b]);
+			}
+		});
+		int prevDoc = -1;
+		for (int i: order) {
+			if (reservoirDoc[i] != prevDoc) {
+				docsRetrieved++;
+				prevDoc = reservoirDoc[i];
+			}
+			hits.add(reservoirDoc[i], reservoirStart[i], reservoirEnd[i], reservoirGroups[i]);
+		}
+		reservoirDoc = reservoirStart = reservoirEnd = reservoirIndex = null;
+		reservoirGroups = null;
+	}
+
+}
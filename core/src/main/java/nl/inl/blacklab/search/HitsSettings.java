@@ -36,6 +36,9 @@ public class HitsSettings {
 	/** Our desired context size */
 	private int desiredContextSize;
 
+	/** Retrieve hits from the index segments in parallel when reading all hits? */
+	private boolean parallelRetrieval;
+
 	@SuppressWarnings("deprecation")
 	public HitsSettings(HitsSettings defaults, boolean staticHitsFieldsOverrideDefaults) {
 		concordanceFieldName = defaults.concordanceFieldName;
@@ -46,6 +49,7 @@ public class HitsSettings {
 		concPunctProps = defaults.concPunctProps;
 		concAttrProps = defaults.concAttrProps;
 		desiredContextSize = defaults.desiredContextSize;
+		parallelRetrieval = defaults.parallelRetrieval;
 	}
 
 	public HitsSettings() {
@@ -57,6 +61,7 @@ public class HitsSettings {
 		concPunctProps = Searcher.DEFAULT_CONC_PUNCT_PROP;
 		concAttrProps = Searcher.DEFAULT_CONC_ATTR_PROP;
 		desiredContextSize = Searcher.DEFAULT_CONTEXT_SIZE;
+		parallelRetrieval = Searcher.DEFAULT_PARALLEL_RETRIEVAL;
 	}
 
 	/** @return the maximum number of hits to retrieve. */
@@ -161,4 +166,28 @@ public class HitsSettings {
 		desiredContextSize = n;
 	}
 
+	/**
+	 * Are hits retrieved from the index segments in parallel?
+	 *
+	 * @return true iff parallel retrieval is enabled
+	 */
+	public boolean parallelRetrieval() {
+		return parallelRetrieval;
+	}
+
+	/**
+	 * Retrieve hits from the index segments in parallel?
+	 *
+	 * If enabled, reading all hits (e.g. for sorting, grouping or counting) runs
+	 * the query on each segment in parallel (using Searcher.getHitRetrievalPool())
+	 * and merges the results in index order, so the hits, their order and the
+	 * maxHitsToRetrieve/maxHitsToCount limits are the same as with sequential
+	 * retrieval. Retrieving only the first few hits is still done sequentially.
+	 *
+	 * @param parallelRetrieval true to enable parallel retrieval
+	 */
+	public void setParallelRetrieval(boolean parallelRetrieval) {
+		this.parallelRetrieval = parallelRetrieval;
+	}
+
 }
@@ -0,0 +1,351 @@
+package nl.inl.blacklab.search;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+
+import nl.inl.util.MemoryUtil;
+
+/**
+ * Columnar storage for a list of hits.
+ *
+ * Hits are stored in int arrays (one each for doc, start and end), and captured
+ * groups in a single flat int array (start and end of each group, for each hit).
+ * This uses far less memory than a list of Hit objects with a map of captured
+ * groups. Hit and Span objects are only instantiated when requested.
+ *
+ * Hits can only be appended. Reading while another thread is appending is safe
+ * for hits with an index lower than size().
+ */
+public class HitsStore {
+
+	/** Initial capacity if none was specified */
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/** Value stored for the start and end of a captured group that didn't match */
+	private static final int NO_GROUP = -1;
+
+	/** Document ids */
+	private int[] doc;
+
+	/** Hit starts */
+	private int[] start;
+
+	/** Hit ends */
+	private int[] end;
+
+	/** Number of captured groups per hit */
+	private int numberOfCapturedGroups;
+
+	/** Captured groups: for each hit, the start and end of each captured group */
+	private int[] capturedGroups;
+
+	/** Number of hits stored */
+	private volatile int size = 0;
+
+	/** Are the hits in ascending (doc, start, end) order? (enables binary search) */
+	private boolean sorted = true;
+
+	/** Index of hit positions, if we're not sorted and indexOf() was called */
+	private ObjectIntHashMap<Hit> hitIndex;
+
+	/**
+	 * Create an empty store without captured groups.
+	 */
+	public HitsStore() {
+		this(0, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create an empty store.
+	 *
+	 * @param numberOfCapturedGroups number of captured groups per hit
+	 * @param capacity initial capacity
+	 */
+	public HitsStore(int numberOfCapturedGroups, int capacity) {
+		if (capacity < 1)
+			capacity = 1;
+		doc = new int[capacity];
+		start = new int[capacity];
+		end = new int[capacity];
+		setNumberOfCapturedGroups(numberOfCapturedGroups);
+	}
+
+	/**
+	 * Create a store containing the specified hits (without captured groups).
+	 *
+	 * @param hits the hits to store
+	 */
+	public HitsStore(List<Hit> hits) {
+		this(0, hits.size());
+		for (Hit hit: hits) {
+			add(hit.doc, hit.start, hit.end);
+		}
+	}
+
+	/**
+	 * Set the number of captured groups per hit.
+	 *
+	 * Hits already stored get empty groups (like captured groups that didn't match).
+	 * Hits can only gain captured groups, not lose them.
+	 *
+	 * @param numberOfCapturedGroups number of captured groups per hit
+	 */
+	public synchronized void setNumberOfCapturedGroups(int numberOfCapturedGroups) {
+		if (numberOfCapturedGroups == this.numberOfCapturedGroups)
+			return;
+		if (size > 0 && numberOfCapturedGroups < this.numberOfCapturedGroups)
+			throw new IllegalStateException("Cannot remove captured groups from non-empty HitsStore");
+		int[] newCapturedGroups = new int[doc.length * numberOfCapturedGroups * 2];
+		int oldPerHit = this.numberOfCapturedGroups * 2, newPerHit = numberOfCapturedGroups * 2;
+		for (int i = 0; i < size; i++) {
+			if (oldPerHit > 0)
+				System.arraycopy(capturedGroups, i * oldPerHit, newCapturedGroups, i * newPerHit, oldPerHit);
+			Arrays.fill(newCapturedGroups, i * newPerHit + oldPerHit, (i + 1) * newPerHit, NO_GROUP);
+		}
+		capturedGroups = newCapturedGroups.length == 0 ? null : newCapturedGroups;
+		this.numberOfCapturedGroups = numberOfCapturedGroups;
+	}
+
+	/**
+	 * @return the number of captured groups per hit
+	 */
+	public int numberOfCapturedGroups() {
+		return numberOfCapturedGroups;
+	}
+
+	/**
+	 * @return true iff we store captured groups
+	 */
+	public boolean hasCapturedGroups() {
+		return numberOfCapturedGroups > 0;
+	}
+
+	/**
+	 * @return the number of hits stored
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true iff no hits are stored
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int doc(int i) {
+		return doc[i];
+	}
+
+	public int start(int i) {
+		return start[i];
+	}
+
+	public int end(int i) {
+		return end[i];
+	}
+
+	/**
+	 * Instantiate a Hit object for a stored hit.
+	 *
+	 * @param i hit index
+	 * @return the hit
+	 */
+	public Hit get(int i) {
+		return new Hit(doc[i], start[i], end[i]);
+	}
+
+	/**
+	 * Instantiate the captured groups for a stored hit.
+	 *
+	 * @param i hit index
+	 * @return the captured groups (null for groups that didn't match), or null if
+	 *   we don't store captured groups
+	 */
+	public synchronized Span[] getCapturedGroups(int i) {
+		if (numberOfCapturedGroups == 0)
+			return null;
+		Span[] result = new Span[numberOfCapturedGroups];
+		int offset = i * numberOfCapturedGroups * 2;
+		for (int j = 0; j < numberOfCapturedGroups; j++, offset += 2) {
+			if (capturedGroups[offset] != NO_GROUP)
+				result[j] = new Span(capturedGroups[offset], capturedGroups[offset + 1]);
+		}
+		return result;
+	}
+
+	/**
+	 * Add a hit.
+	 *
+	 * @param hitDoc document id
+	 * @param hitStart hit start
+	 * @param hitEnd hit end
+	 */
+	public void add(int hitDoc, int hitStart, int hitEnd) {
+		add(hitDoc, hitStart, hitEnd, null);
+	}
+
+	/**
+	 * Add a hit.
+	 *
+	 * @param hit the hit to add
+	 */
+	public void add(Hit hit) {
+		add(hit.doc, hit.start, hit.end, null);
+	}
+
+	/**
+	 * Add a hit with its captured groups.
+	 *
+	 * @param hitDoc document id
+	 * @param hitStart hit start
+	 * @param hitEnd hit end
+	 * @param groups captured groups, or null if none (ignored if we don't store captured groups)
+	 */
+	public synchronized void add(int hitDoc, int hitStart, int hitEnd, Span[] groups) {
+		int i = appendPosition(hitDoc, hitStart, hitEnd);
+		if (numberOfCapturedGroups > 0) {
+			int offset = i * numberOfCapturedGroups * 2;
+			for (int j = 0; j < numberOfCapturedGroups; j++, offset += 2) {
+				Span group = groups == null || j >= groups.length ? null : groups[j];
+				capturedGroups[offset] = group == null ? NO_GROUP : group.start;
+				capturedGroups[offset + 1] = group == null ? NO_GROUP : group.end;
+			}
+		}
+		size = i + 1; // (volatile write publishes the new hit to readers)
+	}
+
+	/**
+	 * Copy a hit (and its captured groups, if we both store them) from another store.
+	 *
+	 * @param source store to copy from
+	 * @param i index of the hit in the source store
+	 */
+	public synchronized void add(HitsStore source, int i) {
+		if (numberOfCapturedGroups == 0 || source.numberOfCapturedGroups != numberOfCapturedGroups) {
+			Span[] groups = numberOfCapturedGroups == 0 ? null : source.getCapturedGroups(i);
+			add(source.doc[i], source.start[i], source.end[i], groups);
+			return;
+		}
+		// Copy the captured groups directly, without instantiating Span objects
+		int n = appendPosition(source.doc[i], source.start[i], source.end[i]);
+		int perHit = numberOfCapturedGroups * 2;
+		System.arraycopy(source.capturedGroups, i * perHit, capturedGroups, n * perHit, perHit);
+		size = n + 1; // (volatile write publishes the new hit to readers)
+	}
+
+	/**
+	 * Store the position of a new hit, but don't increment size yet.
+	 *
+	 * NOTE: not synchronized because only ever called from synchronized methods!
+	 *
+	 * @param hitDoc document id
+	 * @param hitStart hit start
+	 * @param hitEnd hit end
+	 * @return index of the new hit
+	 */
+	private int appendPosition(int hitDoc, int hitStart, int hitEnd) {
+		int i = size;
+		ensureCapacity(i + 1);
+		if (sorted && i > 0) {
+			int prev = i - 1;
+			sorted = doc[prev] < hitDoc || doc[prev] == hitDoc && (start[prev] < hitStart || start[prev] == hitStart && end[prev] < hitEnd);
+		}
+		doc[i] = hitDoc;
+		start[i] = hitStart;
+		end[i] = hitEnd;
+		if (hitIndex != null) {
+			Hit hit = new Hit(hitDoc, hitStart, hitEnd);
+			if (!hitIndex.containsKey(hit))
+				hitIndex.put(hit, i);
+		}
+		return i;
+	}
+
+	/**
+	 * Find the index of a hit.
+	 *
+	 * If the hits are in strictly ascending order, we use binary search (there are no
+	 * duplicate hits in that case). Otherwise, we build an index of the hits, in which
+	 * the first occurrence of each hit is recorded.
+	 *
+	 * @param hit the hit to look for
+	 * @return the index of the first occurrence of the hit, or -1 if not found
+	 */
+	public synchronized int indexOf(Hit hit) {
+		if (sorted) {
+			// Binary search (hits are unique because they are strictly ascending)
+			int low = 0, high = size - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = doc[mid] != hit.doc ? doc[mid] - hit.doc : (start[mid] != hit.start ? start[mid] - hit.start : end[mid] - hit.end);
+				if (cmp < 0)
+					low = mid + 1;
+				else if (cmp > 0)
+					high = mid - 1;
+				else
+					return mid;
+			}
+			return -1;
+		}
+		if (hitIndex == null) {
+			hitIndex = new ObjectIntHashMap<>(size);
+			for (int i = size - 1; i >= 0; i--) {
+				hitIndex.put(new Hit(doc[i], start[i], end[i]), i);
+			}
+		}
+		return hitIndex.getIfAbsent(hit, -1);
+	}
+
+	/**
+	 * Make sure we can store at least the specified number of hits.
+	 *
+	 * @param capacity the required capacity
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity <= doc.length)
+			return;
+		int newCapacity = Math.max(capacity, doc.length + (doc.length >> 1));
+		doc = Arrays.copyOf(doc, newCapacity);
+		start = Arrays.copyOf(start, newCapacity);
+		end = Arrays.copyOf(end, newCapacity);
+		if (capturedGroups != null)
+			capturedGroups = Arrays.copyOf(capturedGroups, newCapacity * numberOfCapturedGroups * 2);
+	}
+
+	/**
+	 * Release unused capacity.
+	 */
+	public synchronized void trimToSize() {
+		int n = Math.max(size, 1);
+		if (n == doc.length)
+			return;
+		doc = Arrays.copyOf(doc, n);
+		start = Arrays.copyOf(start, n);
+		end = Arrays.copyOf(end, n);
+		if (capturedGroups != null)
+			capturedGroups = Arrays.copyOf(capturedGroups, n * numberOfCapturedGroups * 2);
+	}
+
+	/**
+	 * Returns the memory footprint of this store.
+	 *
+	 * Includes unused capacity and the hit index (if it was built).
+	 *
+	 * @return the footprint in bytes
+	 */
+	public long estimateSizeBytes() {
+		long bytes = MemoryUtil.align(MemoryUtil.BYTES_PER_OBJECT_HEADER + 5 * MemoryUtil.BYTES_PER_REFERENCE + 3 * 4 + 1);
+		bytes += MemoryUtil.sizeBytes(doc) + MemoryUtil.sizeBytes(start) + MemoryUtil.sizeBytes(end) + MemoryUtil.sizeBytes(capturedGroups);
+		if (hitIndex != null) {
+			// Each entry: a Hit object plus a key reference and int value in the hash table
+			long hitObjectBytes = MemoryUtil.align(MemoryUtil.BYTES_PER_OBJECT_HEADER + 3 * 4);
+			bytes += hitIndex.size() * (hitObjectBytes + 2 * (MemoryUtil.BYTES_PER_REFERENCE + 4));
+		}
+		return bytes;
+	}
+
+}
@@ -15,8 +15,6 @@
  *******************************************************************************/
 package nl.inl.blacklab.search;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -73,15 +71,20 @@ public class HitsWindow extends HitsImpl {
 			number = source.size() - first;
 
 		// Copy the hits we're interested in.
-		hits = new ArrayList<>();
-		if (source.hasCapturedGroups())
-			capturedGroups = new HashMap<>();
-		for (int i = first; i < first + number; i++) {
-			Hit hit = source.get(i);
-			hits.add(hit);
-			if (capturedGroups != null)
-				capturedGroups.put(hit, source.getCapturedGroups(hit));
-			// OPT: copy context as well..?
+		if (source instanceof HitsImpl) {
+			// Copy directly from the source's store, without instantiating Hit objects
+			HitsImpl sourceImpl = (HitsImpl)source;
+			hits = new HitsStore(sourceImpl.hits.numberOfCapturedGroups(), number);
+			for (int i = first; i < first + number; i++) {
+				hits.add(sourceImpl.hits, sourceImpl.indexInStore(i));
+				// OPT: copy context as well..?
+			}
+		} else {
+			hits = new HitsStore(source.hasCapturedGroups() ? source.getCapturedGroupNames().size() : 0, number);
+			for (int i = first; i < first + number; i++) {
+				Hit hit = source.get(i);
+				hits.add(hit.doc, hit.start, hit.end, source.getCapturedGroups(hit));
+			}
 		}
 
 		copySettingsFrom(source); // type of concordances to make, etc.
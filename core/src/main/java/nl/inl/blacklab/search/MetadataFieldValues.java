@@ -0,0 +1,141 @@
+package nl.inl.blacklab.search;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Reads the value of a metadata field for documents.
+ *
+ * The indexer stores the (first) value of each metadata field as SortedDocValues.
+ * Reading those is much faster than reading the stored field, which means
+ * decompressing the whole stored document. For older indexes (or documents whose
+ * value couldn't be stored as DocValues), we fall back to the stored field.
+ *
+ * Threadsafe: Lucene gives each thread its own DocValues instance.
+ */
+public class MetadataFieldValues {
+
+	/** Maximum length of a value in bytes that can be stored as DocValues */
+	public static final int MAX_DOC_VALUES_LENGTH = 32766;
+
+	private final IndexReader reader;
+
+	private final List<LeafReaderContext> leaves;
+
+	private final String fieldName;
+
+	/** Only load this field when falling back to the stored document */
+	private final Set<String> fieldsToLoad;
+
+	/** Does any segment have DocValues for this field? */
+	private final boolean hasDocValues;
+
+	/**
+	 * Construct a value reader for a metadata field.
+	 *
+	 * @param reader the index reader
+	 * @param fieldName the metadata field
+	 */
+	public MetadataFieldValues(IndexReader reader, String fieldName) {
+		this.reader = reader;
+		this.leaves = reader.leaves();
+		this.fieldName = fieldName;
+		fieldsToLoad = Collections.singleton(fieldName);
+		boolean anyDocValues = false;
+		for (LeafReaderContext leaf: leaves) {
+			if (hasSortedDocValues(leaf.reader())) {
+				anyDocValues = true;
+				break;
+			}
+		}
+		hasDocValues = anyDocValues;
+	}
+
+	/**
+	 * @return the index reader we read values from
+	 */
+	public IndexReader getIndexReader() {
+		return reader;
+	}
+
+	/**
+	 * @return the field we read values for
+	 */
+	public String getFieldName() {
+		return fieldName;
+	}
+
+	/**
+	 * Can we read (some of) the values from DocValues, or do we always have to
+	 * fall back to the stored field?
+	 *
+	 * @return true iff (part of) the index has DocValues for this field
+	 */
+	public boolean hasDocValues() {
+		return hasDocValues;
+	}
+
+	/**
+	 * Get the DocValues for this field in a segment.
+	 *
+	 * Allows callers to work with per-segment ordinals. Documents without a value
+	 * (ordinal -1) should be looked up using get().
+	 *
+	 * @param leafReader the segment
+	 * @return the DocValues, or null if the segment has none for this field
+	 */
+	public SortedDocValues getSegmentDocValues(LeafReader leafReader) {
+		try {
+			if (!hasDocValues || !hasSortedDocValues(leafReader))
+				return null;
+			return leafReader.getSortedDocValues(fieldName);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private boolean hasSortedDocValues(LeafReader leafReader) {
+		FieldInfo fi = leafReader.getFieldInfos().fieldInfo(fieldName);
+		return fi != null && fi.getDocValuesType() == DocValuesType.SORTED;
+	}
+
+	/**
+	 * Get the (first) value of the field for a document.
+	 *
+	 * @param docId the document id
+	 * @return the value, or null if the document doesn't have a value for the field
+	 */
+	public String get(int docId) {
+		try {
+			if (hasDocValues) {
+				LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+				if (hasSortedDocValues(leaf.reader())) {
+					SortedDocValues values = leaf.reader().getSortedDocValues(fieldName);
+					int ord = values.getOrd(docId - leaf.docBase);
+					if (ord >= 0) {
+						BytesRef value = values.lookupOrd(ord);
+						return value.utf8ToString();
+					}
+					// No DocValue. Either the field is missing, or the document was indexed
+					// before we wrote DocValues (index was appended to and segments were merged),
+					// or the value was too long. Check the stored field to be sure.
+				}
+			}
+			return reader.document(docId, fieldsToLoad).get(fieldName);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
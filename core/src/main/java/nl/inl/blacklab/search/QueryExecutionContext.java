@@ -76,15 +76,25 @@ public class QueryExecutionContext {
 	}
 
 	public String optDesensitize(String value) {
+		String[] parts = ComplexFieldUtil.getNameComponents(luceneField());
+		String alt = parts.length >= 3 ? parts[2] : "";
+		return desensitize(value, alt);
+	}
+
+	/**
+	 * Desensitize a value the way it was indexed in the specified alternative.
+	 *
+	 * @param value the value to desensitize
+	 * @param alt the alternative name (e.g. "s", "i", "ci" or "di")
+	 * @return the desensitized value
+	 */
+	public static String desensitize(String value, String alt) {
 
 		final String s = ComplexFieldUtil.SENSITIVE_ALT_NAME;
 		final String i = ComplexFieldUtil.INSENSITIVE_ALT_NAME;
 		final String ci = ComplexFieldUtil.CASE_INSENSITIVE_ALT_NAME;
 		final String di = ComplexFieldUtil.DIACRITICS_INSENSITIVE_ALT_NAME;
 
-		String[] parts = ComplexFieldUtil.getNameComponents(luceneField());
-
-		String alt = parts.length >= 3 ? parts[2] : "";
 		if (alt.equals(s)) {
 			// Don't desensitize
 			return value;
@@ -274,6 +284,14 @@ public class QueryExecutionContext {
 		return searcher.getIndexStructure().tagLengthInPayload();
 	}
 
+	/**
+	 * The searcher we're executing the query with
+	 * @return the searcher
+	 */
+	public Searcher getSearcher() {
+		return searcher;
+	}
+
 	/**
 	 * The (complex) field to search
 	 * @return field name
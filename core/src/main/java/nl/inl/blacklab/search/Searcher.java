@@ -16,6 +16,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
@@ -41,6 +42,7 @@ import nl.inl.blacklab.analysis.BLStandardAnalyzer;
 import nl.inl.blacklab.analysis.BLWhitespaceAnalyzer;
 import nl.inl.blacklab.externalstorage.ContentStore;
 import nl.inl.blacklab.externalstorage.ContentStoresManager;
+import nl.inl.blacklab.forwardindex.CharOffsetStore;
 import nl.inl.blacklab.forwardindex.ForwardIndex;
 import nl.inl.blacklab.forwardindex.Terms;
 import nl.inl.blacklab.highlight.XmlHighlighter;
@@ -50,6 +52,7 @@ import nl.inl.blacklab.index.complex.ComplexFieldUtil;
 import nl.inl.blacklab.perdocument.DocResults;
 import nl.inl.blacklab.search.indexstructure.IndexStructure;
 import nl.inl.blacklab.search.lucene.SpanQueryFiltered;
+import nl.inl.blacklab.search.lucene.SpanQueryPlanner;
 import nl.inl.blacklab.search.lucene.TextPatternTranslatorSpanQuery;
 import nl.inl.util.VersionFile;
 
@@ -77,9 +80,18 @@ public abstract class Searcher {
 
 	public static final int DEFAULT_CONTEXT_SIZE = 5;
 
+	/** Retrieve hits from index segments in parallel by default? */
+	public static final boolean DEFAULT_PARALLEL_RETRIEVAL = false;
+
 	/** The collator to use for sorting. Defaults to English collator. */
 	protected static Collator defaultCollator = Collator.getInstance(new Locale("en", "GB"));
 
+	/** Memory-map the terms files of forward indices instead of loading them onto the heap? */
+	private static boolean defaultMemoryMappedTerms = false;
+
+	/** Default pool for retrieving hits from index segments in parallel (created when first needed) */
+	private static ForkJoinPool defaultHitRetrievalPool;
+
 	/** Analyzer based on WhitespaceTokenizer */
 	final protected static Analyzer whitespaceAnalyzer = new BLWhitespaceAnalyzer();
 
@@ -248,6 +260,23 @@ public abstract class Searcher {
 		Searcher.defaultCollator = defaultCollator;
 	}
 
+	public static boolean isDefaultMemoryMappedTerms() {
+		return defaultMemoryMappedTerms;
+	}
+
+	/**
+	 * Memory-map the terms files of forward indices opened from now on,
+	 * instead of loading the terms onto the heap?
+	 *
+	 * Saves a lot of memory and makes opening large indices faster, at the
+	 * cost of somewhat slower term lookups. Only applies in search mode.
+	 *
+	 * @param defaultMemoryMappedTerms true to memory-map the terms files
+	 */
+	public static void setDefaultMemoryMappedTerms(boolean defaultMemoryMappedTerms) {
+		Searcher.defaultMemoryMappedTerms = defaultMemoryMappedTerms;
+	}
+
 	/**
 	 * Return a timestamp for when BlackLab was built.
 	 *
@@ -322,6 +351,15 @@ public abstract class Searcher {
 	 */
 	protected Map<String, ForwardIndex> forwardIndices = new HashMap<>();
 
+	/**
+	 * Character offset stores, which allow us to quickly translate word positions to
+	 * character positions. Stored alongside the forward index of a complex field's
+	 * main property.
+	 *
+	 * Indexed by property name (null if there is no store for this property).
+	 */
+	protected Map<String, CharOffsetStore> charOffsetStores = new HashMap<>();
+
 	protected HitsSettings hitsSettings;
 
 	/**
@@ -335,10 +373,44 @@ public abstract class Searcher {
 		return hitsSettings;
 	}
 
+	/** Pool to use for parallel hit retrieval, or null to use the shared default pool */
+	private ForkJoinPool hitRetrievalPool;
+
 	public Searcher() {
 		hitsSettings = new HitsSettings();
 	}
 
+	/**
+	 * Get the pool used to retrieve hits from the index segments in parallel.
+	 *
+	 * Also used to sort large numbers of hits in parallel.
+	 *
+	 * Unless a specific pool was set, all Searchers share a single pool with
+	 * one worker thread per processor.
+	 *
+	 * @return the pool
+	 */
+	public ForkJoinPool getHitRetrievalPool() {
+		if (hitRetrievalPool != null)
+			return hitRetrievalPool;
+		synchronized (Searcher.class) {
+			if (defaultHitRetrievalPool == null)
+				defaultHitRetrievalPool = new ForkJoinPool();
+			return defaultHitRetrievalPool;
+		}
+	}
+
+	/**
+	 * Set the pool to use to retrieve hits from the index segments in parallel.
+	 *
+	 * Parallel retrieval must be enabled using hitsSettings().setParallelRetrieval().
+	 *
+	 * @param pool the pool to use, or null to use the shared default pool
+	 */
+	public void setHitRetrievalPool(ForkJoinPool pool) {
+		hitRetrievalPool = pool;
+	}
+
 //	/**
 //	 * Stop retrieving hits after this number.
 //	 * (HitsSettings.UNLIMITED = don't stop retrieving)
@@ -527,6 +599,35 @@ public abstract class Searcher {
 	 */
 	public abstract void rollback();
 
+	/**
+	 * Open a new view of the index that includes the changes made since this
+	 * Searcher was opened (e.g. documents that were added).
+	 *
+	 * Only works in search mode. Only what was added to the forward indices is read,
+	 * and the settings of this Searcher are copied to the new one. This Searcher is
+	 * not changed, so searches that are still running can finish using it; close it
+	 * when they're done.
+	 *
+	 * @return the new Searcher, or this Searcher if the index hasn't changed
+	 */
+	public abstract Searcher reopen();
+
+	/**
+	 * Copy the settings of another Searcher (used when opening a new view of an index).
+	 *
+	 * @param other the Searcher to copy the settings from
+	 */
+	protected void copySettings(Searcher other) {
+		collator = other.collator;
+		analyzer = other.analyzer;
+		hitsSettings = new HitsSettings(other.hitsSettings, false);
+		hitRetrievalPool = other.hitRetrievalPool;
+		defaultCaseSensitive = other.defaultCaseSensitive;
+		defaultDiacriticsSensitive = other.defaultDiacriticsSensitive;
+		defaultUnbalancedTagsStrategy = other.defaultUnbalancedTagsStrategy;
+		indexMode = other.indexMode;
+	}
+
 	/**
 	 * Finalize the Searcher object. This closes the IndexSearcher and (depending on the constructor
 	 * used) may also close the index reader.
@@ -539,6 +640,12 @@ public abstract class Searcher {
 			fi.close();
 		}
 
+		// Close the character offset stores
+		for (CharOffsetStore store: charOffsetStores.values()) {
+			if (store != null)
+				store.close();
+		}
+
 	}
 
 	/**
@@ -747,6 +854,55 @@ public abstract class Searcher {
 		return find(pattern, getMainContentsFieldName(), null);
 	}
 
+	/**
+	 * Prepare to count hits and documents for a query, without retrieving the hits.
+	 *
+	 * Call count() on the result to do the actual counting.
+	 *
+	 * @param query
+	 *            the pattern to count
+	 * @param maxHitsToCount
+	 *            stop counting after this many hits (-1 for no limit)
+	 * @return the hit count object
+	 * @throws BooleanQuery.TooManyClauses
+	 *             if a wildcard or regular expression term is overly broad
+	 */
+	public HitCount countHits(SpanQuery query, int maxHitsToCount) throws BooleanQuery.TooManyClauses {
+		return new HitCount(this, query, maxHitsToCount);
+	}
+
+	/**
+	 * Prepare to count hits and documents for a query, without retrieving the hits.
+	 *
+	 * Uses the default maximum number of hits to count.
+	 * Call count() on the result to do the actual counting.
+	 *
+	 * @param query
+	 *            the pattern to count
+	 * @return the hit count object
+	 * @throws BooleanQuery.TooManyClauses
+	 *             if a wildcard or regular expression term is overly broad
+	 */
+	public HitCount countHits(SpanQuery query) throws BooleanQuery.TooManyClauses {
+		return countHits(query, hitsSettings().maxHitsToCount());
+	}
+
+	/**
+	 * Describe how a query will be executed.
+	 *
+	 * Shows the rewritten query as a tree, with the estimated number of hits
+	 * for each clause (based on term statistics from the index).
+	 *
+	 * @param query
+	 *            the query to explain
+	 * @return a multi-line description of the query plan
+	 * @throws BooleanQuery.TooManyClauses
+	 *             if a wildcard or regular expression term is overly broad
+	 */
+	public String explain(SpanQuery query) throws BooleanQuery.TooManyClauses {
+		return new SpanQueryPlanner(getIndexReader()).explain(query);
+	}
+
 	/**
 	 * Find matching documents and their scores for a pattern.
 	 *
@@ -822,12 +978,11 @@ public abstract class Searcher {
 	 * @return the field content
 	 */
 	public String getContentByCharPos(int docId, String fieldName, int startAtChar, int endAtChar) {
-		Document d = document(docId);
 		if (!contentStores.exists(fieldName)) {
 			// No special content accessor set; assume a stored field
-			return d.get(fieldName).substring(startAtChar, endAtChar);
+			return document(docId).get(fieldName).substring(startAtChar, endAtChar);
 		}
-		return contentStores.getSubstrings(fieldName, d, new int[] { startAtChar }, new int[] { endAtChar })[0];
+		return contentStores.getSubstringsFromLuceneDoc(fieldName, docId, new int[] { startAtChar }, new int[] { endAtChar })[0];
 	}
 
 	/**
@@ -845,17 +1000,16 @@ public abstract class Searcher {
 	 * @return the field content
 	 */
 	public String getContent(int docId, String fieldName, int startAtWord, int endAtWord) {
-		Document d = document(docId);
 		if (!contentStores.exists(fieldName)) {
 			// No special content accessor set; assume a stored field
-			String content = d.get(fieldName);
+			String content = document(docId).get(fieldName);
 			if (content == null)
 				throw new IllegalArgumentException("Field not found: " + fieldName);
 			return getWordsFromString(content, startAtWord, endAtWord);
 		}
 
 		int[] startEnd = startEndWordToCharPos(docId, fieldName, startAtWord, endAtWord);
-		return contentStores.getSubstrings(fieldName, d, new int[] { startEnd[0] }, new int[] { startEnd[1] })[0];
+		return contentStores.getSubstringsFromLuceneDoc(fieldName, docId, new int[] { startEnd[0] }, new int[] { startEnd[1] })[0];
 	}
 
 	/**
@@ -1069,7 +1223,7 @@ public abstract class Searcher {
 	 * @param fieldName the field name
 	 * @return the content store, or null if there is no content store for this field
 	 */
-	public ContentStore getContentStore(String fieldName) {
+	public synchronized ContentStore getContentStore(String fieldName) {
 		ContentStore cs = contentStores.get(fieldName);
 		if (indexMode && cs == null) {
 			// Index mode. Create new content store or open existing one.
@@ -1110,7 +1264,7 @@ public abstract class Searcher {
 	 *            the field for which we want the forward index
 	 * @return the ForwardIndex if found/created, or null otherwise
 	 */
-	public ForwardIndex getForwardIndex(String fieldPropName) {
+	public synchronized ForwardIndex getForwardIndex(String fieldPropName) {
 		ForwardIndex forwardIndex = forwardIndices.get(fieldPropName);
 		if (forwardIndex == null) {
 			forwardIndex = openForwardIndex(fieldPropName);
@@ -1126,14 +1280,30 @@ public abstract class Searcher {
 
 	protected abstract ForwardIndex openForwardIndex(String fieldPropName);
 
+	/**
+	 * Get the character offset store for a complex field's main property.
+	 *
+	 * @param fieldPropName
+	 *            the main property field, e.g. "contents%word"
+	 * @return the store, or null if there is none (e.g. indexes created with older
+	 *   versions of BlackLab)
+	 */
+	public synchronized CharOffsetStore getCharOffsetStore(String fieldPropName) {
+		if (!charOffsetStores.containsKey(fieldPropName))
+			charOffsetStores.put(fieldPropName, openCharOffsetStore(fieldPropName));
+		return charOffsetStores.get(fieldPropName);
+	}
+
+	protected abstract CharOffsetStore openCharOffsetStore(String fieldPropName);
+
 	/**
 	 * Get a number of substrings from a certain field in a certain document.
 	 *
 	 * For larger documents, this is faster than retrieving the whole content first and then cutting
 	 * substrings from that.
 	 *
-	 * @param d
-	 *            the document
+	 * @param docId
+	 *            the Lucene document id
 	 * @param fieldName
 	 *            the field
 	 * @param starts
@@ -1142,14 +1312,14 @@ public abstract class Searcher {
 	 *            end positions of the substring we want; correspond to the starts array.
 	 * @return the substrings
 	 */
-	private String[] getSubstringsFromDocument(Document d, String fieldName, int[] starts,
+	private String[] getSubstringsFromDocument(int docId, String fieldName, int[] starts,
 			int[] ends) {
 		if (!contentStores.exists(fieldName)) {
 			String[] content;
 			// No special content accessor set; assume a non-complex stored field
 			// TODO: check with index structure?
 			String luceneName = fieldName; // <- non-complex, so this works
-			String fieldContent = d.get(luceneName);
+			String fieldContent = document(docId).get(luceneName);
 			content = new String[starts.length];
 			for (int i = 0; i < starts.length; i++) {
 				content[i] = fieldContent.substring(starts[i], ends[i]);
@@ -1157,7 +1327,7 @@ public abstract class Searcher {
 			return content;
 		}
 		// Content accessor set. Use it to retrieve the content.
-		return contentStores.getSubstrings(fieldName, d, starts, ends);
+		return contentStores.getSubstringsFromLuceneDoc(fieldName, docId, starts, ends);
 	}
 
 	/**
@@ -1195,8 +1365,7 @@ public abstract class Searcher {
 		}
 
 		// Retrieve 'em all
-		Document d = document(doc);
-		String[] content = getSubstringsFromDocument(d, fieldName, starts, ends);
+		String[] content = getSubstringsFromDocument(doc, fieldName, starts, ends);
 
 		// Cut 'em up
 		List<Concordance> rv = new ArrayList<>();
@@ -1453,7 +1622,8 @@ public abstract class Searcher {
 	 * @param propName property name, i.e. word, lemma, pos, etc.
 	 * @param altName alternative name, i.e. s, i (case-sensitivity)
 	 * @return the term frequency map
-	 * @deprecated Use Searcher.getIndexSearcher() and LuceneUtil.termFrequencies instead
+	 * @deprecated Use TermFrequencyCounter instead (or Searcher.getIndexSearcher() and
+	 *   LuceneUtil.termFrequencies if the property has no forward index)
 	 */
 	@Deprecated
 	public abstract Map<String, Integer> termFrequencies(Query documentFilterQuery, String fieldName, String propName, String altName);
@@ -56,6 +56,7 @@ import org.apache.lucene.store.LockObtainFailedException;
 import org.apache.lucene.util.Bits;
 import nl.inl.blacklab.analysis.BLDutchAnalyzer;
 import nl.inl.blacklab.externalstorage.ContentStore;
+import nl.inl.blacklab.forwardindex.CharOffsetStore;
 import nl.inl.blacklab.forwardindex.ForwardIndex;
 import nl.inl.blacklab.index.complex.ComplexFieldUtil;
 import nl.inl.blacklab.search.indexstructure.ComplexFieldDesc;
@@ -181,43 +182,12 @@ public class SearcherImpl extends Searcher implements Closeable {
 
 		// Detect and open the ContentStore for the contents field
 		if (!createNewIndex) {
-			logger.debug("  Determining main contents field name...");
-			ComplexFieldDesc mainContentsField = indexStructure.getMainContentsField();
-			if (mainContentsField == null) {
-				if (!indexMode) {
-					if (!isEmptyIndex)
-						throw new RuntimeException("Could not detect main contents field");
-
-					// Empty index. Set a default name for the contents field.
-					// Searching an empty index will fail and should not be attempted.
-					this.mainContentsFieldName = Searcher.DEFAULT_CONTENTS_FIELD_NAME;
-				}
-			} else {
-				this.mainContentsFieldName = mainContentsField.getName();
-
-				// See if we have a punctuation forward index. If we do,
-				// default to creating concordances using that.
-				if (mainContentsField.hasPunctuation()) {
-					hitsSettings.setConcordanceType(ConcordanceType.FORWARD_INDEX);
-				}
-			}
-
-			// Register content stores
-			logger.debug("  Opening content stores...");
-			for (String cfn: indexStructure.getComplexFields()) {
-				if (indexStructure.getComplexFieldDesc(cfn).hasContentStore()) {
-					File dir = new File(indexDir, "cs_" + cfn);
-					if (!dir.exists()) {
-						dir = new File(indexDir, "xml"); // OLD, should eventually be removed
-					}
-					if (dir.exists()) {
-						logger.debug("    " + dir + "...");
-						registerContentStore(cfn, openContentStore(dir, false));
-					}
-				}
-			}
+			detectMainContentsField();
+			openContentStores();
 		}
 
+		contentStores.setIdTranslateInfo(reader); // how to translate from Lucene doc to content id
+
 		logger.debug("  Opening IndexSearcher...");
 		indexSearcher = new IndexSearcher(reader);
 
@@ -233,6 +203,109 @@ public class SearcherImpl extends Searcher implements Closeable {
 		logger.debug("Done.");
 	}
 
+	/**
+	 * Open a new view of an index in search mode, after documents were added to it.
+	 *
+	 * Settings are copied from the previous view. The forward indices only read
+	 * what was added since the previous view was opened; the content stores
+	 * are opened again.
+	 *
+	 * @param previous the previous view of the index
+	 * @param reader reader for the current state of the index
+	 */
+	private SearcherImpl(SearcherImpl previous, DirectoryReader reader) {
+		logger.debug("Reopening Searcher...");
+		copySettings(previous);
+		this.reader = reader;
+		indexLocation = previous.indexLocation;
+
+		logger.debug("  Determining index structure...");
+		indexStructure = new IndexStructure(reader, indexLocation, false);
+		isEmptyIndex = indexStructure.isNewIndex();
+		detectMainContentsField();
+		openContentStores();
+
+		contentStores.setIdTranslateInfo(reader); // how to translate from Lucene doc to content id
+
+		logger.debug("  Opening IndexSearcher...");
+		indexSearcher = new IndexSearcher(reader);
+
+		if (!previous.isEmptyIndex) {
+			// Read what was added to the forward indices we had open
+			logger.debug("  Reopening forward indices...");
+			synchronized (previous) {
+				for (Map.Entry<String, ForwardIndex> e: previous.forwardIndices.entrySet()) {
+					logger.debug("    " + e.getKey() + "...");
+					ForwardIndex forwardIndex = e.getValue().reopen();
+					forwardIndex.setIdTranslateInfo(reader, e.getKey());
+					addForwardIndex(e.getKey(), forwardIndex);
+				}
+			}
+		}
+		logger.debug("  Opening forward indices...");
+		openForwardIndices();
+		logger.debug("Done.");
+	}
+
+	@Override
+	public Searcher reopen() {
+		if (indexMode)
+			throw new RuntimeException("Cannot reopen, in index mode");
+		try {
+			DirectoryReader newReader = DirectoryReader.openIfChanged((DirectoryReader) reader);
+			if (newReader == null)
+				return this; // index hasn't changed
+			return new SearcherImpl(this, newReader);
+		} catch (IOException e) {
+			throw ExUtil.wrapRuntimeException(e);
+		}
+	}
+
+	/**
+	 * Determine the name of the main contents field.
+	 */
+	private void detectMainContentsField() {
+		logger.debug("  Determining main contents field name...");
+		ComplexFieldDesc mainContentsField = indexStructure.getMainContentsField();
+		if (mainContentsField == null) {
+			if (!indexMode) {
+				if (!isEmptyIndex)
+					throw new RuntimeException("Could not detect main contents field");
+
+				// Empty index. Set a default name for the contents field.
+				// Searching an empty index will fail and should not be attempted.
+				this.mainContentsFieldName = Searcher.DEFAULT_CONTENTS_FIELD_NAME;
+			}
+		} else {
+			this.mainContentsFieldName = mainContentsField.getName();
+
+			// See if we have a punctuation forward index. If we do,
+			// default to creating concordances using that.
+			if (mainContentsField.hasPunctuation()) {
+				hitsSettings.setConcordanceType(ConcordanceType.FORWARD_INDEX);
+			}
+		}
+	}
+
+	/**
+	 * Open the content stores of all complex fields that have one.
+	 */
+	private void openContentStores() {
+		logger.debug("  Opening content stores...");
+		for (String cfn: indexStructure.getComplexFields()) {
+			if (indexStructure.getComplexFieldDesc(cfn).hasContentStore()) {
+				File dir = new File(indexLocation, "cs_" + cfn);
+				if (!dir.exists()) {
+					dir = new File(indexLocation, "xml"); // OLD, should eventually be removed
+				}
+				if (dir.exists()) {
+					logger.debug("    " + dir + "...");
+					registerContentStore(cfn, openContentStore(dir, false));
+				}
+			}
+		}
+	}
+
 	@Override
 	public boolean isEmpty() {
 		return isEmptyIndex;
@@ -354,6 +427,12 @@ public class SearcherImpl extends Searcher implements Closeable {
 
 		if (startsOfWords.length == 0)
 			return; // nothing to do
+
+		// Use the character offset store if we have one and it contains this document
+		// (indexes created with older versions don't have one; use the term vector for those)
+		if (getCharacterOffsetsFromStore(doc, fieldName, startsOfWords, endsOfWords, fillInDefaultsIfNotFound))
+			return;
+
 		try {
 			// Determine lowest and highest word position we'd like to know something about.
 			// This saves a little bit of time for large result sets.
@@ -467,6 +546,69 @@ public class SearcherImpl extends Searcher implements Closeable {
 		}
 	}
 
+	/**
+	 * Get character positions from word positions using the character offset store.
+	 *
+	 * @param doc the document from which to find character positions
+	 * @param fieldName the field from which to find character positions
+	 * @param startsOfWords word positions for which we want starting character positions
+	 * @param endsOfWords word positions for which we want ending character positions
+	 * @param fillInDefaultsIfNotFound if true, illegal word positions get a sane default value;
+	 *   otherwise, an exception is thrown
+	 * @return true if the positions were translated, false if the store doesn't contain
+	 *   this document (the arrays are left unchanged in that case)
+	 */
+	private boolean getCharacterOffsetsFromStore(int doc, String fieldName, int[] startsOfWords, int[] endsOfWords,
+			boolean fillInDefaultsIfNotFound) {
+		String fieldPropName = ComplexFieldUtil.mainPropertyField(indexStructure, fieldName);
+		CharOffsetStore store = getCharOffsetStore(fieldPropName);
+		if (store == null)
+			return false;
+		ForwardIndex forwardIndex = getForwardIndex(fieldPropName);
+		if (forwardIndex == null)
+			return false;
+		int fiid = forwardIndex.luceneDocIdToFiid(doc);
+		int length = store.getDocLength(fiid);
+		if (length <= 0)
+			return false;
+
+		boolean allFound = true;
+		for (int i = 0; i < startsOfWords.length; i++) {
+			startsOfWords[i] = store.getStartChar(fiid, startsOfWords[i]);
+			if (startsOfWords[i] < 0)
+				allFound = false;
+		}
+		for (int i = 0; i < endsOfWords.length; i++) {
+			endsOfWords[i] = store.getEndChar(fiid, endsOfWords[i]);
+			if (endsOfWords[i] < 0)
+				allFound = false;
+		}
+		if (!allFound) {
+			if (!fillInDefaultsIfNotFound)
+				throw new RuntimeException("Could not find all character offsets!");
+
+			// Use the first and last character of the document as defaults
+			int firstChar = -1, lastChar = -1;
+			for (int p = 0; p < length && firstChar < 0; p++) {
+				firstChar = store.getStartChar(fiid, p);
+			}
+			for (int p = length - 1; p >= 0 && lastChar < 0; p--) {
+				lastChar = store.getEndChar(fiid, p);
+			}
+			if (firstChar < 0 || lastChar < 0)
+				throw new RuntimeException("Could not find default char positions!");
+			for (int i = 0; i < startsOfWords.length; i++) {
+				if (startsOfWords[i] < 0)
+					startsOfWords[i] = firstChar;
+			}
+			for (int i = 0; i < endsOfWords.length; i++) {
+				if (endsOfWords[i] < 0)
+					endsOfWords[i] = lastChar;
+			}
+		}
+		return true;
+	}
+
 	@Override
 	public IndexReader getIndexReader() {
 		return reader;
@@ -532,13 +674,21 @@ public class SearcherImpl extends Searcher implements Closeable {
 			return null;
 		}
 		// Open forward index
-		forwardIndex = ForwardIndex.open(dir, indexMode, getCollator(), isEmptyIndex);
+		forwardIndex = ForwardIndex.open(dir, indexMode, getCollator(), isEmptyIndex, isDefaultMemoryMappedTerms());
 		forwardIndex.setIdTranslateInfo(reader, fieldPropName); // how to translate from
 																		// Lucene
 																		// doc to fiid
 		return forwardIndex;
 	}
 
+	@Override
+	protected CharOffsetStore openCharOffsetStore(String fieldPropName) {
+		File dir = new File(indexLocation, "fi_" + fieldPropName);
+		if (!dir.exists())
+			return null; // no forward index (or an old BL index)
+		return CharOffsetStore.open(dir, indexMode, isEmptyIndex);
+	}
+
 	@Override
 	public QueryExecutionContext getDefaultExecutionContext(String fieldName) {
 		ComplexFieldDesc complexFieldDesc = indexStructure.getComplexFieldDesc(fieldName);
@@ -644,6 +794,13 @@ public class SearcherImpl extends Searcher implements Closeable {
 	@Override
 	@Deprecated
 	public Map<String, Integer> termFrequencies(Query documentFilterQuery, String fieldName, String propName, String altName) {
+		boolean sensitive = ComplexFieldUtil.SENSITIVE_ALT_NAME.equals(altName);
+		if ((sensitive || ComplexFieldUtil.INSENSITIVE_ALT_NAME.equals(altName)) && TermFrequencyCounter.canCount(this, fieldName, propName)) {
+			// Count using the forward index (much faster than using term vectors)
+			TermFrequencyCounter counter = new TermFrequencyCounter(this, fieldName, propName, sensitive);
+			counter.count(documentFilterQuery);
+			return counter.getTermFrequencyMap();
+		}
 		return LuceneUtil.termFrequencies(getIndexSearcher(), documentFilterQuery, fieldName, propName, altName);
 	}
 
@@ -0,0 +1,131 @@
+package nl.inl.blacklab.search;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.spans.Spans;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+
+import nl.inl.blacklab.search.lucene.BLSpans;
+import nl.inl.blacklab.search.lucene.HitQueryContext;
+import nl.inl.util.ThreadPriority;
+
+/**
+ * Hits read from a single index segment.
+ *
+ * Used by HitsImpl to retrieve hits from several segments in parallel.
+ * The per-segment buffers are merged in docBase order afterwards, so
+ * the end result is the same as when retrieving the hits sequentially.
+ */
+class SegmentHits {
+
+	/** How many hits to read between checks for thread interruption/pausing */
+	private static final int CHECK_INTERVAL = 1000;
+
+	/** Index of the segment in the reader's list of leaves */
+	final int ord;
+
+	/** docBase of the segment */
+	final int docBase;
+
+	/** The hits we retrieved, with their captured groups (doc ids already offset by docBase) */
+	final HitsStore hits = new HitsStore();
+
+	/** Names of the captured groups, in index order */
+	List<String> capturedGroupNames;
+
+	/** Number of hits counted (may be more than the number retrieved) */
+	int hitsCounted = 0;
+
+	/** Index of the first counted hit in each document */
+	final IntArrayList docStarts = new IntArrayList();
+
+	/** Document id for each entry in docStarts (offset by docBase) */
+	final IntArrayList docIds = new IntArrayList();
+
+	/** Time it took to retrieve the hits from this segment (ms) */
+	long retrievalTimeMs;
+
+	/** Set if we should stop reading hits (e.g. because retrieval was interrupted) */
+	private volatile boolean cancelled = false;
+
+	SegmentHits(int ord, int docBase) {
+		this.ord = ord;
+		this.docBase = docBase;
+	}
+
+	/**
+	 * Stop reading hits as soon as possible.
+	 */
+	void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Read all hits from a segment's spans.
+	 *
+	 * @param spans the spans to read, or null if the segment has no matches
+	 * @param context hit query context to use, or null to create one for this segment
+	 * @param alreadyInDoc if true, spans is positioned at a hit and we continue from there;
+	 *   if false, spans hasn't been advanced yet
+	 * @param maxHitsToRetrieve stop storing hits after this many (-1 for no limit)
+	 * @param maxHitsToCount stop counting hits after this many (-1 for no limit)
+	 * @param etiquette used to check for interruption/pausing of the thread that owns the Hits
+	 * @throws InterruptedException if the owning thread was interrupted
+	 * @throws IOException on error
+	 */
+	void collect(BLSpans spans, HitQueryContext context, boolean alreadyInDoc, int maxHitsToRetrieve, int maxHitsToCount, ThreadPriority etiquette) throws InterruptedException, IOException {
+		long startTime = System.currentTimeMillis();
+		if (spans == null) {
+			retrievalTimeMs = 0;
+			return;
+		}
+		if (context == null) {
+			context = new HitQueryContext(spans);
+			spans.setHitQueryContext(context); // let captured groups register themselves
+		}
+		int numberOfGroups = context.numberOfCapturedGroups();
+		Span[] groups = null;
+		if (numberOfGroups > 0) {
+			hits.setNumberOfCapturedGroups(numberOfGroups);
+			capturedGroupNames = context.getCapturedGroupNames();
+			groups = new Span[numberOfGroups]; // (reused for each hit)
+		}
+
+		int doc = alreadyInDoc ? spans.docID() : spans.nextDoc();
+		while (doc != DocIdSetIterator.NO_MORE_DOCS) {
+			boolean firstHitInDoc = true;
+			int start = spans.nextStartPosition();
+			while (start != Spans.NO_MORE_POSITIONS) {
+				if (maxHitsToCount >= 0 && hitsCounted >= maxHitsToCount) {
+					retrievalTimeMs = System.currentTimeMillis() - startTime;
+					return;
+				}
+				if (hitsCounted % CHECK_INTERVAL == 0) {
+					etiquette.behave();
+					if (cancelled)
+						return;
+				}
+				if (firstHitInDoc) {
+					docStarts.add(hitsCounted);
+					docIds.add(doc + docBase);
+					firstHitInDoc = false;
+				}
+				hitsCounted++;
+				if (maxHitsToRetrieve < 0 || hits.size() < maxHitsToRetrieve) {
+					if (groups != null) {
+						Arrays.fill(groups, null);
+						context.getCapturedGroups(groups);
+					}
+					hits.add(doc + docBase, start, spans.endPosition(), groups);
+				}
+				start = spans.nextStartPosition();
+			}
+			doc = spans.nextDoc();
+		}
+		retrievalTimeMs = System.currentTimeMillis() - startTime;
+	}
+
+}
@@ -0,0 +1,303 @@
+package nl.inl.blacklab.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+
+import nl.inl.blacklab.forwardindex.ForwardIndex;
+import nl.inl.blacklab.forwardindex.Terms;
+import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.util.IntComparator;
+import nl.inl.util.ParallelMergeSort;
+import nl.inl.util.StringUtil;
+
+/**
+ * Determines the frequencies of the terms of a property in a set of documents,
+ * using the forward index.
+ *
+ * The token ids of each document are read from the forward index and counted in
+ * an int array per thread (several threads count segments in parallel if the searcher
+ * has a pool to use); the arrays are merged afterwards. Ids are only converted to
+ * strings for the terms that are requested, so getting the top terms of a large
+ * set of documents is fast.
+ *
+ * When counting case/accent-insensitively, terms are merged by their insensitive
+ * sort position.
+ */
+public class TermFrequencyCounter {
+
+	private Searcher searcher;
+
+	private ForwardIndex forwardIndex;
+
+	private Terms terms;
+
+	private boolean sensitive;
+
+	/** Frequency per key (the term id if sensitive, the insensitive sort position otherwise) */
+	private int[] frequencies;
+
+	/** Keys that occur, by decreasing frequency */
+	private int[] keysByFrequency;
+
+	/** Sum of all frequencies */
+	private long totalFrequency;
+
+	/** For each insensitive sort position, a term id with that sort position (built when needed) */
+	private int[] sortPositionToId;
+
+	/**
+	 * Can we count term frequencies for this property using the forward index?
+	 *
+	 * @param searcher our index
+	 * @param fieldName complex field name, i.e. contents
+	 * @param propName property name, i.e. word, lemma, pos, etc.
+	 * @return true iff the property has a forward index
+	 */
+	public static boolean canCount(Searcher searcher, String fieldName, String propName) {
+		return searcher.getForwardIndex(ComplexFieldUtil.propertyField(fieldName, propName)) != null;
+	}
+
+	/**
+	 * Construct a term frequency counter.
+	 *
+	 * @param searcher our index
+	 * @param fieldName complex field name, i.e. contents
+	 * @param propName property name, i.e. word, lemma, pos, etc.
+	 * @param sensitive whether to count case/accent-sensitively
+	 */
+	public TermFrequencyCounter(Searcher searcher, String fieldName, String propName, boolean sensitive) {
+		this.searcher = searcher;
+		forwardIndex = searcher.getForwardIndex(ComplexFieldUtil.propertyField(fieldName, propName));
+		if (forwardIndex == null)
+			throw new IllegalArgumentException("Property " + propName + " of field " + fieldName + " has no forward index");
+		terms = forwardIndex.getTerms();
+		this.sensitive = sensitive;
+	}
+
+	/**
+	 * Count the term frequencies in a set of documents.
+	 *
+	 * @param documentFilterQuery what set of documents to count the term frequencies for
+	 */
+	public void count(Query documentFilterQuery) {
+		List<ForkJoinTask<int[]>> helpers = new ArrayList<>();
+		try {
+			Weight weight = searcher.getIndexSearcher().createNormalizedWeight(documentFilterQuery, false);
+			boolean skipClosingToken = searcher.getIndexStructure().alwaysHasClosingToken();
+			List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+			SegmentCounter countTask = new SegmentCounter(weight, leaves, skipClosingToken);
+
+			// Count on our own thread, and on other threads if there are multiple segments
+			ForkJoinPool pool = searcher.getHitRetrievalPool();
+			int numberOfHelpers = Math.min(pool.getParallelism(), leaves.size()) - 1;
+			for (int i = 0; i < numberOfHelpers; i++) {
+				helpers.add(pool.submit(countTask));
+			}
+			int[] counts = countTask.call();
+			for (ForkJoinTask<int[]> helper: helpers) {
+				int[] helperCounts = helper.get();
+				for (int i = 0; i < counts.length; i++) {
+					counts[i] += helperCounts[i];
+				}
+			}
+			collectFrequencies(counts);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} catch (InterruptedException e) {
+			for (ForkJoinTask<int[]> helper: helpers) {
+				helper.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Counts tokens in segments that haven't been counted yet, until all segments
+	 * have been counted.
+	 *
+	 * Several threads may call the same instance; each returns its own counts.
+	 */
+	private class SegmentCounter implements Callable<int[]> {
+
+		private Weight weight;
+
+		private List<LeafReaderContext> leaves;
+
+		private boolean skipClosingToken;
+
+		/** Index of the next segment to count */
+		private AtomicInteger nextLeaf = new AtomicInteger();
+
+		SegmentCounter(Weight weight, List<LeafReaderContext> leaves, boolean skipClosingToken) {
+			this.weight = weight;
+			this.leaves = leaves;
+			this.skipClosingToken = skipClosingToken;
+		}
+
+		@Override
+		public int[] call() throws IOException {
+			int[] counts = new int[terms.numberOfTerms()];
+			int leafIndex;
+			while ((leafIndex = nextLeaf.getAndIncrement()) < leaves.size()) {
+				countSegment(weight, leaves.get(leafIndex), skipClosingToken, counts);
+			}
+			return counts;
+		}
+
+	}
+
+	/**
+	 * Count the tokens of the matching documents in a segment.
+	 *
+	 * @param weight weight of the document filter query
+	 * @param leaf the segment
+	 * @param skipClosingToken if true, don't count the last token of each document
+	 * @param counts where to add the counts (indexed by term id)
+	 * @throws IOException on error
+	 */
+	private void countSegment(Weight weight, LeafReaderContext leaf, boolean skipClosingToken, int[] counts) throws IOException {
+		Scorer scorer = weight.scorer(leaf, leaf.reader().getLiveDocs());
+		if (scorer == null)
+			return;
+		while (scorer.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+			int fiid = forwardIndex.luceneDocIdToFiid(leaf.docBase + scorer.docID());
+			List<int[]> parts = forwardIndex.retrievePartsInt(fiid, new int[] { -1 }, new int[] { -1 });
+			if (parts == null)
+				continue; // deleted from forward index
+			int[] tokenIds = parts.get(0);
+			int n = skipClosingToken ? tokenIds.length - 1 : tokenIds.length;
+			for (int i = 0; i < n; i++) {
+				counts[tokenIds[i]]++;
+			}
+		}
+	}
+
+	/**
+	 * Merge term ids into keys (if insensitive) and sort the keys by frequency.
+	 *
+	 * @param counts count per term id
+	 */
+	private void collectFrequencies(int[] counts) {
+		if (sensitive) {
+			frequencies = counts;
+		} else {
+			frequencies = new int[counts.length];
+			for (int id = 0; id < counts.length; id++) {
+				if (counts[id] > 0)
+					frequencies[terms.idToSortPosition(id, false)] += counts[id];
+			}
+		}
+		int n = 0;
+		totalFrequency = 0;
+		keysByFrequency = new int[frequencies.length];
+		for (int key = 0; key < frequencies.length; key++) {
+			if (frequencies[key] > 0) {
+				keysByFrequency[n] = key;
+				n++;
+				totalFrequency += frequencies[key];
+			}
+		}
+		keysByFrequency = Arrays.copyOf(keysByFrequency, n);
+
+		// Sort by decreasing frequency (equal frequencies in sort order)
+		IntComparator byFrequency = new IntComparator() {
+			@Override
+			public int compare(int a, int b) {
+				if (frequencies[a] != frequencies[b])
+					return frequencies[a] > frequencies[b] ? -1 : 1;
+				return a - b;
+			}
+		};
+		ParallelMergeSort.sort(keysByFrequency, 0, n, byFrequency, searcher.getHitRetrievalPool());
+	}
+
+	/**
+	 * @return the number of different terms that occur
+	 */
+	public int numberOfTerms() {
+		return keysByFrequency.length;
+	}
+
+	/**
+	 * @return the total number of tokens counted
+	 */
+	public long getTotalFrequency() {
+		return totalFrequency;
+	}
+
+	/**
+	 * Get the term string for a key.
+	 *
+	 * @param key term id if sensitive, insensitive sort position otherwise
+	 * @return the term
+	 */
+	private String getTerm(int key) {
+		if (sensitive)
+			return terms.get(key);
+		if (sortPositionToId == null) {
+			sortPositionToId = new int[terms.numberOfTerms()];
+			Arrays.fill(sortPositionToId, -1);
+			for (int id = 0; id < sortPositionToId.length; id++) {
+				int pos = terms.idToSortPosition(id, false);
+				if (sortPositionToId[pos] < 0)
+					sortPositionToId[pos] = id;
+			}
+		}
+		return StringUtil.removeAccents(terms.get(sortPositionToId[key])).toLowerCase();
+	}
+
+	/**
+	 * Get (some of) the term frequencies, by decreasing frequency.
+	 *
+	 * @param first index of the first term to return
+	 * @param number maximum number of terms to return
+	 * @return the term frequencies
+	 */
+	public TermFrequencyList getTermFrequencies(int first, int number) {
+		int last = Math.min(keysByFrequency.length, first + number);
+		TermFrequencyList tfl = new TermFrequencyList(Math.max(0, last - first));
+		for (int i = first; i < last; i++) {
+			int key = keysByFrequency[i];
+			tfl.add(new TermFrequency(getTerm(key), frequencies[key]));
+		}
+		tfl.setTotalFrequency(totalFrequency);
+		return tfl;
+	}
+
+	/**
+	 * Get all the term frequencies as a map.
+	 *
+	 * @return the term frequency map
+	 */
+	public Map<String, Integer> getTermFrequencyMap() {
+		Map<String, Integer> freq = new HashMap<>();
+		for (int key: keysByFrequency) {
+			String term = getTerm(key);
+			Integer n = freq.get(term);
+			freq.put(term, n == null ? frequencies[key] : n + frequencies[key]);
+		}
+		return freq;
+	}
+
+}
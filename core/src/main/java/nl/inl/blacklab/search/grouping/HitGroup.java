@@ -19,6 +19,7 @@ import java.util.List;
 
 import nl.inl.blacklab.search.Hit;
 import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.HitsStore;
 import nl.inl.blacklab.search.Searcher;
 
 /**
@@ -50,6 +51,22 @@ public class HitGroup extends Group {
 		results.settings().setConcordanceField(defaultConcField);
 	}
 
+	/**
+	 * Wraps a HitsStore with the HitGroup interface.
+	 *
+	 * NOTE: the store is not copied!
+	 *
+	 * @param searcher the searcher that produced the hits
+	 * @param groupIdentity grouping identity of this group of hits
+	 * @param defaultConcField concordance field
+	 * @param hits the hits
+	 */
+	HitGroup(Searcher searcher, HitPropValue groupIdentity, String defaultConcField, HitsStore hits) {
+		super(groupIdentity);
+		results = Hits.fromStore(searcher, hits);
+		results.settings().setConcordanceField(defaultConcField);
+	}
+
 	public Hits getHits() {
 		return results;
 	}
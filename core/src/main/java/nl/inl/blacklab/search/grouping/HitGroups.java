@@ -105,4 +105,11 @@ public abstract class HitGroups extends GroupsAbstract implements Iterable<HitGr
 	 * @return number of groups
 	 */
 	public abstract int numberOfGroups();
+
+	/**
+	 * Estimate how much memory the groups take, including the hits in them.
+	 *
+	 * @return estimated memory size in bytes
+	 */
+	public abstract long estimateSizeBytes();
 }
@@ -22,6 +22,8 @@ import java.util.List;
 
 import org.apache.log4j.Logger;
 
+import nl.inl.blacklab.forwardindex.Terms;
+import nl.inl.blacklab.search.HitContexts;
 import nl.inl.blacklab.search.Hits;
 
 /**
@@ -36,6 +38,9 @@ public abstract class HitProperty implements Comparator<Object> {
 	/** Reverse comparison result or not? */
 	protected boolean reverse = false;
 
+	/** Contexts we last got from our Hits object (see contexts()) */
+	private HitContexts contexts;
+
 	public HitProperty(Hits hits) {
 		this.hits = hits;
 		contextIndices = new ArrayList<>();
@@ -66,6 +71,104 @@ public abstract class HitProperty implements Comparator<Object> {
 		return hitPropValueA.compareTo(hitPropValueB);
 	}
 
+	/**
+	 * Compute sort keys for all hits, so they can be sorted without calling compare().
+	 *
+	 * The keys must give the same ordering as compare(), including reversal.
+	 * Required context (see needsContext()) must have been retrieved before calling this.
+	 *
+	 * The default implementation returns null. Subclasses should override this if
+	 * they can provide sort keys.
+	 *
+	 * @return the sort keys, or null if this property doesn't support them
+	 */
+	public HitSortKeys getSortKeys() {
+		return null;
+	}
+
+	/** Part of the context to make sort keys from (see contextSortKeys()) */
+	protected enum ContextPart {
+		/** Words before the hit, from right to left */
+		LEFT,
+		/** The hit text */
+		HIT,
+		/** Words after the hit */
+		RIGHT
+	}
+
+	/**
+	 * Make sort keys from the term sort positions in (part of) the hit contexts.
+	 *
+	 * @param terms terms object to get the sort positions from
+	 * @param sensitive whether to use sensitive or insensitive sort positions
+	 * @param part what part of the context to use
+	 * @param maxWords maximum number of words to use, or -1 for all
+	 * @return the sort keys
+	 */
+	protected HitSortKeys contextSortKeys(Terms terms, boolean sensitive, ContextPart part, int maxWords) {
+		HitContexts contexts = contexts();
+		int n = hits.size();
+
+		// Determine where each hit's sequence starts
+		int[] offsets = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			int length = Math.max(0, contextPartEnd(contexts, i, part) - contextPartStart(contexts, i, part));
+			if (maxWords >= 0 && length > maxWords)
+				length = maxWords;
+			offsets[i + 1] = offsets[i] + length;
+		}
+
+		// Fill in the sort positions
+		int[] keys = new int[offsets[n]];
+		for (int i = 0; i < n; i++) {
+			int start = contextPartStart(contexts, i, part);
+			int end = contextPartEnd(contexts, i, part);
+			for (int k = offsets[i], j = 0; k < offsets[i + 1]; k++, j++) {
+				int word = part == ContextPart.LEFT ? end - 1 - j : start + j;
+				keys[k] = terms.idToSortPosition(contexts.token(i, word), sensitive);
+			}
+		}
+		return HitSortKeys.sequences(keys, offsets, reverse);
+	}
+
+	private static int contextPartStart(HitContexts contexts, int hit, ContextPart part) {
+		switch (part) {
+		case LEFT:
+			return 0;
+		case HIT:
+			return contexts.hitStart(hit);
+		default:
+			return contexts.rightStart(hit);
+		}
+	}
+
+	private static int contextPartEnd(HitContexts contexts, int hit, ContextPart part) {
+		switch (part) {
+		case LEFT:
+			return Math.max(0, contexts.hitStart(hit));
+		case HIT:
+			return contexts.rightStart(hit);
+		default:
+			return contexts.length(hit);
+		}
+	}
+
+	/**
+	 * Get the contexts of our hits for the (first) property reported by needsContext().
+	 *
+	 * The contexts are cached by the Hits object, so this is cheap after the first call.
+	 *
+	 * @return the contexts
+	 */
+	protected HitContexts contexts() {
+		HitContexts c = contexts;
+		if (c == null || c.getContextSize() != hits.settings().contextSize() || c.size() != hits.size()) {
+			c = hits.getHitContexts(needsContext().get(0));
+			contexts = c;
+		}
+		return c;
+	}
+
 	/**
 	 * Retrieve context from which field(s) prior to sorting/grouping on this
 	 * property?
@@ -21,6 +21,7 @@ import java.util.List;
 
 import nl.inl.blacklab.forwardindex.Terms;
 import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.blacklab.search.HitContexts;
 import nl.inl.blacklab.search.Hits;
 import nl.inl.blacklab.search.Searcher;
 
@@ -132,10 +133,10 @@ public class HitPropertyContextWords extends HitProperty {
 
 	@Override
 	public HitPropValueContextWords get(int hitNumber) {
-		int[] context = hits.getHitContext(hitNumber);
-		int contextHitStart = context[Hits.CONTEXTS_HIT_START_INDEX];
-		int contextRightStart = context[Hits.CONTEXTS_RIGHT_START_INDEX];
-		int contextLength = context[Hits.CONTEXTS_LENGTH_INDEX];
+		HitContexts contexts = contexts();
+		int contextHitStart = contexts.hitStart(hitNumber);
+		int contextRightStart = contexts.rightStart(hitNumber);
+		int contextLength = contexts.length(hitNumber);
 
 		int[] dest = new int[totalWords];
 		int destIndex = 0;
@@ -185,10 +186,9 @@ public class HitPropertyContextWords extends HitProperty {
 			}
 			// Copy the words we want to our dest array
 			int valuesCopied = 0;
-			int contextStartIndex = contextLength * contextIndices.get(0) + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS;
 			if (firstWordSrcIndex >= 0) {
 				for (int srcIndex = firstWordSrcIndex; srcIndex != finalValidSrcIndex + 1 && srcIndex != stopAtSrcIndex; srcIndex += srcDirection) {
-					dest[destIndex] = context[contextStartIndex + srcIndex];
+					dest[destIndex] = contexts.token(hitNumber, srcIndex);
 					destIndex++;
 					valuesCopied++;
 				}
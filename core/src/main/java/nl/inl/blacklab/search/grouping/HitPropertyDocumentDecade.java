@@ -15,13 +15,9 @@
  *******************************************************************************/
 package nl.inl.blacklab.search.grouping;
 
-import java.io.IOException;
-
-import org.apache.lucene.document.Document;
-import org.apache.lucene.index.IndexReader;
-
 import nl.inl.blacklab.search.Hit;
 import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.MetadataFieldValues;
 
 /**
  * A hit property for grouping on by decade based on a stored field
@@ -32,72 +28,84 @@ public class HitPropertyDocumentDecade extends HitProperty {
 	/** The value we store when the decade is unknown */
 	public static final int UNKNOWN_VALUE = 10000000;
 
-	IndexReader reader;
+	/** Reads the field values (DocValues if available); created when first needed */
+	private MetadataFieldValues values;
 
 	String fieldName;
 
 	public HitPropertyDocumentDecade(Hits hits, String fieldName) {
 		super(hits);
-		this.reader = hits.getSearcher().getIndexReader();
 		this.fieldName = fieldName;
 	}
 
+	/**
+	 * Determine the decade from a year value.
+	 *
+	 * @param strYear the year value (may be null)
+	 * @return the decade, or UNKNOWN_VALUE if it couldn't be determined
+	 */
+	public static int decade(String strYear) {
+		int year;
+		try {
+			year = Integer.parseInt(strYear);
+			year -= year % 10;
+		} catch (NumberFormatException e) {
+			year = UNKNOWN_VALUE;
+		}
+		return year;
+	}
+
 	@Override
 	public HitPropValueDecade get(int hitNumber) {
-		try {
-			Hit result = hits.getByOriginalOrder(hitNumber);
-			Document d = reader.document(result.doc);
-			String strYear = d.get(fieldName);
-			int year;
-			try {
-				year = Integer.parseInt(strYear);
-				year -= year % 10;
-			} catch (NumberFormatException e) {
-				year = UNKNOWN_VALUE;
+		Hit result = hits.getByOriginalOrder(hitNumber);
+		return new HitPropValueDecade(decade(values().get(result.doc)));
+	}
+
+	@Override
+	public HitSortKeys getSortKeys() {
+		int n = hits.size(); // (reads all hits)
+		int[] keys = new int[n];
+		int prevDoc = -1, prevKey = 0;
+		for (int i = 0; i < n; i++) {
+			int doc = hits.docByOriginalOrder(i);
+			if (doc != prevDoc) {
+				String strYear = values().get(doc);
+				if (strYear == null || strYear.length() == 0) {
+					prevKey = Integer.MAX_VALUE; // sort missing year at the end
+				} else {
+					prevKey = decade(strYear);
+				}
+				prevDoc = doc;
 			}
-			return new HitPropValueDecade(year);
-		} catch (IOException e) {
-			throw new RuntimeException(e);
+			keys[i] = prevKey;
 		}
+		return HitSortKeys.single(keys, reverse);
 	}
 
 	@Override
 	public int compare(Object i, Object j) {
-		try {
-			Hit a = hits.getByOriginalOrder((Integer)i);
-			Hit b = hits.getByOriginalOrder((Integer)j);
-			Document d = reader.document(a.doc);
-			String strYearA = d.get(fieldName);
-			if (strYearA == null)
-				strYearA = "";
-			d = reader.document(b.doc);
-			String strYearB = d.get(fieldName);
-			if (strYearB == null)
-				strYearB = "";
-			if (strYearA.length() == 0) // sort missing year at the end
-				return strYearB.length() == 0 ? 0 : (reverse ? -1 : 1);
-			if (strYearB.length() == 0) // sort missing year at the end
-				return reverse ? 1 : -1;
-			int aYear;
-			try {
-				aYear = Integer.parseInt(strYearA);
-				aYear -= aYear % 10;
-			} catch (NumberFormatException e) {
-				aYear = UNKNOWN_VALUE;
-			}
-			int bYear;
-			try {
-				bYear = Integer.parseInt(strYearB);
-				bYear -= bYear % 10;
-			} catch (NumberFormatException e) {
-				bYear = UNKNOWN_VALUE;
-			}
+		Hit a = hits.getByOriginalOrder((Integer)i);
+		Hit b = hits.getByOriginalOrder((Integer)j);
+		String strYearA = values().get(a.doc);
+		if (strYearA == null)
+			strYearA = "";
+		String strYearB = values().get(b.doc);
+		if (strYearB == null)
+			strYearB = "";
+		if (strYearA.length() == 0) // sort missing year at the end
+			return strYearB.length() == 0 ? 0 : (reverse ? -1 : 1);
+		if (strYearB.length() == 0) // sort missing year at the end
+			return reverse ? 1 : -1;
+		int aYear = decade(strYearA);
+		int bYear = decade(strYearB);
 
-			return reverse ? bYear - aYear : aYear - bYear;
+		return reverse ? bYear - aYear : aYear - bYear;
+	}
 
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+	private MetadataFieldValues values() {
+		if (values == null)
+			values = new MetadataFieldValues(hits.getSearcher().getIndexReader(), fieldName);
+		return values;
 	}
 
 	@Override
@@ -45,6 +45,16 @@ public class HitPropertyDocumentId extends HitProperty {
 		return reverse ? b.doc - a.doc : a.doc - b.doc;
 	}
 
+	@Override
+	public HitSortKeys getSortKeys() {
+		int n = hits.size(); // (reads all hits)
+		int[] keys = new int[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = hits.docByOriginalOrder(i);
+		}
+		return HitSortKeys.single(keys, reverse);
+	}
+
 	@Override
 	public String serialize() {
 		return serializeReverse() + "docid";
@@ -15,17 +15,23 @@
  *******************************************************************************/
 package nl.inl.blacklab.search.grouping;
 
-import org.apache.lucene.document.Document;
-import org.apache.lucene.index.IndexReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import nl.inl.blacklab.search.Hit;
 import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.MetadataFieldValues;
 
 /**
  * A hit property for grouping on a stored field in the corresponding Lucene document.
  */
 public class HitPropertyDocumentStoredField extends HitProperty {
-	IndexReader reader;
+	/** Reads the field values (DocValues if available); created when first needed */
+	private MetadataFieldValues values;
 
 	String fieldName;
 
@@ -37,47 +43,101 @@ public class HitPropertyDocumentStoredField extends HitProperty {
 
 	public HitPropertyDocumentStoredField(Hits hits, String fieldName, String friendlyName) {
 		super(hits);
-		reader = hits.getSearcher().getIndexReader();
 		this.fieldName = fieldName;
 		this.friendlyName = friendlyName;
 	}
 
 	@Override
 	public HitPropValueString get(int hitNumber) {
-		try {
-			Hit result = hits.getByOriginalOrder(hitNumber);
-			Document d = reader.document(result.doc);
-			String value = d.get(fieldName);
-			if (value == null)
-				value = "";
-			return new HitPropValueString(value);
-		} catch (Exception e) {
-			throw new RuntimeException(e);
+		Hit result = hits.getByOriginalOrder(hitNumber);
+		String value = values().get(result.doc);
+		if (value == null)
+			value = "";
+		return new HitPropValueString(value);
+	}
+
+	/**
+	 * Sort keys are the rank of each hit's field value among all distinct values.
+	 *
+	 * This way, we only read each document once and only compare each distinct value
+	 * a few times, instead of reading two documents for each comparison.
+	 */
+	@Override
+	public HitSortKeys getSortKeys() {
+		// Find the distinct values and which one each hit has
+		int n = hits.size(); // (reads all hits)
+		int[] keys = new int[n];
+		final List<String> distinctValues = new ArrayList<>();
+		Map<String, Integer> valueIndex = new HashMap<>();
+		int prevDoc = -1, prevIndex = 0;
+		for (int i = 0; i < n; i++) {
+			int doc = hits.docByOriginalOrder(i);
+			if (doc != prevDoc) {
+				String value = values().get(doc);
+				if (value == null)
+					value = "";
+				Integer index = valueIndex.get(value);
+				if (index == null) {
+					index = distinctValues.size();
+					distinctValues.add(value);
+					valueIndex.put(value, index);
+				}
+				prevIndex = index;
+				prevDoc = doc;
+			}
+			keys[i] = prevIndex;
+		}
+
+		// Sort the distinct values (empty string at the end) and determine their ranks
+		Integer[] sorted = new Integer[distinctValues.size()];
+		for (int i = 0; i < sorted.length; i++)
+			sorted[i] = i;
+		Comparator<Integer> valueComparator = new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				String va = distinctValues.get(a), vb = distinctValues.get(b);
+				if (va.length() == 0)
+					return vb.length() == 0 ? 0 : 1;
+				if (vb.length() == 0)
+					return -1;
+				return HitPropValue.collator.compare(va, vb);
+			}
+		};
+		Arrays.sort(sorted, valueComparator);
+		int[] rank = new int[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			// Values the collator considers equal get the same rank
+			boolean sameAsPrevious = i > 0 && valueComparator.compare(sorted[i - 1], sorted[i]) == 0;
+			rank[sorted[i]] = sameAsPrevious ? rank[sorted[i - 1]] : i;
 		}
+		for (int i = 0; i < n; i++) {
+			keys[i] = rank[keys[i]];
+		}
+		return HitSortKeys.single(keys, reverse);
 	}
 
 	@Override
 	public int compare(Object i, Object j) {
-		try {
-			Hit a = hits.getByOriginalOrder((Integer)i);
-			Hit b = hits.getByOriginalOrder((Integer)j);
-			Document d = reader.document(a.doc);
-			String va = d.get(fieldName);
-			if (va == null)
-				va = "";
-			d = reader.document(b.doc);
-			String vb = d.get(fieldName);
-			if (vb == null)
-				vb = "";
-			if (va.length() == 0) // sort empty string at the end
-				return vb.length() == 0 ? 0 : (reverse ? -1 : 1);
-			if (vb.length() == 0) // sort empty string at the end
-				return reverse ? 1 : -1;
-
-			return reverse ? HitPropValue.collator.compare(vb, va) : HitPropValue.collator.compare(va, vb);
-		} catch (Exception e) {
-			throw new RuntimeException(e);
-		}
+		Hit a = hits.getByOriginalOrder((Integer)i);
+		Hit b = hits.getByOriginalOrder((Integer)j);
+		String va = values().get(a.doc);
+		if (va == null)
+			va = "";
+		String vb = values().get(b.doc);
+		if (vb == null)
+			vb = "";
+		if (va.length() == 0) // sort empty string at the end
+			return vb.length() == 0 ? 0 : (reverse ? -1 : 1);
+		if (vb.length() == 0) // sort empty string at the end
+			return reverse ? 1 : -1;
+
+		return reverse ? HitPropValue.collator.compare(vb, va) : HitPropValue.collator.compare(va, vb);
+	}
+
+	private MetadataFieldValues values() {
+		if (values == null)
+			values = new MetadataFieldValues(hits.getSearcher().getIndexReader(), fieldName);
+		return values;
 	}
 
 	@Override
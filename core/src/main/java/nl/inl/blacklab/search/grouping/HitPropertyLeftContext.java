@@ -20,6 +20,7 @@ import java.util.List;
 
 import nl.inl.blacklab.forwardindex.Terms;
 import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.blacklab.search.HitContexts;
 import nl.inl.blacklab.search.Hits;
 import nl.inl.blacklab.search.Searcher;
 
@@ -75,18 +76,14 @@ public class HitPropertyLeftContext extends HitProperty {
 
 	@Override
 	public HitPropValueContextWords get(int hitNumber) {
-		int[] context = hits.getHitContext(hitNumber);
-		int contextHitStart = context[Hits.CONTEXTS_HIT_START_INDEX];
-		//int contextRightStart = context[Hits.CONTEXTS_RIGHT_START_INDEX];
-		int contextLength = context[Hits.CONTEXTS_LENGTH_INDEX];
+		HitContexts contexts = contexts();
 
 		// Copy the desired part of the context
-		int n = contextHitStart;
+		int n = contexts.hitStart(hitNumber);
 		if (n <= 0)
 			return new HitPropValueContextWords(hits, propName, new int[0], sensitive);
 		int[] dest = new int[n];
-		int contextStart = contextLength * contextIndices.get(0) + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS;
-		System.arraycopy(context, contextStart, dest, 0, n);
+		contexts.copyTokens(hitNumber, 0, dest, 0, n);
 
 		// Reverse the order of the array, because we want to sort from right to left
 		for (int i = 0; i < n / 2; i++) {
@@ -101,22 +98,15 @@ public class HitPropertyLeftContext extends HitProperty {
 
 	@Override
 	public int compare(Object i, Object j) {
-		//Hit a = hits.getByOriginalOrder((Integer)i);
-		//Hit b = hits.getByOriginalOrder((Integer)j);
-		int[] ca = hits.getHitContext((Integer)i);
-		int caHitStart = ca[Hits.CONTEXTS_HIT_START_INDEX];
-		int caLength = ca[Hits.CONTEXTS_LENGTH_INDEX];
-		int[] cb = hits.getHitContext((Integer)j);
-		int cbHitStart = cb[Hits.CONTEXTS_HIT_START_INDEX];
-		int cbLength = cb[Hits.CONTEXTS_LENGTH_INDEX];
+		HitContexts contexts = contexts();
+		int a = (Integer)i;
+		int b = (Integer)j;
 
 		// Compare the left context for these two hits, starting at the end
-		int contextIndex = contextIndices.get(0);
-		int ai = caHitStart - 1;
-		int bi = cbHitStart - 1;
+		int ai = contexts.hitStart(a) - 1;
+		int bi = contexts.hitStart(b) - 1;
 		while (ai >= 0 && bi >= 0) {
-			int cmp = terms.compareSortPosition(ca[contextIndex * caLength + ai + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS],
-					cb[contextIndex * cbLength + bi + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS], sensitive);
+			int cmp = terms.compareSortPosition(contexts.token(a, ai), contexts.token(b, bi), sensitive);
 			if (cmp != 0)
 				return reverse ? -cmp : cmp;
 			ai--;
@@ -133,6 +123,11 @@ public class HitPropertyLeftContext extends HitProperty {
 		return reverse ? -1 : 1; // a longer than b => a > b
 	}
 
+	@Override
+	public HitSortKeys getSortKeys() {
+		return contextSortKeys(terms, sensitive, ContextPart.LEFT, -1);
+	}
+
 	@Override
 	public List<String> needsContext() {
 		return Arrays.asList(luceneFieldName);
@@ -134,6 +134,17 @@ public class HitPropertyMultiple extends HitProperty implements Iterable<HitProp
 		return new HitPropValueMultiple(rv);
 	}
 
+	@Override
+	public HitSortKeys getSortKeys() {
+		HitSortKeys[] parts = new HitSortKeys[criteria.size()];
+		for (int i = 0; i < parts.length; i++) {
+			parts[i] = criteria.get(i).getSortKeys();
+			if (parts[i] == null)
+				return null; // can't use sort keys for this criterium
+		}
+		return HitSortKeys.combined(parts, reverse);
+	}
+
 	@Override
 	public int compare(Object i, Object j) {
 		for (HitProperty crit : criteria) {
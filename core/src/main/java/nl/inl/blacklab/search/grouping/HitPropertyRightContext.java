@@ -20,6 +20,7 @@ import java.util.List;
 
 import nl.inl.blacklab.forwardindex.Terms;
 import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.blacklab.search.HitContexts;
 import nl.inl.blacklab.search.Hits;
 import nl.inl.blacklab.search.Searcher;
 
@@ -75,37 +76,31 @@ public class HitPropertyRightContext extends HitProperty {
 
 	@Override
 	public HitPropValueContextWords get(int hitNumber) {
-		int[] context = hits.getHitContext(hitNumber);
-		//int contextHitStart = context[Hits.CONTEXTS_HIT_START_INDEX];
-		int contextRightStart = context[Hits.CONTEXTS_RIGHT_START_INDEX];
-		int contextLength = context[Hits.CONTEXTS_LENGTH_INDEX];
+		HitContexts contexts = contexts();
+		int contextRightStart = contexts.rightStart(hitNumber);
 
 		// Copy the desired part of the context
-		int n = contextLength - contextRightStart;
+		int n = contexts.length(hitNumber) - contextRightStart;
 		if (n <= 0)
 			return new HitPropValueContextWords(hits, propName, new int[0], sensitive);
 		int[] dest = new int[n];
-		int contextStart = contextLength * contextIndices.get(0) + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS;
-		System.arraycopy(context, contextStart + contextRightStart, dest, 0, n);
+		contexts.copyTokens(hitNumber, contextRightStart, dest, 0, n);
 		return new HitPropValueContextWords(hits, propName, dest, sensitive);
 	}
 
 	@Override
 	public int compare(Object i, Object j) {
-		int[] ca = hits.getHitContext((Integer)i);
-		int caRightStart = ca[Hits.CONTEXTS_RIGHT_START_INDEX];
-		int caLength = ca[Hits.CONTEXTS_LENGTH_INDEX];
-		int[] cb = hits.getHitContext((Integer)j);
-		int cbRightStart = cb[Hits.CONTEXTS_RIGHT_START_INDEX];
-		int cbLength = cb[Hits.CONTEXTS_LENGTH_INDEX];
+		HitContexts contexts = contexts();
+		int a = (Integer)i;
+		int b = (Integer)j;
+		int caLength = contexts.length(a);
+		int cbLength = contexts.length(b);
 
 		// Compare the right context for these two hits
-		int contextIndex = contextIndices.get(0);
-		int ai = caRightStart;
-		int bi = cbRightStart;
+		int ai = contexts.rightStart(a);
+		int bi = contexts.rightStart(b);
 		while (ai < caLength && bi < cbLength) {
-			int cmp = terms.compareSortPosition(ca[contextIndex * caLength + ai + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS],
-					cb[contextIndex * cbLength + bi + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS], sensitive);
+			int cmp = terms.compareSortPosition(contexts.token(a, ai), contexts.token(b, bi), sensitive);
 			if (cmp != 0)
 				return reverse ? -cmp : cmp;
 			ai++;
@@ -122,6 +117,11 @@ public class HitPropertyRightContext extends HitProperty {
 		return reverse ? -1 : 1; // a longer than b => a > b
 	}
 
+	@Override
+	public HitSortKeys getSortKeys() {
+		return contextSortKeys(terms, sensitive, ContextPart.RIGHT, -1);
+	}
+
 	@Override
 	public List<String> needsContext() {
 		return Arrays.asList(luceneFieldName);
@@ -20,6 +20,7 @@ import java.util.List;
 
 import nl.inl.blacklab.forwardindex.Terms;
 import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.blacklab.search.HitContexts;
 import nl.inl.blacklab.search.Hits;
 import nl.inl.blacklab.search.Searcher;
 
@@ -76,41 +77,36 @@ public class HitPropertyWordLeft extends HitProperty {
 
 	@Override
 	public HitPropValueContextWord get(int hitNumber) {
-		int[] context = hits.getHitContext(hitNumber);
-		int contextHitStart = context[Hits.CONTEXTS_HIT_START_INDEX];
-		//int contextRightStart = context[Hits.CONTEXTS_RIGHT_START_INDEX];
-		int contextLength = context[Hits.CONTEXTS_LENGTH_INDEX];
+		HitContexts contexts = contexts();
+		int contextHitStart = contexts.hitStart(hitNumber);
 
 		if (contextHitStart <= 0)
 			return new HitPropValueContextWord(hits, propName, -1, sensitive);
-		int contextStart = contextLength * contextIndices.get(0) + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS;
-		return new HitPropValueContextWord(hits, propName, context[contextStart
-				+ contextHitStart - 1], sensitive);
+		return new HitPropValueContextWord(hits, propName, contexts.token(hitNumber, contextHitStart - 1), sensitive);
 	}
 
 	@Override
 	public int compare(Object i, Object j) {
-		int[] ca = hits.getHitContext((Integer)i);
-		int caHitStart = ca[Hits.CONTEXTS_HIT_START_INDEX];
-		int caLength = ca[Hits.CONTEXTS_LENGTH_INDEX];
-		int[] cb = hits.getHitContext((Integer)j);
-		int cbHitStart = cb[Hits.CONTEXTS_HIT_START_INDEX];
-		int cbLength = cb[Hits.CONTEXTS_LENGTH_INDEX];
+		HitContexts contexts = contexts();
+		int a = (Integer)i;
+		int b = (Integer)j;
+		int caHitStart = contexts.hitStart(a);
+		int cbHitStart = contexts.hitStart(b);
 
 		if (caHitStart <= 0)
 			return cbHitStart <= 0 ? 0 : (reverse ? 1 : -1);
 		if (cbHitStart <= 0)
 			return reverse ? -1 : 1;
 		// Compare one word to the left of the hit
-		int contextIndex = contextIndices.get(0);
-
-		int cmp = terms.compareSortPosition(
-				ca[contextIndex * caLength + caHitStart - 1 + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS],
-				cb[contextIndex * cbLength + cbHitStart - 1 + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS],
-				sensitive);
+		int cmp = terms.compareSortPosition(contexts.token(a, caHitStart - 1), contexts.token(b, cbHitStart - 1), sensitive);
 		return reverse ? -cmp : cmp;
 	}
 
+	@Override
+	public HitSortKeys getSortKeys() {
+		return contextSortKeys(terms, sensitive, ContextPart.LEFT, 1);
+	}
+
 	@Override
 	public List<String> needsContext() {
 		return Arrays.asList(luceneFieldName);
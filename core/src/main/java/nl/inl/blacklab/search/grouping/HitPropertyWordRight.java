@@ -20,6 +20,7 @@ import java.util.List;
 
 import nl.inl.blacklab.forwardindex.Terms;
 import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.blacklab.search.HitContexts;
 import nl.inl.blacklab.search.Hits;
 import nl.inl.blacklab.search.Searcher;
 
@@ -75,38 +76,38 @@ public class HitPropertyWordRight extends HitProperty {
 
 	@Override
 	public HitPropValueContextWord get(int hitNumber) {
-		int[] context = hits.getHitContext(hitNumber);
-		int contextRightStart = context[Hits.CONTEXTS_RIGHT_START_INDEX];
-		int contextLength = context[Hits.CONTEXTS_LENGTH_INDEX];
+		HitContexts contexts = contexts();
+		int contextRightStart = contexts.rightStart(hitNumber);
 
-		if (contextLength <= contextRightStart)
+		if (contexts.length(hitNumber) <= contextRightStart)
 			return new HitPropValueContextWord(hits, propName, -1, sensitive);
-		int contextStart = contextLength * contextIndices.get(0) + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS;
-		return new HitPropValueContextWord(hits, propName, context[contextStart + contextRightStart], sensitive);
+		return new HitPropValueContextWord(hits, propName, contexts.token(hitNumber, contextRightStart), sensitive);
 	}
 
 	@Override
 	public int compare(Object i, Object j) {
-		int[] ca = hits.getHitContext((Integer)i);
-		int caRightStart = ca[Hits.CONTEXTS_RIGHT_START_INDEX];
-		int caLength = ca[Hits.CONTEXTS_LENGTH_INDEX];
-		int[] cb = hits.getHitContext((Integer)j);
-		int cbRightStart = cb[Hits.CONTEXTS_RIGHT_START_INDEX];
-		int cbLength = cb[Hits.CONTEXTS_LENGTH_INDEX];
+		HitContexts contexts = contexts();
+		int a = (Integer)i;
+		int b = (Integer)j;
+		int caRightStart = contexts.rightStart(a);
+		int caLength = contexts.length(a);
+		int cbRightStart = contexts.rightStart(b);
+		int cbLength = contexts.length(b);
 
 		if (caLength <= caRightStart)
 			return cbLength <= cbRightStart ? 0 : (reverse ? 1 : -1);
 		if (cbLength <= cbRightStart)
 			return reverse ? -1 : 1;
 		// Compare one word to the right of the hit
-		int contextIndex = contextIndices.get(0);
-		int cmp = terms.compareSortPosition(
-				ca[contextIndex * caLength + caRightStart + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS],
-				cb[contextIndex * cbLength + cbRightStart + Hits.CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS],
-				sensitive);
+		int cmp = terms.compareSortPosition(contexts.token(a, caRightStart), contexts.token(b, cbRightStart), sensitive);
 		return reverse ? -cmp : cmp;
 	}
 
+	@Override
+	public HitSortKeys getSortKeys() {
+		return contextSortKeys(terms, sensitive, ContextPart.RIGHT, 1);
+	}
+
 	@Override
 	public List<String> needsContext() {
 		return Arrays.asList(luceneFieldName);
@@ -0,0 +1,112 @@
+package nl.inl.blacklab.search.grouping;
+
+import nl.inl.util.IntComparator;
+
+/**
+ * Precomputed sort keys for all hits in a Hits object, indexed by original hit index.
+ *
+ * Allows us to sort hits by comparing ints, without calling HitProperty.compare()
+ * (which would box the hit indices and look up term sort positions for each comparison).
+ *
+ * A key is either a single int per hit, or a sequence of ints per hit (e.g. the
+ * sort positions of the words in the hit text), compared element by element, where
+ * a sequence sorts before any longer sequence it is a prefix of. Keys from several
+ * properties can be combined.
+ */
+public class HitSortKeys implements IntComparator {
+
+	/** Single int per hit, or the concatenated sequences */
+	private int[] keys;
+
+	/** Start of each hit's sequence in keys (n + 1 entries), or null for single-int keys */
+	private int[] offsets;
+
+	/** Keys to compare in succession, or null if this is not a combination */
+	private HitSortKeys[] parts;
+
+	/** Reverse comparison result or not? */
+	private boolean reverse;
+
+	private HitSortKeys(int[] keys, int[] offsets, HitSortKeys[] parts, boolean reverse) {
+		this.keys = keys;
+		this.offsets = offsets;
+		this.parts = parts;
+		this.reverse = reverse;
+	}
+
+	/**
+	 * Sort keys consisting of a single int per hit.
+	 *
+	 * @param keys key for each hit
+	 * @param reverse reverse the comparison or not
+	 * @return the sort keys
+	 */
+	public static HitSortKeys single(int[] keys, boolean reverse) {
+		return new HitSortKeys(keys, null, null, reverse);
+	}
+
+	/**
+	 * Sort keys consisting of a sequence of ints per hit.
+	 *
+	 * @param keys the sequences of all hits, concatenated
+	 * @param offsets start of each hit's sequence in keys, plus an extra entry
+	 *   for the end of the last sequence
+	 * @param reverse reverse the comparison or not
+	 * @return the sort keys
+	 */
+	public static HitSortKeys sequences(int[] keys, int[] offsets, boolean reverse) {
+		return new HitSortKeys(keys, offsets, null, reverse);
+	}
+
+	/**
+	 * Sort keys that compare several other sort keys in succession.
+	 *
+	 * @param parts the sort keys to compare
+	 * @param reverse reverse the comparison or not
+	 * @return the sort keys
+	 */
+	public static HitSortKeys combined(HitSortKeys[] parts, boolean reverse) {
+		return new HitSortKeys(null, null, parts, reverse);
+	}
+
+	/**
+	 * Compare two hits.
+	 *
+	 * @param a original index of the first hit
+	 * @param b original index of the second hit
+	 * @return 0 if equal, negative if a &lt; b, positive if a &gt; b
+	 */
+	@Override
+	public int compare(int a, int b) {
+		int cmp;
+		if (parts != null) {
+			cmp = 0;
+			for (HitSortKeys part: parts) {
+				cmp = part.compare(a, b);
+				if (cmp != 0)
+					break;
+			}
+		} else if (offsets == null) {
+			cmp = keys[a] < keys[b] ? -1 : (keys[a] == keys[b] ? 0 : 1);
+		} else {
+			cmp = compareSequences(a, b);
+		}
+		return reverse ? -cmp : cmp;
+	}
+
+	private int compareSequences(int a, int b) {
+		int ai = offsets[a], aEnd = offsets[a + 1];
+		int bi = offsets[b], bEnd = offsets[b + 1];
+		while (ai < aEnd && bi < bEnd) {
+			if (keys[ai] != keys[bi])
+				return keys[ai] < keys[bi] ? -1 : 1;
+			ai++;
+			bi++;
+		}
+		// One or both ran out, and so far, they're equal.
+		if (ai == aEnd)
+			return bi == bEnd ? 0 : -1;
+		return 1;
+	}
+
+}
@@ -24,9 +24,10 @@ import java.util.Map;
 
 import org.apache.lucene.search.spans.SpanQuery;
 
-import nl.inl.blacklab.search.Hit;
 import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.HitsStore;
 import nl.inl.blacklab.search.Searcher;
+import nl.inl.util.MemoryUtil;
 
 /**
  * Groups results on the basis of a list of criteria, and provide random access to the resulting
@@ -115,23 +116,24 @@ public class ResultsGrouper extends HitGroups {
 		}
 		contextField = hits.getContextFieldPropName();
 		//Thread currentThread = Thread.currentThread();
-		Map<HitPropValue, List<Hit>> groupLists = new HashMap<>();
+		Map<HitPropValue, HitsStore> groupLists = new HashMap<>();
 		for (int i = 0; i < hits.size(); i++) {
 
 			HitPropValue identity = getGroupIdentity(i);
-			List<Hit> group = groupLists.get(identity);
+			HitsStore group = groupLists.get(identity);
 			if (group == null) {
-				group = new ArrayList<>();
+				group = new HitsStore();
 				groupLists.put(identity, group);
 			}
-			group.add(hits.getByOriginalOrder(i));
+			hits.copyHit(i, group);
 			if (group.size() > largestGroupSize)
 				largestGroupSize = group.size();
 			totalHits++;
 		}
-		for (Map.Entry<HitPropValue, List<Hit>> e: groupLists.entrySet()) {
+		for (Map.Entry<HitPropValue, HitsStore> e: groupLists.entrySet()) {
 			HitPropValue groupId = e.getKey();
-			List<Hit> hitList = e.getValue();
+			HitsStore hitList = e.getValue();
+			hitList.trimToSize();
 			HitGroup group = new HitGroup(searcher, groupId, defaultConcField, hitList);
 			group.setContextField(contextField);
 			groups.put(groupId, group);
@@ -223,6 +225,17 @@ public class ResultsGrouper extends HitGroups {
 		return groups.size();
 	}
 
+	@Override
+	public long estimateSizeBytes() {
+		// Per group: map entry, list reference and HitGroup object, plus its hits
+		long perGroup = MemoryUtil.BYTES_PER_MAP_ENTRY + MemoryUtil.BYTES_PER_REFERENCE + MemoryUtil.align(MemoryUtil.BYTES_PER_OBJECT_HEADER + 2 * MemoryUtil.BYTES_PER_REFERENCE);
+		long bytes = 0;
+		for (HitGroup group: groupsOrdered) {
+			bytes += perGroup + group.getHits().estimateSizeBytes();
+		}
+		return bytes;
+	}
+
 	@Override
 	public String toString() {
 		return "ResultsGrouper with " + numberOfGroups() + " groups";
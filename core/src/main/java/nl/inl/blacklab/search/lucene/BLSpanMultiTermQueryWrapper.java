@@ -24,6 +24,9 @@ import nl.inl.blacklab.index.complex.ComplexFieldUtil;
 public class BLSpanMultiTermQueryWrapper<Q extends MultiTermQuery>
 		extends SpanMultiTermQueryWrapper<Q> {
 
+	/** If set, can check tokens for this query using the forward index */
+	private ForwardIndexTermMatcher forwardIndexMatcher;
+
 	public BLSpanMultiTermQueryWrapper(Q query) {
 		super(query);
 		MultiTermQuery.RewriteMethod method = query.getRewriteMethod();
@@ -154,6 +157,27 @@ public class BLSpanMultiTermQueryWrapper<Q extends MultiTermQuery>
 
 	}
 
+	/**
+	 * Set the object that can check tokens for this query using the forward index.
+	 *
+	 * If set, the planner may choose to verify this clause using the forward index
+	 * instead of enumerating all its hits (see SpanQueryFiSeq).
+	 *
+	 * @param forwardIndexMatcher the term matcher, or null if not available
+	 */
+	public void setForwardIndexMatcher(ForwardIndexTermMatcher forwardIndexMatcher) {
+		this.forwardIndexMatcher = forwardIndexMatcher;
+	}
+
+	/**
+	 * Get the object that can check tokens for this query using the forward index.
+	 *
+	 * @return the term matcher, or null if not available
+	 */
+	public ForwardIndexTermMatcher getForwardIndexMatcher() {
+		return forwardIndexMatcher;
+	}
+
 	@Override
 	public String getField() {
 		// Return only base name of complex field!
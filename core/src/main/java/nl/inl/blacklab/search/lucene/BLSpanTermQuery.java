@@ -58,6 +58,13 @@ public class BLSpanTermQuery extends SpanQuery {
 		this.q = q;
 	}
 
+	/**
+	 * @return the term to search for
+	 */
+	public Term getTerm() {
+		return q.getTerm();
+	}
+
 	/**
 	 * Overriding getField to return only the name of the complex field, not the
 	 * property name or alt name following after that.
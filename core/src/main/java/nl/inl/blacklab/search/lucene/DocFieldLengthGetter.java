@@ -7,19 +7,26 @@ import java.util.Map;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReader.CoreClosedListener;
 import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.uninverting.UninvertingReader;
+import org.apache.lucene.util.Bits;
 
 import nl.inl.blacklab.index.complex.ComplexFieldUtil;
-import nl.inl.blacklab.search.Searcher;
 
 /**
  * Used to get the field length in tokens for a document.
  *
  * This is used by SpanQueryNot and SpanQueryExpansion to make sure
  * we don't go beyond the document end.
+ *
+ * Lengths are read from the length field's DocValues (or uninverted, for older
+ * indices) once per segment and cached, so all queries on that segment share them,
+ * even across reopened readers. The cache entry is dropped when the segment is closed.
+ * Documents that have no DocValues in a segment that does (because an older segment
+ * was merged into it) get their length from the stored field.
  */
 public class DocFieldLengthGetter implements Closeable {
 	/** We check some cache entries to see if document lengths were saved in the index or not.
@@ -27,6 +34,17 @@ public class DocFieldLengthGetter implements Closeable {
 	 */
 	private static final int NUMBER_OF_CACHE_ENTRIES_TO_CHECK = 1000;
 
+	/** Cached lengths for a segment/length field that has no usable lengths */
+	private static final int[] NO_CACHED_LENGTHS = new int[0];
+
+	/** Cached length for a document that has no DocValues for the length field.
+	 *  (documents indexed without DocValues may end up in a segment with DocValues
+	 *  when segments are merged) */
+	private static final int NO_CACHED_LENGTH = -1;
+
+	/** Cached field lengths per segment core and length field */
+	private static Map<Object, Map<String, int[]>> cachedLengthsPerSegment = new HashMap<>();
+
 	/** The Lucene index reader, for querying field length */
 	private LeafReader reader;
 
@@ -45,53 +63,117 @@ public class DocFieldLengthGetter implements Closeable {
 	/** Field name to check for the length of the field in tokens */
 	private String lengthTokensFieldName;
 
-	/** Lengths may have been cached using FieldCache */
-	private NumericDocValues cachedFieldLengths;
-
-	private UninvertingReader uninv;
+	/** Cached lengths for this segment (null if not determined yet) */
+	private int[] cachedFieldLengths;
 
 	public DocFieldLengthGetter(LeafReader reader, String fieldName) {
 		this.reader = reader;
 		this.fieldName = fieldName;
 		lengthTokensFieldName = ComplexFieldUtil.lengthTokensField(fieldName);
+	}
 
-		if (fieldName.equals(Searcher.DEFAULT_CONTENTS_FIELD_NAME)) {
-			// Cache the lengths for this field to speed things up
-			try {
+	/**
+	 * Get the cached field lengths for a segment, reading them if necessary.
+	 *
+	 * The cache is only locked to look up and add entries, not while reading the
+	 * lengths, so reading a large segment doesn't hold up queries on other segments.
+	 * If two threads read the same lengths at the same time, the first one is kept.
+	 *
+	 * @param reader the segment
+	 * @param lengthTokensFieldName the length field
+	 * @return the field lengths per document, or NO_CACHED_LENGTHS if not available
+	 */
+	private static int[] getCachedFieldLengths(LeafReader reader, String lengthTokensFieldName) {
+		Object coreKey = reader.getCoreCacheKey();
+		synchronized (cachedLengthsPerSegment) {
+			Map<String, int[]> lengthsPerField = cachedLengthsPerSegment.get(coreKey);
+			if (lengthsPerField == null) {
+				lengthsPerField = new HashMap<>();
+				cachedLengthsPerSegment.put(coreKey, lengthsPerField);
+				reader.addCoreClosedListener(new CoreClosedListener() {
+					@Override
+					public void onClose(Object ownerCoreCacheKey) {
+						synchronized (cachedLengthsPerSegment) {
+							cachedLengthsPerSegment.remove(ownerCoreCacheKey);
+						}
+					}
+				});
+			}
+			int[] lengths = lengthsPerField.get(lengthTokensFieldName);
+			if (lengths != null)
+				return lengths;
+		}
+
+		int[] lengths = readFieldLengths(reader, lengthTokensFieldName);
+		synchronized (cachedLengthsPerSegment) {
+			Map<String, int[]> lengthsPerField = cachedLengthsPerSegment.get(coreKey);
+			if (lengthsPerField == null) {
+				// Segment was closed in the meantime; don't cache
+				return lengths;
+			}
+			int[] cached = lengthsPerField.get(lengthTokensFieldName);
+			if (cached != null)
+				return cached;
+			lengthsPerField.put(lengthTokensFieldName, lengths);
+			return lengths;
+		}
+	}
+
+	/**
+	 * Read the field lengths for all documents in a segment.
+	 *
+	 * @param reader the segment
+	 * @param lengthTokensFieldName the length field
+	 * @return the field lengths per document, or NO_CACHED_LENGTHS if not available
+	 */
+	private static int[] readFieldLengths(LeafReader reader, String lengthTokensFieldName) {
+		try {
+			NumericDocValues docValues = reader.getNumericDocValues(lengthTokensFieldName);
+			Bits docsWithField = null;
+			if (docValues != null) {
+				// Some documents may have been indexed without DocValues
+				docsWithField = reader.getDocsWithField(lengthTokensFieldName);
+			} else {
+				// Older index without DocValues for the length field; uninvert it
 				Map<String, UninvertingReader.Type> fields = new HashMap<>();
 				fields.put(lengthTokensFieldName, UninvertingReader.Type.INTEGER);
-				uninv = new UninvertingReader(reader, fields);
-				cachedFieldLengths = uninv.getNumericDocValues(lengthTokensFieldName); //FieldCache.DEFAULT.getInts(reader, lengthTokensFieldName, true);
+				@SuppressWarnings("resource") // (don't close, that would close the segment as well)
+				UninvertingReader uninv = new UninvertingReader(reader, fields);
+				docValues = uninv.getNumericDocValues(lengthTokensFieldName);
+				if (docValues == null)
+					return NO_CACHED_LENGTHS;
 
-				// Check if the cache was retrieved OK
+				// Check if the values were retrieved OK
 				boolean allZeroes = true;
 				int numToCheck = Math.min(NUMBER_OF_CACHE_ENTRIES_TO_CHECK, reader.maxDoc());
 				for (int i = 0; i < numToCheck ; i++) {
 					// (NOTE: we don't check if document wasn't deleted, but that shouldn't matter here)
-					if (cachedFieldLengths.get(i) != 0) {
+					if (docValues.get(i) != 0) {
 						allZeroes = false;
 						break;
 					}
 				}
 				if (allZeroes) {
 					// Tokens lengths weren't saved in the index, skip cache
-					cachedFieldLengths = null;
+					return NO_CACHED_LENGTHS;
 				}
-			} catch (IOException e) {
-				throw new RuntimeException(e);
 			}
+			int[] lengths = new int[reader.maxDoc()];
+			for (int i = 0; i < lengths.length; i++) {
+				if (docsWithField == null || docsWithField.get(i))
+					lengths[i] = (int)docValues.get(i);
+				else
+					lengths[i] = NO_CACHED_LENGTH;
+			}
+			return lengths;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
 		}
 	}
 
 	@Override
 	public void close() {
-		if (uninv != null) {
-			try {
-				uninv.close();
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
-		}
+		// (nothing to close; cached lengths are released when the segment is closed)
 	}
 
 	/** For testing, we don't have an IndexReader available, so we use test values.
@@ -121,9 +203,10 @@ public class DocFieldLengthGetter implements Closeable {
 		if (useTestValues)
 			return 5; // while testing, all documents have same length
 
-		if (cachedFieldLengths != null) {
-			return (int)cachedFieldLengths.get(doc);
-		}
+		if (cachedFieldLengths == null)
+			cachedFieldLengths = getCachedFieldLengths(reader, lengthTokensFieldName);
+		if (cachedFieldLengths != NO_CACHED_LENGTHS && cachedFieldLengths[doc] != NO_CACHED_LENGTH)
+			return cachedFieldLengths[doc];
 
 		if (!lookedForLengthField || lengthFieldIsStored)  {
 			// We either know the field length is stored in the index,
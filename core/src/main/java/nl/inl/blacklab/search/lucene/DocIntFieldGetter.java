@@ -0,0 +1,144 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.uninverting.UninvertingReader;
+import org.apache.lucene.util.Bits;
+
+import nl.inl.util.ExUtil;
+
+/**
+ * Used to get the value of an integer id field (forward index id, content store id)
+ * for a Lucene document.
+ *
+ * Values are read from the field's DocValues in the document's segment. For segments
+ * written by older versions (which only stored and indexed these fields), we uninvert
+ * the field, or read the stored field if that doesn't work either. How to get the
+ * values is determined per segment, the first time we need a value from it, so
+ * opening an index doesn't have to read all values first.
+ *
+ * When older segments are merged with newer ones, the merged segment has DocValues,
+ * but not for the older documents. We read the stored field for those.
+ */
+public class DocIntFieldGetter {
+
+	/** We check some values to see if the field could be uninverted or not. */
+	private static final int NUMBER_OF_VALUES_TO_CHECK = 1000;
+
+	/** How to get the values for a segment */
+	private static class SegmentValues {
+
+		/** Does this segment have DocValues for our field? */
+		final boolean hasDocValues;
+
+		/** Uninverted values (if the segment has no DocValues), or null to read stored field */
+		final NumericDocValues uninverted;
+
+		SegmentValues(boolean hasDocValues, NumericDocValues uninverted) {
+			this.hasDocValues = hasDocValues;
+			this.uninverted = uninverted;
+		}
+	}
+
+	/** Name of the field to get */
+	private String fieldName;
+
+	/** The segments of the index */
+	private List<LeafReaderContext> leaves;
+
+	/** How to get the values for each segment (entry is null if not determined yet) */
+	private SegmentValues[] segmentValues;
+
+	/**
+	 * Construct the getter.
+	 *
+	 * @param reader the index reader
+	 * @param fieldName the integer field to get
+	 */
+	public DocIntFieldGetter(IndexReader reader, String fieldName) {
+		this.fieldName = fieldName;
+		leaves = reader.leaves();
+		segmentValues = new SegmentValues[leaves.size()];
+	}
+
+	/**
+	 * Get the value of the field for a document.
+	 *
+	 * @param docId the Lucene document id
+	 * @return the value, or -1 if the document has no value for this field
+	 */
+	public int get(int docId) {
+		int segment = ReaderUtil.subIndex(docId, leaves);
+		LeafReaderContext context = leaves.get(segment);
+		int segmentDocId = docId - context.docBase;
+		SegmentValues values = segmentValues[segment];
+		if (values == null) {
+			values = determineSegmentValues(context.reader());
+			segmentValues[segment] = values;
+		}
+		try {
+			LeafReader reader = context.reader();
+			if (values.hasDocValues) {
+				// (Lucene caches the DocValues instances per thread, so this is cheap)
+				Bits docsWithField = reader.getDocsWithField(fieldName);
+				if (docsWithField.get(segmentDocId))
+					return (int)reader.getNumericDocValues(fieldName).get(segmentDocId);
+				// This document was indexed without DocValues, and its segment was merged
+				// with newer ones afterwards; read the stored value below.
+			} else if (values.uninverted != null) {
+				return (int)values.uninverted.get(segmentDocId);
+			}
+
+			// Read the stored value from the Document
+			Document d = reader.document(segmentDocId);
+			String value = d.get(fieldName);
+			return value == null ? -1 : Integer.parseInt(value);
+		} catch (IOException e) {
+			throw ExUtil.wrapRuntimeException(e);
+		}
+	}
+
+	/**
+	 * Determine how to get the values for a segment.
+	 *
+	 * @param reader the segment
+	 * @return how to get the values
+	 */
+	private SegmentValues determineSegmentValues(LeafReader reader) {
+		try {
+			if (reader.getNumericDocValues(fieldName) != null)
+				return new SegmentValues(true, null);
+
+			// Older index without DocValues for this field; uninvert it
+			Map<String, UninvertingReader.Type> fields = new HashMap<>();
+			fields.put(fieldName, UninvertingReader.Type.INTEGER);
+			@SuppressWarnings("resource") // (don't close, that would close the segment as well)
+			UninvertingReader uninv = new UninvertingReader(reader, fields);
+			NumericDocValues uninverted = uninv.getNumericDocValues(fieldName);
+			if (uninverted == null)
+				return new SegmentValues(false, null);
+
+			// Check if the values were retrieved OK
+			// (NOTE: we don't check if document wasn't deleted, but that shouldn't matter here)
+			int numToCheck = Math.min(NUMBER_OF_VALUES_TO_CHECK, reader.maxDoc());
+			for (int i = 0; i < numToCheck; i++) {
+				if (uninverted.get(i) != 0)
+					return new SegmentValues(false, uninverted);
+			}
+			// Field wasn't indexed as a number; read the stored field
+			return new SegmentValues(false, null);
+		} catch (IOException e) {
+			throw ExUtil.wrapRuntimeException(e);
+		}
+	}
+
+}
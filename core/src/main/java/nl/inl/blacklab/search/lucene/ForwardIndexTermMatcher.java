@@ -0,0 +1,113 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.util.BitSet;
+
+import org.apache.lucene.util.automaton.Automaton;
+import org.apache.lucene.util.automaton.CharacterRunAutomaton;
+
+import nl.inl.blacklab.forwardindex.ForwardIndex;
+import nl.inl.blacklab.forwardindex.Terms;
+import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.blacklab.search.QueryExecutionContext;
+import nl.inl.blacklab.search.Searcher;
+import nl.inl.blacklab.search.indexstructure.ComplexFieldDesc;
+import nl.inl.blacklab.search.indexstructure.IndexStructure;
+
+/**
+ * Determines whether a token matches a multi-term query (regex, wildcard,
+ * prefix) by looking at its term id in the forward index.
+ *
+ * The set of matching term ids is determined once, by running the query's automaton
+ * over all the terms in the forward index. After that, checking a token is
+ * a simple lookup. This allows us to verify candidate positions found by another
+ * clause instead of enumerating all hits for the multi-term query.
+ */
+public class ForwardIndexTermMatcher {
+
+	/** The forward index to check tokens in */
+	private ForwardIndex forwardIndex;
+
+	/** The automaton matching the (desensitized) terms we're looking for */
+	private Automaton automaton;
+
+	/** Alternative the automaton was built for; forward index terms are desensitized accordingly */
+	private String alternative;
+
+	/** Term ids that match the automaton (determined on first use) */
+	private BitSet matchingTermIds;
+
+	/**
+	 * Construct a term matcher.
+	 *
+	 * @param forwardIndex the forward index to check tokens in
+	 * @param automaton the automaton matching the terms we're looking for
+	 * @param alternative the alternative the automaton was built for (e.g. "i")
+	 */
+	public ForwardIndexTermMatcher(ForwardIndex forwardIndex, Automaton automaton, String alternative) {
+		this.forwardIndex = forwardIndex;
+		this.automaton = automaton;
+		this.alternative = alternative;
+	}
+
+	/**
+	 * Create a term matcher for a multi-term query in the specified context, if possible.
+	 *
+	 * @param context the query execution context
+	 * @param automaton the automaton matching the terms we're looking for
+	 * @return the term matcher, or null if the property has no forward index
+	 */
+	public static ForwardIndexTermMatcher forContext(QueryExecutionContext context, Automaton automaton) {
+		if (context.subpropPrefix().length() > 0)
+			return null; // subproperties aren't stored separately in the forward index
+		Searcher searcher = context.getSearcher();
+		IndexStructure struct = searcher.getIndexStructure();
+		if (struct == null)
+			return null;
+		ComplexFieldDesc cfd = struct.getComplexFieldDesc(context.fieldName());
+		if (cfd == null || !cfd.getProperties().contains(context.propName()) ||
+				!cfd.getPropertyDesc(context.propName()).hasForwardIndex())
+			return null;
+		ForwardIndex forwardIndex = searcher.getForwardIndex(ComplexFieldUtil.propertyField(context.fieldName(), context.propName()));
+		if (forwardIndex == null)
+			return null;
+		String[] parts = ComplexFieldUtil.getNameComponents(context.luceneField());
+		String alt = parts.length >= 3 ? parts[2] : "";
+		return new ForwardIndexTermMatcher(forwardIndex, automaton, alt);
+	}
+
+	/**
+	 * Get the forward index we check tokens in.
+	 *
+	 * @return the forward index
+	 */
+	public ForwardIndex getForwardIndex() {
+		return forwardIndex;
+	}
+
+	/**
+	 * Does the term with this id match?
+	 *
+	 * @param termId the term id from the forward index
+	 * @return true if it matches, false if not
+	 */
+	public boolean matches(int termId) {
+		return termId >= 0 && getMatchingTermIds().get(termId);
+	}
+
+	private synchronized BitSet getMatchingTermIds() {
+		if (matchingTermIds == null) {
+			CharacterRunAutomaton runAutomaton = new CharacterRunAutomaton(automaton);
+			Terms terms = forwardIndex.getTerms();
+			int n = terms.numberOfTerms();
+			BitSet result = new BitSet(n);
+			for (int i = 0; i < n; i++) {
+				String term = terms.get(i);
+				if (term != null && runAutomaton.run(QueryExecutionContext.desensitize(term, alternative)))
+					result.set(i);
+			}
+			matchingTermIds = result;
+		}
+		return matchingTermIds;
+	}
+
+}
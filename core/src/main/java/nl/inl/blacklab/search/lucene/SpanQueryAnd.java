@@ -19,9 +19,11 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.Map;
 
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.Spans;
 import org.apache.lucene.util.Bits;
@@ -43,6 +45,17 @@ public class SpanQueryAnd extends SpanQueryBase {
 		super(_clauses);
 	}
 
+	@Override
+	public Query rewrite(IndexReader reader) throws IOException {
+		SpanQueryBase rewritten = (SpanQueryBase) super.rewrite(reader);
+
+		// Evaluate the rarest clause first
+		SpanQuery[] ordered = new SpanQueryPlanner(reader).orderAndClauses(rewritten.clauses);
+		if (ordered != rewritten.clauses)
+			return new SpanQueryAnd(ordered);
+		return rewritten;
+	}
+
 	@Override
 	public Spans getSpans(LeafReaderContext context, Bits acceptDocs,
 			Map<Term, TermContext> termContexts) throws IOException {
@@ -0,0 +1,60 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.util.Bits;
+
+/**
+ * Extends the hits of an anchor clause with one token to the left or right,
+ * checking that this token matches a multi-term query using the forward index.
+ *
+ * This is equivalent to a sequence of the anchor clause and the token clause, but
+ * the token clause is verified for each anchor hit instead of being enumerated.
+ * Useful if the anchor is much rarer than the token clause (e.g. "the" [word=".*ing"]).
+ * The planner substitutes this automatically (see SpanQueryPlanner).
+ */
+public class SpanQueryFiSeq extends SpanQueryBase {
+
+	/** The token clause we're verifying (for display) */
+	private SpanQuery tokenClause;
+
+	/** Checks the tokens in the forward index */
+	private ForwardIndexTermMatcher matcher;
+
+	/** if true, the token clause comes after the anchor; if false, before it */
+	private boolean toRight;
+
+	/**
+	 * Construct a SpanQueryFiSeq.
+	 *
+	 * @param anchor the clause to find candidate hits with
+	 * @param tokenClause the token clause to verify (for display)
+	 * @param matcher checks whether tokens match the token clause
+	 * @param toRight if true, the token clause comes after the anchor; if false, before it
+	 */
+	public SpanQueryFiSeq(SpanQuery anchor, SpanQuery tokenClause, ForwardIndexTermMatcher matcher, boolean toRight) {
+		super(anchor);
+		this.tokenClause = tokenClause;
+		this.matcher = matcher;
+		this.toRight = toRight;
+	}
+
+	@Override
+	public Spans getSpans(LeafReaderContext context, Bits acceptDocs, Map<Term,TermContext> termContexts) throws IOException {
+		Spans spans = clauses[0].getSpans(context, acceptDocs, termContexts);
+		if (spans == null)
+			return null;
+		return new SpansFiSeq(spans, matcher, toRight, context.docBase);
+	}
+
+	@Override
+	public String toString(String field) {
+		return "SpanQueryFiSeq(" + clausesToString(field) + ", " + tokenClause.toString(field) + ", " + (toRight ? "RIGHT" : "LEFT") + ")";
+	}
+}
@@ -0,0 +1,345 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.spans.SpanOrQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+
+import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.blacklab.search.sequences.SpanQuerySequence;
+
+/**
+ * Estimates the number of hits a SpanQuery will produce using term statistics
+ * from the index, and uses these estimates to decide in what order clauses are
+ * evaluated.
+ *
+ * Term frequencies are taken from the index. Estimates for other queries are
+ * derived from those of their clauses: an OR produces at most the sum of its
+ * clauses' hits, an AND or sequence at most the minimum. If we know nothing
+ * about a query (e.g. a NOT query), we assume it matches every token in the field.
+ *
+ * Queries should be rewritten before estimating, so multi-term queries (regex,
+ * wildcard, prefix) have been expanded into an OR of the terms they match.
+ */
+public class SpanQueryPlanner {
+
+	/** Only regroup a sequence if the rarest clause is this much rarer than the first */
+	private static final int MIN_SEQUENCE_REGROUP_FACTOR = 2;
+
+	/** Only verify a token clause using the forward index if the anchor is this much rarer */
+	private static final int MIN_FORWARD_INDEX_FACTOR = 10;
+
+	/** The index to get term statistics from */
+	private IndexReader reader;
+
+	/** Estimates we've already made */
+	private Map<SpanQuery, Long> estimates = new IdentityHashMap<>();
+
+	/** Number of tokens per complex field */
+	private Map<String, Long> tokensPerField = new HashMap<>();
+
+	/**
+	 * Construct a planner.
+	 *
+	 * @param reader the index to get term statistics from
+	 */
+	public SpanQueryPlanner(IndexReader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Estimate the number of hits a (rewritten) query will produce.
+	 *
+	 * @param query the query
+	 * @return the estimated number of hits
+	 */
+	public long estimateNumberOfHits(SpanQuery query) {
+		Long estimate = estimates.get(query);
+		if (estimate == null) {
+			try {
+				estimate = estimate(query);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			estimates.put(query, estimate);
+		}
+		return estimate;
+	}
+
+	private long estimate(SpanQuery query) throws IOException {
+		if (query instanceof BLSpanTermQuery)
+			return termFrequency(((BLSpanTermQuery) query).getTerm());
+		if (query instanceof SpanTermQuery)
+			return termFrequency(((SpanTermQuery) query).getTerm());
+		if (query instanceof SpanOrQuery) {
+			// At most the sum of the clauses
+			long n = 0;
+			for (SpanQuery clause: ((SpanOrQuery) query).getClauses()) {
+				n = add(n, estimateNumberOfHits(clause));
+			}
+			return n;
+		}
+		if (query instanceof SpanQueryAnd || query instanceof SpanQuerySequence) {
+			// At most the minimum of the clauses
+			long n = Long.MAX_VALUE;
+			for (SpanQuery clause: ((SpanQueryBase) query).clauses) {
+				n = Math.min(n, estimateNumberOfHits(clause));
+			}
+			return n;
+		}
+		if (query instanceof SpanQueryNot || query instanceof SpanQueryNGrams || query instanceof SpanQueryTagsOld)
+			return numberOfTokens(query.getField());
+		if (query instanceof SpanQueryBase) {
+			// Capture group, repetition, expansion, position filter, etc.:
+			// assume roughly as many hits as the first clause
+			SpanQuery[] clauses = ((SpanQueryBase) query).clauses;
+			if (clauses.length > 0 && clauses[0] != null)
+				return estimateNumberOfHits(clauses[0]);
+		}
+		// Don't know anything about this query
+		return numberOfTokens(query.getField());
+	}
+
+	private long termFrequency(Term term) throws IOException {
+		long freq = reader.totalTermFreq(term);
+		if (freq < 0) {
+			// Not available for this field; fall back to document frequency
+			freq = reader.docFreq(term);
+		}
+		return freq;
+	}
+
+	/**
+	 * Determine the number of tokens in a complex field.
+	 *
+	 * This is the sum of all term frequencies of its largest property.
+	 *
+	 * @param fieldName the complex field
+	 * @return the number of tokens
+	 */
+	private long numberOfTokens(String fieldName) throws IOException {
+		if (fieldName == null)
+			return Long.MAX_VALUE;
+		String baseName = ComplexFieldUtil.getBaseName(fieldName);
+		Long tokens = tokensPerField.get(baseName);
+		if (tokens == null) {
+			long n = 0;
+			for (String luceneField: MultiFields.getIndexedFields(reader)) {
+				if (ComplexFieldUtil.getBaseName(luceneField).equals(baseName))
+					n = Math.max(n, reader.getSumTotalTermFreq(luceneField));
+			}
+			tokens = n;
+			tokensPerField.put(baseName, tokens);
+		}
+		return tokens;
+	}
+
+	private static long add(long a, long b) {
+		long sum = a + b;
+		return sum < 0 ? Long.MAX_VALUE : sum; // overflow
+	}
+
+	/**
+	 * Order the clauses of an AND query from least to most frequent.
+	 *
+	 * SpansAnd advances the first clause to find candidate documents and lets the
+	 * other catch up, so driving from the rarest clause minimizes the work done.
+	 *
+	 * Clauses containing captured groups are left alone, so the groups are still
+	 * registered in the order they appear in the query.
+	 *
+	 * @param clauses the (rewritten) clauses
+	 * @return the ordered clauses, or the original array if already in order
+	 */
+	public SpanQuery[] orderAndClauses(SpanQuery[] clauses) {
+		for (SpanQuery clause: clauses) {
+			if (containsCaptureGroup(clause))
+				return clauses;
+		}
+		List<SpanQuery> ordered = new ArrayList<>(Arrays.asList(clauses));
+		Collections.sort(ordered, new Comparator<SpanQuery>() {
+			@Override
+			public int compare(SpanQuery a, SpanQuery b) {
+				long fa = estimateNumberOfHits(a);
+				long fb = estimateNumberOfHits(b);
+				return fa < fb ? -1 : (fa == fb ? 0 : 1);
+			}
+		});
+		if (ordered.equals(Arrays.asList(clauses)))
+			return clauses;
+		return ordered.toArray(new SpanQuery[0]);
+	}
+
+	private static boolean containsCaptureGroup(SpanQuery query) {
+		if (query instanceof SpanQueryCaptureGroup)
+			return true;
+		SpanQuery[] clauses = null;
+		if (query instanceof SpanQueryBase)
+			clauses = ((SpanQueryBase) query).clauses;
+		else if (query instanceof SpanOrQuery)
+			clauses = ((SpanOrQuery) query).getClauses();
+		else if (query instanceof SpanQueryDocLevelAndNot || query instanceof SpanQueryUnique)
+			return true; // can't look inside; play it safe
+		if (clauses != null) {
+			for (SpanQuery clause: clauses) {
+				if (clause != null && containsCaptureGroup(clause))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Regroup a sequence so it is evaluated starting from its rarest clause.
+	 *
+	 * SpanQuerySequence combines its clauses from left to right, so a sequence
+	 * starting with frequent clauses produces many intermediate matches that are
+	 * discarded later. Because the sequence operator is associative, we can instead
+	 * start with the rarest clause and repeatedly extend the match with its rarer
+	 * neighbour, nesting the sequences accordingly. The order of the clauses (and
+	 * therefore the matches and captured groups) is unchanged.
+	 *
+	 * @param clauses the (rewritten) clauses of the sequence
+	 * @return the regrouped sequence, or null if it's best left as-is
+	 */
+	public SpanQuery regroupSequence(SpanQuery[] clauses) {
+		if (clauses.length < 3)
+			return null; // nothing to regroup
+		int rarest = 0;
+		for (int i = 1; i < clauses.length; i++) {
+			if (estimateNumberOfHits(clauses[i]) < estimateNumberOfHits(clauses[rarest]))
+				rarest = i;
+		}
+		long rarestHits = estimateNumberOfHits(clauses[rarest]);
+		if (rarest == 0 || rarestHits > estimateNumberOfHits(clauses[0]) / MIN_SEQUENCE_REGROUP_FACTOR)
+			return null; // left-to-right is fine
+		SpanQuery core = clauses[rarest];
+		int left = rarest - 1, right = rarest + 1;
+		while (left >= 0 || right < clauses.length) {
+			boolean extendLeft = right >= clauses.length ||
+					left >= 0 && estimateNumberOfHits(clauses[left]) <= estimateNumberOfHits(clauses[right]);
+			if (extendLeft) {
+				core = new SpanQuerySequence(clauses[left], core);
+				left--;
+			} else {
+				core = new SpanQuerySequence(core, clauses[right]);
+				right++;
+			}
+		}
+		return core;
+	}
+
+	/**
+	 * Verify non-selective token clauses of a sequence using the forward index.
+	 *
+	 * Starting from the rarest clause (the anchor), neighbouring clauses that match
+	 * a single token and have a forward index matcher (regex, wildcard, prefix) are
+	 * folded into the anchor, as long as they produce many more hits than the anchor.
+	 * Instead of merging the postings lists of all the terms such a clause expands
+	 * to, we look up the token next to each anchor hit in the forward index.
+	 *
+	 * @param original the clauses of the sequence before rewriting
+	 * @param clauses the rewritten clauses of the sequence
+	 * @return the new query, or null if it's best left as-is
+	 */
+	public SpanQuery verifyWithForwardIndex(SpanQuery[] original, SpanQuery[] clauses) {
+		int rarest = 0;
+		for (int i = 1; i < clauses.length; i++) {
+			if (estimateNumberOfHits(clauses[i]) < estimateNumberOfHits(clauses[rarest]))
+				rarest = i;
+		}
+		SpanQuery anchor = clauses[rarest];
+		if (containsCaptureGroup(anchor))
+			return null; // SpansFiSeq doesn't pass on captured groups
+		long threshold = estimateNumberOfHits(anchor);
+		threshold = threshold > Long.MAX_VALUE / MIN_FORWARD_INDEX_FACTOR ? Long.MAX_VALUE : threshold * MIN_FORWARD_INDEX_FACTOR;
+		int left = rarest - 1, right = rarest + 1;
+		while (true) {
+			ForwardIndexTermMatcher matcher;
+			if (right < clauses.length && (matcher = forwardIndexMatcher(original[right], clauses[right], threshold)) != null) {
+				anchor = new SpanQueryFiSeq(anchor, original[right], matcher, true);
+				right++;
+			} else if (left >= 0 && (matcher = forwardIndexMatcher(original[left], clauses[left], threshold)) != null) {
+				anchor = new SpanQueryFiSeq(anchor, original[left], matcher, false);
+				left--;
+			} else {
+				break;
+			}
+		}
+		if (right - left == 2)
+			return null; // nothing to verify
+		if (left < 0 && right >= clauses.length)
+			return anchor;
+		List<SpanQuery> result = new ArrayList<>();
+		result.addAll(Arrays.asList(clauses).subList(0, left + 1));
+		result.add(anchor);
+		result.addAll(Arrays.asList(clauses).subList(right, clauses.length));
+		return new SpanQuerySequence(result);
+	}
+
+	private ForwardIndexTermMatcher forwardIndexMatcher(SpanQuery original, SpanQuery rewritten, long minimumHits) {
+		if (!(original instanceof BLSpanMultiTermQueryWrapper))
+			return null;
+		ForwardIndexTermMatcher matcher = ((BLSpanMultiTermQueryWrapper<?>) original).getForwardIndexMatcher();
+		if (matcher == null || estimateNumberOfHits(rewritten) < minimumHits)
+			return null;
+		return matcher;
+	}
+
+	/**
+	 * Describe how a query will be executed, with the estimated number of hits
+	 * for each (sub)query.
+	 *
+	 * @param query the query (will be rewritten first)
+	 * @return a multi-line description of the query plan
+	 */
+	public String explain(SpanQuery query) {
+		try {
+			Query rewritten = query;
+			for (Query q = rewritten.rewrite(reader); q != rewritten; q = rewritten.rewrite(reader)) {
+				rewritten = q;
+			}
+			StringBuilder b = new StringBuilder();
+			explain(b, (SpanQuery) rewritten, 0);
+			return b.toString();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void explain(StringBuilder b, SpanQuery query, int depth) {
+		for (int i = 0; i < depth; i++) {
+			b.append("  ");
+		}
+		SpanQuery[] clauses = null;
+		if (query instanceof SpanQueryBase)
+			clauses = ((SpanQueryBase) query).clauses;
+		else if (query instanceof SpanOrQuery)
+			clauses = ((SpanOrQuery) query).getClauses();
+		if (clauses == null)
+			b.append(query.toString(query.getField()));
+		else
+			b.append(query.getClass().getSimpleName());
+		b.append(" (~").append(estimateNumberOfHits(query)).append(" hits)\n");
+		if (clauses != null) {
+			for (SpanQuery clause: clauses) {
+				if (clause != null)
+					explain(b, clause, depth + 1);
+			}
+		}
+	}
+
+}
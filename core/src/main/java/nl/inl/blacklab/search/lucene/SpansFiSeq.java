@@ -0,0 +1,238 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.search.spans.Spans;
+
+import nl.inl.blacklab.forwardindex.ForwardIndex;
+import nl.inl.blacklab.search.Span;
+
+/**
+ * Extends the hits of an anchor clause with one token to the left or right,
+ * if that token matches according to the forward index.
+ *
+ * All anchor hits in a document are collected first, so the tokens to check can be
+ * retrieved from the forward index with a single call per document.
+ */
+class SpansFiSeq extends BLSpans {
+
+	/** The anchor clause */
+	private BLSpans anchor;
+
+	/** Checks the tokens in the forward index */
+	private ForwardIndexTermMatcher matcher;
+
+	/** The forward index to get the tokens from */
+	private ForwardIndex forwardIndex;
+
+	/** if true, extend hits to the right; if false, to the left */
+	private boolean toRight;
+
+	/** Lucene doc id of the first document in this segment */
+	private int docBase;
+
+	/** Current document */
+	private int currentDoc = -1;
+
+	/** Start positions of the hits in the current document */
+	private int[] starts = new int[16];
+
+	/** End positions of the hits in the current document */
+	private int[] ends = new int[16];
+
+	/** Number of hits in the current document */
+	private int numberOfHits = 0;
+
+	/** Index of the current hit (-1 if we haven't started yet) */
+	private int index = -1;
+
+	/**
+	 * Constructs a SpansFiSeq.
+	 *
+	 * @param anchor the clause to find candidate hits with
+	 * @param matcher checks whether tokens match
+	 * @param toRight if true, extend hits to the right; if false, to the left
+	 * @param docBase Lucene doc id of the first document in this segment
+	 */
+	public SpansFiSeq(Spans anchor, ForwardIndexTermMatcher matcher, boolean toRight, int docBase) {
+		this.anchor = BLSpansWrapper.optWrap(anchor);
+		this.matcher = matcher;
+		this.forwardIndex = matcher.getForwardIndex();
+		this.toRight = toRight;
+		this.docBase = docBase;
+	}
+
+	@Override
+	public int docID() {
+		return currentDoc;
+	}
+
+	@Override
+	public int nextDoc() throws IOException {
+		return findDocWithHits(anchor.nextDoc());
+	}
+
+	@Override
+	public int advance(int target) throws IOException {
+		return findDocWithHits(anchor.advance(target));
+	}
+
+	/**
+	 * Starting from the anchor's current document, find a document
+	 * with verified hits.
+	 *
+	 * @param doc the anchor's current document
+	 * @return the document found, or NO_MORE_DOCS
+	 * @throws IOException on error
+	 */
+	private int findDocWithHits(int doc) throws IOException {
+		while (doc != NO_MORE_DOCS) {
+			if (collectHits(doc)) {
+				currentDoc = doc;
+				return doc;
+			}
+			doc = anchor.nextDoc();
+		}
+		currentDoc = NO_MORE_DOCS;
+		return NO_MORE_DOCS;
+	}
+
+	/**
+	 * Collect the anchor hits in the current document, and keep those
+	 * that can be extended with a matching token.
+	 *
+	 * @param doc the document
+	 * @return true if any hits were found, false if not
+	 * @throws IOException on error
+	 */
+	private boolean collectHits(int doc) throws IOException {
+		numberOfHits = 0;
+		index = -1;
+		while (anchor.nextStartPosition() != NO_MORE_POSITIONS) {
+			if (numberOfHits == starts.length) {
+				starts = Arrays.copyOf(starts, starts.length * 2);
+				ends = Arrays.copyOf(ends, ends.length * 2);
+			}
+			starts[numberOfHits] = anchor.startPosition();
+			ends[numberOfHits] = anchor.endPosition();
+			numberOfHits++;
+		}
+		if (numberOfHits == 0)
+			return false;
+
+		// Determine which tokens to check (only those within the document)
+		int fiid = forwardIndex.luceneDocIdToFiid(docBase + doc);
+		int docLength = forwardIndex.getDocLength(fiid);
+		int[] tokenStart = new int[numberOfHits];
+		int[] tokenEnd = new int[numberOfHits];
+		int[] hitIndex = new int[numberOfHits];
+		int n = 0;
+		for (int i = 0; i < numberOfHits; i++) {
+			int pos = toRight ? ends[i] : starts[i] - 1;
+			if (pos >= 0 && pos < docLength) {
+				tokenStart[n] = pos;
+				tokenEnd[n] = pos + 1;
+				hitIndex[n] = i;
+				n++;
+			}
+		}
+		if (n == 0) {
+			numberOfHits = 0;
+			return false;
+		}
+
+		// Retrieve the tokens and keep the hits whose token matches
+		List<int[]> tokens = forwardIndex.retrievePartsInt(fiid, Arrays.copyOf(tokenStart, n), Arrays.copyOf(tokenEnd, n));
+		int kept = 0;
+		for (int j = 0; j < n; j++) {
+			if (matcher.matches(tokens.get(j)[0])) {
+				int i = hitIndex[j];
+				starts[kept] = toRight ? starts[i] : starts[i] - 1;
+				ends[kept] = toRight ? ends[i] + 1 : ends[i];
+				kept++;
+			}
+		}
+		numberOfHits = kept;
+		return kept > 0;
+	}
+
+	@Override
+	public int nextStartPosition() throws IOException {
+		if (index < numberOfHits)
+			index++;
+		return startPosition();
+	}
+
+	@Override
+	public int startPosition() {
+		if (index < 0)
+			return -1;
+		if (index >= numberOfHits)
+			return NO_MORE_POSITIONS;
+		return starts[index];
+	}
+
+	@Override
+	public int endPosition() {
+		if (index < 0)
+			return -1;
+		if (index >= numberOfHits)
+			return NO_MORE_POSITIONS;
+		return ends[index];
+	}
+
+	@Override
+	public String toString() {
+		return "SpansFiSeq(" + anchor + ", " + (toRight ? "RIGHT" : "LEFT") + ")";
+	}
+
+	@Override
+	public boolean hitsEndPointSorted() {
+		return anchor.hitsEndPointSorted();
+	}
+
+	@Override
+	public boolean hitsStartPointSorted() {
+		return anchor.hitsStartPointSorted();
+	}
+
+	@Override
+	public boolean hitsAllSameLength() {
+		return anchor.hitsAllSameLength();
+	}
+
+	@Override
+	public int hitsLength() {
+		int length = anchor.hitsLength();
+		return length >= 0 ? length + 1 : length;
+	}
+
+	@Override
+	public boolean hitsHaveUniqueStart() {
+		return anchor.hitsHaveUniqueStart();
+	}
+
+	@Override
+	public boolean hitsHaveUniqueEnd() {
+		return anchor.hitsHaveUniqueEnd();
+	}
+
+	@Override
+	public boolean hitsAreUnique() {
+		return anchor.hitsAreUnique();
+	}
+
+	@Override
+	public void passHitQueryContextToClauses(HitQueryContext context) {
+		anchor.setHitQueryContext(context);
+	}
+
+	@Override
+	public void getCapturedGroups(Span[] capturedGroups) {
+		// The planner doesn't use this for anchors that capture groups,
+		// because we've moved past the anchor hit by the time it is returned.
+	}
+
+}
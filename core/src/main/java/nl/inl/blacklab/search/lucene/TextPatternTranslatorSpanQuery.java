@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.AutomatonQuery;
 import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.RegexpQuery;
 import org.apache.lucene.search.WildcardQuery;
@@ -60,7 +61,7 @@ public class TextPatternTranslatorSpanQuery extends TextPatternTranslator<SpanQu
 	public SpanQuery regex(QueryExecutionContext context, String value) {
 		String valueNoStartEndMatch = value.replaceAll("\\^|\\$", "");
 		try {
-			return new BLSpanMultiTermQueryWrapper<>(new RegexpQuery(
+			return multiTerm(context, new RegexpQuery(
 					new Term(context.luceneField(), context.subpropPrefix() + context.optDesensitize(valueNoStartEndMatch))));
 		} catch (StackOverflowError e) {
 			// If we pass in a really large regular expression, like a huge
@@ -164,16 +165,32 @@ public class TextPatternTranslatorSpanQuery extends TextPatternTranslator<SpanQu
 
 	@Override
 	public SpanQuery wildcard(QueryExecutionContext context, String value) {
-		return new BLSpanMultiTermQueryWrapper<>(new WildcardQuery(new Term(context.luceneField(),
+		return multiTerm(context, new WildcardQuery(new Term(context.luceneField(),
 				context.subpropPrefix() + context.optDesensitize(value))));
 	}
 
 	@Override
 	public SpanQuery prefix(QueryExecutionContext context, String value) {
-		return new BLSpanMultiTermQueryWrapper<>(new PrefixQuery(new Term(context.luceneField(),
+		return multiTerm(context, new PrefixQuery(new Term(context.luceneField(),
 				context.subpropPrefix() + context.optDesensitize(value))));
 	}
 
+	/**
+	 * Wrap a multi-term query so it can be used as a SpanQuery.
+	 *
+	 * If the property has a forward index, the planner may verify tokens
+	 * using it instead of enumerating all matching terms.
+	 *
+	 * @param context the query execution context
+	 * @param query the multi-term query
+	 * @return the SpanQuery
+	 */
+	private static <Q extends AutomatonQuery> SpanQuery multiTerm(QueryExecutionContext context, Q query) {
+		BLSpanMultiTermQueryWrapper<Q> wrapper = new BLSpanMultiTermQueryWrapper<>(query);
+		wrapper.setForwardIndexMatcher(ForwardIndexTermMatcher.forContext(context, query.getAutomaton()));
+		return wrapper;
+	}
+
 	@Override
 	public SpanQuery not(QueryExecutionContext context, SpanQuery clause) {
 		SpanQueryNot spanQueryNot = new SpanQueryNot(clause);
@@ -17,7 +17,6 @@ package nl.inl.blacklab.search.sequences;
 
 import java.io.IOException;
 import java.util.Collection;
-import java.util.Comparator;
 
 import org.apache.lucene.search.spans.Spans;
 
@@ -26,15 +25,16 @@ import nl.inl.blacklab.search.Span;
 import nl.inl.blacklab.search.lucene.BLSpans;
 import nl.inl.blacklab.search.lucene.BLSpansWrapper;
 import nl.inl.blacklab.search.lucene.HitQueryContext;
+import nl.inl.blacklab.search.sequences.SpansInBuckets.BucketSpanComparator;
 
 /**
  * Sort the given Spans per document, according to the given comparator.
  */
 public class PerDocumentSortedSpans extends BLSpans {
 
-	final static Comparator<Hit> cmpStartPoint = new SpanComparatorStartPoint();
+	final static BucketSpanComparator cmpStartPoint = new SpanComparatorStartPoint();
 
-	final static Comparator<Hit> cmpEndPoint = new SpanComparatorEndPoint();
+	final static BucketSpanComparator cmpEndPoint = new SpanComparatorEndPoint();
 
 	protected BLSpans source;
 
@@ -56,7 +56,7 @@ public class PerDocumentSortedSpans extends BLSpans {
 
 		// Wrap a HitsPerDocument and show it to the client as a normal, sequential Spans.
 		this.sortByEndPoint = sortByEndPoint;
-		Comparator<Hit> comparator = null;
+		BucketSpanComparator comparator = null;
 		if (sortByEndPoint) {
 			if (!source.hitsEndPointSorted())
 				comparator = cmpEndPoint;
@@ -23,7 +23,7 @@ import nl.inl.blacklab.search.Hit;
 /**
  * Compare two hits (assumed to be in the same document) by start point, then by end point.
  */
-public class SpanComparatorStartPoint implements Comparator<Hit> {
+public class SpanComparatorStartPoint implements Comparator<Hit>, SpansInBuckets.BucketSpanComparator {
 	@Override
 	public int compare(Hit o1, Hit o2) {
 		if (o2.start != o1.start)
@@ -31,4 +31,12 @@ public class SpanComparatorStartPoint implements Comparator<Hit> {
 
 		return o1.end - o2.end;
 	}
+
+	@Override
+	public int compare(int start1, int end1, int start2, int end2) {
+		if (start2 != start1)
+			return start1 - start2;
+
+		return end1 - end2;
+	}
 }
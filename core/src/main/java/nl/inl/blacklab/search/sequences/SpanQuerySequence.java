@@ -22,11 +22,14 @@ import java.util.Map;
 import nl.inl.blacklab.search.lucene.BLSpans;
 import nl.inl.blacklab.search.lucene.BLSpansWrapper;
 import nl.inl.blacklab.search.lucene.SpanQueryBase;
+import nl.inl.blacklab.search.lucene.SpanQueryPlanner;
 import nl.inl.blacklab.search.lucene.SpansUnique;
 
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.Spans;
 import org.apache.lucene.util.Bits;
@@ -57,6 +60,24 @@ public class SpanQuerySequence extends SpanQueryBase {
 		super(_clauses);
 	}
 
+	@Override
+	public Query rewrite(IndexReader reader) throws IOException {
+		SpanQuery[] original = clauses.clone(); // (super.rewrite() may replace our clauses)
+		SpanQuerySequence rewritten = (SpanQuerySequence) super.rewrite(reader);
+		SpanQueryPlanner planner = new SpanQueryPlanner(reader);
+
+		// Verify non-selective token clauses using the forward index, if that's worth it
+		SpanQuery verified = planner.verifyWithForwardIndex(original, rewritten.clauses);
+		if (verified != null)
+			return verified;
+
+		// Start matching from the rarest clause, if that's worth it
+		SpanQuery regrouped = planner.regroupSequence(rewritten.clauses);
+		if (regrouped != null)
+			return regrouped;
+		return rewritten;
+	}
+
 	@Override
 	public Spans getSpans(LeafReaderContext context, Bits acceptDocs, Map<Term,TermContext> termContexts) throws IOException {
 		BLSpans combi = BLSpansWrapper.optWrap(clauses[0].getSpans(context, acceptDocs, termContexts));
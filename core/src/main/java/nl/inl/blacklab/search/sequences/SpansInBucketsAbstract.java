@@ -16,13 +16,8 @@
 package nl.inl.blacklab.search.sequences;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.spans.Spans;
@@ -32,6 +27,8 @@ import nl.inl.blacklab.search.Hit;
 import nl.inl.blacklab.search.Span;
 import nl.inl.blacklab.search.lucene.BLSpans;
 import nl.inl.blacklab.search.lucene.HitQueryContext;
+import nl.inl.util.IntComparator;
+import nl.inl.util.ParallelMergeSort;
 
 /**
  * Wrap a Spans to retrieve sequences of certain matches (in "buckets"), so we can process the
@@ -56,19 +53,38 @@ abstract class SpansInBucketsAbstract implements SpansInBuckets {
 
 	protected int currentDoc = -1;
 
-	private List<Hit> bucket = new ArrayList<>();
+	/** Initial capacity of the bucket arrays */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** Start positions of the hits in the current bucket */
+	private int[] starts = new int[INITIAL_CAPACITY];
+
+	/** End positions of the hits in the current bucket */
+	private int[] ends = new int[INITIAL_CAPACITY];
 
 	/**
 	 * For each hit we fetched, store the captured groups, so we don't
-	 * lose this information.
+	 * lose this information. The arrays are reused for subsequent buckets.
 	 */
-	private Map<Hit, Span[]> capturedGroupsPerHit = new HashMap<>();
+	private Span[][] capturedGroupsPerHit = new Span[INITIAL_CAPACITY][];
+
+	/** Scratch arrays used while sorting (swapped with the ones above) */
+	private int[] sortedStarts, sortedEnds;
+
+	/** Scratch array used while sorting (swapped with the one above) */
+	private Span[][] sortedCapturedGroups;
+
+	/** Order of the hits in the bucket after sorting (index into the unsorted arrays) */
+	private int[] sortOrder;
 
 	/**
 	 * Size of the current bucket, or -1 if we're not at a valid bucket.
 	 */
 	private int bucketSize = -1;
 
+	/** Size of the last bucket we gathered (to decide when to shrink the bucket arrays) */
+	private int previousBucketSize = 0;
+
 	private HitQueryContext hitQueryContext;
 
 	/** Is there captured group information for each hit that we need to store? */
@@ -78,19 +94,80 @@ abstract class SpansInBucketsAbstract implements SpansInBuckets {
 	protected boolean clauseCapturesGroups = true;
 
 	protected void addHitFromSource() {
-		Hit hit = new Hit(source.docID(), source.startPosition(), source.endPosition());
-		bucket.add(hit);
+		if (bucketSize == starts.length)
+			ensureCapacity(bucketSize + 1);
+		starts[bucketSize] = source.startPosition();
+		ends[bucketSize] = source.endPosition();
 		if (doCapturedGroups) {
 			// Store captured group information
-			Span[] capturedGroups = new Span[hitQueryContext.numberOfCapturedGroups()];
+			int n = hitQueryContext.numberOfCapturedGroups();
+			Span[] capturedGroups = capturedGroupsPerHit[bucketSize];
+			if (capturedGroups == null || capturedGroups.length != n)
+				capturedGroupsPerHit[bucketSize] = capturedGroups = new Span[n];
+			else
+				Arrays.fill(capturedGroups, null);
 			((BLSpans)source).getCapturedGroups(capturedGroups);
-			capturedGroupsPerHit.put(hit, capturedGroups);
 		}
 		bucketSize++;
 	}
 
-	protected void sortHits(Comparator<Hit> hitComparator) {
-		Collections.sort(bucket, hitComparator);
+	/**
+	 * Make sure the bucket arrays can hold at least the specified number of hits.
+	 *
+	 * @param capacity the required capacity
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity <= starts.length)
+			return;
+		int newCapacity = Math.max(capacity, starts.length * 2);
+		starts = Arrays.copyOf(starts, newCapacity);
+		ends = Arrays.copyOf(ends, newCapacity);
+		capturedGroupsPerHit = Arrays.copyOf(capturedGroupsPerHit, newCapacity);
+	}
+
+	/**
+	 * Sort the hits in the current bucket.
+	 *
+	 * The sort is stable, and works on the start and end arrays directly,
+	 * so no Hit objects are needed.
+	 *
+	 * @param comparator how to compare hits
+	 */
+	protected void sortHits(final BucketSpanComparator comparator) {
+		if (bucketSize < 2)
+			return;
+		if (sortOrder == null || sortOrder.length < starts.length) {
+			sortOrder = new int[starts.length];
+			sortedStarts = new int[starts.length];
+			sortedEnds = new int[starts.length];
+			sortedCapturedGroups = new Span[starts.length][];
+		}
+		for (int i = 0; i < bucketSize; i++) {
+			sortOrder[i] = i;
+		}
+		final int[] s = starts, e = ends;
+		ParallelMergeSort.sort(sortOrder, 0, bucketSize, new IntComparator() {
+			@Override
+			public int compare(int a, int b) {
+				return comparator.compare(s[a], e[a], s[b], e[b]);
+			}
+		}, null);
+
+		// Put the hits in sorted order, then swap the arrays
+		for (int i = 0; i < bucketSize; i++) {
+			int j = sortOrder[i];
+			sortedStarts[i] = starts[j];
+			sortedEnds[i] = ends[j];
+			sortedCapturedGroups[i] = capturedGroupsPerHit[j];
+		}
+		int[] tmp = starts;
+		starts = sortedStarts;
+		sortedStarts = tmp;
+		tmp = ends;
+		ends = sortedEnds;
+		sortedEnds = tmp;
+		// (copy instead of swap, because captured group arrays beyond bucketSize are reused)
+		System.arraycopy(sortedCapturedGroups, 0, capturedGroupsPerHit, 0, bucketSize);
 	}
 
 	@Override
@@ -100,27 +177,28 @@ abstract class SpansInBucketsAbstract implements SpansInBuckets {
 
 	@Override
 	public int startPosition(int indexInBucket) {
-		return bucket.get(indexInBucket).start;
+		return starts[indexInBucket];
 	}
 
 	@Override
 	public int endPosition(int indexInBucket) {
-		return bucket.get(indexInBucket).end;
+		return ends[indexInBucket];
 	}
 
 	@Override
 	public Hit getHit(int indexInBucket) {
-		return bucket.get(indexInBucket);
+		return new Hit(currentDoc, starts[indexInBucket], ends[indexInBucket]);
 	}
 
 	@Override
 	public Collection<byte[]> getPayload(int indexInBucket) {
-		return bucket.get(indexInBucket).getPayload();
+		// (we don't store payloads in buckets; neither did Hit)
+		return null;
 	}
 
 	@Override
 	public boolean isPayloadAvailable(int indexInBucket) {
-		return bucket.get(indexInBucket).isPayloadAvailable();
+		return false;
 	}
 
 	public SpansInBucketsAbstract(Spans source) {
@@ -180,21 +258,21 @@ abstract class SpansInBucketsAbstract implements SpansInBuckets {
 	}
 
 	private int gatherHitsInternal() throws IOException {
-		// NOTE: we could call .clear() here, but we don't want to hold on to
+		// NOTE: we reuse the bucket arrays, but we don't want to hold on to
 		// a lot of memory indefinitely after encountering one huge bucket.
-		if (bucket.size() < ARRAYLIST_REALLOC_THRESHOLD) {
-			// Not a huge amount of memory, so don't reallocate
-			bucket.clear();
-			capturedGroupsPerHit.clear();
-		} else {
-			// Reallocate in this case to avoid holding on to a lot of memory
-			bucket = new ArrayList<>();
-			capturedGroupsPerHit = new HashMap<>();
+		if (starts.length >= ARRAYLIST_REALLOC_THRESHOLD && previousBucketSize < starts.length / 4) {
+			// Last bucket was much smaller; reallocate to avoid holding on to a lot of memory
+			starts = new int[INITIAL_CAPACITY];
+			ends = new int[INITIAL_CAPACITY];
+			capturedGroupsPerHit = new Span[INITIAL_CAPACITY][];
+			sortOrder = sortedStarts = sortedEnds = null;
+			sortedCapturedGroups = null;
 		}
 
 		bucketSize = 0;
 		doCapturedGroups = clauseCapturesGroups && source instanceof BLSpans && hitQueryContext != null && hitQueryContext.numberOfCapturedGroups() > 0;
 		gatherHits();
+		previousBucketSize = bucketSize;
 		return currentDoc;
 	}
 
@@ -226,7 +304,7 @@ abstract class SpansInBucketsAbstract implements SpansInBuckets {
 	public void getCapturedGroups(int indexInBucket, Span[] capturedGroups) {
 		if (!doCapturedGroups)
 			return;
-		Span[] previouslyCapturedGroups = capturedGroupsPerHit.get(bucket.get(indexInBucket));
+		Span[] previouslyCapturedGroups = capturedGroupsPerHit[indexInBucket];
 		if (previouslyCapturedGroups != null) {
 			for (int i = 0; i < capturedGroups.length; i++) {
 				if (previouslyCapturedGroups[i] != null)
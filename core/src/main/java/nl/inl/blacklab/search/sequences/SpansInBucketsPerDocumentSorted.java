@@ -16,12 +16,9 @@
 package nl.inl.blacklab.search.sequences;
 
 import java.io.IOException;
-import java.util.Comparator;
 
 import org.apache.lucene.search.spans.Spans;
 
-import nl.inl.blacklab.search.Hit;
-
 /**
  * Wrap a Spans to retrieve hits per document, so we can process all matches in a document
  * efficiently.
@@ -29,9 +26,9 @@ import nl.inl.blacklab.search.Hit;
  * Hits are sorted by the given comparator.
  */
 public class SpansInBucketsPerDocumentSorted extends SpansInBucketsPerDocument {
-	private Comparator<Hit> comparator;
+	private BucketSpanComparator comparator;
 
-	public SpansInBucketsPerDocumentSorted(Spans source, Comparator<Hit> comparator) {
+	public SpansInBucketsPerDocumentSorted(Spans source, BucketSpanComparator comparator) {
 		super(source);
 		this.comparator = comparator;
 	}
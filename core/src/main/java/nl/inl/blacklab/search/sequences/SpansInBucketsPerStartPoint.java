@@ -16,9 +16,8 @@
 package nl.inl.blacklab.search.sequences;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.List;
 
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.spans.Spans;
@@ -48,7 +47,8 @@ class SpansInBucketsPerStartPoint extends DocIdSetIterator implements SpansInBuc
 
 	private IntArrayList endPoints = new IntArrayList();
 
-	private List<Span[]> capturedGroupsPerEndpoint = new ArrayList<>();
+	/** Captured groups for each end point (arrays are reused for subsequent buckets) */
+	private Span[][] capturedGroupsPerEndpoint = new Span[16][];
 
 	private int bucketSize = 0;
 
@@ -114,11 +114,10 @@ class SpansInBucketsPerStartPoint extends DocIdSetIterator implements SpansInBuc
 		if (endPoints.size() < ARRAYLIST_REALLOC_THRESHOLD) {
 			// Not a huge amount of memory, so don't reallocate
 			endPoints.clear();
-			capturedGroupsPerEndpoint.clear();
 		} else {
 			// Reallocate in this case to avoid holding on to a lot of memory
 			endPoints = new IntArrayList();
-			capturedGroupsPerEndpoint = new ArrayList<>();
+			capturedGroupsPerEndpoint = new Span[16][];
 		}
 
 		doCapturedGroups = clauseCapturesGroups && source != null && hitQueryContext != null && hitQueryContext.numberOfCapturedGroups() > 0;
@@ -128,9 +127,15 @@ class SpansInBucketsPerStartPoint extends DocIdSetIterator implements SpansInBuc
 		while (currentSpansStart != Spans.NO_MORE_POSITIONS && currentSpansStart == currentBucketStart) {
 			endPoints.add(source.endPosition());
 			if (doCapturedGroups) {
-				Span[] capturedGroups = new Span[hitQueryContext.numberOfCapturedGroups()];
+				if (bucketSize == capturedGroupsPerEndpoint.length)
+					capturedGroupsPerEndpoint = Arrays.copyOf(capturedGroupsPerEndpoint, bucketSize * 2);
+				int n = hitQueryContext.numberOfCapturedGroups();
+				Span[] capturedGroups = capturedGroupsPerEndpoint[bucketSize];
+				if (capturedGroups == null || capturedGroups.length != n)
+					capturedGroupsPerEndpoint[bucketSize] = capturedGroups = new Span[n];
+				else
+					Arrays.fill(capturedGroups, null);
 				source.getCapturedGroups(capturedGroups);
-				capturedGroupsPerEndpoint.add(capturedGroups);
 			}
 			bucketSize++;
 			currentSpansStart = source.nextStartPosition();
@@ -194,9 +199,9 @@ class SpansInBucketsPerStartPoint extends DocIdSetIterator implements SpansInBuc
 
 	@Override
 	public void getCapturedGroups(int indexInBucket, Span[] capturedGroups) {
-		if (!doCapturedGroups || capturedGroupsPerEndpoint.isEmpty())
+		if (!doCapturedGroups || indexInBucket >= bucketSize)
 			return;
-		Span[] previouslyCapturedGroups = capturedGroupsPerEndpoint.get(indexInBucket);
+		Span[] previouslyCapturedGroups = capturedGroupsPerEndpoint[indexInBucket];
 		if (previouslyCapturedGroups != null) {
 			for (int i = 0; i < capturedGroups.length; i++) {
 				if (previouslyCapturedGroups[i] != null)
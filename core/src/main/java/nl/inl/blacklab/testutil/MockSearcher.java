@@ -19,6 +19,7 @@ import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.LockObtainFailedException;
 
 import nl.inl.blacklab.externalstorage.ContentStore;
+import nl.inl.blacklab.forwardindex.CharOffsetStore;
 import nl.inl.blacklab.forwardindex.ForwardIndex;
 import nl.inl.blacklab.perdocument.DocResults;
 import nl.inl.blacklab.search.QueryExecutionContext;
@@ -43,6 +44,11 @@ public class MockSearcher extends Searcher {
 
 	}
 
+	@Override
+	public Searcher reopen() {
+		return this;
+	}
+
 	@Override
 	public Document document(int doc) {
 		//
@@ -90,6 +96,11 @@ public class MockSearcher extends Searcher {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public CharOffsetStore openCharOffsetStore(String fieldPropName) {
+		return null;
+	}
+
 	@Override
 	public ContentStore openContentStore(File indexXmlDir, boolean create) {
 		return null;
@@ -55,6 +55,7 @@ public class IndexTool {
 
 		// Parse command line
 		int maxDocsToIndex = 0;
+		int numberOfThreads = 1;
 		File indexDir = null, inputDir = null;
 		String glob = "*";
 		String docFormat = null;
@@ -91,6 +92,20 @@ public class IndexTool {
 						usage();
 						return;
 					}
+				} else if (name.equals("threads")) {
+					if (i + 1 == args.length) {
+						System.err.println("--threads option needs argument");
+						usage();
+						return;
+					}
+					try {
+						numberOfThreads = Integer.parseInt(args[i + 1]);
+						i++;
+					} catch (NumberFormatException e) {
+						System.err.println("--threads option needs integer argument");
+						usage();
+						return;
+					}
 				} else if (name.equals("create")) {
 					System.err.println("Option --create is deprecated; use create command (--help for details)");
 					createNewIndex = true;
@@ -251,6 +266,8 @@ public class IndexTool {
 		indexer.setIndexerParam(indexerParam);
 		if (maxDocsToIndex > 0)
 			indexer.setMaxNumberOfDocsToIndex(maxDocsToIndex);
+		if (numberOfThreads > 1)
+			indexer.setNumberOfThreads(numberOfThreads);
 		try {
 			if (glob.contains("*") || glob.contains("?")) {
 				// Real wildcard glob
@@ -318,6 +335,7 @@ public class IndexTool {
 						+ "\n"
 						+ "Options:\n"
 						+ "  --maxdocs <n>          Stop after indexing <n> documents\n"
+						+ "  --threads <n>          Index <n> files at the same time (default: 1)\n"
 						+ "  --indexparam <file>    Read properties file with parameters for DocIndexer\n"
 						+ "                         (NOTE: even without this option, if the current\n"
 						+ "                         directory, the input or index directory (or its parent)\n"
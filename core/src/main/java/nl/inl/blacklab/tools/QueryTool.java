@@ -1077,8 +1077,10 @@ public class QueryTool {
 
 			// Execute search
 			SpanQuery spanQuery = searcher.createSpanQuery(pattern, contentsField, filter);
-			if (verbose)
+			if (verbose) {
 				outprintln("SpanQuery: " + spanQuery.toString(contentsField));
+				outprintln("Query plan:\n" + searcher.explain(spanQuery));
+			}
 			hits = searcher.find(spanQuery);
 			docs = null;
 			groups = null;
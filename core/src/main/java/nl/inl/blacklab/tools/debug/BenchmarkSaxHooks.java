@@ -0,0 +1,195 @@
+package nl.inl.blacklab.tools.debug;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import nl.inl.blacklab.index.HookableSaxHandler;
+import nl.inl.blacklab.index.HookableSaxHandler.ElementHandler;
+import nl.inl.blacklab.index.HookableSaxHandler.SaxPathExpressionChecker;
+
+/**
+ * Measures the overhead of dispatching SAX events to hooks, by parsing a TEI
+ * document with HookableSaxHandler and with a handler that checks each hook's
+ * path separately (like HookableSaxHandler used to do).
+ *
+ * Both should call the hooks the same number of times.
+ */
+public class BenchmarkSaxHooks {
+
+	/** Paths similar to what the TEI and FoLiA indexers register */
+	private static final String[] PATHS = {
+		"TEI", "TEI.2", "body", "listBibl", "interpGrp", "interp", "w", "s", "p", "//g", "//pu",
+		"/TEI/teiHeader", "/TEI/teiHeader/fileDesc/titleStmt/title", "//sourceDesc/*", "//NE",
+		"w/t", "pos", "lemma", "pos/feat", "ph", "event", "meta", "timesegment", "timesegment/wref",
+		"//String", "/FoLiA", "lemma-annotation", "pos-annotation", "phon-annotation",
+	};
+
+	/** Hooks that are called for all descendants as well */
+	private static final String[] DESCENDANT_PATHS = { "/TEI/teiHeader", "listBibl" };
+
+	/** Counts the calls to a hook */
+	static class CountingHandler extends ElementHandler {
+		long calls = 0;
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			calls++;
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			calls++;
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			calls++;
+		}
+	}
+
+	/** Dispatches SAX events by checking each hook's path separately */
+	static class PerHookHandler extends DefaultHandler {
+
+		private List<SaxPathExpressionChecker> checkers = new ArrayList<>();
+
+		private List<Boolean> descendants = new ArrayList<>();
+
+		private List<CountingHandler> handlers = new ArrayList<>();
+
+		void addHook(String path, CountingHandler handler, boolean callForDescendants) {
+			checkers.add(new SaxPathExpressionChecker(path));
+			descendants.add(callForDescendants);
+			handlers.add(handler);
+		}
+
+		private boolean matches(int i) {
+			return descendants.get(i) ? checkers.get(i).ancestorOrSelfMatched() : checkers.get(i).currentElementMatches();
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			for (int i = 0; i < checkers.size(); i++) {
+				checkers.get(i).startElement(localName);
+				if (matches(i))
+					handlers.get(i).startElement(uri, localName, qName, attributes);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			for (int i = 0; i < checkers.size(); i++) {
+				if (matches(i))
+					handlers.get(i).endElement(uri, localName, qName);
+				checkers.get(i).endElement();
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			for (int i = 0; i < checkers.size(); i++) {
+				if (matches(i))
+					handlers.get(i).characters(ch, start, length);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int iterations = 10;
+		byte[] xml;
+		if (args.length >= 1 && !args[0].equals("-")) {
+			xml = Files.readAllBytes(new File(args[0]).toPath());
+		} else {
+			xml = generateTei(200000).getBytes(StandardCharsets.UTF_8);
+		}
+		if (args.length >= 2)
+			iterations = Integer.parseInt(args[1]);
+
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+		SAXParser parser = factory.newSAXParser();
+
+		System.out.println("Document size: " + xml.length + " bytes, " + (PATHS.length + DESCENDANT_PATHS.length) + " hooks");
+		for (int i = 0; i < iterations; i++) {
+			long automatonCalls = 0, perHookCalls = 0;
+
+			List<CountingHandler> handlers = new ArrayList<>();
+			HookableSaxHandler hookable = new HookableSaxHandler();
+			for (String path: PATHS) {
+				CountingHandler h = new CountingHandler();
+				handlers.add(h);
+				hookable.addHook(path, h, false);
+			}
+			for (String path: DESCENDANT_PATHS) {
+				CountingHandler h = new CountingHandler();
+				handlers.add(h);
+				hookable.addHook(path, h, true);
+			}
+			long automatonTime = parse(parser, xml, hookable);
+			for (CountingHandler h: handlers) {
+				automatonCalls += h.calls;
+			}
+
+			handlers.clear();
+			PerHookHandler perHook = new PerHookHandler();
+			for (String path: PATHS) {
+				CountingHandler h = new CountingHandler();
+				handlers.add(h);
+				perHook.addHook(path, h, false);
+			}
+			for (String path: DESCENDANT_PATHS) {
+				CountingHandler h = new CountingHandler();
+				handlers.add(h);
+				perHook.addHook(path, h, true);
+			}
+			long perHookTime = parse(parser, xml, perHook);
+			for (CountingHandler h: handlers) {
+				perHookCalls += h.calls;
+			}
+
+			System.out.println("Iteration " + (i + 1) + ": automaton " + automatonTime + " ms, per hook " + perHookTime +
+					" ms (hook calls: " + automatonCalls + " / " + perHookCalls + ")");
+		}
+	}
+
+	private static long parse(SAXParser parser, byte[] xml, DefaultHandler handler) throws IOException, SAXException {
+		long start = System.currentTimeMillis();
+		parser.parse(new ByteArrayInputStream(xml), handler);
+		return System.currentTimeMillis() - start;
+	}
+
+	/**
+	 * Generate a TEI document with annotated words.
+	 *
+	 * @param numberOfWords number of words in the document
+	 * @return the document
+	 */
+	private static String generateTei(int numberOfWords) {
+		StringBuilder b = new StringBuilder();
+		b.append("<TEI><teiHeader><fileDesc><titleStmt><title>Test</title></titleStmt>"
+				+ "<sourceDesc><bibl>Generated</bibl></sourceDesc></fileDesc></teiHeader><text><body>");
+		for (int i = 0; i < numberOfWords; i++) {
+			if (i % 2000 == 0)
+				b.append(i == 0 ? "" : "</s></p>").append("<p><s>");
+			else if (i % 20 == 0)
+				b.append("</s><s>");
+			b.append("<w lemma=\"word\" type=\"NOU\">word").append(i % 100).append("</w> ");
+			if (i % 50 == 0)
+				b.append("<pc>.</pc>");
+		}
+		b.append("</s></p></body></text></TEI>");
+		return b.toString();
+	}
+
+}
@@ -0,0 +1,17 @@
+package nl.inl.util;
+
+/**
+ * Compares two ints, like Comparator&lt;Integer&gt; but without boxing.
+ */
+public interface IntComparator {
+
+	/**
+	 * Compare two ints.
+	 *
+	 * @param a first value
+	 * @param b second value
+	 * @return 0 if equal, negative if a &lt; b, positive if a &gt; b
+	 */
+	int compare(int a, int b);
+
+}
@@ -242,7 +242,7 @@ public class LuceneUtil {
 					n = 0;
 				}
 				while (postingsEnum.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
-					n += termsEnum.docFreq();
+					n += postingsEnum.freq();
 				}
 				freq.put(term, n);
 			}
@@ -19,6 +19,18 @@ package nl.inl.util;
  * Utilities to do with JVM memory.
  */
 public class MemoryUtil {
+	/** Size of an object header in bytes (64-bit JVM with compressed references) */
+	public static final int BYTES_PER_OBJECT_HEADER = 12;
+
+	/** Size of an array header in bytes (object header plus length) */
+	public static final int BYTES_PER_ARRAY_HEADER = 16;
+
+	/** Size of an object reference in bytes (64-bit JVM with compressed references) */
+	public static final int BYTES_PER_REFERENCE = 4;
+
+	/** Approximate size of a HashMap entry in bytes (entry object plus its slot in the table) */
+	public static final int BYTES_PER_MAP_ENTRY = 40;
+
 	/** Handle to interface with the Java VM environment */
 	private static Runtime runtime = Runtime.getRuntime();
 
@@ -35,4 +47,34 @@ public class MemoryUtil {
 		return runtime.freeMemory() + (runtime.maxMemory() - runtime.totalMemory());
 	}
 
+	/**
+	 * Round a size up to the JVM's 8-byte object alignment.
+	 *
+	 * @param bytes the unaligned size
+	 * @return the aligned size
+	 */
+	public static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+
+	/**
+	 * Returns the memory footprint of an int array.
+	 *
+	 * @param length the array length
+	 * @return the footprint in bytes
+	 */
+	public static long intArraySizeBytes(int length) {
+		return align(BYTES_PER_ARRAY_HEADER + 4L * length);
+	}
+
+	/**
+	 * Returns the memory footprint of an int array, or 0 if it is null.
+	 *
+	 * @param array the array
+	 * @return the footprint in bytes
+	 */
+	public static long sizeBytes(int[] array) {
+		return array == null ? 0 : intArraySizeBytes(array.length);
+	}
+
 }
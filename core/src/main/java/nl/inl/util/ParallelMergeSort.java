@@ -0,0 +1,146 @@
+package nl.inl.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Stable merge sort for int arrays using an IntComparator.
+ *
+ * Large arrays are sorted in parallel: both halves are sorted as separate
+ * ForkJoin tasks, then merged.
+ */
+public class ParallelMergeSort {
+
+	/** Below this size, we use insertion sort */
+	private static final int INSERTION_SORT_THRESHOLD = 32;
+
+	/** Below this size, we don't split into parallel tasks anymore */
+	private static final int PARALLEL_THRESHOLD = 8192;
+
+	private ParallelMergeSort() {
+	}
+
+	/**
+	 * Sort an array.
+	 *
+	 * @param a the array to sort
+	 * @param comparator how to compare elements
+	 */
+	public static void sort(int[] a, IntComparator comparator) {
+		sort(a, 0, a.length, comparator, null);
+	}
+
+	/**
+	 * Sort (part of) an array, in parallel if a pool is given and the array is large enough.
+	 *
+	 * @param a the array to sort
+	 * @param from first index to sort
+	 * @param to index after the last one to sort
+	 * @param comparator how to compare elements (must be thread-safe if a pool is given)
+	 * @param pool pool to sort in, or null to sort on the calling thread
+	 */
+	public static void sort(int[] a, int from, int to, IntComparator comparator, ForkJoinPool pool) {
+		if (to - from < 2)
+			return;
+		int[] buffer = new int[to - from];
+		if (pool == null || to - from < 2 * PARALLEL_THRESHOLD)
+			mergeSort(a, buffer, from, to, from, comparator);
+		else
+			pool.invoke(new SortTask(a, buffer, from, to, from, comparator));
+	}
+
+	/**
+	 * Sort part of an array on the calling thread.
+	 *
+	 * @param a array to sort
+	 * @param buffer temporary storage
+	 * @param from first index to sort
+	 * @param to index after the last one to sort
+	 * @param bufferOffset index in a that corresponds to index 0 in buffer
+	 * @param comparator how to compare elements
+	 */
+	static void mergeSort(int[] a, int[] buffer, int from, int to, int bufferOffset, IntComparator comparator) {
+		if (to - from < INSERTION_SORT_THRESHOLD) {
+			insertionSort(a, from, to, comparator);
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(a, buffer, from, mid, bufferOffset, comparator);
+		mergeSort(a, buffer, mid, to, bufferOffset, comparator);
+		merge(a, buffer, from, mid, to, bufferOffset, comparator);
+	}
+
+	private static void insertionSort(int[] a, int from, int to, IntComparator comparator) {
+		for (int i = from + 1; i < to; i++) {
+			int value = a[i];
+			int j = i - 1;
+			while (j >= from && comparator.compare(a[j], value) > 0) {
+				a[j + 1] = a[j];
+				j--;
+			}
+			a[j + 1] = value;
+		}
+	}
+
+	/**
+	 * Merge two adjacent sorted runs a[from, mid) and a[mid, to).
+	 *
+	 * Elements from the left run come first if equal, so the sort is stable.
+	 */
+	private static void merge(int[] a, int[] buffer, int from, int mid, int to, int bufferOffset, IntComparator comparator) {
+		if (comparator.compare(a[mid - 1], a[mid]) <= 0)
+			return; // already in order
+		int leftLength = mid - from;
+		System.arraycopy(a, from, buffer, from - bufferOffset, leftLength);
+		int l = from - bufferOffset, lEnd = l + leftLength;
+		int r = mid, dest = from;
+		while (l < lEnd && r < to) {
+			if (comparator.compare(a[r], buffer[l]) < 0)
+				a[dest++] = a[r++];
+			else
+				a[dest++] = buffer[l++];
+		}
+		// Any remaining right-run elements are already in place
+		System.arraycopy(buffer, l, a, dest, lEnd - l);
+	}
+
+	/** Sorts part of an array, splitting into subtasks if it's large */
+	private static class SortTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private int[] a;
+
+		private int[] buffer;
+
+		private int from;
+
+		private int to;
+
+		private int bufferOffset;
+
+		private IntComparator comparator;
+
+		SortTask(int[] a, int[] buffer, int from, int to, int bufferOffset, IntComparator comparator) {
+			this.a = a;
+			this.buffer = buffer;
+			this.from = from;
+			this.to = to;
+			this.bufferOffset = bufferOffset;
+			this.comparator = comparator;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from < PARALLEL_THRESHOLD) {
+				mergeSort(a, buffer, from, to, bufferOffset, comparator);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new SortTask(a, buffer, from, mid, bufferOffset, comparator),
+					new SortTask(a, buffer, mid, to, bufferOffset, comparator));
+			merge(a, buffer, from, mid, to, bufferOffset, comparator);
+		}
+	}
+
+}
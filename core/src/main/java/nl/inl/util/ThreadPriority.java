@@ -36,7 +36,7 @@ public class ThreadPriority implements Prioritizable {
 	Thread currentThread;
 
 	/** What's the intended priority level? */
-	private Level level = Level.RUNNING;
+	private volatile Level level = Level.RUNNING;
 
 	/**
 	 * Create a ThreadEtiquette object.
@@ -46,8 +46,9 @@ public class ThreadPriority implements Prioritizable {
 	}
 
 	@Override
-	public void setPriorityLevel(Level level) {
+	public synchronized void setPriorityLevel(Level level) {
 		this.level = level;
+		notifyAll(); // wake up the thread if it was paused
 	}
 
 	@Override
@@ -78,8 +79,13 @@ public class ThreadPriority implements Prioritizable {
 			throw new InterruptedException("Operation aborted");
 		}
 
-		while (level != Level.RUNNING) {
-			Thread.sleep(100);
+		if (level != Level.RUNNING) {
+			// Wait until we're allowed to run again
+			synchronized (this) {
+				while (level != Level.RUNNING) {
+					wait();
+				}
+			}
 		}
 	}
 }
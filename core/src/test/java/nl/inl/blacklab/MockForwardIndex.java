@@ -34,6 +34,11 @@ public class MockForwardIndex extends ForwardIndex {
 
 	}
 
+	@Override
+	public ForwardIndex reopen() {
+		return this;
+	}
+
 	@Override
 	public int addDocument(List<String> content, List<Integer> posIncr) {
 		//
@@ -5,6 +5,7 @@ import java.util.Map;
 
 import nl.inl.blacklab.search.Concordance;
 import nl.inl.blacklab.search.Hit;
+import nl.inl.blacklab.search.HitContexts;
 import nl.inl.blacklab.search.Hits;
 import nl.inl.blacklab.search.Kwic;
 import nl.inl.blacklab.search.QueryExecutionContext;
@@ -211,6 +212,16 @@ public class MockHits extends Hits {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public HitContexts getHitContexts(String fieldPropName) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public long estimateSizeBytes() {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public void setMaxHitsCounted(boolean maxHitsCounted) {
 		// NOP
@@ -22,7 +22,7 @@ public class TestIndex {
 	 * Some test XML data to index.
 	 */
 	final static String[] testData = {
-		"<doc><s><entity><w l='the'   p='art' >The</w> "
+		"<doc title='Fox'><s><entity><w l='the'   p='art' >The</w> "
 		+ "<w l='quick' p='adj'>quick</w> "
 		+ "<w l='brown' p='adj'>brown</w> "
 		+ "<w l='fox'   p='nou'>fox</w></entity> "
@@ -32,14 +32,14 @@ public class TestIndex {
 		+ "<w l='lazy'  p='adj'>lazy</w> "
 		+ "<w l='dog'   p='nou'>dog</w></entity>" + ".</s></doc>",
 
-		"<doc> <s><w l='may' p='vrb'>May</w> "
+		"<doc title='Force'> <s><w l='may' p='vrb'>May</w> "
 		+ "<entity><w l='the' p='art'>the</w> "
 		+ "<w l='force' p='nou'>Force</w></entity> "
 		+ "<w l='be' p='vrb'>be</w> "
 		+ "<w l='with' p='pre'>with</w> "
 		+ "<w l='you' p='pro'>you</w>" + ".</s></doc>",
 
-		"<doc> <s><w l='to' p='pre'>To</w> "
+		"<doc title='Question'> <s><w l='to' p='pre'>To</w> "
 		+ "<w l='find' p='vrb'>find</w> "
 		+ "<w l='or' p='con'>or</w> "
 		+ "<w l='be' p='adv'>not</w> "
@@ -60,9 +60,20 @@ public class TestIndex {
 	private File indexDir;
 
 	public TestIndex() throws Exception {
+		this(false);
+	}
+
+	/**
+	 * Create the test index.
+	 *
+	 * @param segmentPerDocument if true, commit after each document, so each
+	 *   document ends up in its own index segment
+	 * @throws Exception
+	 */
+	public TestIndex(boolean segmentPerDocument) throws Exception {
 		// Get a temporary directory for our test index
 		indexDir = new File(System.getProperty("java.io.tmpdir"),
-				"BlackLabExample");
+				segmentPerDocument ? "BlackLabExampleSegmented" : "BlackLabExample");
 		if (indexDir.exists()) {
 			// Delete the old example dir
 			// (NOTE: we also try to do this on exit but it may fail due to
@@ -70,17 +81,30 @@ public class TestIndex {
 			deleteTree(indexDir);
 		}
 
-		// Instantiate the BlackLab indexer, supplying our DocIndexer class
-		Indexer indexer = new Indexer(indexDir, true, DocIndexerExample.class);
-		indexer.setListener(new IndexListenerDevNull()); // no output
-		try {
-			// Index each of our test "documents".
+		if (segmentPerDocument) {
+			// Index each document in a separate indexing session
 			for (int i = 0; i < testData.length; i++) {
-				indexer.index("test" + (i + 1), new StringReader(testData[i]));
+				Indexer indexer = new Indexer(indexDir, i == 0, DocIndexerExample.class);
+				indexer.setListener(new IndexListenerDevNull()); // no output
+				try {
+					indexer.index("test" + (i + 1), new StringReader(testData[i]));
+				} finally {
+					indexer.close();
+				}
+			}
+		} else {
+			// Instantiate the BlackLab indexer, supplying our DocIndexer class
+			Indexer indexer = new Indexer(indexDir, true, DocIndexerExample.class);
+			indexer.setListener(new IndexListenerDevNull()); // no output
+			try {
+				// Index each of our test "documents".
+				for (int i = 0; i < testData.length; i++) {
+					indexer.index("test" + (i + 1), new StringReader(testData[i]));
+				}
+			} finally {
+				// Finalize and close the index.
+				indexer.close();
 			}
-		} finally {
-			// Finalize and close the index.
-			indexer.close();
 		}
 
 		// Create the BlackLab searcher object
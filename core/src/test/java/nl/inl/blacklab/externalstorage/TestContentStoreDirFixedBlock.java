@@ -16,6 +16,7 @@
 package nl.inl.blacklab.externalstorage;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -95,6 +96,72 @@ public class TestContentStoreDirFixedBlock {
 		Assert.assertEquals(doc[1].substring(15, 18), parts[1]);
 	}
 
+	@Test
+	public void testRetrieveOverlappingParts() {
+		// Parts that overlap and span several blocks
+		String d = doc[3];
+		int[] start = { d.length() - 10, 0, 100, 0, 5000 };
+		int[] end = { d.length(), d.length(), 7000, 200, 5001 };
+		String[] parts = store.retrieveParts(4, start, end);
+		for (int i = 0; i < start.length; i++) {
+			Assert.assertEquals(d.substring(start[i], end[i]), parts[i]);
+		}
+	}
+
+	@Test
+	public void testRetrieveConcurrently() throws InterruptedException {
+		final List<Throwable> errors = new ArrayList<>();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			final int seed = t;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Random random = new Random(seed);
+						for (int i = 0; i < 200; i++) {
+							int id = random.nextInt(doc.length);
+							int start = random.nextInt(doc[id].length() - 1);
+							int end = start + 1 + random.nextInt(doc[id].length() - start - 1);
+							Assert.assertEquals(doc[id].substring(start, end), store.retrievePart(id + 1, start, end));
+						}
+					} catch (Throwable e) {
+						synchronized (errors) {
+							errors.add(e);
+						}
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread: threads) {
+			thread.join();
+		}
+		Assert.assertTrue(errors.toString(), errors.isEmpty());
+	}
+
+	@Test
+	public void testDeleteReuseWhileReading() throws IOException {
+		// Delete a document and reuse its blocks while it is being read.
+		// The block that was read before it was reused must not end up in the block cache.
+		store.close();
+		final int[] newId = { -1 };
+		store = new ContentStoreDirFixedBlock(dir, false) {
+			@Override
+			String readBlock(int blockNum) throws IOException {
+				String decodedBlock = super.readBlock(blockNum);
+				if (newId[0] < 0) {
+					delete(1);
+					newId[0] = store(doc[3]);
+				}
+				return decodedBlock;
+			}
+		};
+		Assert.assertEquals(doc[0], store.retrieve(1));
+		Assert.assertEquals(doc[3], store.retrieve(newId[0]));
+	}
+
 	@Test
 	public void testDelete() {
 		store.delete(2);
@@ -0,0 +1,110 @@
+package nl.inl.blacklab.forwardindex;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.inl.util.UtilsForTesting;
+
+public class TestCharOffsetStore {
+	private CharOffsetStore store;
+
+	private File dir;
+
+	private int[][] docs = {
+		{ 0, 3, 4, 9, 10, 15 },
+		{ 0, 2, -1, -1, 5, 9 },
+		{ 1, 4 },
+	};
+
+	private int oldChunkSize;
+
+	@Before
+	public void setUp() {
+		// Remove any previously left over temp test dirs
+		UtilsForTesting.removeBlackLabTestDirs();
+
+		// Create new test dir
+		dir = UtilsForTesting.createBlackLabTestDir("CharOffsetStore");
+
+		// Use small chunks, so reads are spread over several mappings
+		oldChunkSize = CharOffsetStore.chunkSizeBytes;
+		CharOffsetStore.chunkSizeBytes = 16;
+
+		store = new CharOffsetStore(dir, true, true);
+		for (int i = 0; i < docs.length; i++) {
+			store.addDocument(i, docs[i]);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		if (store != null)
+			store.close();
+		CharOffsetStore.chunkSizeBytes = oldChunkSize;
+		// Try to remove (some files may be locked though)
+		UtilsForTesting.removeBlackLabTestDirs();
+	}
+
+	private void reopen(boolean indexMode) {
+		store.close();
+		store = CharOffsetStore.open(dir, indexMode, false);
+	}
+
+	private void assertDocument(int fiid, int[] expected) {
+		Assert.assertEquals(expected.length / 2, store.getDocLength(fiid));
+		for (int i = 0; i < expected.length / 2; i++) {
+			Assert.assertEquals(expected[i * 2], store.getStartChar(fiid, i));
+			Assert.assertEquals(expected[i * 2 + 1], store.getEndChar(fiid, i));
+		}
+	}
+
+	@Test
+	public void testRetrieveWhileIndexing() {
+		for (int i = 0; i < docs.length; i++) {
+			assertDocument(i, docs[i]);
+		}
+	}
+
+	@Test
+	public void testRetrieve() {
+		reopen(false);
+		for (int i = 0; i < docs.length; i++) {
+			assertDocument(i, docs[i]);
+		}
+	}
+
+	@Test
+	public void testOutOfRange() {
+		reopen(false);
+		Assert.assertEquals(-1, store.getStartChar(0, -1));
+		Assert.assertEquals(-1, store.getEndChar(0, 3));
+		Assert.assertEquals(-1, store.getDocLength(docs.length));
+	}
+
+	@Test
+	public void testMissingAndReusedIds() {
+		reopen(true);
+		int[] replaced = { 7, 8, 9, 10 };
+		store.addDocument(1, replaced);
+		store.addDocument(5, docs[2]);
+		reopen(false);
+		assertDocument(0, docs[0]);
+		assertDocument(1, replaced);
+		Assert.assertEquals(-1, store.getDocLength(3));
+		Assert.assertEquals(-1, store.getDocLength(4));
+		assertDocument(5, docs[2]);
+	}
+
+	@Test
+	public void testNoStore() {
+		store.close();
+		store = null;
+		File otherDir = UtilsForTesting.createBlackLabTestDir("CharOffsetStoreEmpty");
+		Assert.assertNull(CharOffsetStore.open(otherDir, false, false));
+	}
+
+}
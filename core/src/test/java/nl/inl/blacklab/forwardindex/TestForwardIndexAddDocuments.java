@@ -0,0 +1,148 @@
+package nl.inl.blacklab.forwardindex;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.inl.util.UtilsForTesting;
+
+public class TestForwardIndexAddDocuments {
+	private ForwardIndex fi;
+
+	private File dir;
+
+	@SuppressWarnings("unchecked")
+	private List<List<String>> docs = Arrays.asList(
+		Arrays.asList("The", "quick", "brown", "fox"),
+		Arrays.asList("the", "lazy", "dog"),
+		Arrays.asList("a", "quick", "dog")
+	);
+
+	@Before
+	public void setUp() {
+		// Remove any previously left over temp test dirs
+		UtilsForTesting.removeBlackLabTestDirs();
+
+		// Create new test dir
+		dir = UtilsForTesting.createBlackLabTestDir("ForwardIndexAddDocuments");
+
+		fi = new ForwardIndexImplV3(dir, true, null, true, true);
+	}
+
+	@After
+	public void tearDown() {
+		if (fi != null)
+			fi.close();
+		// Try to remove (some files may be locked though)
+		UtilsForTesting.removeBlackLabTestDirs();
+	}
+
+	private void reopen(boolean indexMode) {
+		fi.close();
+		fi = new ForwardIndexImplV3(dir, indexMode, null, false, true);
+	}
+
+	private int[] addDocuments(List<List<String>> contents) {
+		int[] fiids = new int[contents.size()];
+		for (int i = 0; i < fiids.length; i++) {
+			fiids[i] = fi.addDocument(contents.get(i));
+		}
+		return fiids;
+	}
+
+	private void assertDocument(int fiid, List<String> expected) {
+		int[] tokens = fi.retrievePartsInt(fiid, new int[] { -1 }, new int[] { -1 }).get(0);
+		Assert.assertEquals(expected.size(), tokens.length);
+		for (int i = 0; i < tokens.length; i++) {
+			Assert.assertEquals(expected.get(i), fi.getTerms().get(tokens[i]));
+		}
+	}
+
+	@Test
+	public void testAddDocuments() {
+		int[] fiids = addDocuments(docs);
+		Assert.assertArrayEquals(new int[] { 0, 1, 2 }, fiids);
+		Assert.assertEquals(3, fi.addDocument(docs.get(0)));
+		reopen(false);
+		for (int i = 0; i < fiids.length; i++) {
+			assertDocument(fiids[i], docs.get(i));
+		}
+		assertDocument(3, docs.get(0));
+	}
+
+	@Test
+	public void testRetrieveWhileIndexing() {
+		int[] fiids = addDocuments(docs);
+		Assert.assertArrayEquals(new int[] { 7, 1, 6 }, fi.retrievePartsInt(fiids[2], new int[] { 0 }, new int[] { 3 }).get(0));
+	}
+
+	@Test
+	public void testSortOrder() {
+		addDocuments(docs);
+		reopen(false);
+		Terms terms = fi.getTerms();
+		Assert.assertEquals(8, terms.numberOfTerms());
+		String[] expected = { "a", "brown", "dog", "fox", "lazy", "quick", "the", "The" };
+		for (int i = 0; i < terms.numberOfTerms(); i++) {
+			Assert.assertEquals(expected[terms.idToSortPosition(i, true)], terms.get(i));
+		}
+		// Case-insensitive, "The" and "the" get the same sort position
+		Assert.assertEquals(terms.idToSortPosition(0, false), terms.idToSortPosition(4, false));
+	}
+
+	@Test
+	public void testAppendToExisting() {
+		addDocuments(docs.subList(0, 2));
+		reopen(true);
+		int[] fiids = addDocuments(docs.subList(2, 3));
+		Assert.assertArrayEquals(new int[] { 2 }, fiids);
+		reopen(false);
+		Assert.assertEquals(8, fi.getTerms().numberOfTerms());
+		for (int i = 0; i < docs.size(); i++) {
+			assertDocument(i, docs.get(i));
+		}
+	}
+
+	@Test
+	public void testReopen() {
+		addDocuments(docs.subList(0, 2));
+		reopen(false);
+		ForwardIndex previous = fi;
+		Assert.assertEquals(7, previous.getTerms().numberOfTerms());
+
+		// Nothing changed: terms are shared
+		fi = previous.reopen();
+		Assert.assertTrue(previous.getTerms() == fi.getTerms());
+		fi.close();
+
+		// Add a document with a new term
+		ForwardIndex writer = new ForwardIndexImplV3(dir, true, null, false, true);
+		Assert.assertEquals(2, writer.addDocument(docs.get(2)));
+		writer.close();
+
+		fi = previous.reopen();
+		try {
+			for (int i = 0; i < docs.size(); i++) {
+				assertDocument(i, docs.get(i));
+			}
+			Terms terms = fi.getTerms();
+			Assert.assertEquals(8, terms.numberOfTerms());
+			Assert.assertEquals(0, terms.idToSortPosition(terms.indexOf("a"), true));
+			// Terms we already had were reused
+			Assert.assertTrue(previous.getTerms().get(0) == terms.get(0));
+
+			// Previous view is unchanged
+			Assert.assertEquals(2, previous.getNumDocs());
+			Assert.assertEquals(7, previous.getTerms().numberOfTerms());
+			Assert.assertEquals("the", previous.getTerms().get(previous.retrievePartsInt(1, new int[] { 0 }, new int[] { 1 }).get(0)[0]));
+		} finally {
+			previous.close();
+		}
+	}
+
+}
@@ -115,6 +115,22 @@ public class TestForwardIndexDelete {
 		Assert.assertEquals(7, addDocumentOfLength(1));   // no fit, new entry
 	}
 
+	/** Retrieving parts from several documents at once (not in file order). */
+	@Test
+	public void testRetrieveBulk() {
+		Assert.assertEquals(6, addDocumentOfLength(15)); // stored in gap before document 5
+		int[] fiid  = { 5,  1, 6, 0, 3, 6 };
+		int[] start = { 2, -1, 0, 0, 4, 10 };
+		int[] end   = { 5,  3, 2, 4, 6, -1 };
+		int[][] parts = fi.retrievePartsIntBulk(fiid, start, end);
+		Assert.assertArrayEquals(new int[] { 2, 3, 4 }, parts[0]);
+		Assert.assertArrayEquals(new int[] { 0, 1, 2 }, parts[1]);
+		Assert.assertArrayEquals(new int[] { 0, 1 }, parts[2]);
+		Assert.assertNull(parts[3]); // deleted
+		Assert.assertArrayEquals(new int[] { 4, 5 }, parts[4]);
+		Assert.assertArrayEquals(new int[] { 10, 11, 12, 13, 14 }, parts[5]);
+	}
+
 	/** Deleting a document causing a merge. */
 	@Test
 	public void testMerge() {
@@ -0,0 +1,93 @@
+package nl.inl.blacklab.forwardindex;
+
+import java.io.File;
+import java.text.Collator;
+import java.util.Locale;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.inl.util.UtilsForTesting;
+
+public class TestTermsImplMapped {
+
+	private File dir;
+
+	String[] str = { "the", "quick", "brown", "fox", "jumps", "over", "the", "lazy", "dog", "The", "Über" };
+
+	@Before
+	public void setUp() {
+		// Remove any previously left over temp test dirs
+		UtilsForTesting.removeBlackLabTestDirs();
+
+		// Create new test dir
+		dir = UtilsForTesting.createBlackLabTestDir("TermsMapped");
+	}
+
+	@After
+	public void tearDown() {
+		// Try to remove (some files may be locked though)
+		UtilsForTesting.removeBlackLabTestDirs();
+	}
+
+	private File writeTerms(boolean blockBased) {
+		Terms t = new TermsImplV3(true, collator(), null, blockBased);
+		for (int i = 0; i < str.length; i++) {
+			t.indexOf(str[i]);
+		}
+		File f = new File(dir, blockBased ? "terms.dat" : "terms-old.dat");
+		t.write(f);
+		return f;
+	}
+
+	private static Collator collator() {
+		return Collator.getInstance(new Locale("en", "GB"));
+	}
+
+	private void assertSameTerms(boolean blockBased) {
+		File f = writeTerms(blockBased);
+		Terms expected = new TermsImplV3(false, collator(), f, blockBased);
+		Terms mapped = new TermsImplMapped(collator(), f, blockBased);
+		Assert.assertEquals(expected.numberOfTerms(), mapped.numberOfTerms());
+		for (int i = 0; i < expected.numberOfTerms(); i++) {
+			Assert.assertEquals(expected.get(i), mapped.get(i));
+			Assert.assertEquals(expected.idToSortPosition(i, true), mapped.idToSortPosition(i, true));
+			Assert.assertEquals(expected.idToSortPosition(i, false), mapped.idToSortPosition(i, false));
+			Assert.assertEquals(i, mapped.indexOf(expected.get(i)));
+		}
+		Assert.assertEquals(Terms.NO_TERM, mapped.indexOf("cat"));
+		Assert.assertEquals(Terms.NO_TERM, mapped.indexOf("zebra"));
+		Assert.assertEquals(Terms.NO_TERM, mapped.indexOf(""));
+
+		int[] ids = { 0, 9, Terms.NO_TERM, 2 };
+		int[] sortExpected = new int[ids.length];
+		int[] sortMapped = new int[ids.length];
+		expected.toSortOrder(ids, sortExpected, false);
+		mapped.toSortOrder(ids, sortMapped, false);
+		Assert.assertArrayEquals(sortExpected, sortMapped);
+	}
+
+	@Test
+	public void testBlockBasedFile() {
+		assertSameTerms(true);
+	}
+
+	@Test
+	public void testOldFile() {
+		assertSameTerms(false);
+	}
+
+	@Test
+	public void testInsensitiveSortPosition() {
+		Terms mapped = new TermsImplMapped(collator(), writeTerms(true), true);
+		int the = mapped.indexOf("the");
+		int The = mapped.indexOf("The");
+		Assert.assertTrue(the != The);
+		Assert.assertEquals(mapped.idToSortPosition(the, false), mapped.idToSortPosition(The, false));
+		Assert.assertEquals(0, mapped.compareSortPosition(the, The, false));
+		Assert.assertTrue(mapped.compareSortPosition(the, The, true) != 0);
+	}
+
+}
@@ -12,13 +12,17 @@ import org.junit.Test;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 import nl.inl.blacklab.index.HookableSaxHandler.ElementHandler;
+import nl.inl.blacklab.index.HookableSaxHandler.SaxPathExpressionChecker;
 
 public class TestHookableSaxParser {
 
 	private HookableSaxHandler hookableSaxHandler;
 
+	private String testXml;
+
 	private InputSource inputSource;
 
 	private ElementHandler hookHandler;
@@ -27,7 +31,7 @@ public class TestHookableSaxParser {
 
 	@Before
 	public void setUp() {
-		String testXml = "<root>"
+		testXml = "<root>"
 				+ "<nochild>blabla</nochild>"
 				+ "<child><name>A</name><child att='123'><name>C</name></child></child>"
 				+ "<child><name>B</name><child att='456'><name>D</name></child></child>"
@@ -109,6 +113,99 @@ public class TestHookableSaxParser {
 		Assert.assertEquals("<<$><<$><<$>>><<$><<$>>>>", hookHandler.toString());
 	}
 
+	@Test
+	public void testWildcard() throws SAXException, IOException {
+		hookableSaxHandler.addHook("/root/*", hookHandler, false);
+		parser.parse(inputSource, hookableSaxHandler);
+		Assert.assertEquals("<$><><>", hookHandler.toString());
+	}
+
+	@Test
+	public void testNestedRelative() throws SAXException, IOException {
+		hookableSaxHandler.addHook("//child", hookHandler, true);
+		parser.parse(inputSource, hookableSaxHandler);
+		Assert.assertEquals("<<$><<$>>><<$><<$>>>", hookHandler.toString());
+	}
+
+	@Test
+	public void testHookOrder() throws SAXException, IOException {
+		final StringBuilder calls = new StringBuilder();
+		String[] paths = { "//name", "/root", "child/name", "//child" };
+		for (int i = 0; i < paths.length; i++) {
+			final int hookNumber = i;
+			hookableSaxHandler.addHook(paths[i], new ElementHandler() {
+				@Override
+				public void startElement(String uri, String localName, String qName, Attributes attributes) {
+					calls.append(hookNumber);
+				}
+			}, hookNumber == 1);
+		}
+		parser.parse(inputSource, hookableSaxHandler);
+		// root, nochild, child, name, child, name (x2)
+		Assert.assertEquals("1" + "1" + "13" + "012" + "13" + "012" + "13" + "012" + "13" + "012", calls.toString());
+	}
+
+	@Test
+	public void testSameAsExpressionChecker() throws SAXException, IOException {
+		String[] paths = { "/root/child", "root/child", "//child/name", "/root", "child", "/root/*/child", "name", "child/*" };
+		for (String path: paths) {
+			for (boolean descendants: new boolean[] { false, true }) {
+				HookableSaxHandler handler = new HookableSaxHandler();
+				StringConcatenateHandler actual = new StringConcatenateHandler();
+				handler.addHook(path, actual, descendants);
+				parser.parse(new InputSource(new StringReader(testXml)), handler);
+
+				ExpressionCheckerHandler expected = new ExpressionCheckerHandler(path, descendants);
+				parser.parse(new InputSource(new StringReader(testXml)), expected);
+				Assert.assertEquals(path + " " + descendants, expected.toString(), actual.toString());
+			}
+		}
+	}
+
+	/** Evaluates a single path using SaxPathExpressionChecker directly */
+	class ExpressionCheckerHandler extends DefaultHandler {
+
+		private SaxPathExpressionChecker checker;
+
+		private boolean descendants;
+
+		private StringConcatenateHandler output = new StringConcatenateHandler();
+
+		ExpressionCheckerHandler(String path, boolean descendants) {
+			checker = new SaxPathExpressionChecker(path);
+			this.descendants = descendants;
+		}
+
+		private boolean matches() {
+			return descendants ? checker.ancestorOrSelfMatched() : checker.currentElementMatches();
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			checker.startElement(localName);
+			if (matches())
+				output.startElement(uri, localName, qName, attributes);
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			if (matches())
+				output.endElement(uri, localName, qName);
+			checker.endElement();
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			if (matches())
+				output.characters(ch, start, length);
+		}
+
+		@Override
+		public String toString() {
+			return output.toString();
+		}
+	}
+
 //	@Test
 //	public void testAttribute() throws SAXException, IOException {
 //		hookableSaxHandler.addHook("//@att", hookHandler, true);
@@ -0,0 +1,131 @@
+package nl.inl.blacklab.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.inl.blacklab.forwardindex.ForwardIndex;
+import nl.inl.blacklab.forwardindex.Terms;
+import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.blacklab.search.Searcher;
+import nl.inl.blacklab.tools.indexexample.DocIndexerExample;
+import nl.inl.util.UtilsForTesting;
+
+public class TestIndexerMultithreaded {
+
+	private static final int NUMBER_OF_FILES = 20;
+
+	private static final int NUMBER_OF_THREADS = 4;
+
+	private File inputDir;
+
+	private File indexDir;
+
+	private Searcher searcher;
+
+	/**
+	 * Words in test document i.
+	 *
+	 * Documents differ in length, so they take different amounts of
+	 * time to index and finish in a different order than they were started.
+	 *
+	 * @param i document number
+	 * @return the words
+	 */
+	private static String[] words(int i) {
+		String[] words = new String[(i * 37) % 50 + 1];
+		for (int j = 0; j < words.length; j++) {
+			words[j] = "w" + i + "_" + j;
+		}
+		return words;
+	}
+
+	private static String content(int i) {
+		StringBuilder b = new StringBuilder();
+		b.append("<doc title=\"doc").append(i).append("\"><s>");
+		for (String word: words(i)) {
+			b.append("<w l=\"").append(word).append("\" p=\"nou\">").append(word).append("</w> ");
+		}
+		b.append("</s></doc>");
+		return b.toString();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		UtilsForTesting.removeBlackLabTestDirs();
+		inputDir = UtilsForTesting.createBlackLabTestDir("IndexerInput");
+		for (int i = 0; i < NUMBER_OF_FILES; i++) {
+			FileUtils.writeStringToFile(new File(inputDir, "doc" + i + ".xml"), content(i), "utf-8");
+		}
+
+		indexDir = UtilsForTesting.createBlackLabTestDir("IndexerMultithreaded");
+		Indexer indexer = new Indexer(indexDir, true, DocIndexerExample.class);
+		indexer.setListener(new IndexListenerDevNull()); // no output
+		indexer.setNumberOfThreads(NUMBER_OF_THREADS);
+		try {
+			indexer.index(inputDir);
+		} finally {
+			indexer.close();
+		}
+		searcher = Searcher.open(indexDir);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		if (searcher != null)
+			searcher.close();
+		FileUtils.deleteDirectory(inputDir);
+		FileUtils.deleteDirectory(indexDir);
+	}
+
+	@Test
+	public void testDocumentCount() {
+		Assert.assertEquals(NUMBER_OF_FILES, searcher.getIndexReader().numDocs());
+	}
+
+	@Test
+	public void testForwardIndex() {
+		String wordField = ComplexFieldUtil.propertyField("contents", "word");
+		ForwardIndex forwardIndex = searcher.getForwardIndex(wordField);
+		Terms terms = forwardIndex.getTerms();
+		IndexReader reader = searcher.getIndexReader();
+		Set<Integer> fiids = new HashSet<>();
+		for (int docId = 0; docId < reader.maxDoc(); docId++) {
+			Document d = searcher.document(docId);
+			int i = Integer.parseInt(d.get("title").substring(3));
+			int fiid = Integer.parseInt(d.get(ComplexFieldUtil.forwardIndexIdField(wordField)));
+			Assert.assertTrue(fiids.add(fiid));
+			String[] expected = words(i);
+			List<int[]> parts = forwardIndex.retrievePartsInt(fiid, new int[] { 0 }, new int[] { expected.length });
+			int[] tokens = parts.get(0);
+			Assert.assertEquals(expected.length, tokens.length);
+			for (int j = 0; j < expected.length; j++) {
+				Assert.assertEquals(expected[j], terms.get(tokens[j]));
+			}
+		}
+	}
+
+	@Test
+	public void testContentStore() {
+		String contentIdField = ComplexFieldUtil.contentIdField("contents");
+		IndexReader reader = searcher.getIndexReader();
+		Set<Integer> contentIds = new HashSet<>();
+		for (int docId = 0; docId < reader.maxDoc(); docId++) {
+			Document d = searcher.document(docId);
+			int i = Integer.parseInt(d.get("title").substring(3));
+			Assert.assertTrue(contentIds.add(Integer.parseInt(d.get(contentIdField))));
+			Assert.assertEquals(content(i), searcher.getContent(docId));
+		}
+	}
+
+}
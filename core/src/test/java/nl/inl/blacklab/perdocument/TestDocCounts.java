@@ -0,0 +1,60 @@
+package nl.inl.blacklab.perdocument;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.inl.blacklab.TestIndex;
+import nl.inl.blacklab.search.grouping.HitPropValue;
+import nl.inl.blacklab.search.grouping.HitPropValueString;
+
+public class TestDocCounts {
+
+	static TestIndex testIndex;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		testIndex = new TestIndex(true);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		testIndex.close();
+	}
+
+	private static Map<HitPropValue, Integer> toMap(DocCounts counts) {
+		Map<HitPropValue, Integer> result = new HashMap<>();
+		for (DocCount count: counts) {
+			result.put(count.getIdentity(), count.size());
+		}
+		return result;
+	}
+
+	@Test
+	public void testCountMultipleFacets() throws Exception {
+		DocResults docs = testIndex.find(" [pos='nou'] ").perDocResults();
+		List<DocProperty> facets = Arrays.asList(new DocPropertyStoredField("title"),
+				new DocPropertyNumberOfHits(), new DocPropertyStoredField("nonexistent"));
+		List<DocCounts> counts = docs.countBy(facets);
+		Assert.assertEquals(facets.size(), counts.size());
+		for (int i = 0; i < facets.size(); i++) {
+			// Should be the same as determining each document's value separately
+			Map<HitPropValue, Integer> expected = new HashMap<>();
+			for (DocResult doc: docs) {
+				HitPropValue value = facets.get(i).get(doc);
+				expected.put(value, expected.containsKey(value) ? expected.get(value) + 1 : 1);
+			}
+			Assert.assertEquals(expected, toMap(counts.get(i)));
+			Assert.assertEquals(3, counts.get(i).getTotalResults());
+		}
+		Assert.assertEquals(Integer.valueOf(1), counts.get(0).getCount(new HitPropValueString("Fox")));
+		Assert.assertEquals(Integer.valueOf(3), counts.get(2).getCount(new HitPropValueString("")));
+	}
+
+}
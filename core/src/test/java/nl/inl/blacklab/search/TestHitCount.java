@@ -0,0 +1,133 @@
+package nl.inl.blacklab.search;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.inl.blacklab.TestIndex;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
+import nl.inl.blacklab.queryParser.corpusql.ParseException;
+
+public class TestHitCount {
+
+	static TestIndex testIndex;
+
+	static TestIndex testIndexSegmented;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		testIndex = new TestIndex();
+		testIndexSegmented = new TestIndex(true);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		testIndex.close();
+		testIndexSegmented.close();
+	}
+
+	private static HitCount hitCount(TestIndex index, String query, int maxCount) throws ParseException {
+		Searcher searcher = index.getSearcher();
+		TextPattern tp = CorpusQueryLanguageParser.parse(query);
+		SpanQuery spanQuery = searcher.createSpanQuery(tp, searcher.getMainContentsFieldName(), (Filter)null);
+		return searcher.countHits(spanQuery, maxCount);
+	}
+
+	private static HitCount count(TestIndex index, String query, int maxCount) throws ParseException, InterruptedException {
+		HitCount hitCount = hitCount(index, query, maxCount);
+		hitCount.count();
+		Assert.assertTrue(hitCount.doneCounting());
+		return hitCount;
+	}
+
+	private static void assertSameAsHits(TestIndex index, String query) throws ParseException, InterruptedException {
+		Hits hits = index.find(query);
+		HitCount hitCount = count(index, query, -1);
+		Assert.assertEquals(hits.totalSize(), hitCount.countSoFarHitsCounted());
+		Assert.assertEquals(hits.totalNumberOfDocs(), hitCount.countSoFarDocsCounted());
+		Assert.assertFalse(hitCount.maxHitsCounted());
+	}
+
+	@Test
+	public void testCount() throws ParseException, InterruptedException {
+		for (TestIndex index: new TestIndex[] { testIndex, testIndexSegmented }) {
+			assertSameAsHits(index, " 'the' ");
+			assertSameAsHits(index, " [pos='adj'] [pos='nou'] ");
+			assertSameAsHits(index, " [] ");
+			assertSameAsHits(index, " 'nonexistent' ");
+		}
+	}
+
+	@Test
+	public void testMaxHitsToCount() throws ParseException, InterruptedException {
+		for (TestIndex index: new TestIndex[] { testIndex, testIndexSegmented }) {
+			int total = index.find(" [] ").totalSize();
+			HitCount hitCount = count(index, " [] ", 5);
+			Assert.assertEquals(5, hitCount.countSoFarHitsCounted());
+			Assert.assertTrue(hitCount.maxHitsCounted());
+			hitCount = count(index, " [] ", total);
+			Assert.assertEquals(total, hitCount.countSoFarHitsCounted());
+		}
+	}
+
+	@Test
+	public void testMaxHitsToCountDocs() throws ParseException, InterruptedException {
+		for (TestIndex index: new TestIndex[] { testIndex, testIndexSegmented }) {
+			// Only documents with hits within the limit are counted
+			HitCount hitCount = count(index, " [] ", 1);
+			Assert.assertEquals(1, hitCount.countSoFarHitsCounted());
+			Assert.assertEquals(1, hitCount.countSoFarDocsCounted());
+			Assert.assertTrue(hitCount.maxHitsCounted());
+		}
+	}
+
+	@Test
+	public void testInterrupted() throws Exception {
+		HitCount hitCount = hitCount(testIndexSegmented, " [] ", -1);
+
+		// Keep the pool's threads busy, so the segment tasks are still waiting when we interrupt
+		ForkJoinPool pool = testIndexSegmented.getSearcher().getHitRetrievalPool();
+		final CountDownLatch busy = new CountDownLatch(pool.getParallelism());
+		final CountDownLatch release = new CountDownLatch(1);
+		for (int i = 0; i < pool.getParallelism(); i++) {
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					busy.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+		busy.await();
+
+		Thread.currentThread().interrupt();
+		try {
+			hitCount.count();
+			Assert.fail("Expected InterruptedException");
+		} catch (InterruptedException e) {
+			// expected
+		} finally {
+			Thread.interrupted(); // (in case count() didn't clear it)
+			release.countDown();
+		}
+		Assert.assertTrue(hitCount.doneCounting());
+		Assert.assertTrue(hitCount.maxHitsCounted());
+
+		// The segment tasks were cancelled, so they didn't count anything
+		pool.awaitQuiescence(10, TimeUnit.SECONDS);
+		Assert.assertEquals(0, hitCount.countSoFarHitsCounted());
+		Assert.assertEquals(0, hitCount.countSoFarDocsCounted());
+	}
+
+}
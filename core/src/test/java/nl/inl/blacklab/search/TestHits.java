@@ -19,6 +19,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import nl.inl.blacklab.MockHits;
+import nl.inl.blacklab.search.grouping.HitPropertyDocumentId;
 import nl.inl.blacklab.testutil.MockSearcher;
 
 public class TestHits {
@@ -39,4 +40,23 @@ public class TestHits {
 		}
 	}
 
+	@Test
+	public void testDocByOriginalOrder() {
+		HitsStore store = new HitsStore();
+		store.add(3, 0, 1);
+		store.add(1, 2, 3);
+		store.add(2, 4, 5);
+		Hits hits = Hits.fromStore(new MockSearcher(), store);
+		Hits sorted = hits.sortedBy(new HitPropertyDocumentId(hits));
+
+		int[] expected = { 3, 1, 2 };
+		Hits mock = new MockHits(new MockSearcher(), expected, new int[] { 0, 2, 4 }, new int[] { 1, 3, 5 });
+		for (int i = 0; i < expected.length; i++) {
+			Assert.assertEquals(expected[i], hits.docByOriginalOrder(i));
+			Assert.assertEquals(expected[i], sorted.docByOriginalOrder(i));
+			Assert.assertEquals(expected[i], mock.docByOriginalOrder(i));
+		}
+		Assert.assertEquals(1, sorted.get(0).doc);
+	}
+
 }
@@ -0,0 +1,128 @@
+package nl.inl.blacklab.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.inl.blacklab.TestIndex;
+import nl.inl.blacklab.queryParser.corpusql.ParseException;
+
+public class TestHitsSampleSpans {
+
+	static TestIndex testIndex;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		testIndex = new TestIndex(true);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		testIndex.close();
+	}
+
+	private static List<String> describe(Hits hits) {
+		List<String> result = new ArrayList<>();
+		for (Hit hit: hits) {
+			String desc = hit.toString();
+			if (hits.hasCapturedGroups())
+				desc += " " + Arrays.toString(hits.getCapturedGroups(hit));
+			result.add(desc);
+		}
+		return result;
+	}
+
+	private static HitsSample sample(String query, int number, long seed) throws ParseException {
+		HitsSample sample = HitsSample.fromHits(testIndex.find(query), number, seed);
+		Assert.assertTrue(sample instanceof HitsSampleSpans);
+		return sample;
+	}
+
+	private static HitsSample sample(String query, float ratio, long seed) throws ParseException {
+		HitsSample sample = HitsSample.fromHits(testIndex.find(query), ratio, seed);
+		Assert.assertTrue(sample instanceof HitsSampleSpans);
+		return sample;
+	}
+
+	private static void assertIsSample(List<String> all, List<String> sample) {
+		// Sample must be a subsequence of all hits
+		int i = 0;
+		for (String hit: sample) {
+			while (i < all.size() && !all.get(i).equals(hit))
+				i++;
+			Assert.assertTrue("Hit not in original order: " + hit, i < all.size());
+			i++;
+		}
+	}
+
+	@Test
+	public void testNumber() throws ParseException {
+		List<String> all = describe(testIndex.find(" [] "));
+		HitsSample sample = sample(" [] ", 5, 42);
+		List<String> hits = describe(sample);
+		Assert.assertEquals(5, hits.size());
+		Assert.assertEquals(all.size(), sample.totalSize());
+		assertIsSample(all, hits);
+		Assert.assertEquals(hits, describe(sample(" [] ", 5, 42)));
+	}
+
+	@Test
+	public void testNumberLargerThanHits() throws ParseException {
+		List<String> all = describe(testIndex.find(" 'the' "));
+		Assert.assertEquals(all, describe(sample(" 'the' ", all.size() + 10, 1)));
+		Assert.assertEquals(0, sample(" 'the' ", 0, 1).size());
+	}
+
+	@Test
+	public void testRatio() throws ParseException {
+		List<String> all = describe(testIndex.find(" [] "));
+		Assert.assertEquals(all, describe(sample(" [] ", 1f, 1337)));
+		Assert.assertEquals(0, sample(" [] ", 0f, 1337).size());
+		List<String> hits = describe(sample(" [] ", 0.5f, 1337));
+		Assert.assertEquals(Math.round(all.size() * 0.5f), hits.size());
+		assertIsSample(all, hits);
+		Assert.assertEquals(hits, describe(sample(" [] ", 0.5f, 1337)));
+
+		// Always select at least one hit (like HitsSampleImpl)
+		Assert.assertEquals(1, sample(" [] ", 0.0001f, 1337).size());
+	}
+
+	@Test
+	public void testCapturedGroups() throws ParseException {
+		List<String> all = describe(testIndex.find(" A:[pos='art'] B:[] "));
+		HitsSample sample = sample(" A:[pos='art'] B:[] ", 3, 7);
+		Assert.assertTrue(sample.hasCapturedGroups());
+		List<String> hits = describe(sample);
+		Assert.assertEquals(3, hits.size());
+		assertIsSample(all, hits);
+	}
+
+	@Test
+	public void testMaxCount() throws ParseException {
+		Hits hits = testIndex.find(" [] ");
+		hits.settings().setMaxHitsToCount(10);
+		HitsSample sample = HitsSample.fromHits(hits, 1f, 1);
+		Assert.assertEquals(10, sample.size());
+		Assert.assertTrue(sample.maxHitsCounted());
+	}
+
+	@Test
+	public void testRetrievedHits() throws ParseException {
+		// If all hits have been retrieved already, we sample from those,
+		// and get the same sample as we would from the query
+		for (String query: new String[] { " [] ", " A:[pos='art'] B:[] " }) {
+			Hits hits = testIndex.find(query);
+			hits.size();
+			HitsSample sample = HitsSample.fromHits(hits, 0.5f, 3);
+			Assert.assertTrue(sample instanceof HitsSampleSpans);
+			Assert.assertEquals(describe(sample(query, 0.5f, 3)), describe(sample));
+			Assert.assertEquals(describe(sample(query, 2, 5)), describe(HitsSample.fromHits(hits, 2, 5)));
+		}
+	}
+
+}
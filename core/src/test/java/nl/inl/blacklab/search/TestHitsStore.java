@@ -0,0 +1,77 @@
+package nl.inl.blacklab.search;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestHitsStore {
+
+	@Test
+	public void testAddAndGet() {
+		HitsStore store = new HitsStore(0, 1); // force growing
+		for (int i = 0; i < 100; i++) {
+			store.add(i / 10, i % 10, i % 10 + 1);
+		}
+		Assert.assertEquals(100, store.size());
+		Assert.assertEquals(new Hit(4, 2, 3), store.get(42));
+		Assert.assertFalse(store.hasCapturedGroups());
+		Assert.assertNull(store.getCapturedGroups(42));
+	}
+
+	@Test
+	public void testIndexOf() {
+		HitsStore sorted = new HitsStore();
+		sorted.add(1, 2, 3);
+		sorted.add(1, 4, 5);
+		sorted.add(3, 0, 1);
+		Assert.assertEquals(1, sorted.indexOf(new Hit(1, 4, 5)));
+		Assert.assertEquals(-1, sorted.indexOf(new Hit(2, 0, 1)));
+
+		HitsStore unsorted = new HitsStore();
+		unsorted.add(3, 0, 1);
+		unsorted.add(1, 2, 3);
+		Assert.assertEquals(0, unsorted.indexOf(new Hit(3, 0, 1)));
+		unsorted.add(1, 4, 5);
+		Assert.assertEquals(2, unsorted.indexOf(new Hit(1, 4, 5)));
+		Assert.assertEquals(-1, unsorted.indexOf(new Hit(2, 0, 1)));
+
+		// Duplicate hits: we should get the first occurrence
+		HitsStore duplicates = new HitsStore();
+		duplicates.add(1, 2, 3);
+		duplicates.add(1, 4, 5);
+		duplicates.add(1, 4, 5);
+		duplicates.add(1, 4, 5);
+		duplicates.add(3, 0, 1);
+		Assert.assertEquals(1, duplicates.indexOf(new Hit(1, 4, 5)));
+		duplicates.add(1, 4, 5);
+		Assert.assertEquals(1, duplicates.indexOf(new Hit(1, 4, 5)));
+	}
+
+	@Test
+	public void testCapturedGroups() {
+		HitsStore store = new HitsStore(2, 16);
+		store.add(1, 2, 5, new Span[] { new Span(2, 3), null });
+		HitsStore copy = new HitsStore(2, 16);
+		copy.add(store, 0);
+		Span[] groups = copy.getCapturedGroups(0);
+		Assert.assertEquals(2, groups[0].start);
+		Assert.assertEquals(3, groups[0].end);
+		Assert.assertNull(groups[1]);
+	}
+
+	@Test
+	public void testAddCapturedGroupsLater() {
+		HitsStore store = new HitsStore();
+		store.add(1, 2, 5);
+		store.setNumberOfCapturedGroups(1);
+		store.add(1, 6, 8, new Span[] { new Span(6, 7) });
+		Assert.assertNull(store.getCapturedGroups(0)[0]);
+		Assert.assertEquals(6, store.getCapturedGroups(1)[0].start);
+	}
+
+	@Test
+	public void testEstimateSizeBytes() {
+		HitsStore store = new HitsStore(0, 1000);
+		Assert.assertTrue(store.estimateSizeBytes() >= 3 * 1000 * 4);
+	}
+
+}
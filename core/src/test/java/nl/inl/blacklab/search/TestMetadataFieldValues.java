@@ -0,0 +1,67 @@
+package nl.inl.blacklab.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.index.LeafReader;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.inl.blacklab.TestIndex;
+import nl.inl.blacklab.queryParser.corpusql.ParseException;
+import nl.inl.blacklab.search.grouping.HitPropertyDocumentStoredField;
+
+public class TestMetadataFieldValues {
+
+	static TestIndex testIndex;
+
+	static Searcher searcher;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		testIndex = new TestIndex(true);
+		searcher = testIndex.getSearcher();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		testIndex.close();
+	}
+
+	@Test
+	public void testDocValues() {
+		MetadataFieldValues values = new MetadataFieldValues(searcher.getIndexReader(), "title");
+		Assert.assertTrue(values.hasDocValues());
+		for (Integer docId: searcher.docIdSet()) {
+			Assert.assertEquals(searcher.document(docId).get("title"), values.get(docId));
+		}
+	}
+
+	@Test
+	public void testStoredFieldFallback() throws IOException {
+		// Not a registered metadata field until the index is reopened, so the first
+		// document's segment has no DocValues for it; read from the stored field there
+		MetadataFieldValues values = new MetadataFieldValues(searcher.getIndexReader(), "fromInputFile");
+		LeafReader firstSegment = searcher.getIndexReader().leaves().get(0).reader();
+		Assert.assertNull(firstSegment.getSortedDocValues("fromInputFile"));
+		for (Integer docId: searcher.docIdSet()) {
+			Assert.assertEquals(searcher.document(docId).get("fromInputFile"), values.get(docId));
+		}
+	}
+
+	@Test
+	public void testSortByField() throws ParseException {
+		Hits hits = testIndex.find(" 'the' ");
+		hits.sort(new HitPropertyDocumentStoredField(hits, "title"));
+		List<String> titles = new ArrayList<>();
+		for (Hit hit: hits) {
+			titles.add(searcher.document(hit.doc).get("title"));
+		}
+		Assert.assertEquals(Arrays.asList("Force", "Fox", "Fox", "Question"), titles);
+	}
+
+}
@@ -0,0 +1,91 @@
+package nl.inl.blacklab.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.inl.blacklab.TestIndex;
+import nl.inl.blacklab.queryParser.corpusql.ParseException;
+
+public class TestParallelRetrieval {
+
+	static TestIndex testIndex;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		testIndex = new TestIndex(true);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		testIndex.close();
+	}
+
+	private static Hits find(String query, boolean parallel, int maxRetrieve, int maxCount) throws ParseException {
+		Hits hits = testIndex.find(query);
+		hits.settings().setParallelRetrieval(parallel);
+		hits.settings().setMaxHitsToRetrieve(maxRetrieve);
+		hits.settings().setMaxHitsToCount(maxCount);
+		return hits;
+	}
+
+	private static List<String> describe(Hits hits) {
+		List<String> result = new ArrayList<>();
+		result.add("size=" + hits.size() + ", total=" + hits.totalSize() + ", docs=" + hits.numberOfDocs() +
+				", totalDocs=" + hits.totalNumberOfDocs() + ", maxRetrieved=" + hits.maxHitsRetrieved() +
+				", maxCounted=" + hits.maxHitsCounted());
+		for (Hit hit: hits) {
+			String desc = hit.toString();
+			if (hits.hasCapturedGroups())
+				desc += " " + Arrays.toString(hits.getCapturedGroups(hit));
+			result.add(desc);
+		}
+		return result;
+	}
+
+	private static void assertSameAsSequential(String query, int maxRetrieve, int maxCount) throws ParseException {
+		List<String> expected = describe(find(query, false, maxRetrieve, maxCount));
+		List<String> actual = describe(find(query, true, maxRetrieve, maxCount));
+		Assert.assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testSegmentedIndex() {
+		Assert.assertEquals(3, testIndex.getSearcher().getIndexReader().leaves().size());
+	}
+
+	@Test
+	public void testAllHits() throws ParseException {
+		assertSameAsSequential(" 'the' ", -1, -1);
+		assertSameAsSequential(" [pos='adj'] [pos='nou'] ", -1, -1);
+		assertSameAsSequential(" 'nonexistent' ", -1, -1);
+	}
+
+	@Test
+	public void testCapturedGroups() throws ParseException {
+		assertSameAsSequential(" A:[pos='art'] B:[] ", -1, -1);
+	}
+
+	@Test
+	public void testLimits() throws ParseException {
+		for (int maxRetrieve = 0; maxRetrieve <= 4; maxRetrieve++) {
+			for (int maxCount = maxRetrieve; maxCount <= 5; maxCount++) {
+				assertSameAsSequential(" [] ", maxRetrieve, maxCount);
+			}
+		}
+	}
+
+	@Test
+	public void testPartlyReadSequentially() throws ParseException {
+		Hits expected = find(" [] ", false, -1, -1);
+		Hits hits = find(" [] ", true, -1, -1);
+		Assert.assertEquals(expected.get(0), hits.get(0)); // reads only the first hit
+		Assert.assertEquals(describe(expected), describe(hits));
+	}
+
+}
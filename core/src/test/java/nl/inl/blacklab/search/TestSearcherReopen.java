@@ -0,0 +1,130 @@
+package nl.inl.blacklab.search;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.inl.blacklab.index.IndexListenerDevNull;
+import nl.inl.blacklab.index.Indexer;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
+import nl.inl.blacklab.queryParser.corpusql.ParseException;
+import nl.inl.blacklab.search.grouping.HitPropertyHitText;
+import nl.inl.blacklab.tools.indexexample.DocIndexerExample;
+import nl.inl.util.UtilsForTesting;
+
+public class TestSearcherReopen {
+
+	private File indexDir;
+
+	private Searcher searcher;
+
+	private List<Searcher> toClose = new ArrayList<>();
+
+	@Before
+	public void setUp() throws Exception {
+		// Remove any previously left over temp test dirs
+		UtilsForTesting.removeBlackLabTestDirs();
+
+		indexDir = UtilsForTesting.createBlackLabTestDir("SearcherReopen");
+		addDocument("<doc><s><w l='the' p='art'>The</w> <w l='quick' p='adj'>quick</w> "
+				+ "<w l='fox' p='nou'>fox</w></s></doc>", true);
+		searcher = Searcher.open(indexDir);
+		toClose.add(searcher);
+	}
+
+	@After
+	public void tearDown() {
+		for (Searcher s: toClose) {
+			s.close();
+		}
+		// Try to remove (some files may be locked though)
+		UtilsForTesting.removeBlackLabTestDirs();
+	}
+
+	private void addDocument(String xml, boolean create) throws Exception {
+		Indexer indexer = new Indexer(indexDir, create, DocIndexerExample.class);
+		indexer.setListener(new IndexListenerDevNull()); // no output
+		try {
+			indexer.index("test", new StringReader(xml));
+		} finally {
+			indexer.close();
+		}
+	}
+
+	private static List<String> words(Searcher s, String query) throws ParseException {
+		Hits hits = s.find(CorpusQueryLanguageParser.parse(query));
+		hits = hits.sortedBy(new HitPropertyHitText(hits, s.getMainContentsFieldName()), false, true);
+		List<String> results = new ArrayList<>();
+		for (Hit hit: hits) {
+			results.add(hits.getKwic(hit, 0).getMatch("word").get(0));
+		}
+		return results;
+	}
+
+	@Test
+	public void testUnchanged() {
+		Assert.assertTrue(searcher == searcher.reopen());
+	}
+
+	@Test
+	public void testReopen() throws Exception {
+		searcher.setDefaultSearchSensitive(true);
+		addDocument("<doc><s><w l='a' p='art'>A</w> <w l='brown' p='adj'>brown</w> "
+				+ "<w l='dog' p='nou'>dog</w></s></doc>", false);
+
+		Searcher reopened = searcher.reopen();
+		toClose.add(reopened);
+		Assert.assertTrue(reopened != searcher);
+		Assert.assertTrue(reopened.isDefaultSearchCaseSensitive());
+
+		// The new view finds the new document and sorts its new terms correctly
+		Assert.assertEquals(2, reopened.maxDoc());
+		Assert.assertEquals(list("A", "brown", "dog", "fox", "quick", "The"), words(reopened, "[]"));
+
+		// The previous view can still be used and doesn't see the new document
+		Assert.assertEquals(1, searcher.maxDoc());
+		Assert.assertEquals(list("fox", "quick", "The"), words(searcher, "[]"));
+		searcher.close();
+		toClose.remove(searcher);
+
+		Assert.assertEquals(list("dog"), words(reopened, "[pos='nou' & lemma='dog']"));
+		Assert.assertTrue(reopened == reopened.reopen());
+	}
+
+	@Test
+	public void testReopenMemoryMappedTerms() throws Exception {
+		Searcher mapped;
+		Searcher.setDefaultMemoryMappedTerms(true);
+		try {
+			mapped = Searcher.open(indexDir);
+			toClose.add(mapped);
+			addDocument("<doc><s><w l='a' p='art'>A</w> <w l='brown' p='adj'>brown</w> "
+					+ "<w l='dog' p='nou'>dog</w></s></doc>", false);
+		} finally {
+			Searcher.setDefaultMemoryMappedTerms(false);
+		}
+
+		// Writing the new terms must not affect the mapped terms of the previous view
+		Assert.assertEquals(list("fox", "quick", "The"), words(mapped, "[]"));
+
+		Searcher reopened = mapped.reopen();
+		toClose.add(reopened);
+		Assert.assertEquals(list("A", "brown", "dog", "fox", "quick", "The"), words(reopened, "[]"));
+		Assert.assertEquals(list("fox", "quick", "The"), words(mapped, "[]"));
+	}
+
+	private static List<String> list(String... words) {
+		List<String> result = new ArrayList<>();
+		for (String w: words) {
+			result.add(w);
+		}
+		return result;
+	}
+
+}
@@ -186,4 +186,20 @@ public class TestSearches {
 		Assert.assertEquals(expected, testIndex.findConc(" 'dog' </s> "));
 	}
 
+	@Test
+	public void testConcordancesFromContentStore() throws ParseException {
+		// Hits in several documents; concordances for these are made in parallel
+		Hits hits = testIndex.find(" 'the' ");
+		hits.settings().setConcordanceType(ConcordanceType.CONTENT_STORE);
+		hits.settings().setContextSize(1);
+		for (Hit hit: hits) {
+			Concordance conc = hits.getConcordance(hit);
+			Assert.assertTrue(conc.match(), conc.match().toLowerCase().contains(">the</w>"));
+			Concordance single = hits.getConcordance(hits.settings().concordanceField(), hit, 1);
+			Assert.assertEquals(single.left(), conc.left());
+			Assert.assertEquals(single.match(), conc.match());
+			Assert.assertEquals(single.right(), conc.right());
+		}
+	}
+
 }
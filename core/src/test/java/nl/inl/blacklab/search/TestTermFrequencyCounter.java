@@ -0,0 +1,73 @@
+package nl.inl.blacklab.search;
+
+import java.util.Map;
+
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.inl.blacklab.TestIndex;
+import nl.inl.util.LuceneUtil;
+
+public class TestTermFrequencyCounter {
+
+	static TestIndex testIndex;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		testIndex = new TestIndex(true);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		testIndex.close();
+	}
+
+	private static TermFrequencyCounter count(String propName, boolean sensitive) {
+		Searcher searcher = testIndex.getSearcher();
+		Assert.assertTrue(TermFrequencyCounter.canCount(searcher, "contents", propName));
+		TermFrequencyCounter counter = new TermFrequencyCounter(searcher, "contents", propName, sensitive);
+		counter.count(new MatchAllDocsQuery());
+		return counter;
+	}
+
+	@Test
+	public void testInsensitive() {
+		TermFrequencyCounter counter = count("word", false);
+		Assert.assertEquals(25, counter.getTotalFrequency());
+		TermFrequencyList top = counter.getTermFrequencies(0, 2);
+		Assert.assertEquals(2, top.size());
+		Assert.assertEquals(new TermFrequency("the", 4), top.get(0));
+		Assert.assertEquals(new TermFrequency("find", 2), top.get(1));
+		Map<String, Integer> all = counter.getTermFrequencyMap();
+		Assert.assertEquals(counter.numberOfTerms(), all.size());
+		Assert.assertEquals(Integer.valueOf(1), all.get("may"));
+
+		// Should match the (slower) term vector-based method, except that we don't count
+		// the empty closing token at the end of each document
+		Searcher searcher = testIndex.getSearcher();
+		Map<String, Integer> fromTermVectors = LuceneUtil.termFrequencies(searcher.getIndexSearcher(), new MatchAllDocsQuery(), "contents", "word", "i");
+		fromTermVectors.remove("");
+		Assert.assertEquals(fromTermVectors, all);
+	}
+
+	@Test
+	public void testSensitive() {
+		TermFrequencyCounter counter = count("word", true);
+		Map<String, Integer> all = counter.getTermFrequencyMap();
+		Assert.assertEquals(Integer.valueOf(3), all.get("the"));
+		Assert.assertEquals(Integer.valueOf(1), all.get("The"));
+		Assert.assertNull(all.get(""));
+	}
+
+	@Test
+	public void testPaging() {
+		TermFrequencyCounter counter = count("lemma", false);
+		TermFrequencyList page = counter.getTermFrequencies(counter.numberOfTerms() - 1, 10);
+		Assert.assertEquals(1, page.size());
+		Assert.assertEquals(0, counter.getTermFrequencies(counter.numberOfTerms(), 10).size());
+	}
+
+}
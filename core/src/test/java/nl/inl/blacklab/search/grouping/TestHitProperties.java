@@ -60,4 +60,25 @@ public class TestHitProperties {
 		Assert.assertEquals(1, group.size());
 	}
 
+	@Test
+	public void testContextsShared() throws ParseException {
+		Hits hits = testIndex.find(" 'the' ");
+		Hits sorted = hits.sortedBy(new HitPropertyLeftContext(hits, true));
+		hits.groupedBy(new HitPropertyWordRight(hits, true));
+		Assert.assertTrue(hits.getHitContexts("contents%word") == sorted.getHitContexts("contents%word"));
+		Assert.assertEquals(4, hits.getHitContexts("contents%word").size());
+	}
+
+	@Test
+	public void testGroupsEstimateSizeBytes() throws ParseException {
+		Hits hits = testIndex.find(" 'the' ");
+		HitGroups g = hits.groupedBy(new HitPropertyHitText(hits, true));
+		long hitsInGroups = 0;
+		for (HitGroup group: g) {
+			hitsInGroups += group.getHits().estimateSizeBytes();
+		}
+		Assert.assertTrue(hitsInGroups > 0);
+		Assert.assertTrue(g.estimateSizeBytes() > hitsInGroups);
+	}
+
 }
@@ -0,0 +1,93 @@
+package nl.inl.blacklab.search.grouping;
+
+import java.util.Arrays;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.inl.blacklab.TestIndex;
+import nl.inl.blacklab.search.Hit;
+import nl.inl.blacklab.search.Hits;
+import nl.inl.util.ParallelMergeSort;
+
+public class TestHitSortKeys {
+
+	static TestIndex testIndex;
+
+	static Hits hits;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		testIndex = new TestIndex();
+		hits = testIndex.find(" [] ");
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		testIndex.close();
+	}
+
+	private static void assertSameOrderAsCompare(HitProperty prop) {
+		if (prop.needsContext() != null)
+			hits.findContext(prop.needsContext());
+		int n = hits.size();
+		Integer[] expected = new Integer[n];
+		int[] actual = new int[n];
+		for (int i = 0; i < n; i++) {
+			expected[i] = i;
+			actual[i] = i;
+		}
+		Arrays.sort(expected, prop);
+		HitSortKeys keys = prop.getSortKeys();
+		Assert.assertNotNull(keys);
+		ParallelMergeSort.sort(actual, keys);
+		for (int i = 0; i < n; i++) {
+			Assert.assertEquals(prop.serialize() + " at " + i, expected[i].intValue(), actual[i]);
+		}
+	}
+
+	@Test
+	public void testContextProperties() {
+		for (boolean reverse: new boolean[] { false, true }) {
+			HitProperty[] props = {
+				new HitPropertyLeftContext(hits, false),
+				new HitPropertyRightContext(hits, true),
+				new HitPropertyHitText(hits, false),
+				new HitPropertyWordLeft(hits, false),
+				new HitPropertyWordRight(hits, false),
+			};
+			for (HitProperty prop: props) {
+				prop.setReverse(reverse);
+				assertSameOrderAsCompare(prop);
+			}
+		}
+	}
+
+	@Test
+	public void testDocumentId() {
+		HitProperty prop = new HitPropertyDocumentId(hits);
+		prop.setReverse(true);
+		assertSameOrderAsCompare(prop);
+	}
+
+	@Test
+	public void testMultiple() {
+		HitProperty prop = new HitPropertyMultiple(new HitPropertyWordLeft(hits, false), new HitPropertyHitText(hits, false));
+		assertSameOrderAsCompare(prop);
+	}
+
+	@Test
+	public void testReverseSort() {
+		Hits sorted = hits.sortedBy(new HitPropertyDocumentId(hits), false);
+		Hits reversed = hits.sortedBy(new HitPropertyDocumentId(hits), true);
+		int n = sorted.size();
+		for (int i = 0; i < n; i++) {
+			Hit a = sorted.get(i);
+			Hit b = reversed.get(n - 1 - i);
+			Assert.assertEquals(a, b);
+		}
+	}
+
+}
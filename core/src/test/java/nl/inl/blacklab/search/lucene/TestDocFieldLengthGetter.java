@@ -0,0 +1,150 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.inl.blacklab.TestIndex;
+import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.util.LuceneUtil;
+
+public class TestDocFieldLengthGetter {
+
+	private static final String FIELD_NAME = "contents";
+
+	private static final String LENGTH_FIELD_NAME = ComplexFieldUtil.lengthTokensField(FIELD_NAME);
+
+	private Directory dir;
+
+	private IndexWriter writer;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = new RAMDirectory();
+		writer = new IndexWriter(dir, LuceneUtil.getIndexWriterConfig(new WhitespaceAnalyzer(), true));
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		writer.close();
+		dir.close();
+	}
+
+	/**
+	 * Add documents with lengths in the specified range.
+	 *
+	 * @param from first length
+	 * @param to last length + 1
+	 * @param docValues whether to add the length as DocValues (older indices didn't)
+	 */
+	private void addDocuments(int from, int to, boolean docValues) throws IOException {
+		for (int i = from; i < to; i++) {
+			Document d = new Document();
+			d.add(new IntField(LENGTH_FIELD_NAME, i, Store.YES));
+			if (docValues)
+				d.add(new NumericDocValuesField(LENGTH_FIELD_NAME, i));
+			writer.addDocument(d);
+		}
+		writer.commit();
+	}
+
+	private static void assertLengths(IndexReader r) throws IOException {
+		for (LeafReaderContext context: r.leaves()) {
+			LeafReader leaf = context.reader();
+			try (DocFieldLengthGetter getter = new DocFieldLengthGetter(leaf, FIELD_NAME)) {
+				for (int i = 0; i < leaf.maxDoc(); i++) {
+					Assert.assertEquals(Integer.parseInt(leaf.document(i).get(LENGTH_FIELD_NAME)), getter.getFieldLength(i));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testDocValues() throws Exception {
+		TestIndex testIndex = new TestIndex(true);
+		try {
+			IndexReader r = testIndex.getSearcher().getIndexReader();
+			for (LeafReaderContext context: r.leaves()) {
+				Assert.assertNotNull(context.reader().getNumericDocValues(LENGTH_FIELD_NAME));
+			}
+			assertLengths(r);
+		} finally {
+			testIndex.close();
+		}
+	}
+
+	@Test
+	public void testUninverted() throws IOException {
+		addDocuments(1, 5, false);
+		try (IndexReader r = DirectoryReader.open(dir)) {
+			Assert.assertNull(r.leaves().get(0).reader().getNumericDocValues(LENGTH_FIELD_NAME));
+			assertLengths(r);
+		}
+	}
+
+	@Test
+	public void testMixedSegment() throws IOException {
+		addDocuments(1, 4, false);
+		addDocuments(4, 7, true);
+		writer.forceMerge(1);
+		writer.commit();
+		try (IndexReader r = DirectoryReader.open(dir)) {
+			Assert.assertEquals(1, r.leaves().size());
+			Assert.assertEquals(6, r.maxDoc());
+			Assert.assertNotNull(r.leaves().get(0).reader().getNumericDocValues(LENGTH_FIELD_NAME));
+			assertLengths(r);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testConcurrentReads() throws Exception {
+		addDocuments(1, 1000, true);
+		addDocuments(1000, 2000, true);
+		final int numberOfThreads = 4;
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		try (final IndexReader r = DirectoryReader.open(dir)) {
+			// Start all threads at once, so they read the same segments at the same time
+			final CountDownLatch start = new CountDownLatch(1);
+			List<Future<Void>> results = new ArrayList<>();
+			for (int i = 0; i < numberOfThreads; i++) {
+				results.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						start.await();
+						assertLengths(r);
+						return null;
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<Void> result: results) {
+				result.get(); // (rethrows assertion failures)
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.inl.blacklab.TestIndex;
+import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.blacklab.search.Searcher;
+import nl.inl.util.LuceneUtil;
+
+public class TestDocIntFieldGetter {
+
+	static TestIndex testIndex;
+
+	static IndexReader reader;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		testIndex = new TestIndex(true);
+		reader = testIndex.getSearcher().getIndexReader();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		testIndex.close();
+	}
+
+	private static void assertMatchesStoredField(String fieldName) throws IOException {
+		// Values are written as DocValues in every segment
+		Assert.assertTrue(reader.leaves().size() > 1);
+		for (LeafReaderContext context: reader.leaves()) {
+			Assert.assertNotNull(context.reader().getNumericDocValues(fieldName));
+		}
+
+		DocIntFieldGetter getter = new DocIntFieldGetter(reader, fieldName);
+		for (int i = reader.maxDoc() - 1; i >= 0; i--) {
+			Assert.assertEquals(Integer.parseInt(reader.document(i).get(fieldName)), getter.get(i));
+		}
+	}
+
+	@Test
+	public void testForwardIndexIds() throws IOException {
+		Searcher searcher = testIndex.getSearcher();
+		String fieldName = ComplexFieldUtil.propertyField(searcher.getMainContentsFieldName(), ComplexFieldUtil.WORD_PROP_NAME);
+		assertMatchesStoredField(ComplexFieldUtil.forwardIndexIdField(fieldName));
+	}
+
+	@Test
+	public void testContentIds() throws IOException {
+		Searcher searcher = testIndex.getSearcher();
+		assertMatchesStoredField(ComplexFieldUtil.contentIdField(searcher.getMainContentsFieldName()));
+	}
+
+	private static void addDocuments(IndexWriter writer, String fieldName, int from, int to, boolean docValues) throws IOException {
+		for (int i = from; i < to; i++) {
+			Document d = new Document();
+			d.add(new IntField(fieldName, i, Store.YES));
+			if (docValues)
+				d.add(new NumericDocValuesField(fieldName, i));
+			writer.addDocument(d);
+		}
+		writer.commit();
+	}
+
+	private static void assertValues(IndexReader r, String fieldName) throws IOException {
+		DocIntFieldGetter getter = new DocIntFieldGetter(r, fieldName);
+		for (int i = 0; i < r.maxDoc(); i++) {
+			Assert.assertEquals(Integer.parseInt(r.document(i).get(fieldName)), getter.get(i));
+		}
+	}
+
+	@Test
+	public void testMixedSegment() throws IOException {
+		String fieldName = "testId";
+		try (Directory dir = new RAMDirectory()) {
+			try (IndexWriter writer = new IndexWriter(dir, LuceneUtil.getIndexWriterConfig(new WhitespaceAnalyzer(), true))) {
+				// Documents from an older version, without DocValues (value is uninverted)
+				addDocuments(writer, fieldName, 1, 4, false);
+				try (IndexReader r = DirectoryReader.open(dir)) {
+					Assert.assertNull(r.leaves().get(0).reader().getNumericDocValues(fieldName));
+					assertValues(r, fieldName);
+				}
+
+				// Add documents with DocValues and merge them with the older ones
+				addDocuments(writer, fieldName, 4, 7, true);
+				writer.forceMerge(1);
+			}
+			try (IndexReader r = DirectoryReader.open(dir)) {
+				Assert.assertEquals(1, r.leaves().size());
+				Assert.assertEquals(6, r.maxDoc());
+				Assert.assertNotNull(r.leaves().get(0).reader().getNumericDocValues(fieldName));
+				assertValues(r, fieldName);
+			}
+		}
+	}
+
+	@Test
+	public void testMissingField() {
+		DocIntFieldGetter getter = new DocIntFieldGetter(reader, "nonExistentField");
+		Assert.assertEquals(-1, getter.get(0));
+	}
+
+}
@@ -0,0 +1,121 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.util.automaton.RegExp;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.inl.blacklab.TestIndex;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
+import nl.inl.blacklab.queryParser.corpusql.ParseException;
+import nl.inl.blacklab.search.Hit;
+import nl.inl.blacklab.search.QueryExecutionContext;
+import nl.inl.blacklab.search.Searcher;
+
+public class TestSpanQueryPlanner {
+
+	static TestIndex testIndex;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		testIndex = new TestIndex();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		testIndex.close();
+	}
+
+	private static SpanQuery rewrittenQuery(String query) throws ParseException, IOException {
+		Searcher searcher = testIndex.getSearcher();
+		SpanQuery spanQuery = searcher.createSpanQuery(CorpusQueryLanguageParser.parse(query), searcher.getMainContentsFieldName(), (Filter)null);
+		Query rewritten = spanQuery;
+		for (Query q = rewritten.rewrite(searcher.getIndexReader()); q != rewritten; q = rewritten.rewrite(searcher.getIndexReader())) {
+			rewritten = q;
+		}
+		return (SpanQuery)rewritten;
+	}
+
+	@Test
+	public void testEstimate() throws ParseException, IOException {
+		SpanQueryPlanner planner = new SpanQueryPlanner(testIndex.getSearcher().getIndexReader());
+		Assert.assertEquals(1, planner.estimateNumberOfHits(rewrittenQuery(" 'fox' ")));
+		Assert.assertEquals(3, planner.estimateNumberOfHits(rewrittenQuery(" [pos='adj'] ")));
+	}
+
+	@Test
+	public void testOrderAndClauses() throws ParseException, IOException {
+		SpanQueryPlanner planner = new SpanQueryPlanner(testIndex.getSearcher().getIndexReader());
+		SpanQuery frequent = rewrittenQuery(" [pos='adj'] ");
+		SpanQuery rare = rewrittenQuery(" 'fox' ");
+		SpanQuery[] clauses = { frequent, rare };
+		Assert.assertEquals(Arrays.asList(rare, frequent), Arrays.asList(planner.orderAndClauses(clauses)));
+		SpanQuery[] ordered = { rare, frequent };
+		Assert.assertTrue(ordered == planner.orderAndClauses(ordered));
+	}
+
+	@Test
+	public void testRegroupedSequence() throws ParseException {
+		Assert.assertEquals(Arrays.asList("The [quick brown fox] jumps"),
+				testIndex.findConc(" [pos='adj'] [pos='adj'] 'fox' "));
+		Assert.assertEquals(Arrays.asList("over [the lazy dog]"),
+				testIndex.findConc(" [pos='art'] [pos='adj'] 'dog' "));
+	}
+
+	private static List<String> findHits(SpanQuery query) {
+		List<String> results = new ArrayList<>();
+		for (Hit hit: testIndex.getSearcher().find(query)) {
+			results.add(hit.doc + ":" + hit.start + "-" + hit.end);
+		}
+		return results;
+	}
+
+	@Test
+	public void testFiSeq() throws ParseException, IOException {
+		Searcher searcher = testIndex.getSearcher();
+		QueryExecutionContext context = QueryExecutionContext.getSimple(searcher, searcher.getMainContentsFieldName());
+		ForwardIndexTermMatcher matcher = ForwardIndexTermMatcher.forContext(context, new RegExp("qu.*").toAutomaton());
+		Assert.assertNotNull(matcher);
+
+		// The token after the anchor
+		SpanQuery tokenClause = rewrittenQuery(" 'qu.*' ");
+		SpanQuery query = new SpanQueryFiSeq(rewrittenQuery(" 'the' "), tokenClause, matcher, true);
+		Assert.assertEquals(Arrays.asList("0:0-2", "2:8-10"), findHits(query));
+
+		// The token before the anchor
+		query = new SpanQueryFiSeq(rewrittenQuery(" [pos='nou'] "), tokenClause, matcher, false);
+		Assert.assertEquals(Collections.<String>emptyList(), findHits(query));
+		query = new SpanQueryFiSeq(rewrittenQuery(" 'the' "), tokenClause, matcher, false);
+		Assert.assertEquals(Collections.<String>emptyList(), findHits(query));
+		matcher = ForwardIndexTermMatcher.forContext(context, new RegExp("(over)|(is)").toAutomaton());
+		query = new SpanQueryFiSeq(rewrittenQuery(" 'the' "), tokenClause, matcher, false);
+		Assert.assertEquals(Arrays.asList("0:5-7", "2:7-9"), findHits(query));
+	}
+
+	@Test
+	public void testVerifyWithForwardIndex() throws ParseException {
+		// Same results whether or not the planner verifies the regex using the forward index
+		Assert.assertEquals(Arrays.asList("[The quick] brown", "is [the question]"), testIndex.findConc(" 'the' 'qu.*' "));
+		Assert.assertEquals(Arrays.asList("[The quick brown] fox"), testIndex.findConc(" 'the' [pos='a.*'] [pos='adj'] "));
+	}
+
+	@Test
+	public void testExplain() throws ParseException {
+		Searcher searcher = testIndex.getSearcher();
+		SpanQuery spanQuery = searcher.createSpanQuery(CorpusQueryLanguageParser.parse(" 'the' 'fox' "), searcher.getMainContentsFieldName(), (Filter)null);
+		String plan = searcher.explain(spanQuery);
+		Assert.assertTrue(plan.contains("(~1 hits)"));
+		Assert.assertTrue(plan.contains("(~4 hits)"));
+	}
+
+}
@@ -45,4 +45,35 @@ public class TestPerDocumentSortedSpans {
 		TestUtil.assertEquals(exp, hpd);
 	}
 
+	@Test
+	public void testStartPointEliminateDuplicates() throws IOException {
+		int[] doc   = { 1, 1, 1, 1, 2, 2 };
+		int[] start = { 4, 1, 4, 1, 3, 2 };
+		int[] end   = { 5, 8, 5, 6, 4, 3 };
+		hpd = new PerDocumentSortedSpans(new MockSpans(doc, start, end), false, true);
+
+		int[] expDoc   = { 1, 1, 1, 2, 2 };
+		int[] expStart = { 1, 1, 4, 2, 3 };
+		int[] expEnd   = { 6, 8, 5, 3, 4 };
+		TestUtil.assertEquals(new MockSpans(expDoc, expStart, expEnd), hpd);
+	}
+
+	@Test
+	public void testLargeBuckets() throws IOException {
+		// Large enough to need merging (not just insertion sort) and to grow the bucket arrays
+		int n = 2500;
+		int[] doc = new int[n * 2], start = new int[n * 2], end = new int[n * 2];
+		int[] expStart = new int[n * 2], expEnd = new int[n * 2];
+		for (int i = 0; i < n * 2; i++) {
+			int indexInDoc = i % n;
+			doc[i] = i < n ? 1 : 2;
+			start[i] = n - 1 - indexInDoc;
+			end[i] = start[i] + 1 + indexInDoc % 3;
+			expStart[i] = indexInDoc;
+			expEnd[i] = indexInDoc + 1 + (n - 1 - indexInDoc) % 3;
+		}
+		hpd = new PerDocumentSortedSpans(new MockSpans(doc, start, end), false, false);
+		TestUtil.assertEquals(new MockSpans(doc, expStart, expEnd), hpd);
+	}
+
 }
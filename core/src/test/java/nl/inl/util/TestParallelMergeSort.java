@@ -0,0 +1,80 @@
+package nl.inl.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestParallelMergeSort {
+
+	/** Compares only the value divided by 10, so we can check stability */
+	private static final IntComparator COARSE = new IntComparator() {
+		@Override
+		public int compare(int a, int b) {
+			return Integer.compare(a / 10, b / 10);
+		}
+	};
+
+	private static void testSort(int n, ForkJoinPool pool) {
+		Random random = new Random(n);
+		int[] a = new int[n];
+		for (int i = 0; i < n; i++)
+			a[i] = random.nextInt(n);
+		int[] expected = a.clone();
+		Arrays.sort(expected);
+		ParallelMergeSort.sort(a, 0, n, new IntComparator() {
+			@Override
+			public int compare(int x, int y) {
+				return Integer.compare(x, y);
+			}
+		}, pool);
+		Assert.assertArrayEquals(expected, a);
+	}
+
+	@Test
+	public void testSmall() {
+		testSort(0, null);
+		testSort(1, null);
+		testSort(31, null);
+		testSort(1000, null);
+	}
+
+	@Test
+	public void testParallel() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			testSort(100000, pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testStable() {
+		int n = 50000;
+		int[] a = new int[n];
+		for (int i = 0; i < n; i++)
+			a[i] = (n - i) / 100 * 10 + i % 10; // many equal keys with different low digits
+		Integer[] expected = new Integer[n];
+		for (int i = 0; i < n; i++)
+			expected[i] = a[i];
+		Arrays.sort(expected, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer x, Integer y) {
+				return COARSE.compare(x, y);
+			}
+		});
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			ParallelMergeSort.sort(a, 0, n, COARSE, pool);
+		} finally {
+			pool.shutdown();
+		}
+		for (int i = 0; i < n; i++)
+			Assert.assertEquals(expected[i].intValue(), a[i]);
+	}
+
+}
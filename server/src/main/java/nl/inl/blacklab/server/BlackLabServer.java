@@ -26,6 +26,7 @@ import nl.inl.blacklab.server.datastream.DataStream;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.exceptions.InternalServerError;
 import nl.inl.blacklab.server.requesthandlers.RequestHandler;
+import nl.inl.blacklab.server.requesthandlers.RequestHandlerPlainText;
 import nl.inl.blacklab.server.requesthandlers.Response;
 import nl.inl.blacklab.server.requesthandlers.SearchParameters;
 import nl.inl.blacklab.server.search.SearchManager;
@@ -164,9 +165,27 @@ public class BlackLabServer extends HttpServlet {
 
 		String rootEl = requestHandler.omitBlackLabResponseRootElement() ? null : "blacklabResponse";
 
+		// === Plain text responses (e.g. CSV export) are always streamed
+		if (requestHandler instanceof RequestHandlerPlainText && ((RequestHandlerPlainText) requestHandler).isPlainText()) {
+			handlePlainTextRequest((RequestHandlerPlainText) requestHandler, responseObject, cacheTime, outputType, prettyPrint, rootEl, debugMode);
+			return;
+		}
+
 		// === Handle the request
-		StringWriter buf = new StringWriter();
-		PrintWriter out = new PrintWriter(buf);
+		// (either capture the response in a buffer, so we can set the HTTP status afterwards,
+		//  or, if we're streaming, write it to the client while we produce it)
+		boolean streaming = requestHandler.isStreamingResponse();
+		StringWriter buf = null;
+		PrintWriter out;
+		if (streaming) {
+			writeHeaders(responseObject, HttpServletResponse.SC_OK, isJsonp, ServletUtil.getContentType(outputType), cacheTime);
+			out = getResponseWriter(responseObject);
+			if (out == null)
+				return;
+		} else {
+			buf = new StringWriter();
+			out = new PrintWriter(buf);
+		}
 		DataStream ds = DataStream.create(outputType, out, prettyPrint, callbackFunction);
 		ds.startDocument(rootEl);
 		int httpCode;
@@ -177,29 +196,41 @@ public class BlackLabServer extends HttpServlet {
 		} else {
 			try {
 				httpCode = requestHandler.handle(ds);
-			} catch (InternalServerError e) {
-				String msg = ServletUtil.internalErrorMessage(e, debugMode, e.getInternalErrorCode());
-				httpCode = Response.error(ds, e.getBlsErrorCode(), msg, e.getHttpStatusCode());
-			} catch (BlsException e) {
-				httpCode = Response.error(ds, e.getBlsErrorCode(), e.getMessage(), e.getHttpStatusCode());
-			} catch (InterruptedException e) {
-				httpCode = Response.internalError(ds, e, debugMode, 7);
-			} catch (RegexpTooLargeException e) {
-				httpCode = Response.badRequest(ds, "REGEXP_TOO_LARGE", e.getMessage());
-			} catch (RuntimeException e) {
-				httpCode = Response.internalError(ds, e, debugMode, 32);
+			} catch (BlsException | InterruptedException | RuntimeException e) {
+				if (streaming) {
+					if (responseObject.isCommitted()) {
+						// We can't take back what we've sent; finish it and add the error to the end
+						logger.error("Error while streaming response", e);
+						httpCode = errorInPartialResponse(ds, e, debugMode);
+					} else {
+						// Nothing sent yet; discard the partial response and just send the error
+						responseObject.resetBuffer();
+						out = getResponseWriter(responseObject);
+						if (out == null)
+							return;
+						ds = DataStream.create(outputType, out, prettyPrint, callbackFunction);
+						ds.startDocument(rootEl);
+						httpCode = errorResponse(ds, e, debugMode);
+					}
+				} else {
+					httpCode = errorResponse(ds, e, debugMode);
+				}
 			}
 		}
 		ds.endDocument(rootEl);
 
-		// === Write the response headers
+		if (streaming) {
+			// Set the HTTP status, if we haven't sent the first part of the response yet
+			if (!isJsonp && !responseObject.isCommitted())
+				responseObject.setStatus(httpCode);
+			out.flush();
+			if (out.checkError())
+				logger.debug("(couldn't send response, client probably cancelled the request)");
+			return;
+		}
 
-		// Write HTTP headers (status code, encoding, content type and cache)
-		if (!isJsonp) // JSONP request always returns 200 OK because otherwise script doesn't load
-			responseObject.setStatus(httpCode);
-		responseObject.setCharacterEncoding(OUTPUT_ENCODING.name().toLowerCase());
-		responseObject.setContentType(ServletUtil.getContentType(outputType));
-		ServletUtil.writeCacheHeaders(responseObject, cacheTime);
+		// === Write the response headers
+		writeHeaders(responseObject, httpCode, isJsonp, ServletUtil.getContentType(outputType), cacheTime);
 
 		// === Write the response that was captured in buf
 		try {
@@ -214,6 +245,133 @@ public class BlackLabServer extends HttpServlet {
 		}
 	}
 
+	/**
+	 * Handle a request that produces plain text (e.g. CSV) instead of XML or JSON.
+	 *
+	 * The response is written to the client while it is produced. If an error
+	 * occurs before anything has been sent, a regular XML or JSON error response
+	 * is sent instead.
+	 *
+	 * @param requestHandler the request handler
+	 * @param responseObject where to write our response
+	 * @param cacheTime how long the client may cache the response
+	 * @param outputType response type to use for errors
+	 * @param prettyPrint whether to pretty print errors
+	 * @param rootEl root element to use for errors
+	 * @param debugMode whether we're in debug mode
+	 */
+	private void handlePlainTextRequest(RequestHandlerPlainText requestHandler, HttpServletResponse responseObject,
+			int cacheTime, DataFormat outputType, boolean prettyPrint, String rootEl, boolean debugMode) {
+		writeHeaders(responseObject, HttpServletResponse.SC_OK, false, requestHandler.getPlainTextContentType(), cacheTime);
+		PrintWriter out = getResponseWriter(responseObject);
+		if (out == null)
+			return;
+		int httpCode;
+		try {
+			httpCode = requestHandler.handlePlainText(out);
+		} catch (BlsException | InterruptedException | RuntimeException e) {
+			if (responseObject.isCommitted()) {
+				// We can't take back what we've sent; just stop
+				logger.error("Error while streaming response", e);
+				out.flush();
+				return;
+			}
+			// Nothing sent yet; discard the partial response and send a regular error response
+			responseObject.resetBuffer();
+			out = getResponseWriter(responseObject);
+			if (out == null)
+				return;
+			DataStream ds = DataStream.create(outputType, out, prettyPrint, null);
+			ds.startDocument(rootEl);
+			httpCode = errorResponse(ds, e, debugMode);
+			ds.endDocument(rootEl);
+			writeHeaders(responseObject, httpCode, false, ServletUtil.getContentType(outputType), 0);
+		}
+		if (!responseObject.isCommitted())
+			responseObject.setStatus(httpCode);
+		out.flush();
+		if (out.checkError())
+			logger.debug("(couldn't send response, client probably cancelled the request)");
+	}
+
+	/**
+	 * Write an error response for an exception thrown by a request handler.
+	 *
+	 * @param ds where to write the error
+	 * @param e the exception
+	 * @param debugMode whether we're in debug mode (include more details)
+	 * @return the HTTP status code
+	 */
+	private static int errorResponse(DataStream ds, Exception e, boolean debugMode) {
+		if (e instanceof InternalServerError) {
+			InternalServerError ise = (InternalServerError) e;
+			String msg = ServletUtil.internalErrorMessage(ise, debugMode, ise.getInternalErrorCode());
+			return Response.error(ds, ise.getBlsErrorCode(), msg, ise.getHttpStatusCode());
+		}
+		if (e instanceof BlsException) {
+			BlsException be = (BlsException) e;
+			return Response.error(ds, be.getBlsErrorCode(), be.getMessage(), be.getHttpStatusCode());
+		}
+		if (e instanceof InterruptedException)
+			return Response.internalError(ds, e, debugMode, 7);
+		if (e instanceof RegexpTooLargeException)
+			return Response.badRequest(ds, "REGEXP_TOO_LARGE", e.getMessage());
+		return Response.internalError(ds, e, debugMode, 32);
+	}
+
+	/**
+	 * Add an error to the end of a response that was partially sent already.
+	 *
+	 * Any structures the request handler left open are closed first, and the
+	 * error is added to the outermost map, so the response is still valid
+	 * XML or JSON. If there's no open outermost map to add the error to, the
+	 * error is not written at all.
+	 *
+	 * @param ds where to write the error
+	 * @param e the exception
+	 * @param debugMode whether we're in debug mode (include more details)
+	 * @return the HTTP status code
+	 */
+	static int errorInPartialResponse(DataStream ds, Exception e, boolean debugMode) {
+		if (!ds.closeOpenStructures())
+			return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+		int httpCode = errorResponse(ds, e, debugMode);
+		ds.endMap();
+		return httpCode;
+	}
+
+	/**
+	 * Write HTTP headers (status code, encoding, content type and cache).
+	 *
+	 * @param responseObject the response
+	 * @param httpCode HTTP status code
+	 * @param isJsonp whether this is a JSONP request (always returns 200 OK)
+	 * @param contentType content type of the response
+	 * @param cacheTime how long the client may cache the response
+	 */
+	private static void writeHeaders(HttpServletResponse responseObject, int httpCode, boolean isJsonp, String contentType, int cacheTime) {
+		if (!isJsonp) // JSONP request always returns 200 OK because otherwise script doesn't load
+			responseObject.setStatus(httpCode);
+		responseObject.setCharacterEncoding(OUTPUT_ENCODING.name().toLowerCase());
+		responseObject.setContentType(contentType);
+		ServletUtil.writeCacheHeaders(responseObject, cacheTime);
+	}
+
+	/**
+	 * Get a writer that sends our response to the client directly.
+	 *
+	 * @param responseObject the response
+	 * @return the writer, or null if the client cancelled the request
+	 */
+	private static PrintWriter getResponseWriter(HttpServletResponse responseObject) {
+		try {
+			return new PrintWriter(new OutputStreamWriter(responseObject.getOutputStream(), OUTPUT_ENCODING));
+		} catch (IOException e) {
+			logger.debug("(couldn't send response, client probably cancelled the request)");
+			return null;
+		}
+	}
+
 	@Override
 	public void destroy() {
 
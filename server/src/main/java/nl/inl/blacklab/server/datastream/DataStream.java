@@ -64,14 +64,18 @@ public abstract class DataStream {
 	 * @param msg the error message
 	 */
 	public void error(String code, String msg) {
-		startMap()
-		.startEntry("error")
+		// If we're finishing a partial response, add the error to its outermost map
+		boolean ownMap = !errorInOpenMap;
+		if (ownMap)
+			startMap();
+		startEntry("error")
 			.startMap()
 				.entry("code", code)
 				.entry("message", msg);
 				endMap()
-			.endEntry()
-		.endMap();
+			.endEntry();
+		if (ownMap)
+			endMap();
 	}
 
 	public void internalError(Exception e, boolean debugMode, int code) {
@@ -94,6 +98,9 @@ public abstract class DataStream {
 
 	boolean prettyPrintPref;
 
+	/** If true, error() adds the error to the outermost map (see closeOpenStructures()) */
+	boolean errorInOpenMap = false;
+
 	public DataStream(PrintWriter out, boolean prettyPrint) {
 		this.out = out;
 		this.prettyPrintPref = this.prettyPrint = prettyPrint;
@@ -166,6 +173,30 @@ public abstract class DataStream {
 		return this;
 	}
 
+	/**
+	 * Close any maps, lists, entries and items that are still open, except
+	 * the outermost map.
+	 *
+	 * Used when an error occurs after part of the response was sent to the
+	 * client: we can't take that back, but we can finish it properly and add
+	 * the error to the outermost map, so the response is still valid.
+	 * After this, error() writes the error as an entry in that map.
+	 *
+	 * @return true if the outermost map is open (so the error can be added),
+	 *   false if it was never started or has already been closed
+	 */
+	public boolean closeOpenStructures() {
+		errorInOpenMap = closeToOutermostMap();
+		return errorInOpenMap;
+	}
+
+	/**
+	 * Close any open structures, except the outermost map.
+	 *
+	 * @return true if the outermost map is open
+	 */
+	abstract boolean closeToOutermostMap();
+
 	public abstract DataStream startDocument(String rootEl);
 
 	public abstract DataStream endDocument(String rootEl);
@@ -283,6 +314,18 @@ public abstract class DataStream {
 		return print(value);
 	}
 
+	/**
+	 * Send what we've written so far on to the client, if we're streaming the response.
+	 *
+	 * If the response is being buffered, this has no visible effect.
+	 *
+	 * @return this
+	 */
+	public DataStream flush() {
+		out.flush();
+		return this;
+	}
+
 	public static void main(String[] args) {
 		PrintWriter out = new PrintWriter(System.out);
 
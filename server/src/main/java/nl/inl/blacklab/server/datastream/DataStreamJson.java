@@ -21,6 +21,12 @@ public class DataStreamJson extends DataStream {
 	/** First entry in map/list: don't print separator */
 	boolean firstEntry = true;
 
+	/** Closing brackets for the maps and lists that are currently open */
+	StringBuilder openBrackets = new StringBuilder();
+
+	/** Has an entry or item been started, but its value not yet written? */
+	boolean valueExpected = false;
+
 	public DataStreamJson(PrintWriter out, boolean prettyPrint, String jsonpCallback) {
 		super(out, prettyPrint);
 		this.jsonpCallback = jsonpCallback;
@@ -29,14 +35,33 @@ public class DataStreamJson extends DataStream {
 
 	DataStream openbl(String str) {
 		firstEntry = true;
+		valueExpected = false;
+		openBrackets.append(str.equals("[") ? ']' : '}');
 		return print(str).upindent();
 	}
 
 	DataStream closebl(String str) {
 		firstEntry = false;
+		openBrackets.setLength(openBrackets.length() - 1);
 		return downindent().newlineIndent().print(str);
 	}
 
+	@Override
+	boolean closeToOutermostMap() {
+		endCompact();
+		while (openBrackets.length() > 0) {
+			if (valueExpected) {
+				// Entry or item without a value
+				print("null");
+				valueExpected = false;
+			}
+			if (openBrackets.length() == 1)
+				return openBrackets.charAt(0) == '}';
+			closebl(Character.toString(openBrackets.charAt(openBrackets.length() - 1)));
+		}
+		return false;
+	}
+
 	@Override
 	public DataStream startDocument(String rootEl) {
 		if (isJsonp) {
@@ -65,6 +90,7 @@ public class DataStreamJson extends DataStream {
 
 	@Override
 	public DataStream startItem(String name) {
+		valueExpected = true;
 		return optSep().newlineIndent();
 	}
 
@@ -92,6 +118,7 @@ public class DataStreamJson extends DataStream {
 
 	@Override
 	public DataStream startEntry(String key) {
+		valueExpected = true;
 		return optSep().newlineIndent().print("\"").print(StringUtil.escapeDoubleQuotedString(key)).print("\":").space();
 	}
 
@@ -139,22 +166,26 @@ public class DataStreamJson extends DataStream {
 
 	@Override
 	public DataStream value(String value) {
+		valueExpected = false;
 		return value == null ? print("null") :
 			print("\"").print(StringUtil.escapeDoubleQuotedString(value)).print("\"");
 	}
 
 	@Override
 	public DataStream value(long value) {
+		valueExpected = false;
 		return print(value);
 	}
 
 	@Override
 	public DataStream value(double value) {
+		valueExpected = false;
 		return print(value);
 	}
 
 	@Override
 	public DataStream value(boolean value) {
+		valueExpected = false;
 		return print(value);
 	}
 
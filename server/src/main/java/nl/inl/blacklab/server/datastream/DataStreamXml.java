@@ -43,10 +43,25 @@ public class DataStreamXml extends DataStream {
 		return downindent().indent().print("</").print(name).print(">").newline();
 	}
 
+	/** Was a root element started? */
+	boolean hasRootEl = false;
+
+	@Override
+	boolean closeToOutermostMap() {
+		endCompact();
+		int outermost = hasRootEl ? 1 : 0;
+		while (tagStack.size() > outermost) {
+			closeEl();
+		}
+		// (without a root element, the outermost map doesn't have an element)
+		return hasRootEl && !tagStack.isEmpty();
+	}
+
 	@Override
 	public DataStream startDocument(String rootEl) {
 		if (rootEl == null)
 			return this;
+		hasRootEl = true;
 		print("<?xml version=\"1.0\" encoding=\"utf-8\" ?>").newline();
 		startOpenEl(rootEl);
 		return endOpenEl();
@@ -2,8 +2,11 @@ package nl.inl.blacklab.server.jobs;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.log4j.Logger;
 
@@ -33,6 +36,9 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 
 	private static final int REFS_INVALID = -9999;
 
+	/** Estimated size of a job object itself, without any results it holds */
+	protected static final long JOB_OVERHEAD_BYTES = 1000;
+
 	/** If true (as it should be for production use), we call cleanup() on jobs that
 	 *  aren't referred to anymore in an effor to assist the Java garbage collector.
 	 *  EXPERIMENTAL
@@ -63,23 +69,32 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 	Set<Job> waitingFor = new HashSet<>();
 
 	/**
-	 * Wait for the specified job to finish
+	 * Submit this job to the executor once the specified job has finished.
+	 *
+	 * We don't tie up a thread while waiting; the input job notifies us
+	 * when it's done.
+	 *
 	 * @param job the job to wait for
-	 * @throws BlsException
 	 */
-	protected void waitForJobToFinish(Job job) throws BlsException {
+	private void submitWhenFinished(final Job job) {
 		synchronized(waitingFor) {
 			waitingFor.add(job);
 			job.incrRef();
 		}
-		try {
-			job.waitUntilFinished();
-		} finally {
-			synchronized(waitingFor) {
-				job.decrRef();
-				waitingFor.remove(job);
+		job.whenFinished(new Runnable() {
+			@Override
+			public void run() {
+				Set<Job> w = waitingFor;
+				if (w != null) {
+					synchronized(w) {
+						if (w.remove(job))
+							job.decrRef();
+					}
+				}
+				if (!cancelJobCalled)
+					executor.submit(Job.this);
 			}
-		}
+		});
 	}
 
 	/** The total accumulated paused time so far.
@@ -95,10 +110,10 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 	protected long startedAt;
 
 	/** When this job was finished (or -1 if not finished yet) */
-	protected long finishedAt;
+	protected volatile long finishedAt;
 
 	/** If the search thread threw an exception, it's stored here. */
-	protected Throwable thrownException;
+	protected volatile Throwable thrownException;
 
 	/** The last time the results of this search were accessed (for caching) */
 	private long lastAccessed;
@@ -113,13 +128,28 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 	protected Searcher searcher;
 
 	/** Has perform() been called or not? Don't call it twice! */
-	private boolean performCalled = false;
+	private volatile boolean performCalled = false;
 
 	/** Has cancelJob() been called or not? Don't call it twice! */
-	private boolean cancelJobCalled = false;
+	private volatile boolean cancelJobCalled = false;
+
+	/** Thread carrying out the search, if currently running. */
+	private volatile Thread searchThread = null;
 
-	/** Thread object carrying out the search, if performing the search. */
-	private SearchThread searchThread = null;
+	/** Set when execution of the job is started or the job is cancelled before starting */
+	private AtomicBoolean executionClaimed = new AtomicBoolean(false);
+
+	/** Guards searchThread, finishedAt and finishListeners, and is notified when the job finishes */
+	private final Object finishLock = new Object();
+
+	/** What to do when this job has finished */
+	private List<Runnable> finishListeners = new ArrayList<>();
+
+	/** When this job was queued for execution (or -1 if not queued yet) */
+	long queuedAt = -1;
+
+	/** How long this job waited in the queue before starting */
+	long queueWaitMs = 0;
 
 	/** Description of this job */
 	protected JobDescription jobDesc;
@@ -130,6 +160,9 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 	/** The servlet */
 	protected SearchManager searchMan;
 
+	/** Executes our job when it's ready to run */
+	private JobExecutor executor;
+
 	/** Who created this job? */
 	protected User user;
 
@@ -141,6 +174,7 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 		this.searchMan = searchMan;
 		this.user = user;
 		this.jobDesc = par;
+		executor = searchMan.getCache().getJobExecutor();
 		searcher = searchMan.getIndexManager().getSearcher(par.getIndexName());
 		resetLastAccessed();
 		startedAt = -1;
@@ -148,6 +182,26 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 		thrownException = null;
 	}
 
+	/**
+	 * Construct a job that isn't tied to a search manager or index.
+	 *
+	 * Used to test how jobs are scheduled by the executor.
+	 *
+	 * @param executor executor to run the job on
+	 * @param user user that created the job
+	 * @param par description of the job
+	 */
+	Job(JobExecutor executor, User user, JobDescription par) {
+		super();
+		this.user = user;
+		this.jobDesc = par;
+		this.executor = executor;
+		resetLastAccessed();
+		startedAt = -1;
+		finishedAt = -1;
+		thrownException = null;
+	}
+
 	public JobDescription getDescription() {
 		return jobDesc;
 	}
@@ -277,37 +331,91 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 		if (performCalled)
 			throw new RuntimeException("Already performing search!");
 
-		// Create and start thread
-		// TODO: use thread pooling..?
 		startedAt = System.currentTimeMillis();
 		setLevelRunningAt = startedAt;
-		searchThread = new SearchThread(this);
-		searchThread.start();
 		performCalled = true;
+		try {
+			JobDescription inputDesc = jobDesc.getInputDesc();
+			if (inputDesc != null) {
+				// Start the input job; we'll be queued for execution when it's done
+				inputJob = searchInputJob(inputDesc);
+				submitWhenFinished(inputJob);
+			} else {
+				// No input job; queue for execution right away
+				executor.submit(this);
+			}
+		} catch (BlsException | RuntimeException e) {
+			thrownException = e;
+			releaseInputJob();
+			setFinished();
+		}
 
 		waitUntilFinished(waitTimeMs);
 	}
 
 	/**
+	 * Find or start the job that produces our input.
+	 *
+	 * @param inputDesc description of the input job
+	 * @return the input job
 	 * @throws BlsException on error
 	 */
-	protected void performSearchInternal() throws BlsException {
-		JobDescription inputDesc = jobDesc.getInputDesc();
-		if (inputDesc != null) {
-			// Perform the input job and then call this job's performSearch method
-			inputJob = searchMan.search(user, inputDesc, false);
-			try {
-				waitForJobToFinish(inputJob);
-				performSearch();
-			} finally {
-				inputJob.decrRef();
-				inputJob = null;
+	Job searchInputJob(JobDescription inputDesc) throws BlsException {
+		return searchMan.search(user, inputDesc, false);
+	}
+
+	/**
+	 * Run the job in the current thread.
+	 *
+	 * Called by JobExecutor when it's this job's turn.
+	 */
+	void execute() {
+		if (!executionClaimed.compareAndSet(false, true))
+			return; // cancelled before we could start
+		synchronized (finishLock) {
+			searchThread = Thread.currentThread();
+			if (cancelJobCalled)
+				searchThread.interrupt(); // cancelled while we were starting
+		}
+		try {
+			performSearchInternal();
+		} catch (Throwable e) {
+			// NOTE: we catch Throwable here (while it's normally good practice to
+			//  catch only Exception and derived classes) because we need to know if
+			//  our job crashed or not. The Throwable will be re-thrown by the
+			//  thread waiting for the results, so any non-Exception Throwables will then
+			//  go uncaught as they "should".
+			logger.debug("Search threw an exception, saving it:\n" + e.getClass().getName() + ": " + e.getMessage());
+			thrownException = e;
+		} finally {
+			synchronized (finishLock) {
+				searchThread = null;
 			}
-		} else {
-			// No input job.
-			performSearch();
+			Thread.interrupted(); // don't pass a cancellation on to the next job run in this thread
+			releaseInputJob();
+			setFinished();
 		}
+	}
 
+	/**
+	 * @throws BlsException on error
+	 */
+	protected void performSearchInternal() throws BlsException {
+		if (inputJob != null) {
+			// If the input job failed, so do we
+			inputJob.rethrowException();
+		}
+		performSearch();
+	}
+
+	/**
+	 * Let go of our input job.
+	 */
+	private void releaseInputJob() {
+		if (inputJob != null) {
+			inputJob.decrRef();
+			inputJob = null;
+		}
 	}
 
 	/**
@@ -371,19 +479,21 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 	 * @throws BlsException
 	 */
 	public void waitUntilFinished(int maxWaitMs) throws BlsException {
-		int defaultWaitStep = 100;
 		boolean waitUntilFinished = maxWaitMs < 0;
-		while (!performCalled || ( (waitUntilFinished || maxWaitMs > 0) && !finished())) {
-			int w = defaultWaitStep;
-			if (!waitUntilFinished) {
-				if (maxWaitMs < defaultWaitStep)
-					w = maxWaitMs;
-				maxWaitMs -= w;
-			}
-			try {
-				Thread.sleep(w);
-			} catch (InterruptedException e) {
-				throw new ServiceUnavailable("The server seems to be under heavy load right now. Please try again later.");
+		long waitUntil = System.currentTimeMillis() + maxWaitMs;
+		synchronized (finishLock) {
+			while (!performCalled || !finished()) {
+				long w = 0;
+				if (!waitUntilFinished) {
+					w = waitUntil - System.currentTimeMillis();
+					if (w <= 0)
+						break;
+				}
+				try {
+					finishLock.wait(w);
+				} catch (InterruptedException e) {
+					throw new ServiceUnavailable("The server seems to be under heavy load right now. Please try again later.");
+				}
 			}
 		}
 		// If an Exception occurred, re-throw it now.
@@ -409,8 +519,10 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 			return; // don't call this twice!
 		cancelJobCalled = true;
 
-		searchThread.interrupt();
-		searchThread = null; // ensure garbage collection
+		synchronized (finishLock) {
+			if (searchThread != null)
+				searchThread.interrupt();
+		}
 
 		// Tell the jobs we were waiting for we're no longer interested
 		if (waitingFor != null) {
@@ -421,19 +533,27 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 				waitingFor.clear();
 			}
 		}
+
+		// If we hadn't started running yet, we never will
+		executor.remove(this);
+		if (executionClaimed.compareAndSet(false, true)) {
+			thrownException = new ServiceUnavailable("Search was cancelled.");
+			releaseInputJob();
+			setFinished();
+		}
 	}
 
 	/**
-	 * Estimate how much memory this Search object holds.
-	 *
-	 * For now, defaults to an arbitrary 1M.
+	 * Estimate how much memory this job holds.
 	 *
-	 * TODO: implement size estimation in subclasses
+	 * Only results the job created itself are counted; results it shares
+	 * with its input job are counted by that job. Jobs that hold results
+	 * override this to add their footprint to JOB_OVERHEAD_BYTES.
 	 *
 	 * @return estimated memory size in bytes
 	 */
 	public long estimateSizeBytes() {
-		return 1000000;
+		return JOB_OVERHEAD_BYTES;
 	}
 
 	@Override
@@ -476,10 +596,12 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 					.entry("userWaitTime", userWaitTime())
 					.entry("totalExecTime", totalExecTime())
 					.entry("notAccessedFor", notAccessedFor())
+					.entry("estimatedSizeBytes", estimateSizeBytes())
 					.entry("pausedFor", currentPauseLength())
 					.entry("createdBy", shortUserId())
 					.entry("refsToJob", refsToJob - 1) // (- 1 because the cache always references it)
 					.entry("waitingForJobs", waitingFor.size())
+					.entry("queueWaitTime", queueWaitMs / 1000.0)
 				.endMap()
 			.endEntry();
 		if (debugInfo) {
@@ -534,6 +656,7 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 			.startEntry("searchThread")
 				.startMap();
 		// Information about thread object, if any
+		Thread searchThread = this.searchThread;
 		if (searchThread != null) {
 			StackTraceElement[] stackTrace = searchThread.getStackTrace();
 			StringBuilder stackTraceStr = new StringBuilder();
@@ -707,6 +830,33 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 		return userWaitTime() - pausedTotal();
 	}
 
+	/**
+	 * Do something when this job has finished.
+	 *
+	 * If the job has already finished, the action is performed right away.
+	 * Otherwise it is performed by the thread that finishes the job.
+	 *
+	 * @param action what to do
+	 */
+	void whenFinished(Runnable action) {
+		synchronized (finishLock) {
+			if (finishListeners != null) {
+				finishListeners.add(action);
+				return;
+			}
+		}
+		action.run();
+	}
+
+	/**
+	 * Is this job queued, waiting for a thread to run in?
+	 *
+	 * @return true if it's queued, false if not
+	 */
+	public boolean isQueued() {
+		return executor.isQueued(this);
+	}
+
 	/**
 	 * Is this job waiting for another job or jobs, and
 	 * therefore not using the CPU?
@@ -788,7 +938,19 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 	}
 
 	public void setFinished() {
-		finishedAt = System.currentTimeMillis();
+		List<Runnable> listeners;
+		synchronized (finishLock) {
+			if (finishedAt < 0)
+				finishedAt = System.currentTimeMillis();
+			listeners = finishListeners;
+			finishListeners = null;
+			finishLock.notifyAll();
+		}
+		if (listeners != null) {
+			for (Runnable listener: listeners) {
+				listener.run();
+			}
+		}
 		if (level != Level.RUNNING) {
 			// Don't confuse the system by still being in PAUSED
 			// (possible because this is cooperative multitasking,
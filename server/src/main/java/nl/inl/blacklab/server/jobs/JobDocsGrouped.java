@@ -83,6 +83,12 @@ public class JobDocsGrouped extends Job {
 			.entry("numberOfGroups", groups == null ? -1 : groups.numberOfGroups());
 	}
 
+	@Override
+	public long estimateSizeBytes() {
+		DocGroups g = groups;
+		return JOB_OVERHEAD_BYTES + (g == null ? 0 : g.estimateSizeBytes());
+	}
+
 	@Override
 	protected void cleanup() {
 		groups = null;
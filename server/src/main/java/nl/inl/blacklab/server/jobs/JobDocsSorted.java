@@ -62,6 +62,12 @@ public class JobDocsSorted extends JobWithDocs {
 		ds	.entry("numberOfDocResults", docResults == null ? -1 : docResults.size());
 	}
 
+	@Override
+	public long estimateSizeBytes() {
+		// We sort the results of our input job in place, so they're not ours
+		return JOB_OVERHEAD_BYTES;
+	}
+
 	@Override
 	protected DocResults getObjectToPrioritize() {
 		return sourceResults;
@@ -74,6 +74,12 @@ public class JobDocsWindow extends Job {
 			.entry("actualWindowSize", window == null ? -1 : window.size());
 	}
 
+	@Override
+	public long estimateSizeBytes() {
+		DocResultsWindow w = window;
+		return JOB_OVERHEAD_BYTES + (w == null ? 0 : w.estimateSizeBytes());
+	}
+
 	@Override
 	protected void cleanup() {
 		window = null;
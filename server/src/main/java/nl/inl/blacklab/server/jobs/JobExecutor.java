@@ -0,0 +1,294 @@
+package nl.inl.blacklab.server.jobs;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.inl.blacklab.server.datastream.DataStream;
+import nl.inl.blacklab.server.search.BlsConfigCacheAndPerformance;
+
+/**
+ * Executes jobs on a pool of threads, with admission control.
+ *
+ * Jobs are submitted once they're ready to run (i.e. their input job, if any,
+ * has finished), so a thread never sits idle waiting for another job.
+ *
+ * Submitted jobs are queued per user, and users take turns starting a job,
+ * so one user starting many searches can't crowd out the others. At most
+ * maxConcurrentSearches searches run at the same time. Count jobs (finding
+ * the total number of hits or docs) only start if there's room left, but they
+ * don't prevent regular searches from starting, so a long count never holds up
+ * the searches that display results. If the running jobs still need more CPU than
+ * is available, the load manager pauses the least worthy of them
+ * (see SearchCache.performLoadManagement()).
+ */
+public class JobExecutor {
+
+	/** Execution statistics for one type of job */
+	private static class JobTypeStats {
+
+		/** Number of jobs of this type waiting to start */
+		int queued;
+
+		/** Number of jobs of this type running */
+		int running;
+
+		/** Number of jobs of this type started so far */
+		long started;
+
+		/** Total time jobs of this type spent waiting to start */
+		long queueWaitMs;
+
+		/** Total time jobs of this type spent running (finished jobs only) */
+		long runMs;
+
+	}
+
+	/** Our configuration (determines maxConcurrentSearches) */
+	private BlsConfigCacheAndPerformance config;
+
+	/** Threads to run the jobs in. Our own admission control determines how many are used. */
+	private ExecutorService threadPool;
+
+	/** Jobs waiting to start, per user */
+	private Map<String, Deque<Job>> queuedPerUser = new HashMap<>();
+
+	/** Users that have jobs waiting, in the order they get their turn */
+	private Deque<String> userTurns = new ArrayDeque<>();
+
+	/** Number of regular searches running */
+	private int runningSearches = 0;
+
+	/** Number of count jobs running */
+	private int runningCounts = 0;
+
+	/** Execution statistics per job type */
+	private Map<String, JobTypeStats> statsPerType = new TreeMap<>();
+
+	public JobExecutor(BlsConfigCacheAndPerformance config) {
+		this.config = config;
+		threadPool = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new ThreadFactory() {
+			private AtomicInteger threadNumber = new AtomicInteger(1);
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "SearchThread-" + threadNumber.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Stop all threads.
+	 */
+	public void shutdown() {
+		threadPool.shutdownNow();
+	}
+
+	private static boolean isCount(Job job) {
+		return job instanceof JobHitsTotal || job instanceof JobDocsTotal;
+	}
+
+	private JobTypeStats stats(Job job) {
+		String type = job.getClass().getSimpleName();
+		JobTypeStats stats = statsPerType.get(type);
+		if (stats == null) {
+			stats = new JobTypeStats();
+			statsPerType.put(type, stats);
+		}
+		return stats;
+	}
+
+	/**
+	 * Queue a job for execution.
+	 *
+	 * The job will be started as soon as it's its user's turn and there's room.
+	 *
+	 * @param job the job to execute
+	 */
+	synchronized void submit(Job job) {
+		job.queuedAt = System.currentTimeMillis();
+		String userId = job.user.uniqueId();
+		Deque<Job> queue = queuedPerUser.get(userId);
+		if (queue == null) {
+			queue = new ArrayDeque<>();
+			queuedPerUser.put(userId, queue);
+			userTurns.add(userId);
+		}
+		queue.add(job);
+		stats(job).queued++;
+		startJobs();
+	}
+
+	/**
+	 * Remove a job from the queue, if it hasn't been started yet.
+	 *
+	 * @param job the job to remove
+	 * @return true if the job was removed, false if it wasn't queued
+	 */
+	synchronized boolean remove(Job job) {
+		String userId = job.user.uniqueId();
+		Deque<Job> queue = queuedPerUser.get(userId);
+		if (queue == null || !queue.remove(job))
+			return false;
+		stats(job).queued--;
+		if (queue.isEmpty()) {
+			queuedPerUser.remove(userId);
+			userTurns.remove(userId);
+		}
+		return true;
+	}
+
+	/**
+	 * Is the job waiting in the queue?
+	 *
+	 * @param job the job
+	 * @return true if the job is queued, false if not
+	 */
+	synchronized boolean isQueued(Job job) {
+		Deque<Job> queue = queuedPerUser.get(job.user.uniqueId());
+		return queue != null && queue.contains(job);
+	}
+
+	/**
+	 * Can we start this job right now?
+	 *
+	 * @param job the job
+	 * @return true if there's room for the job
+	 */
+	private boolean canStart(Job job) {
+		int maxConcurrent = config.getMaxConcurrentSearches();
+		if (isCount(job))
+			return runningSearches + runningCounts < maxConcurrent;
+		return runningSearches < maxConcurrent;
+	}
+
+	/**
+	 * Start queued jobs while there's room.
+	 */
+	private void startJobs() {
+		while (true) {
+			Job job = pollNextJob();
+			if (job == null)
+				break;
+			start(job);
+		}
+	}
+
+	/**
+	 * Take the next job we can start from the queue.
+	 *
+	 * Users take turns; each user's jobs are started in the order they
+	 * were submitted, except that a search may go ahead of a count that
+	 * can't start yet.
+	 *
+	 * @return the job to start, or null if none can be started
+	 */
+	private Job pollNextJob() {
+		Iterator<String> itUsers = userTurns.iterator();
+		while (itUsers.hasNext()) {
+			String userId = itUsers.next();
+			Deque<Job> queue = queuedPerUser.get(userId);
+			Iterator<Job> itJobs = queue.iterator();
+			while (itJobs.hasNext()) {
+				Job job = itJobs.next();
+				if (canStart(job)) {
+					itJobs.remove();
+					// This user has had their turn; go to the back of the line
+					itUsers.remove();
+					if (queue.isEmpty())
+						queuedPerUser.remove(userId);
+					else
+						userTurns.add(userId);
+					return job;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Start running a job on one of our threads.
+	 *
+	 * @param job the job to start
+	 */
+	private void start(final Job job) {
+		final long startTime = System.currentTimeMillis();
+		JobTypeStats stats = stats(job);
+		stats.queued--;
+		stats.running++;
+		stats.started++;
+		job.queueWaitMs = startTime - job.queuedAt;
+		stats.queueWaitMs += job.queueWaitMs;
+		if (isCount(job))
+			runningCounts++;
+		else
+			runningSearches++;
+		threadPool.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					job.execute();
+				} finally {
+					jobDone(job, System.currentTimeMillis() - startTime);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Called when a job has finished running.
+	 *
+	 * @param job the job
+	 * @param runMs how long the job ran
+	 */
+	private synchronized void jobDone(Job job, long runMs) {
+		JobTypeStats stats = stats(job);
+		stats.running--;
+		stats.runMs += runMs;
+		if (isCount(job))
+			runningCounts--;
+		else
+			runningSearches--;
+		startJobs();
+	}
+
+	public synchronized void dataStreamStatus(DataStream ds) {
+		int queued = 0;
+		for (Deque<Job> queue: queuedPerUser.values()) {
+			queued += queue.size();
+		}
+		ds.startMap()
+			.entry("maxConcurrentSearches", config.getMaxConcurrentSearches())
+			.entry("runningSearches", runningSearches)
+			.entry("runningCounts", runningCounts)
+			.entry("queuedJobs", queued)
+			.entry("usersWithQueuedJobs", queuedPerUser.size())
+			.startEntry("jobTypes").startMap();
+		for (Entry<String, JobTypeStats> e: statsPerType.entrySet()) {
+			JobTypeStats stats = e.getValue();
+			ds.startEntry(e.getKey()).startMap()
+				.entry("queued", stats.queued)
+				.entry("running", stats.running)
+				.entry("started", stats.started)
+				.entry("totalQueueWaitTime", stats.queueWaitMs / 1000.0)
+				.entry("totalRunTime", stats.runMs / 1000.0)
+			.endMap().endEntry();
+		}
+		ds.endMap().endEntry()
+		.endMap();
+	}
+
+}
@@ -63,10 +63,11 @@ public class JobFacets extends Job {
 		docResults = ((JobWithDocs)inputJob).getDocResults();
 		List<DocProperty> props = jobDesc.getFacets();
 
+		// (all facets are counted in a single pass over the results)
+		List<DocCounts> facetCounts = docResults.countBy(props);
 		Map<String, DocCounts> theCounts = new HashMap<>();
-		for (DocProperty facetBy: props) {
-			DocCounts facetCounts = docResults.countBy(facetBy);
-			theCounts.put(facetBy.getName(), facetCounts);
+		for (int i = 0; i < props.size(); i++) {
+			theCounts.put(props.get(i).getName(), facetCounts.get(i));
 		}
 		counts = theCounts; // we're done, caller can use the groups now
 	}
@@ -85,6 +86,18 @@ public class JobFacets extends Job {
 			.entry("numberOfFacets", counts == null ? -1 : counts.size());
 	}
 
+	@Override
+	public long estimateSizeBytes() {
+		long bytes = JOB_OVERHEAD_BYTES;
+		Map<String, DocCounts> c = counts;
+		if (c != null) {
+			for (DocCounts facetCounts: c.values()) {
+				bytes += facetCounts.estimateSizeBytes();
+			}
+		}
+		return bytes;
+	}
+
 	@Override
 	protected void cleanup() {
 		counts = null;
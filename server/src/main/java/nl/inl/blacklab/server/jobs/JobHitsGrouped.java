@@ -90,6 +90,12 @@ public class JobHitsGrouped extends Job {
 			.entry("numberOfGroups", groups == null ? -1 : groups.numberOfGroups());
 	}
 
+	@Override
+	public long estimateSizeBytes() {
+		HitGroups g = groups;
+		return JOB_OVERHEAD_BYTES + (g == null ? 0 : g.estimateSizeBytes());
+	}
+
 	@Override
 	protected void cleanup() {
 		groups = null;
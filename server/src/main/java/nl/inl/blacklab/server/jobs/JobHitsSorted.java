@@ -38,6 +38,9 @@ public class JobHitsSorted extends JobWithHits {
 
 	}
 
+	/** If true, our hits object is the one from our input job (so it doesn't take up extra memory) */
+	private boolean sharesInputHits = false;
+
 	public JobHitsSorted(SearchManager searchMan, User user, JobDescription par) throws BlsException {
 		super(searchMan, user, par);
 	}
@@ -53,10 +56,16 @@ public class JobHitsSorted extends JobWithHits {
 		} else {
 			// Be lenient of clients passing wrong sortBy values; simply ignore bad sort requests.
 			hits = hitsUnsorted;
+			sharesInputHits = true;
 		}
 		setPriorityInternal();
 	}
 
+	@Override
+	public long estimateSizeBytes() {
+		return sharesInputHits ? JOB_OVERHEAD_BYTES : super.estimateSizeBytes();
+	}
+
 	@Override
 	protected void dataStreamSubclassEntries(DataStream ds) {
 		super.dataStreamSubclassEntries(ds);
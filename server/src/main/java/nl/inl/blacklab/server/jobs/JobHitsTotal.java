@@ -1,12 +1,22 @@
 package nl.inl.blacklab.server.jobs;
 
+import org.apache.lucene.search.BooleanQuery.TooManyClauses;
+import org.apache.lucene.search.spans.SpanQuery;
+
+import nl.inl.blacklab.search.HitCount;
 import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.Prioritizable;
 import nl.inl.blacklab.server.datastream.DataStream;
+import nl.inl.blacklab.server.exceptions.BadRequest;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.search.SearchManager;
 
 /**
  * Represents finding the total number of hits.
+ *
+ * If the input is a plain hits search, we count the hits in a separate
+ * count-only pass (see HitCount), so we don't need to store all hits
+ * just to report how many there are.
  */
 public class JobHitsTotal extends Job {
 
@@ -25,6 +35,9 @@ public class JobHitsTotal extends Job {
 
 	private Hits hits = null;
 
+	/** Counts the hits without retrieving them (only if input is a JobHits) */
+	private HitCount hitCount = null;
+
 	public JobHitsTotal(SearchManager searchMan, User user, JobDescription par) throws BlsException {
 		super(searchMan, user, par);
 	}
@@ -32,10 +45,25 @@ public class JobHitsTotal extends Job {
 	@Override
 	public void performSearch() throws BlsException {
 		// Get the total number of hits (we ignore the value because you can monitor progress
-		// and get the final total through the getHits() method yourself.
+		// and get the final total through the getHits() or getHitCount() method yourself.
 		hits = ((JobWithHits)inputJob).getHits();
-		setPriorityInternal(); // make sure hits has the right priority
-		hits.size();
+		try {
+			if (inputJob instanceof JobHits) {
+				// Count the hits without retrieving them
+				JobHits hitsSearch = (JobHits)inputJob;
+				SpanQuery query = searcher.createSpanQuery(hitsSearch.getTextPattern(), searcher.getMainContentsFieldName(), hitsSearch.getDocumentFilter());
+				hitCount = searcher.countHits(query, hits.settings().maxHitsToCount());
+				setPriorityInternal(); // make sure hitCount has the right priority
+				hitCount.count();
+			} else {
+				setPriorityInternal(); // make sure hits has the right priority
+				hits.size();
+			}
+		} catch (TooManyClauses e) {
+			throw new BadRequest("QUERY_TOO_BROAD", "Query too broad, too many matching terms. Please be more specific.");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 		if (Thread.interrupted()) {
 			// We don't throw anymore because that will cause this error to re-throw even when we just
 			// want to look at a page of results. maxHitsCounted is set to true, however, so the application
@@ -54,19 +82,37 @@ public class JobHitsTotal extends Job {
 		return hits;
 	}
 
+	/**
+	 * Returns the object counting the hits, if we're counting separately.
+	 *
+	 * @return the HitCount object, or null if not available (yet), in which case
+	 *   the total is determined by the Hits object
+	 */
+	public HitCount getHitCount() {
+		return hitCount;
+	}
+
 	@Override
 	protected void dataStreamSubclassEntries(DataStream ds) {
-		ds	.entry("hitsCounted", hits != null ? hits.countSoFarHitsCounted() : -1);
+		int hitsCounted = -1;
+		if (hitCount != null)
+			hitsCounted = hitCount.countSoFarHitsCounted();
+		else if (hits != null)
+			hitsCounted = hits.countSoFarHitsCounted();
+		ds	.entry("hitsCounted", hitsCounted);
 	}
 
 	@Override
 	protected void cleanup() {
 		hits = null;
+		hitCount = null;
 		super.cleanup();
 	}
 
 	@Override
-	protected Hits getObjectToPrioritize() {
+	protected Prioritizable getObjectToPrioritize() {
+		if (hitCount != null)
+			return hitCount;
 		return hits;
 	}
 
@@ -72,6 +72,12 @@ public class JobHitsWindow extends Job {
 			.entry("actualWindowSize", hitsWindow == null ? -1 : hitsWindow.size());
 	}
 
+	@Override
+	public long estimateSizeBytes() {
+		HitsWindow window = hitsWindow;
+		return JOB_OVERHEAD_BYTES + (window == null ? 0 : window.estimateSizeBytes());
+	}
+
 	@Override
 	protected void cleanup() {
 		hitsWindow = null;
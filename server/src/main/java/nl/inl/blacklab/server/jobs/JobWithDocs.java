@@ -27,6 +27,12 @@ public class JobWithDocs extends Job {
 		ds	.entry("countDocsRetrieved", countDocsRetrieved);
 	}
 
+	@Override
+	public long estimateSizeBytes() {
+		DocResults r = docResults;
+		return JOB_OVERHEAD_BYTES + (r == null ? 0 : r.estimateSizeBytes());
+	}
+
 	@Override
 	protected void cleanup() {
 		docResults = null;
@@ -32,6 +32,12 @@ public class JobWithHits extends Job {
 		super.cleanup();
 	}
 
+	@Override
+	public long estimateSizeBytes() {
+		Hits h = hits;
+		return JOB_OVERHEAD_BYTES + (h == null ? 0 : h.estimateSizeBytes());
+	}
+
 	@Override
 	protected Hits getObjectToPrioritize() {
 		return hits;
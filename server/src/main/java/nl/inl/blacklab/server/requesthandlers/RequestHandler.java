@@ -16,6 +16,7 @@ import nl.inl.blacklab.perdocument.DocCount;
 import nl.inl.blacklab.perdocument.DocCounts;
 import nl.inl.blacklab.perdocument.DocGroupProperty;
 import nl.inl.blacklab.perdocument.DocResults;
+import nl.inl.blacklab.search.Hits;
 import nl.inl.blacklab.search.Searcher;
 import nl.inl.blacklab.search.indexstructure.IndexStructure;
 import nl.inl.blacklab.server.BlackLabServer;
@@ -41,6 +42,12 @@ public abstract class RequestHandler {
 
 	public static final int HTTP_OK = HttpServletResponse.SC_OK;
 
+	/** Number of hits to produce KWICs for at a time, if we're streaming the response */
+	static final int STREAM_BATCH_SIZE = 500;
+
+	/** Number of documents (with their snippets) to send at a time, if we're streaming the response */
+	static final int DOCS_PER_STREAM_BATCH = 100;
+
 	/** The available request handlers by name */
 	static Map<String, Class<? extends RequestHandler>> availableHandlers;
 
@@ -58,6 +65,7 @@ public abstract class RequestHandler {
 		//availableHandlers.put("help", RequestHandlerBlsHelp.class);
 		availableHandlers.put("hits", RequestHandlerHits.class);
 		availableHandlers.put("hits-grouped", RequestHandlerHitsGrouped.class);
+		availableHandlers.put("hits-export", RequestHandlerHitsExport.class);
 		availableHandlers.put("status", RequestHandlerIndexStatus.class);
 		availableHandlers.put("termfreq", RequestHandlerTermFreq.class);
 		availableHandlers.put("", RequestHandlerIndexStructure.class);
@@ -187,7 +195,7 @@ public abstract class RequestHandler {
 							return errorObj.unavailable(indexName, status);
 						}
 
-						if (debugMode && handlerName.length() > 0 && !handlerName.equals("hits") && !handlerName.equals("docs") && !handlerName.equals("fields") && !handlerName.equals("termfreq") && !handlerName.equals("status")) {
+						if (debugMode && handlerName.length() > 0 && !handlerName.equals("hits") && !handlerName.equals("hits-export") && !handlerName.equals("docs") && !handlerName.equals("fields") && !handlerName.equals("termfreq") && !handlerName.equals("status")) {
 							handlerName = "debug";
 						}
 						// HACK to avoid having a different url resource for
@@ -320,6 +328,20 @@ public abstract class RequestHandler {
 		return false;
 	}
 
+	/**
+	 * Should the response be sent to the client while it is being produced?
+	 *
+	 * If so, the response isn't buffered in memory first, so the client gets the
+	 * first results sooner and large responses don't take up a lot of memory.
+	 * The disadvantage is that the HTTP status can only be changed until the
+	 * first part of the response has been sent.
+	 *
+	 * @return true if the response should be streamed
+	 */
+	public boolean isStreamingResponse() {
+		return searchParam.getBoolean("stream");
+	}
+
 	protected boolean isDocsOperation() {
 		return false;
 	}
@@ -428,6 +450,28 @@ public abstract class RequestHandler {
 		ds.endMap();
 	}
 
+	/**
+	 * Determine where a batch of hits should end, if we're producing KWICs
+	 * in batches while streaming the response.
+	 *
+	 * Batches are extended to the end of the last document, so we don't
+	 * have to go back to a document for its remaining hits.
+	 *
+	 * @param hits the hits
+	 * @param first first hit in the batch
+	 * @return index after the last hit in the batch
+	 */
+	static int endOfBatch(Hits hits, int first) {
+		int end = first + STREAM_BATCH_SIZE;
+		if (!hits.sizeAtLeast(end + 1))
+			return hits.size();
+		int doc = hits.get(end - 1).doc;
+		while (hits.sizeAtLeast(end + 1) && hits.get(end).doc == doc) {
+			end++;
+		}
+		return end;
+	}
+
 	protected Searcher getSearcher() throws BlsException {
 		return indexMan.getSearcher(indexName);
 	}
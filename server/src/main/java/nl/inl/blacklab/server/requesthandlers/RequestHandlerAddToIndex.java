@@ -53,7 +53,6 @@ public class RequestHandlerAddToIndex extends RequestHandler {
 		final File indexDir = indexMan.getIndexDir(indexName);
 		String newStatus = indexMan.setIndexStatus(indexName, "available|empty", "busy");
 		try {
-			indexMan.closeSearcher(indexName);
 			if (!newStatus.equals("busy")) {
 				throw new InternalServerError("Could not set index status to busy (status was " + newStatus + ")", 28);
 			}
@@ -86,7 +85,6 @@ public class RequestHandlerAddToIndex extends RequestHandler {
 
 							// TODO: do this in the background
 							// TODO: lock the index while indexing
-							// TODO: re-open Searcher after indexing
 							// TODO: keep track of progress
 							// TODO: error handling
 							task = new IndexTask(indexDir, data, fileName, listener);
@@ -104,7 +102,13 @@ public class RequestHandlerAddToIndex extends RequestHandler {
 				}
 			});
 		} finally {
-			indexMan.setIndexStatus(indexName, null, "available");
+			try {
+				// Let new searches see the added documents
+				// (searches that are still running finish on the previous view)
+				indexMan.refreshSearcher(indexName);
+			} finally {
+				indexMan.setIndexStatus(indexName, null, "available");
+			}
 		}
 
 		if (indexError != null)
@@ -27,6 +27,9 @@ public class RequestHandlerCacheInfo extends RequestHandler {
 		ds.startMap()
 			.startEntry("cacheStatus");
 		searchMan.getCache().dataStreamCacheStatus(ds);
+		ds	.endEntry()
+			.startEntry("executorStatus");
+		searchMan.getCache().getJobExecutor().dataStreamStatus(ds);
 		ds	.endEntry()
 			.startEntry("cacheContents");
 		searchMan.getCache().dataStreamContents(ds, debugInfo);
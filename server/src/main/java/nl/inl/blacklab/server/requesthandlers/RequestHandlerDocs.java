@@ -174,6 +174,10 @@ public class RequestHandlerDocs extends RequestHandler {
 			ds.endMap().endEntry();
 
 			// The hits and document info
+			boolean streaming = isStreamingResponse();
+			if (streaming)
+				ds.flush(); // send the summary now
+			int docsDone = 0;
 			ds.startEntry("docs").startList();
 			for (DocResult result: window) {
 				ds.startItem("doc").startMap();
@@ -218,6 +222,9 @@ public class RequestHandlerDocs extends RequestHandler {
 					ds.endList().endEntry();
 				}
 				ds.endMap().endItem();
+				docsDone++;
+				if (streaming && docsDone % DOCS_PER_STREAM_BATCH == 0)
+					ds.flush();
 			}
 			ds.endList().endEntry();
 			if (searchParam.hasFacets()) {
@@ -6,6 +6,10 @@ import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.spans.SpanQuery;
 import org.eclipse.collections.api.set.primitive.MutableIntSet;
 import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
 
@@ -14,6 +18,7 @@ import nl.inl.blacklab.perdocument.DocPropertyComplexFieldLength;
 import nl.inl.blacklab.perdocument.DocResults;
 import nl.inl.blacklab.search.Concordance;
 import nl.inl.blacklab.search.Hit;
+import nl.inl.blacklab.search.HitCount;
 import nl.inl.blacklab.search.Hits;
 import nl.inl.blacklab.search.HitsSample;
 import nl.inl.blacklab.search.HitsWindow;
@@ -158,8 +163,18 @@ public class RequestHandlerHits extends RequestHandler {
 			ds.entry("searchTime", (int)(search.userWaitTime() * 1000));
 			if (total != null)
 				ds.entry("countTime", (int)(total.userWaitTime() * 1000));
-			ds.entry("stillCounting", !done);
 			int totalHitsCounted = hits.countSoFarHitsCounted();
+			boolean stoppedCountingHits = hits.maxHitsCounted();
+			int totalDocsCounted = hits.countSoFarDocsCounted();
+			HitCount hitCount = total == null ? null : total.getHitCount();
+			if (!done && hitCount != null) {
+				// The hits are being counted separately, without retrieving them
+				done = hitCount.doneCounting();
+				totalHitsCounted = hitCount.countSoFarHitsCounted();
+				stoppedCountingHits = hitCount.maxHitsCounted();
+				totalDocsCounted = hitCount.countSoFarDocsCounted();
+			}
+			ds.entry("stillCounting", !done);
 			if (total != null && total.threwException()) {
 				// indicate that something went wrong while counting;
 				// i.e. timeout
@@ -167,9 +182,9 @@ public class RequestHandlerHits extends RequestHandler {
 			}
 			ds	.entry("numberOfHits", totalHitsCounted)
 				.entry("numberOfHitsRetrieved", hits.countSoFarHitsRetrieved())
-				.entry("stoppedCountingHits", hits.maxHitsCounted())
+				.entry("stoppedCountingHits", stoppedCountingHits)
 				.entry("stoppedRetrievingHits", hits.maxHitsRetrieved())
-				.entry("numberOfDocs", hits.countSoFarDocsCounted())
+				.entry("numberOfDocs", totalDocsCounted)
 				.entry("numberOfDocsRetrieved", hits.countSoFarDocsRetrieved());
 			if (hits instanceof HitsSample) {
 				HitsSample sample = ((HitsSample)hits);
@@ -186,6 +201,13 @@ public class RequestHandlerHits extends RequestHandler {
 				.entry("windowHasNext", window.hasNext());
 			if (includeTokenCount)
 				ds.entry("tokensInMatchingDocuments", totalTokens);
+			if (searchMan.config().isDebugMode(request.getRemoteAddr())) {
+				// Show how the query was executed, with estimated hit counts per clause
+				Query filterQuery = searchParam.getFilterQuery();
+				Filter filter = filterQuery == null ? null : new QueryWrapperFilter(filterQuery);
+				SpanQuery spanQuery = searcher.createSpanQuery(searchParam.getPattern(), searcher.getMainContentsFieldName(), filter);
+				ds.entry("queryPlan", searcher.explain(spanQuery));
+			}
 			ds.startEntry("docFields");
 			RequestHandler.dataStreamDocFields(ds, searcher.getIndexStructure());
 			ds.endEntry();
@@ -193,40 +215,19 @@ public class RequestHandlerHits extends RequestHandler {
 
 			ds.startEntry("hits").startList();
 			Map<Integer, String> pids = new HashMap<>();
-			for (Hit hit: window) {
-				ds.startItem("hit").startMap();
-
-				// Find pid
-				String pid = pids.get(hit.doc);
-				if (pid == null) {
-					Document document = searcher.document(hit.doc);
-					pid = getDocumentPid(searcher, hit.doc, document);
-					pids.put(hit.doc, pid);
+			if (isStreamingResponse()) {
+				// Send the summary now, then produce the KWICs per batch of documents,
+				// sending each batch as soon as it's done
+				ds.flush();
+				int i = 0;
+				while (i < window.size()) {
+					int end = endOfBatch(window, i);
+					dataStreamHits(ds, searcher, window.window(i, end - i), pids);
+					ds.flush();
+					i = end;
 				}
-
-				boolean useOrigContent = searchParam.getString("usecontent").equals("orig");
-
-				// TODO: use RequestHandlerDocSnippet.getHitOrFragmentInfo()
-
-				// Add basic hit info
-				ds.entry("docPid", pid);
-				ds.entry("start", hit.start);
-				ds.entry("end", hit.end);
-
-				if (useOrigContent) {
-					// Add concordance from original XML
-					Concordance c = window.getConcordance(hit);
-					ds	.startEntry("left").plain(c.left()).endEntry()
-						.startEntry("match").plain(c.match()).endEntry()
-						.startEntry("right").plain(c.right()).endEntry();
-				} else {
-					// Add KWIC info
-					Kwic c = window.getKwic(hit);
-					ds	.startEntry("left").contextList(c.getProperties(), c.getLeft()).endEntry()
-						.startEntry("match").contextList(c.getProperties(), c.getMatch()).endEntry()
-						.startEntry("right").contextList(c.getProperties(), c.getRight()).endEntry();
-				}
-				ds.endMap().endItem();
+			} else {
+				dataStreamHits(ds, searcher, window, pids);
 			}
 			ds.endList().endEntry();
 
@@ -276,6 +277,51 @@ public class RequestHandlerHits extends RequestHandler {
 		}
 	}
 
+	/**
+	 * Stream the hits in a window, with their KWICs or concordances.
+	 *
+	 * @param ds where to stream the hits
+	 * @param searcher our index
+	 * @param window the hits to stream
+	 * @param pids pids of documents we've seen so far, by Lucene doc id
+	 */
+	private void dataStreamHits(DataStream ds, Searcher searcher, HitsWindow window, Map<Integer, String> pids) {
+		boolean useOrigContent = searchParam.getString("usecontent").equals("orig");
+		for (Hit hit: window) {
+			ds.startItem("hit").startMap();
+
+			// Find pid
+			String pid = pids.get(hit.doc);
+			if (pid == null) {
+				Document document = searcher.document(hit.doc);
+				pid = getDocumentPid(searcher, hit.doc, document);
+				pids.put(hit.doc, pid);
+			}
+
+			// TODO: use RequestHandlerDocSnippet.getHitOrFragmentInfo()
+
+			// Add basic hit info
+			ds.entry("docPid", pid);
+			ds.entry("start", hit.start);
+			ds.entry("end", hit.end);
+
+			if (useOrigContent) {
+				// Add concordance from original XML
+				Concordance c = window.getConcordance(hit);
+				ds	.startEntry("left").plain(c.left()).endEntry()
+					.startEntry("match").plain(c.match()).endEntry()
+					.startEntry("right").plain(c.right()).endEntry();
+			} else {
+				// Add KWIC info
+				Kwic c = window.getKwic(hit);
+				ds	.startEntry("left").contextList(c.getProperties(), c.getLeft()).endEntry()
+					.startEntry("match").contextList(c.getProperties(), c.getMatch()).endEntry()
+					.startEntry("right").contextList(c.getProperties(), c.getRight()).endEntry();
+			}
+			ds.endMap().endItem();
+		}
+	}
+
 	private void dataStreamCollocations(DataStream ds, Hits originalHits) {
 		originalHits.settings().setContextSize(searchParam.getInteger("wordsaroundhit"));
 		ds.startMap().startEntry("tokenFrequencies").startMap();
@@ -0,0 +1,70 @@
+package nl.inl.blacklab.server.requesthandlers;
+
+import javax.servlet.http.HttpServletRequest;
+
+import nl.inl.blacklab.search.Concordance;
+import nl.inl.blacklab.search.Hit;
+import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.HitsWindow;
+import nl.inl.blacklab.search.Searcher;
+import nl.inl.blacklab.server.BlackLabServer;
+import nl.inl.blacklab.server.exceptions.BlsException;
+import nl.inl.blacklab.server.jobs.JobWithHits;
+import nl.inl.blacklab.server.jobs.User;
+
+/**
+ * Export all hits (as CSV, TSV, XML or JSON).
+ *
+ * Unlike the hits operation, this isn't limited to a window of hits: all hits
+ * (up to maxretrieve) are exported. The KWICs are produced in batches and sent
+ * to the client as we go, so the result set can be arbitrarily large.
+ */
+public class RequestHandlerHitsExport extends RequestHandlerPlainText {
+
+	/** Columns in the export */
+	private static final String[] COLUMNS = { "docPid", "start", "end", "left", "match", "right" };
+
+	public RequestHandlerHitsExport(BlackLabServer servlet, HttpServletRequest request, User user, String indexName, String urlResource, String urlPathPart) {
+		super(servlet, request, user, indexName, urlResource, urlPathPart);
+	}
+
+	@Override
+	protected String[] getColumns() {
+		return COLUMNS;
+	}
+
+	@Override
+	protected int produceRows(RowWriter out) throws BlsException {
+		JobWithHits search = (JobWithHits) searchMan.search(user, searchParam.hitsSample(), true);
+		search.incrRef();
+		try {
+			Searcher searcher = search.getSearcher();
+			Hits hits = search.getHits();
+
+			int lastDoc = -1;
+			String pid = null;
+			int first = 0;
+			while (hits.sizeAtLeast(first + 1)) {
+				// Produce the KWICs for a batch of hits and send it
+				int end = endOfBatch(hits, first);
+				HitsWindow batch = hits.window(first, end - first);
+				for (Hit hit: batch) {
+					if (hit.doc != lastDoc) {
+						pid = getDocumentPid(searcher, hit.doc, searcher.document(hit.doc));
+						lastDoc = hit.doc;
+					}
+					Concordance conc = batch.getKwic(hit).toConcordance(false);
+					String[] row = { pid, Integer.toString(hit.start), Integer.toString(hit.end),
+							conc.left(), conc.match(), conc.right() };
+					out.row(row);
+				}
+				out.flush();
+				first = end;
+			}
+			return HTTP_OK;
+		} finally {
+			search.decrRef();
+		}
+	}
+
+}
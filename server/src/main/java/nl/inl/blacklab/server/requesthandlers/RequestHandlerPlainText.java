@@ -0,0 +1,199 @@
+package nl.inl.blacklab.server.requesthandlers;
+
+import java.io.PrintWriter;
+
+import javax.servlet.http.HttpServletRequest;
+
+import nl.inl.blacklab.server.BlackLabServer;
+import nl.inl.blacklab.server.datastream.DataFormat;
+import nl.inl.blacklab.server.datastream.DataStream;
+import nl.inl.blacklab.server.exceptions.BadRequest;
+import nl.inl.blacklab.server.exceptions.BlsException;
+import nl.inl.blacklab.server.jobs.User;
+
+/**
+ * Base class for request handlers that export a table of values.
+ *
+ * The table is sent as CSV or TSV, or as a regular XML or JSON response
+ * (see the exportformat parameter). CSV and TSV are sent to the client
+ * while they are produced, so the table can be arbitrarily large.
+ */
+public abstract class RequestHandlerPlainText extends RequestHandler {
+
+	/** Receives the rows of the table while they are produced */
+	protected interface RowWriter {
+		/**
+		 * Write a row of values (one for each column).
+		 *
+		 * @param values the values
+		 */
+		void row(String[] values);
+
+		/**
+		 * Send the rows written so far on to the client.
+		 */
+		void flush();
+	}
+
+	RequestHandlerPlainText(BlackLabServer servlet, HttpServletRequest request, User user, String indexName, String urlResource, String urlPathPart) {
+		super(servlet, request, user, indexName, urlResource, urlPathPart);
+	}
+
+	private String getExportFormat() {
+		return searchParam.getString("exportformat").toLowerCase();
+	}
+
+	private boolean isTsv() {
+		return getExportFormat().equals("tsv");
+	}
+
+	/**
+	 * Should the table be sent as plain text (CSV or TSV)?
+	 *
+	 * If so, handlePlainText() is called instead of handle().
+	 *
+	 * @return true if we produce plain text, false if we produce XML or JSON
+	 */
+	public boolean isPlainText() {
+		String format = getExportFormat();
+		return format.equals("csv") || format.equals("tsv");
+	}
+
+	/**
+	 * Returns the content type of the plain text.
+	 *
+	 * @return the content type
+	 */
+	public String getPlainTextContentType() {
+		return isTsv() ? "text/tab-separated-values" : "text/csv";
+	}
+
+	@Override
+	public DataFormat getOverrideType() {
+		String format = getExportFormat();
+		if (format.equals("xml"))
+			return DataFormat.XML;
+		if (format.equals("json"))
+			return DataFormat.JSON;
+		return null;
+	}
+
+	@Override
+	public boolean isCacheAllowed() {
+		return false;
+	}
+
+	/**
+	 * Names of the columns in the table.
+	 *
+	 * @return the column names
+	 */
+	protected abstract String[] getColumns();
+
+	/**
+	 * Produce the rows of the table.
+	 *
+	 * @param out where to write the rows
+	 * @return the HTTP status code
+	 *
+	 * @throws BlsException if the query can't be executed
+	 * @throws InterruptedException if the thread was interrupted
+	 */
+	protected abstract int produceRows(RowWriter out) throws BlsException, InterruptedException;
+
+	/**
+	 * Write the table as CSV or TSV.
+	 *
+	 * Only called if isPlainText() returns true. Plain text responses
+	 * are always streamed.
+	 *
+	 * @param out where to write the response
+	 * @return the HTTP status code
+	 *
+	 * @throws BlsException if the query can't be executed
+	 * @throws InterruptedException if the thread was interrupted
+	 */
+	public int handlePlainText(final PrintWriter out) throws BlsException, InterruptedException {
+		final boolean tsv = isTsv();
+		writeRow(out, getColumns(), tsv);
+		return produceRows(new RowWriter() {
+			@Override
+			public void row(String[] values) {
+				writeRow(out, values, tsv);
+			}
+
+			@Override
+			public void flush() {
+				out.flush();
+			}
+		});
+	}
+
+	/**
+	 * Write the table as XML or JSON (a list of rows).
+	 */
+	@Override
+	public int handle(final DataStream ds) throws BlsException, InterruptedException {
+		String format = getExportFormat();
+		if (getOverrideType() == null)
+			throw new BadRequest("UNKNOWN_EXPORT_FORMAT", "Unknown export format '" + format + "'. Use csv, tsv, xml or json.");
+		final String[] columns = getColumns();
+		ds.startMap().startEntry("rows").startList();
+		int httpCode = produceRows(new RowWriter() {
+			@Override
+			public void row(String[] values) {
+				ds.startItem("row").startMap();
+				for (int i = 0; i < columns.length; i++) {
+					ds.entry(columns[i], values[i]);
+				}
+				ds.endMap().endItem();
+			}
+
+			@Override
+			public void flush() {
+				ds.flush();
+			}
+		});
+		ds.endList().endEntry().endMap();
+		return httpCode;
+	}
+
+	/**
+	 * Write a row of values.
+	 *
+	 * @param out where to write
+	 * @param values the values
+	 * @param tsv if true, write tab-separated values; otherwise, comma-separated values
+	 */
+	private static void writeRow(PrintWriter out, String[] values, boolean tsv) {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0)
+				out.print(tsv ? '\t' : ',');
+			out.print(tsv ? escapeTsv(values[i]) : escapeCsv(values[i]));
+		}
+		out.print("\r\n");
+	}
+
+	/**
+	 * Quote a CSV value if necessary (RFC 4180).
+	 *
+	 * @param value the value
+	 * @return the escaped value
+	 */
+	static String escapeCsv(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+			return value;
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	/**
+	 * Make a value safe for TSV by replacing tabs and newlines with spaces.
+	 *
+	 * @param value the value
+	 * @return the escaped value
+	 */
+	static String escapeTsv(String value) {
+		return value.replaceAll("[\t\r\n]", " ");
+	}
+
+}
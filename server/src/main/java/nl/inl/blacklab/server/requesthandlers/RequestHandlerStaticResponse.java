@@ -76,7 +76,7 @@ public class RequestHandlerStaticResponse extends RequestHandler {
 		return this;
 	}
 
-	// Highest internal error code so far: 31
+	// Highest internal error code so far: 32
 
 	public RequestHandlerStaticResponse internalError(Exception e, boolean debugMode, int code) {
 		logger.debug("INTERNAL ERROR " + code + ":");
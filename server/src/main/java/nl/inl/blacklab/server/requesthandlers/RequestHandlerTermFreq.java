@@ -8,6 +8,7 @@ import org.apache.lucene.search.Query;
 
 import nl.inl.blacklab.search.Searcher;
 import nl.inl.blacklab.search.TermFrequency;
+import nl.inl.blacklab.search.TermFrequencyCounter;
 import nl.inl.blacklab.search.TermFrequencyList;
 import nl.inl.blacklab.search.indexstructure.ComplexFieldDesc;
 import nl.inl.blacklab.search.indexstructure.IndexStructure;
@@ -39,29 +40,42 @@ public class RequestHandlerTermFreq extends RequestHandler {
 		Query q = searchParam.getFilterQuery();
 		if (q == null)
 			return Response.badRequest(ds, "NO_FILTER_GIVEN", "Document filter required. Please specify 'filter' parameter.");
-		Map<String, Integer> freq = LuceneUtil.termFrequencies(searcher.getIndexSearcher(), q, cfd.getName(), propName, sensitive ? "s" : "i");
-
-		TermFrequencyList tfl = new TermFrequencyList(freq.size());
-		for (Map.Entry<String, Integer> e: freq.entrySet()) {
-			tfl.add(new TermFrequency(e.getKey(), e.getValue()));
-		}
-		tfl.sort();
-
 		int first = searchParam.getInteger("first");
-		if (first < 0 || first >= tfl.size())
-			first = 0;
 		int number = searchParam.getInteger("number");
 		if (number < 0 || number > searchMan.config().maxPageSize())
 			number = searchMan.config().defaultPageSize();
-		int last = first + number;
-		if (last > tfl.size())
-			last = tfl.size();
+
+		TermFrequencyList tfl;
+		if (TermFrequencyCounter.canCount(searcher, cfd.getName(), propName)) {
+			// Count using the forward index, and only look up the terms on the requested page
+			TermFrequencyCounter counter = new TermFrequencyCounter(searcher, cfd.getName(), propName, sensitive);
+			counter.count(q);
+			if (first < 0 || first >= counter.numberOfTerms())
+				first = 0;
+			tfl = counter.getTermFrequencies(first, number);
+		} else {
+			Map<String, Integer> freq = LuceneUtil.termFrequencies(searcher.getIndexSearcher(), q, cfd.getName(), propName, sensitive ? "s" : "i");
+			TermFrequencyList allTerms = new TermFrequencyList(freq.size());
+			for (Map.Entry<String, Integer> e: freq.entrySet()) {
+				allTerms.add(new TermFrequency(e.getKey(), e.getValue()));
+			}
+			allTerms.sort();
+			if (first < 0 || first >= allTerms.size())
+				first = 0;
+			int last = first + number;
+			if (last > allTerms.size())
+				last = allTerms.size();
+			tfl = new TermFrequencyList(last - first);
+			for (TermFrequency tf: allTerms.subList(first, last)) {
+				tfl.add(tf);
+			}
+		}
 
 		// Assemble all the parts
 		ds.startMap();
 		ds.startEntry("termFreq").startMap();
 		//DataObjectMapAttribute termFreq = new DataObjectMapAttribute("term", "text");
-		for (TermFrequency tf: tfl.subList(first, last)) {
+		for (TermFrequency tf: tfl) {
 			ds.attrEntry("term", "text", tf.term, tf.frequency);
 		}
 		ds.endMap().endEntry();
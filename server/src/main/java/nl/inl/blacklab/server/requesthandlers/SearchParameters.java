@@ -89,6 +89,8 @@ public class SearchParameters {
 		defaultParameterValues.put("maxretrieve", "1000000");
 		defaultParameterValues.put("maxcount", "10000000");
 		defaultParameterValues.put("sensitive", "no");
+		defaultParameterValues.put("stream", "no");
+		defaultParameterValues.put("exportformat", "csv");
 	}
 
 	private static String getDefault(String paramName) {
@@ -136,7 +138,9 @@ public class SearchParameters {
 		"property", "sensitive",        // for term frequency
 
 		// How to execute request
-		"waitfortotal"                  // wait until total number of results known?
+		"waitfortotal",                 // wait until total number of results known?
+		"stream",                       // send response while producing it, instead of buffering it?
+		"exportformat"                  // csv, tsv, xml or json (for export)
 	);
 
 	/** The search manager, for querying default value for missing parameters */
@@ -235,7 +239,7 @@ public class SearchParameters {
 		return getPattern() != null;
 	}
 
-	private TextPattern getPattern() throws BlsException {
+	TextPattern getPattern() throws BlsException {
 		if (pattern == null) {
 			String patt = getString("patt");
 			if (patt != null && patt.length() > 0)
@@ -9,7 +9,7 @@ public class BlsConfigCacheAndPerformance {
 
 	private static final Logger logger = Logger.getLogger(BlsConfigCacheAndPerformance.class);
 
-	/** Maximum size in MB to target, or -1 for no limit. NOT IMPLEMENTED YET. */
+	/** Maximum (estimated) size of the cached jobs in MB, or -1 for no limit. */
 	private long maxSizeMegs = -1;
 
 	/** Maximum number of searches to cache, or -1 for no limit. Defaults to 100.*/
@@ -72,6 +72,12 @@ public class BlsConfigCacheAndPerformance {
 	 */
 	private int clientCacheTimeSec;
 
+	/**
+	 * Memory-map the forward index terms files instead of loading them onto
+	 * the heap? [false] Saves a lot of memory for indices with many unique terms.
+	 */
+	private boolean memoryMappedTerms;
+
 	public BlsConfigCacheAndPerformance(JSONObject settings) {
 		this();
 
@@ -79,6 +85,7 @@ public class BlsConfigCacheAndPerformance {
 			minFreeMemForSearchMegs = JsonUtil.getIntProp(settings, "minFreeMemForSearchMegs", 50);
 			maxRunningJobsPerUser = JsonUtil.getIntProp(settings, "maxRunningJobsPerUser", 20);
 			clientCacheTimeSec = JsonUtil.getIntProp(settings, "clientCacheTimeSec", 3600);
+			memoryMappedTerms = JsonUtil.getBooleanProp(settings, "memoryMappedTerms", false);
 		} else {
 			// Set default values
 			minFreeMemForSearchMegs = 50;
@@ -90,11 +97,11 @@ public class BlsConfigCacheAndPerformance {
 		if (settings != null && settings.has("cache"))
 			cacheSettings = settings.getJSONObject("cache");
 		if (cacheSettings != null) {
-			maxJobAgeSec = JsonUtil.getIntProp(settings, "maxJobAgeSec", 3600);
-			maxNumberOfJobs = JsonUtil.getIntProp(settings, "maxNumberOfJobs", 20);
-			maxSizeMegs = JsonUtil.getIntProp(settings, "maxSizeMegs", -1);
-			minFreeMemTargetMegs = JsonUtil.getIntProp(settings, "targetFreeMemMegs", 100);
-			numberOfJobsToPurgeWhenBelowTargetMem = JsonUtil.getIntProp(settings, "numberOfJobsToPurgeWhenBelowTargetMem", 100);
+			maxJobAgeSec = JsonUtil.getIntProp(cacheSettings, "maxJobAgeSec", 3600);
+			maxNumberOfJobs = JsonUtil.getIntProp(cacheSettings, "maxNumberOfJobs", 20);
+			maxSizeMegs = JsonUtil.getIntProp(cacheSettings, "maxSizeMegs", -1);
+			minFreeMemTargetMegs = JsonUtil.getIntProp(cacheSettings, "targetFreeMemMegs", 100);
+			numberOfJobsToPurgeWhenBelowTargetMem = JsonUtil.getIntProp(cacheSettings, "numberOfJobsToPurgeWhenBelowTargetMem", 100);
 		}
 
 		JSONObject serverLoadSettings = null;
@@ -127,6 +134,10 @@ public class BlsConfigCacheAndPerformance {
 		numberOfJobsToPurgeWhenBelowTargetMem = 100;
 	}
 
+	public boolean isMemoryMappedTerms() {
+		return memoryMappedTerms;
+	}
+
 	public long getMaxSizeMegs() {
 		return maxSizeMegs;
 	}
@@ -269,6 +269,42 @@ public class IndexManager {
 		}
 	}
 
+	/**
+	 * Open a new view of an index after documents were added to it.
+	 *
+	 * New searches will use the new view; searches that are still running
+	 * finish using the previous one, which is closed when they're done.
+	 * If the index changed, the cached searches for this index are discarded
+	 * (but not those for other indices).
+	 *
+	 * @param indexName the index
+	 * @throws BlsException if the index name is illegal or the index couldn't be reopened
+	 */
+	public synchronized void refreshSearcher(String indexName) throws BlsException {
+		if (!BlsUtils.isValidIndexName(indexName))
+			throw new IllegalIndexName(indexName);
+		Searcher searcher = searchers.get(indexName);
+		if (searcher == null)
+			return; // not open; will be opened when it's needed
+		IndexParam par = getIndexParam(indexName);
+		if (par == null)
+			throw new IndexNotFound(indexName);
+		Searcher newSearcher;
+		try {
+			logger.debug("Reopening index '" + indexName + "'");
+			newSearcher = searcher.reopen();
+		} catch (Exception e) {
+			throw new InternalServerError("Could not reopen index '" + indexName
+					+ "'", 32, e);
+		}
+		if (newSearcher == searcher)
+			return; // index didn't change
+		searchers.put(indexName, newSearcher);
+		applyIndexParam(indexName, par, newSearcher);
+		cache.clearCacheForIndex(indexName);
+		cache.retireSearcher(searcher);
+	}
+
 	/**
 	 * Get the Searcher object for the specified index.
 	 *
@@ -278,7 +314,6 @@ public class IndexManager {
 	 * @throws BlsException
 	 *             if not found or open error
 	 */
-	@SuppressWarnings("deprecation")  // for call to _setPidField() and _setContentViewable()
 	public synchronized Searcher getSearcher(String indexName)
 			throws BlsException {
 		if (!BlsUtils.isValidIndexName(indexName))
@@ -302,6 +337,7 @@ public class IndexManager {
 		Searcher searcher;
 		try {
 			logger.debug("Opening index '" + indexName + "', dir = " + indexDir);
+			Searcher.setDefaultMemoryMappedTerms(searchMan.config().getCacheConfig().isMemoryMappedTerms());
 			searcher = Searcher.open(indexDir);
 			searcher.setDefaultSearchSensitive(searchMan.config().isDefaultCaseSensitive(), searchMan.config().isDefaultDiacriticsSensitive());
 		} catch (Exception e) {
@@ -309,7 +345,20 @@ public class IndexManager {
 					+ "'", 27, e);
 		}
 		searchers.put(indexName, searcher);
+		applyIndexParam(indexName, par, searcher);
+		return searcher;
+	}
 
+	/**
+	 * Reconcile the index metadata with the index parameters from the BLS config,
+	 * and apply the result to the Searcher.
+	 *
+	 * @param indexName the index
+	 * @param par the index parameters
+	 * @param searcher the Searcher for this index
+	 */
+	@SuppressWarnings("deprecation")  // for call to _setPidField() and _setContentViewable()
+	private void applyIndexParam(String indexName, IndexParam par, Searcher searcher) {
 		// Figure out the pid from the index metadata and/or BLS config.
 		String indexPid = searcher.getIndexStructure().pidField();
 		if (indexPid == null)
@@ -346,8 +395,6 @@ public class IndexManager {
 			par.setMayViewContent(false);
 			searcher.getIndexStructure()._setContentViewable(false);
 		}
-
-		return searcher;
 	}
 
 	/**
@@ -7,6 +7,7 @@ import org.apache.log4j.Logger;
 /**
  * A thread that regularly calls SearchCache.performLoadManagement(null)
  * to ensure that load management continues even if no new requests are coming in.
+ * Also closes Searchers that were replaced once they're no longer used.
  */
 class LoadManagerThread extends Thread implements UncaughtExceptionHandler {
 	private static final Logger logger = Logger.getLogger(LoadManagerThread.class);
@@ -38,6 +39,7 @@ class LoadManagerThread extends Thread implements UncaughtExceptionHandler {
 
 			synchronized(searchCache) {
 				searchCache.performLoadManagement(null);
+				searchCache.closeRetiredSearchers(false);
 			}
 		}
 	}
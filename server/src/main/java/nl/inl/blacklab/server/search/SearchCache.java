@@ -13,12 +13,14 @@ import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import nl.inl.blacklab.search.Searcher;
 import nl.inl.blacklab.server.datastream.DataStream;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.exceptions.ServiceUnavailable;
 import nl.inl.blacklab.server.exceptions.TooManyRequests;
 import nl.inl.blacklab.server.jobs.Job;
 import nl.inl.blacklab.server.jobs.JobDescription;
+import nl.inl.blacklab.server.jobs.JobExecutor;
 import nl.inl.blacklab.server.jobs.User;
 import nl.inl.util.MemoryUtil;
 import nl.inl.util.ThreadPriority;
@@ -43,21 +45,70 @@ public class SearchCache {
 	/** The cached search objects. */
 	private Map<String, Job> cachedSearches;
 
-	/** (Estimated) size of the cache. Only updated in removeOldSearches, so may not
+	/** (Estimated) size of the cache. Only updated in performLoadManagement, so may not
 	 * always be accurate. */
 	private long cacheSizeBytes;
 
+	/** Number of searches that were found in the cache */
+	private long cacheHits = 0;
+
+	/** Number of searches that were not found in the cache */
+	private long cacheMisses = 0;
+
+	/** Number of finished searches removed from the cache to free up space */
+	private long evictions = 0;
+
+	/** Minimum recompute time we assume for a job when deciding what to evict */
+	private static final double MIN_RECOMPUTE_TIME_SEC = 0.01;
+
+	/**
+	 * A finished job that may be removed from the cache, with the values
+	 * we use to decide that. These are determined before sorting because
+	 * they may change while we're sorting.
+	 */
+	private static class EvictionCandidate implements Comparable<EvictionCandidate> {
+
+		Job job;
+
+		long sizeBytes;
+
+		/** How worthwhile it is to keep this job in the cache */
+		double value;
+
+		EvictionCandidate(Job job, long sizeBytes) {
+			this.job = job;
+			this.sizeBytes = sizeBytes;
+			// Jobs that take long to recompute, take up little memory and were
+			// recently used are the most valuable to keep.
+			double recomputeSec = Math.max(job.totalExecTime(), MIN_RECOMPUTE_TIME_SEC);
+			double sizeMegs = Math.max(sizeBytes, 1) / 1000000.0;
+			value = recomputeSec / (sizeMegs * (1 + job.notAccessedFor()));
+		}
+
+		/** Least valuable first */
+		@Override
+		public int compareTo(EvictionCandidate o) {
+			return Double.compare(value, o.value);
+		}
+	}
+
 	/**
 	 * A thread that ensures load management continues even if
 	 * no new requests are coming in.
 	 */
 	private Thread loadManagerThread;
 
+	/** Runs our jobs on a pool of threads */
+	private JobExecutor jobExecutor;
+
 	/** Keeps track of running jobs per user, so we can limit this. */
 	private Map<String, Set<Job>> runningJobsPerUser = new HashMap<>();
 
 	private SearchManager searchMan;
 
+	/** Searchers that were replaced by a newer view of their index, with the time they were replaced */
+	private Map<Searcher, Long> retiredSearchers = new HashMap<>();
+
 	/**
 	 * Initialize the cache.
 	 *
@@ -75,6 +126,8 @@ public class SearchCache {
 
 		cachedSearches = new HashMap<>();
 
+		jobExecutor = new JobExecutor(cacheConfig);
+
 		loadManagerThread = new LoadManagerThread(this);
 		loadManagerThread.start();
 
@@ -97,6 +150,53 @@ public class SearchCache {
 		}
 	}
 
+	/**
+	 * Close a Searcher that was replaced by a newer view of its index,
+	 * once the searches still using it are done.
+	 *
+	 * @param searcher the replaced Searcher
+	 */
+	public void retireSearcher(Searcher searcher) {
+		synchronized (retiredSearchers) {
+			retiredSearchers.put(searcher, System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Close the replaced Searchers that no search is using anymore.
+	 *
+	 * We wait at least the maximum search time after a Searcher was replaced,
+	 * so requests that are still reading results from it can finish.
+	 *
+	 * @param closeAll if true, close all replaced Searchers, even if they're in use
+	 */
+	void closeRetiredSearchers(boolean closeAll) {
+		synchronized (retiredSearchers) {
+			if (retiredSearchers.isEmpty())
+				return;
+			Set<Searcher> inUse = new HashSet<>();
+			for (Job job: cachedSearches.values()) {
+				inUse.add(job.getSearcher());
+			}
+			for (Set<Job> jobs: runningJobsPerUser.values()) {
+				for (Job job: jobs) {
+					if (!job.finished())
+						inUse.add(job.getSearcher());
+				}
+			}
+			long closeIfRetiredBefore = System.currentTimeMillis() - cacheConfig.getMaxSearchTimeSec() * 1000L;
+			Iterator<Map.Entry<Searcher, Long>> it = retiredSearchers.entrySet().iterator();
+			while (it.hasNext()) {
+				Entry<Searcher, Long> entry = it.next();
+				if (closeAll || (!inUse.contains(entry.getKey()) && entry.getValue() < closeIfRetiredBefore)) {
+					logger.debug("Closing replaced Searcher for " + entry.getKey().getIndexName());
+					entry.getKey().close();
+					it.remove();
+				}
+			}
+		}
+	}
+
 	/**
 	 * Get rid of all the cached Searches.
 	 */
@@ -110,11 +210,18 @@ public class SearchCache {
 		loadManagerThread = null;
 
 		clearCache(true);
+		closeRetiredSearchers(true);
+
+		jobExecutor.shutdown();
 
 		searchMan = null;
 	}
 
-	public void dataStreamCacheStatus(DataStream ds) {
+	public JobExecutor getJobExecutor() {
+		return jobExecutor;
+	}
+
+	public synchronized void dataStreamCacheStatus(DataStream ds) {
 		long maxSizeMegs = cacheConfig.getMaxSizeMegs();
 		long maxSizeBytes = maxSizeMegs < 0 ? -1 : maxSizeMegs * 1000 * 1000;
 		ds.startMap()
@@ -123,6 +230,9 @@ public class SearchCache {
 			.entry("maxSearchAgeSec", cacheConfig.getMaxJobAgeSec())
 			.entry("sizeBytes", calculateSizeBytes(cachedSearches.values()))
 			.entry("numberOfSearches", cachedSearches.size())
+			.entry("cacheHits", cacheHits)
+			.entry("cacheMisses", cacheMisses)
+			.entry("evictions", evictions)
 		.endMap();
 	}
 
@@ -209,8 +319,10 @@ public class SearchCache {
 		Job search = cachedSearches.get(jobDesc.uniqueIdentifier());
 		if (search == null) {
 			// logger.debug("Cache miss: " + jobDesc);
+			cacheMisses++;
 		} else {
 			// logger.debug("Cache hit: " + jobDesc);
+			cacheHits++;
 			search.resetLastAccessed();
 		}
 		return search;
@@ -278,8 +390,7 @@ public class SearchCache {
 	 */
 	private boolean cacheTooBig() {
 		boolean tooManySearches = cacheConfig.getMaxNumberOfJobs() >= 0 && cachedSearches.size() > cacheConfig.getMaxNumberOfJobs();
-		long cacheSizeMegs = cacheSizeBytes / 1000000;
-		boolean tooMuchMemory = cacheConfig.getMaxSizeMegs() >= 0 && cacheSizeMegs > cacheConfig.getMaxSizeMegs();
+		boolean tooMuchMemory = cacheConfig.getMaxSizeMegs() >= 0 && cacheSizeBytes > cacheConfig.getMaxSizeMegs() * 1000000;
 		return tooManySearches || tooMuchMemory;
 	}
 
@@ -315,9 +426,27 @@ public class SearchCache {
 		Collections.sort(searches);
 
 		//------------------
-		// STEP 1: remove least worthy, finished searches from cache
+		// STEP 1: cancel searches that take too long, and remove the least
+		//         valuable finished searches from cache if it's too big.
 
-		calculateSizeBytes(searches);
+		// Determine cache size and which searches we could remove
+		List<Job> removed = new ArrayList<>();
+		List<EvictionCandidate> candidates = new ArrayList<>();
+		cacheSizeBytes = 0;
+		for (Job search: searches) {
+			long sizeBytes = search.estimateSizeBytes();
+			cacheSizeBytes += sizeBytes;
+			if (!search.finished()) {
+				if (search.userWaitTime() > cacheConfig.getMaxSearchTimeSec()) {
+					// Search is taking too long. Cancel it.
+					logger.debug("Search is taking too long, cancelling: " + search);
+					abortSearch(search);
+					removed.add(search);
+				}
+			} else {
+				candidates.add(new EvictionCandidate(search, sizeBytes));
+			}
+		}
 
 		// If we're low on memory, always remove a few searches from cache.
 		int minSearchesToRemove = 0;
@@ -329,42 +458,16 @@ public class SearchCache {
 			logger.debug("Not enough free mem, will remove some searches.");
 		}
 
-		// Look at searches from least worthy to worthiest.
-		// Get rid of old searches
-		List<Job> removed = new ArrayList<>();
-		boolean lookAtCacheSizeAndSearchAccessTime = true;
-		for (int i = searches.size() - 1; i >= 0; i--) {
-			Job search1 = searches.get(i);
-
-			if (!search1.finished() && search1.userWaitTime() > cacheConfig.getMaxSearchTimeSec()) {
-				// Search is taking too long. Cancel it.
-				logger.debug("Search is taking too long, cancelling: " + search1);
-				abortSearch(search1);
-				removed.add(search1);
-
-			} else {
-				boolean removeBecauseOfCacheSizeOrAge = false;
-				if (lookAtCacheSizeAndSearchAccessTime) {
-					boolean isCacheTooBig = cacheTooBig();
-					boolean isSearchTooOld = false;
-					if (!isCacheTooBig)
-						isSearchTooOld = searchTooOld(search1);
-					removeBecauseOfCacheSizeOrAge = isCacheTooBig || isSearchTooOld;
-				}
-				if (minSearchesToRemove > 0 || removeBecauseOfCacheSizeOrAge) {
-					// Search is too old or cache is too big. Keep removing searches until that's no
-					// longer the case
-					// logger.debug("Remove from cache: " + search);
-					removeFromCache(search1);
-					removed.add(search1);
-
-					minSearchesToRemove--;
-				} else {
-					// Cache is no longer too big and these searches are not too old. Stop checking
-					// that,
-					// just check for long-running searches
-					lookAtCacheSizeAndSearchAccessTime = false;
-				}
+		// Look at finished searches from least to most valuable, and remove them
+		// while the cache is too big (or memory is low), as well as any that are too old.
+		Collections.sort(candidates);
+		for (EvictionCandidate candidate: candidates) {
+			if (minSearchesToRemove > 0 || cacheTooBig() || searchTooOld(candidate.job)) {
+				// logger.debug("Remove from cache: " + candidate.job);
+				removeFromCache(candidate.job);
+				removed.add(candidate.job);
+				evictions++;
+				minSearchesToRemove--;
 			}
 		}
 		// Make sure we don't look at the searches we removed again in the next step
@@ -386,8 +489,9 @@ public class SearchCache {
 
 				// NOTE: we'll leave this to removeOldSearches() for now.
 				// Later we'll integrate the two.
-			} else if (search.isWaitingForOtherJob()) {
-				// Waiting, not taking up any CPU. Can run normally, but doesn't take a core.
+			} else if (search.isWaitingForOtherJob() || search.isQueued()) {
+				// Waiting (for another job or for the executor to start it),
+				// not taking up any CPU. Can run normally, but doesn't take a core.
 				applyAction(search, ServerLoadQueryAction.RUN_NORMALLY);
 			} else {
 				// Running search. Run, pause or abort?
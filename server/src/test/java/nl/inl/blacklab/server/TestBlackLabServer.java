@@ -0,0 +1,89 @@
+package nl.inl.blacklab.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import nl.inl.blacklab.server.datastream.DataFormat;
+import nl.inl.blacklab.server.datastream.DataStream;
+import nl.inl.blacklab.server.exceptions.BadRequest;
+
+public class TestBlackLabServer {
+
+	private static final String ROOT_EL = "blacklabResponse";
+
+	/**
+	 * Start a hits response, like the hits operation does, but stop halfway
+	 * through the second hit.
+	 *
+	 * @param ds where to write the response
+	 */
+	private static void partialHitsResponse(DataStream ds) {
+		ds.startMap();
+		ds.startEntry("summary").startMap().entry("numberOfHits", 2).endMap().endEntry();
+		ds.startEntry("hits").startList();
+		ds.startItem("hit").startMap().entry("docPid", "1").entry("start", 3).endMap().endItem();
+		ds.startItem("hit").startMap().entry("docPid", "2").startEntry("left");
+	}
+
+	private static String streamWithError(DataFormat format, boolean prettyPrint, boolean complete) {
+		StringWriter buf = new StringWriter();
+		DataStream ds = DataStream.create(format, new PrintWriter(buf), prettyPrint, null);
+		ds.startDocument(ROOT_EL);
+		partialHitsResponse(ds);
+		if (complete) {
+			// Finish the response; the error occurs afterwards
+			ds.startMap().endMap().endEntry().endMap().endItem().endList().endEntry().endMap();
+		}
+		BlackLabServer.errorInPartialResponse(ds, new BadRequest("SOME_ERROR", "Something went wrong"), false);
+		ds.endDocument(ROOT_EL);
+		ds.flush();
+		return buf.toString();
+	}
+
+	@Test
+	public void testErrorInPartialJsonResponse() {
+		for (boolean prettyPrint: new boolean[] { false, true }) {
+			JSONObject response = new JSONObject(streamWithError(DataFormat.JSON, prettyPrint, false));
+			JSONArray hits = response.getJSONArray("hits");
+			Assert.assertEquals(2, hits.length());
+			Assert.assertEquals("1", hits.getJSONObject(0).getString("docPid"));
+			Assert.assertTrue(hits.getJSONObject(1).isNull("left"));
+			Assert.assertEquals("SOME_ERROR", response.getJSONObject("error").getString("code"));
+		}
+	}
+
+	@Test
+	public void testErrorInPartialXmlResponse() throws Exception {
+		for (boolean prettyPrint: new boolean[] { false, true }) {
+			String xml = streamWithError(DataFormat.XML, prettyPrint, false);
+			Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+					.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+			Element root = doc.getDocumentElement();
+			Assert.assertEquals(ROOT_EL, root.getTagName());
+			Assert.assertEquals(2, root.getElementsByTagName("hit").getLength());
+			Element error = (Element) root.getElementsByTagName("error").item(0);
+			Assert.assertEquals(root, error.getParentNode());
+			Assert.assertEquals("SOME_ERROR", error.getElementsByTagName("code").item(0).getTextContent());
+		}
+	}
+
+	@Test
+	public void testErrorAfterCompleteResponse() {
+		// We can't add the error anymore, but the response must stay valid
+		JSONObject response = new JSONObject(streamWithError(DataFormat.JSON, false, true));
+		Assert.assertEquals(2, response.getJSONArray("hits").length());
+		Assert.assertFalse(response.has("error"));
+	}
+
+}
@@ -0,0 +1,183 @@
+package nl.inl.blacklab.server.jobs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import nl.inl.blacklab.search.Prioritizable;
+import nl.inl.blacklab.server.exceptions.ServiceUnavailable;
+import nl.inl.blacklab.server.search.BlsConfigCacheAndPerformance;
+
+public class TestJobExecutor {
+
+	/** Job that records when it runs, and optionally blocks until released */
+	private static class TestJob extends Job {
+
+		private String name;
+
+		private List<String> log;
+
+		private Job input;
+
+		private CountDownLatch release;
+
+		/** Counted down when the job starts running */
+		CountDownLatch started = new CountDownLatch(1);
+
+		TestJob(JobExecutor executor, String userId, String name, List<String> log, Job input, CountDownLatch release) {
+			super(executor, User.loggedIn(userId, "session-" + userId),
+					new JobDescription(JobHitsTotal.class, input == null ? null : input.getDescription()) {
+						// (no settings)
+					});
+			this.name = name;
+			this.log = log;
+			this.input = input;
+			this.release = release;
+		}
+
+		@Override
+		Job searchInputJob(JobDescription inputDesc) {
+			return input;
+		}
+
+		@Override
+		protected void performSearch() {
+			log.add(name);
+			started.countDown();
+			if (release != null) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		@Override
+		protected Prioritizable getObjectToPrioritize() {
+			return null;
+		}
+
+	}
+
+	private JobExecutor executor;
+
+	private List<String> log = Collections.synchronizedList(new ArrayList<String>());
+
+	private void createExecutor(int maxConcurrentSearches) {
+		JSONObject settings = new JSONObject("{ \"serverLoad\": { \"maxConcurrentSearches\": " + maxConcurrentSearches + " } }");
+		executor = new JobExecutor(new BlsConfigCacheAndPerformance(settings));
+	}
+
+	private TestJob job(String userId, String name) {
+		return new TestJob(executor, userId, name, log, null, null);
+	}
+
+	/**
+	 * Start a job that keeps running until the latch is counted down.
+	 */
+	private TestJob startBlockingJob(String userId, String name, CountDownLatch release) throws Exception {
+		TestJob job = new TestJob(executor, userId, name, log, null, release);
+		job.perform(0);
+		job.started.await();
+		return job;
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	@Test(timeout = 10000)
+	public void testUsersTakeTurns() throws Exception {
+		createExecutor(1);
+		CountDownLatch release = new CountDownLatch(1);
+		TestJob blocker = startBlockingJob("other", "blocker", release);
+
+		// Queue several jobs from two users while the only slot is taken
+		List<TestJob> jobs = Arrays.asList(job("a", "a1"), job("a", "a2"), job("a", "a3"), job("b", "b1"), job("b", "b2"));
+		for (TestJob job: jobs) {
+			job.perform(0);
+			Assert.assertTrue(job.isQueued());
+		}
+
+		release.countDown();
+		for (TestJob job: jobs) {
+			job.waitUntilFinished();
+		}
+		blocker.waitUntilFinished();
+		Assert.assertEquals(Arrays.asList("blocker", "a1", "b1", "a2", "b2", "a3"), log);
+	}
+
+	@Test(timeout = 10000)
+	public void testCancelQueuedJob() throws Exception {
+		createExecutor(1);
+		CountDownLatch release = new CountDownLatch(1);
+		TestJob blocker = startBlockingJob("a", "blocker", release);
+		TestJob cancelled = job("a", "cancelled");
+		TestJob next = job("a", "next");
+		cancelled.perform(0);
+		next.perform(0);
+
+		cancelled.cancelJob();
+		Assert.assertFalse(cancelled.isQueued());
+		Assert.assertTrue(cancelled.finished());
+		Assert.assertTrue(cancelled.getThrownException() instanceof ServiceUnavailable);
+
+		release.countDown();
+		blocker.waitUntilFinished();
+		next.waitUntilFinished();
+		Assert.assertEquals(Arrays.asList("blocker", "next"), log);
+	}
+
+	@Test(timeout = 10000)
+	public void testSubmitWhenFinished() throws Exception {
+		createExecutor(2);
+		CountDownLatch release = new CountDownLatch(1);
+		TestJob input = startBlockingJob("a", "input", release);
+		input.incrRef(); // (as the cache would)
+		TestJob job = new TestJob(executor, "a", "job", log, input, null);
+		job.perform(0);
+
+		// There's room to run, but the job must wait for its input
+		Assert.assertFalse(job.isQueued());
+		Assert.assertTrue(job.isWaitingForOtherJob());
+		Assert.assertFalse(job.finished());
+
+		release.countDown();
+		job.waitUntilFinished();
+		Assert.assertEquals(Arrays.asList("input", "job"), log);
+		Assert.assertNull(job.getThrownException());
+	}
+
+	@Test(timeout = 10000)
+	public void testCancelWhileWaitingForInput() throws Exception {
+		createExecutor(2);
+		CountDownLatch release = new CountDownLatch(1);
+		TestJob input = startBlockingJob("a", "input", release);
+		input.incrRef(); // (as the cache would)
+		TestJob job = new TestJob(executor, "a", "job", log, input, null);
+		job.perform(0);
+
+		job.cancelJob();
+		Assert.assertFalse(job.isWaitingForOtherJob());
+		Assert.assertTrue(job.finished());
+
+		// When the input job finishes, the cancelled job must not be submitted
+		release.countDown();
+		input.waitUntilFinished();
+		Assert.assertFalse(job.isQueued());
+		TestJob next = job("a", "next");
+		next.perform(0);
+		next.waitUntilFinished();
+		Assert.assertEquals(Arrays.asList("input", "next"), log);
+	}
+
+}